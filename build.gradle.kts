@@ -18,6 +18,7 @@ repositories {
 
 dependencies {
     implementation ("de.undercouch:gradle-download-task:4.1.2")
+    implementation ("org.ow2.asm:asm:9.3")
     compileOnly ("org.jetbrains.intellij.plugins:structure-base:3.190")
     compileOnly ("org.jetbrains.intellij.plugins:structure-teamcity:3.190")
     compileOnly ("org.jetbrains.intellij:plugin-repository-rest-client:2.0.17")
@@ -46,6 +47,25 @@ sourceSets {
         compileClasspath += main.get().output + configurations.testRuntimeClasspath
         runtimeClasspath += main.get().output + configurations.testRuntimeClasspath
     }
+    register("jmh") {
+        compileClasspath += main.get().output + configurations.testRuntimeClasspath
+        runtimeClasspath += main.get().output + configurations.testRuntimeClasspath
+    }
+}
+
+val processor by configurations.creating {
+    isCanBeConsumed = false
+    isTransitive = false
+    description = "The annotation processor bundled with the plugin."
+}
+
+dependencies {
+    processor (project(":processor"))
+}
+
+dependencies {
+    "jmhImplementation" ("org.openjdk.jmh:jmh-core:1.35")
+    "jmhAnnotationProcessor" ("org.openjdk.jmh:jmh-generator-annprocess:1.35")
 }
 
 java {
@@ -106,6 +126,17 @@ pluginBundle {
 }
 
 tasks {
+    processResources {
+        inputs.property("version", project.version)
+        filesMatching("**/processor.properties") {
+            expand("version" to project.version)
+        }
+        from (processor) {
+            into ("com/github/rodm/teamcity")
+            rename { "processor.jar" }
+        }
+    }
+
     test {
         useJUnitPlatform()
         finalizedBy (jacocoTestReport)
@@ -132,4 +163,19 @@ tasks {
         testClassesDirs = sourceSets["samples"].output.classesDirs
         classpath = sourceSets["samples"].runtimeClasspath
     }
+
+    register<JavaExec>("jmh") {
+        description = "Runs the JMH benchmarks. Use -Pjmh.includes=<regex> to select the benchmarks to run."
+        group = "verification"
+        classpath = sourceSets["jmh"].runtimeClasspath
+        mainClass.set("org.openjdk.jmh.Main")
+        val resultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+        outputs.file(resultsFile)
+        outputs.upToDateWhen { false }
+        doFirst {
+            resultsFile.get().asFile.parentFile.mkdirs()
+        }
+        args("-rf", "json", "-rff", resultsFile.get().asFile.absolutePath)
+        args(listOfNotNull(project.findProperty("jmh.includes")?.toString()))
+    }
 }
@@ -0,0 +1,30 @@
+plugins {
+    id ("org.gradle.java-library")
+    id ("org.gradle.groovy")
+}
+
+version = rootProject.version
+group = rootProject.group
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    testImplementation(platform("org.junit:junit-bom:5.7.2"))
+    testImplementation ("org.junit.jupiter:junit-jupiter")
+    testImplementation ("org.hamcrest:hamcrest-library:2.2")
+    testImplementation ("org.codehaus.groovy:groovy:3.0.7")
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(8))
+    }
+}
+
+tasks {
+    test {
+        useJUnitPlatform()
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Generates the Spring bean definition files for the server-side and agent-side plugins from classes annotated
+ * with {@link ServerBean} and {@link AgentBean}. Classes that cannot be created by the Spring container are
+ * reported as compilation errors.
+ *
+ * <p>The name of the generated files is set using the {@code teamcity.plugin.name} option.</p>
+ */
+@SupportedOptions(BeanDefinitionProcessor.PLUGIN_NAME_OPTION)
+public class BeanDefinitionProcessor extends AbstractProcessor {
+
+    public static final String PLUGIN_NAME_OPTION = "teamcity.plugin.name";
+
+    private static final String DEFAULT_PLUGIN_NAME = "plugin";
+
+    private final Map<String, Bean> serverBeans = new TreeMap<>();
+    private final Map<String, Bean> agentBeans = new TreeMap<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> types = new LinkedHashSet<>();
+        types.add(ServerBean.class.getCanonicalName());
+        types.add(AgentBean.class.getCanonicalName());
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(ServerBean.class)) {
+            ServerBean annotation = element.getAnnotation(ServerBean.class);
+            collect(element, ServerBean.class, annotation.id(), serverBeans);
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(AgentBean.class)) {
+            AgentBean annotation = element.getAnnotation(AgentBean.class);
+            collect(element, AgentBean.class, annotation.id(), agentBeans);
+        }
+
+        if (roundEnv.processingOver() && !roundEnv.errorRaised()) {
+            String name = pluginName();
+            write("META-INF/build-server-plugin-" + name + ".xml", serverBeans);
+            write("META-INF/build-agent-plugin-" + name + ".xml", agentBeans);
+        }
+        return true;
+    }
+
+    private void collect(Element element, Class<? extends Annotation> annotation, String id, Map<String, Bean> beans) {
+        if (!isValidBean(element, annotation)) {
+            return;
+        }
+        TypeElement type = (TypeElement) element;
+        String className = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String beanId = id.isEmpty() ? defaultId(type) : id;
+        for (Bean bean : beans.values()) {
+            if (bean.id.equals(beanId)) {
+                error(element, "Bean id '%s' is already used by %s", beanId, bean.className);
+                return;
+            }
+        }
+        beans.put(className, new Bean(beanId, className, type));
+    }
+
+    private boolean isValidBean(Element element, Class<? extends Annotation> annotation) {
+        String name = '@' + annotation.getSimpleName();
+        if (element.getKind() != ElementKind.CLASS) {
+            error(element, "%s can only be applied to a class", name);
+            return false;
+        }
+        TypeElement type = (TypeElement) element;
+        Set<Modifier> modifiers = type.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC)) {
+            error(element, "%s class %s must be public", name, type.getQualifiedName());
+            return false;
+        }
+        if (modifiers.contains(Modifier.ABSTRACT)) {
+            error(element, "%s class %s must not be abstract", name, type.getQualifiedName());
+            return false;
+        }
+        NestingKind nestingKind = type.getNestingKind();
+        if (nestingKind != NestingKind.TOP_LEVEL && !(nestingKind == NestingKind.MEMBER && modifiers.contains(Modifier.STATIC))) {
+            error(element, "%s class %s must be a top level or static nested class", name, type.getQualifiedName());
+            return false;
+        }
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        error(element, "%s class %s must have a public constructor", name, type.getQualifiedName());
+        return false;
+    }
+
+    private void write(String path, Map<String, Bean> beans) {
+        if (beans.isEmpty()) {
+            return;
+        }
+        List<Element> originatingElements = new ArrayList<>();
+        for (Bean bean : beans.values()) {
+            originatingElements.add(bean.element);
+        }
+        Filer filer = processingEnv.getFiler();
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", path, originatingElements.toArray(new Element[0]));
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write(beanDefinitions(beans.values()));
+            }
+        }
+        catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write " + path + ": " + e.getMessage());
+        }
+    }
+
+    static String beanDefinitions(Iterable<Bean> beans) {
+        StringBuilder out = new StringBuilder();
+        out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.append("<beans xmlns=\"http://www.springframework.org/schema/beans\"\n");
+        out.append("       xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
+        out.append("       xsi:schemaLocation=\"http://www.springframework.org/schema/beans http://www.springframework.org/schema/beans/spring-beans-3.0.xsd\"\n");
+        out.append("       default-autowire=\"constructor\">\n");
+        for (Bean bean : beans) {
+            out.append("  <bean id=\"").append(escape(bean.id)).append("\" class=\"").append(bean.className).append("\"/>\n");
+        }
+        out.append("</beans>\n");
+        return out.toString();
+    }
+
+    private String pluginName() {
+        String name = processingEnv.getOptions().get(PLUGIN_NAME_OPTION);
+        return name == null || name.trim().isEmpty() ? DEFAULT_PLUGIN_NAME : name.trim();
+    }
+
+    private void error(Element element, String format, Object... args) {
+        Messager messager = processingEnv.getMessager();
+        messager.printMessage(Diagnostic.Kind.ERROR, String.format(format, args), element);
+    }
+
+    private static String defaultId(TypeElement type) {
+        String name = type.getSimpleName().toString();
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String escape(String value) {
+        StringBuilder result = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '&': result.append("&amp;"); break;
+                case '<': result.append("&lt;"); break;
+                case '>': result.append("&gt;"); break;
+                case '"': result.append("&quot;"); break;
+                default: result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    static class Bean {
+        final String id;
+        final String className;
+        final Element element;
+
+        Bean(String id, String className, Element element) {
+            this.id = id;
+            this.className = className;
+            this.element = element;
+        }
+    }
+}
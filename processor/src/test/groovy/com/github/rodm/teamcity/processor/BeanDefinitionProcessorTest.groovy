@@ -0,0 +1,219 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.processor
+
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import javax.tools.Diagnostic
+import javax.tools.DiagnosticCollector
+import javax.tools.JavaCompiler
+import javax.tools.JavaFileObject
+import javax.tools.StandardJavaFileManager
+import javax.tools.ToolProvider
+import java.nio.file.Files
+import java.nio.file.Path
+
+import static org.hamcrest.CoreMatchers.containsString
+import static org.hamcrest.CoreMatchers.equalTo
+import static org.hamcrest.CoreMatchers.hasItem
+import static org.hamcrest.MatcherAssert.assertThat
+
+class BeanDefinitionProcessorTest {
+
+    @TempDir
+    public Path projectDir
+
+    private Path sourceDir
+    private Path classesDir
+    private List<String> errors
+
+    @BeforeEach
+    void setup() {
+        sourceDir = Files.createDirectories(projectDir.resolve('src'))
+        classesDir = Files.createDirectories(projectDir.resolve('classes'))
+    }
+
+    @Test
+    void 'generates server bean definitions'() {
+        source('example/ExampleController.java', '''
+            package example;
+            import com.github.rodm.teamcity.processor.ServerBean;
+            @ServerBean
+            public class ExampleController {
+                public ExampleController(ExampleService service) {}
+            }
+        ''')
+        source('example/ExampleService.java', '''
+            package example;
+            import com.github.rodm.teamcity.processor.ServerBean;
+            @ServerBean(id = "service")
+            public class ExampleService {
+            }
+        ''')
+
+        assertThat(compile(), equalTo(true))
+
+        String definitions = classesDir.resolve('META-INF/build-server-plugin-example.xml').toFile().text
+        assertThat(definitions, containsString('<bean id="exampleController" class="example.ExampleController"/>'))
+        assertThat(definitions, containsString('<bean id="service" class="example.ExampleService"/>'))
+        assertThat(definitions, containsString('default-autowire="constructor"'))
+        assertThat(Files.exists(classesDir.resolve('META-INF/build-agent-plugin-example.xml')), equalTo(false))
+    }
+
+    @Test
+    void 'generates agent bean definitions using binary name for nested classes'() {
+        source('example/ExampleAgent.java', '''
+            package example;
+            import com.github.rodm.teamcity.processor.AgentBean;
+            public class ExampleAgent {
+                @AgentBean
+                public static class Listener {}
+            }
+        ''')
+
+        assertThat(compile(), equalTo(true))
+
+        String definitions = classesDir.resolve('META-INF/build-agent-plugin-example.xml').toFile().text
+        assertThat(definitions, containsString('<bean id="listener" class="example.ExampleAgent$Listener"/>'))
+    }
+
+    @Test
+    void 'reports non-public bean class'() {
+        source('example/Example.java', '''
+            package example;
+            import com.github.rodm.teamcity.processor.ServerBean;
+            @ServerBean
+            class Example {}
+        ''')
+
+        assertThat(compile(), equalTo(false))
+        assertThat(errors, hasItem('@ServerBean class example.Example must be public'))
+    }
+
+    @Test
+    void 'reports abstract bean class'() {
+        source('example/Example.java', '''
+            package example;
+            import com.github.rodm.teamcity.processor.ServerBean;
+            @ServerBean
+            public abstract class Example {}
+        ''')
+
+        assertThat(compile(), equalTo(false))
+        assertThat(errors, hasItem('@ServerBean class example.Example must not be abstract'))
+    }
+
+    @Test
+    void 'reports inner bean class'() {
+        source('example/Example.java', '''
+            package example;
+            import com.github.rodm.teamcity.processor.AgentBean;
+            public class Example {
+                @AgentBean
+                public class Inner {}
+            }
+        ''')
+
+        assertThat(compile(), equalTo(false))
+        assertThat(errors, hasItem('@AgentBean class example.Example.Inner must be a top level or static nested class'))
+    }
+
+    @Test
+    void 'reports bean class without a public constructor'() {
+        source('example/Example.java', '''
+            package example;
+            import com.github.rodm.teamcity.processor.ServerBean;
+            @ServerBean
+            public class Example {
+                private Example() {}
+            }
+        ''')
+
+        assertThat(compile(), equalTo(false))
+        assertThat(errors, hasItem('@ServerBean class example.Example must have a public constructor'))
+    }
+
+    @Test
+    void 'reports annotation on an interface'() {
+        source('example/Example.java', '''
+            package example;
+            import com.github.rodm.teamcity.processor.ServerBean;
+            @ServerBean
+            public interface Example {}
+        ''')
+
+        assertThat(compile(), equalTo(false))
+        assertThat(errors, hasItem('@ServerBean can only be applied to a class'))
+    }
+
+    @Test
+    void 'reports duplicate bean ids'() {
+        source('example/First.java', '''
+            package example;
+            import com.github.rodm.teamcity.processor.ServerBean;
+            @ServerBean(id = "bean")
+            public class First {}
+        ''')
+        source('example/Second.java', '''
+            package example;
+            import com.github.rodm.teamcity.processor.ServerBean;
+            @ServerBean(id = "bean")
+            public class Second {}
+        ''')
+
+        assertThat(compile(), equalTo(false))
+        assertThat(errors, hasItem('Bean id \'bean\' is already used by example.First'))
+    }
+
+    @Test
+    void 'uses default name when plugin name option is not set'() {
+        source('example/Example.java', '''
+            package example;
+            import com.github.rodm.teamcity.processor.ServerBean;
+            @ServerBean
+            public class Example {}
+        ''')
+
+        assertThat(compile([]), equalTo(true))
+
+        assertThat(Files.exists(classesDir.resolve('META-INF/build-server-plugin-plugin.xml')), equalTo(true))
+    }
+
+    private void source(String path, String content) {
+        Path file = sourceDir.resolve(path)
+        Files.createDirectories(file.parent)
+        file.toFile().text = content.stripIndent()
+    }
+
+    private boolean compile(List<String> options = ['-Ateamcity.plugin.name=example']) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler()
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>()
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)
+        List<File> sources = []
+        sourceDir.toFile().eachFileRecurse { if (it.name.endsWith('.java')) sources << it }
+        def arguments = ['-d', classesDir.toString()] + options
+        def task = compiler.getTask(null, fileManager, diagnostics, arguments, null, fileManager.getJavaFileObjectsFromFiles(sources))
+        task.setProcessors([new BeanDefinitionProcessor()])
+        boolean result = task.call()
+        errors = diagnostics.diagnostics
+            .findAll { it.kind == Diagnostic.Kind.ERROR }
+            .collect { it.getMessage(Locale.ENGLISH) }
+        fileManager.close()
+        return result
+    }
+}
@@ -1,2 +1,4 @@
 
 rootProject.name = "gradle-teamcity-plugin"
+
+include ("processor")
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import org.gradle.testkit.runner.BuildResult
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+
+import static com.github.rodm.teamcity.TestSupport.SETTINGS_SCRIPT_DEFAULT
+import static org.gradle.testkit.runner.TaskOutcome.SUCCESS
+import static org.gradle.testkit.runner.TaskOutcome.UP_TO_DATE
+import static org.hamcrest.CoreMatchers.containsString
+import static org.hamcrest.CoreMatchers.hasItem
+import static org.hamcrest.CoreMatchers.is
+import static org.hamcrest.MatcherAssert.assertThat
+
+class ConfigurationCacheFunctionalTest extends FunctionalTestCase {
+
+    static final String CONFIGURATION_CACHE_STORED = 'Configuration cache entry stored.'
+    static final String CONFIGURATION_CACHE_REUSED = 'Reusing configuration cache.'
+
+    @BeforeEach
+    void setup() {
+        settingsFile << SETTINGS_SCRIPT_DEFAULT
+    }
+
+    @Test
+    void 'server plugin build is compatible with the configuration cache'() {
+        buildFile << """
+            plugins {
+                id 'java'
+                id 'com.github.rodm.teamcity-server'
+            }
+            teamcity {
+                version = '2020.1'
+                server {
+                    descriptor {
+                        name = 'test-plugin'
+                        displayName = 'Test plugin'
+                        version = '1.0'
+                        vendorName = 'vendor name'
+                    }
+                }
+            }
+        """
+
+        BuildResult result = executeBuild('--configuration-cache', 'build')
+
+        assertThat(result.output, containsString(CONFIGURATION_CACHE_STORED))
+        assertThat(result.task(':serverPlugin').getOutcome(), is(SUCCESS))
+
+        result = executeBuild('--configuration-cache', 'build')
+
+        assertThat(result.output, containsString(CONFIGURATION_CACHE_REUSED))
+        assertThat(result.task(':serverPlugin').getOutcome(), is(UP_TO_DATE))
+        List<String> entries = archiveEntries('build/distributions/test-plugin.zip')
+        assertThat(entries, hasItem('teamcity-plugin.xml'))
+    }
+
+    @Test
+    void 'agent plugin build is compatible with the configuration cache'() {
+        buildFile << """
+            plugins {
+                id 'java'
+                id 'com.github.rodm.teamcity-agent'
+            }
+            teamcity {
+                version = '2020.1'
+                agent {
+                    descriptor {
+                        pluginDeployment {
+                            useSeparateClassloader = true
+                        }
+                    }
+                }
+            }
+        """
+
+        BuildResult result = executeBuild('--configuration-cache', 'build')
+
+        assertThat(result.output, containsString(CONFIGURATION_CACHE_STORED))
+        assertThat(result.task(':agentPlugin').getOutcome(), is(SUCCESS))
+
+        result = executeBuild('--configuration-cache', 'build')
+
+        assertThat(result.output, containsString(CONFIGURATION_CACHE_REUSED))
+        assertThat(result.task(':agentPlugin').getOutcome(), is(UP_TO_DATE))
+        List<String> entries = archiveEntries('build/distributions/test-plugin.zip')
+        assertThat(entries, hasItem('teamcity-plugin.xml'))
+    }
+
+    @Test
+    void 'server plugin with sign and publish configuration is compatible with the configuration cache'() {
+        buildFile << """
+            plugins {
+                id 'java'
+                id 'com.github.rodm.teamcity-server'
+            }
+            teamcity {
+                version = '2020.1'
+                server {
+                    descriptor {
+                        name = 'test-plugin'
+                        displayName = 'Test plugin'
+                        version = '1.0'
+                        vendorName = 'vendor name'
+                    }
+                    sign {
+                        certificateChain = 'certificate-chain'
+                        privateKey = 'private-key'
+                    }
+                    publish {
+                        token = 'token'
+                    }
+                }
+            }
+        """
+
+        BuildResult result = executeBuild('--configuration-cache', '--dry-run', 'publishPlugin')
+
+        assertThat(result.output, containsString(CONFIGURATION_CACHE_STORED))
+        assertThat(result.output, containsString(':signPlugin SKIPPED'))
+        assertThat(result.output, containsString(':publishPlugin SKIPPED'))
+
+        result = executeBuild('--configuration-cache', '--dry-run', 'publishPlugin')
+
+        assertThat(result.output, containsString(CONFIGURATION_CACHE_REUSED))
+    }
+}
@@ -74,6 +74,52 @@ class EnvironmentsPluginFunctionalTest extends FunctionalTestCase {
         assertThat(result.output, not(containsString('server configuration is deprecated')))
     }
 
+    @Test
+    void 'deploy and start server tasks are compatible with the configuration cache'() {
+        File homeDir = createFakeTeamCityInstall('teamcity', '2020.1')
+        File javaHome = createDirectory('jdk')
+        File dataDir = testProjectDir.resolve('data').toFile()
+
+        buildFile << """
+            plugins {
+                id 'java'
+                id 'com.github.rodm.teamcity-server'
+                id 'com.github.rodm.teamcity-environments'
+            }
+            teamcity {
+                version = '2020.1'
+                server {
+                    descriptor {
+                        name = 'test-plugin'
+                        displayName = 'Test plugin'
+                        version = '1.0'
+                        vendorName = 'vendor name'
+                    }
+                }
+                environments {
+                    teamcity {
+                        version = '2020.1'
+                        homeDir = file('${homeDir.toURI()}')
+                        dataDir = file('${dataDir.toURI()}')
+                        javaHome = file('${javaHome.toURI()}')
+                    }
+                }
+            }
+        """
+
+        BuildResult result = executeBuild('--configuration-cache', 'startTeamcityServer')
+
+        assertThat(result.output, containsString('Configuration cache entry stored.'))
+        assertThat(result.task(":deployToTeamcity").getOutcome(), is(SUCCESS))
+        assertThat(result.task(":startTeamcityServer").getOutcome(), is(SUCCESS))
+        assertTrue(dataDir.exists(), 'Data directory was not created by startServer task')
+
+        result = executeBuild('--configuration-cache', 'startTeamcityServer')
+
+        assertThat(result.output, containsString('Reusing configuration cache.'))
+        assertThat(result.task(":startTeamcityServer").getOutcome(), is(SUCCESS))
+    }
+
     @Test
     void startServerAfterDeployingPlugin() {
         File homeDir = createFakeTeamCityInstall('teamcity', '9.1.6')
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Creates the projects and synthetic descriptor and bean definition files used by the benchmarks.
+ */
+final class BenchmarkSupport {
+
+    static Project createProject() {
+        try {
+            File projectDir = Files.createTempDirectory("benchmark").toFile();
+            projectDir.deleteOnExit();
+            return ProjectBuilder.builder()
+                .withProjectDir(projectDir)
+                .withName("benchmark-plugin")
+                .build();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static ServerPluginDescriptor createServerDescriptor(Project project, int size) {
+        ServerPluginDescriptor descriptor = project.getExtensions().create("descriptor", ServerPluginDescriptor.class);
+        descriptor.init();
+        descriptor.setName("benchmark-plugin");
+        descriptor.setDisplayName("Benchmark plugin");
+        descriptor.setVersion("1.0");
+        descriptor.setDescription("Plugin descriptor with " + size + " parameters and dependencies");
+        descriptor.setVendorName("vendor name");
+        descriptor.setVendorUrl("https://example.com");
+        descriptor.setUseSeparateClassloader(true);
+        descriptor.setAllowRuntimeReload(true);
+        for (int i = 0; i < size; i++) {
+            descriptor.getParameters().parameter("name" + i, "value" + i);
+            descriptor.getDependencies().plugin("plugin" + i);
+            descriptor.getDependencies().tool("tool" + i);
+        }
+        return descriptor;
+    }
+
+    static String serverDescriptor(int size) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        builder.append("<teamcity-plugin xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+        builder.append(" xsi:noNamespaceSchemaLocation=\"urn:schemas-jetbrains-com:teamcity-plugin-v1-xml\">\n");
+        builder.append("  <info>\n");
+        builder.append("    <name>benchmark-plugin</name>\n");
+        builder.append("    <display-name>Benchmark plugin</display-name>\n");
+        builder.append("    <version>1.0</version>\n");
+        builder.append("    <vendor>\n");
+        builder.append("      <name>vendor name</name>\n");
+        builder.append("    </vendor>\n");
+        builder.append("  </info>\n");
+        builder.append("  <deployment use-separate-classloader=\"true\"/>\n");
+        builder.append("  <parameters>\n");
+        for (int i = 0; i < size; i++) {
+            builder.append("    <parameter name=\"name").append(i).append("\">value").append(i).append("</parameter>\n");
+        }
+        builder.append("  </parameters>\n");
+        builder.append("  <dependencies>\n");
+        for (int i = 0; i < size; i++) {
+            builder.append("    <plugin name=\"plugin").append(i).append("\"/>\n");
+        }
+        builder.append("  </dependencies>\n");
+        builder.append("</teamcity-plugin>\n");
+        return builder.toString();
+    }
+
+    static String agentDescriptor(int size) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        builder.append("<teamcity-agent-plugin xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+        builder.append(" xsi:noNamespaceSchemaLocation=\"urn:schemas-jetbrains-com:teamcity-agent-plugin-v1-xml\">\n");
+        builder.append("  <tool-deployment>\n");
+        builder.append("    <layout>\n");
+        builder.append("      <executable-files>\n");
+        for (int i = 0; i < size; i++) {
+            builder.append("        <include name=\"").append(executableFile(i)).append("\"/>\n");
+        }
+        builder.append("      </executable-files>\n");
+        builder.append("    </layout>\n");
+        builder.append("  </tool-deployment>\n");
+        builder.append("</teamcity-agent-plugin>\n");
+        return builder.toString();
+    }
+
+    static String executableFile(int index) {
+        return "bin/tool" + index + ".sh";
+    }
+
+    static String beanDefinition(int size) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        builder.append("<!DOCTYPE beans PUBLIC \"-//SPRING//DTD BEAN//EN\" \"http://www.springframework.org/dtd/spring-beans.dtd\">\n");
+        builder.append("<beans default-autowire=\"constructor\">\n");
+        for (int i = 0; i < size; i++) {
+            builder.append("  <bean id=\"bean").append(i).append("\" class=\"example.Bean").append(i).append("\"/>\n");
+        }
+        builder.append("</beans>\n");
+        return builder.toString();
+    }
+
+    static File write(Project project, String path, String contents) {
+        File file = project.file(path);
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return file;
+    }
+
+    private BenchmarkSupport() {
+        throw new IllegalStateException("Utility class");
+    }
+}
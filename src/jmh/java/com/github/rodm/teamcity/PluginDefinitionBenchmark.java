@@ -0,0 +1,68 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import com.github.rodm.teamcity.internal.PluginBean;
+import com.github.rodm.teamcity.internal.PluginDefinition;
+import org.gradle.api.Project;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PluginDefinitionBenchmark {
+
+    /**
+     * The number of beans in the bean definition file.
+     */
+    @Param({"1", "100", "1000", "10000"})
+    public int size;
+
+    private PluginDefinition definition;
+
+    @Setup
+    public void setup() {
+        Project project = BenchmarkSupport.createProject();
+        File file = BenchmarkSupport.write(project, "META-INF/build-server-plugin-benchmark.xml", BenchmarkSupport.beanDefinition(size));
+        definition = new PluginDefinition(file);
+    }
+
+    /**
+     * Parses the definition file offline, the Spring DTD is not loaded so the network is not measured.
+     */
+    @Benchmark
+    public List<PluginBean> getBeans() throws IOException {
+        return definition.getBeans(true);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import com.github.rodm.teamcity.internal.PluginExecutableFilesValidationAction;
+import com.github.rodm.teamcity.tasks.AgentPlugin;
+import org.gradle.api.Project;
+import org.gradle.api.file.FileCopyDetails;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PluginExecutableFilesValidationBenchmark {
+
+    /**
+     * The number of executable files in the descriptor and in the plugin archive.
+     */
+    @Param({"1", "100", "1000", "10000"})
+    public int size;
+
+    private AgentPlugin task;
+    private File descriptor;
+    private List<FileCopyDetails> archiveFiles;
+    private Set<FileCopyDetails> files;
+    private PluginExecutableFilesValidationAction action;
+
+    @Setup
+    public void setup() {
+        Project project = BenchmarkSupport.createProject();
+        descriptor = BenchmarkSupport.write(project, "teamcity-plugin.xml", BenchmarkSupport.agentDescriptor(size));
+        task = project.getTasks().create("agentPlugin", AgentPlugin.class);
+        task.getDescriptor().set(descriptor);
+        archiveFiles = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            archiveFiles.add(fileCopyDetails(BenchmarkSupport.executableFile(i)));
+        }
+        files = new HashSet<>();
+        action = new PluginExecutableFilesValidationAction(files);
+    }
+
+    /**
+     * The action clears the collected files when it runs, collect them again as the copy would.
+     */
+    @Setup(Level.Invocation)
+    public void collectFiles() {
+        files.addAll(archiveFiles);
+    }
+
+    @Benchmark
+    public void validate() {
+        action.execute(task);
+    }
+
+    @Benchmark
+    public List<String> getExecutableFiles() {
+        return PluginExecutableFilesValidationAction.getExecutableFiles(descriptor);
+    }
+
+    private static FileCopyDetails fileCopyDetails(String path) {
+        return (FileCopyDetails) Proxy.newProxyInstance(FileCopyDetails.class.getClassLoader(),
+            new Class<?>[] {FileCopyDetails.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getPath":
+                    case "toString":
+                        return path;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+}
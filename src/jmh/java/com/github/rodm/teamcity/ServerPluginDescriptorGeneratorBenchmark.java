@@ -0,0 +1,63 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import org.gradle.api.Project;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ServerPluginDescriptorGeneratorBenchmark {
+
+    /**
+     * The number of parameters, plugin dependencies and tool dependencies in the descriptor.
+     */
+    @Param({"1", "100", "1000", "10000"})
+    public int size;
+
+    private ServerPluginDescriptorGenerator generator;
+
+    @Setup
+    public void setup() {
+        Project project = BenchmarkSupport.createProject();
+        ServerPluginDescriptor descriptor = BenchmarkSupport.createServerDescriptor(project, size);
+        generator = new ServerPluginDescriptorGenerator(descriptor, TeamCityVersion.VERSION_2020_1);
+    }
+
+    @Benchmark
+    public String writeTo() {
+        StringWriter writer = new StringWriter();
+        generator.writeTo(writer);
+        return writer.toString();
+    }
+}
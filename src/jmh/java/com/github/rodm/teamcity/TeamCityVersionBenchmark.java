@@ -0,0 +1,94 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TeamCityVersionBenchmark {
+
+    /**
+     * The number of versions compared.
+     */
+    @Param({"1", "100", "1000", "10000"})
+    public int size;
+
+    private List<TeamCityVersion> versions;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        versions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String version = (2017 + random.nextInt(6)) + "." + (1 + random.nextInt(3));
+            switch (random.nextInt(3)) {
+                case 0:
+                    versions.add(TeamCityVersion.version(version));
+                    break;
+                case 1:
+                    versions.add(TeamCityVersion.version(version + "." + random.nextInt(5)));
+                    break;
+                default:
+                    versions.add(TeamCityVersion.version(version + "-SNAPSHOT", true));
+            }
+        }
+    }
+
+    /**
+     * Compares each version with the minimum versions checked when configuring the plugin tasks.
+     */
+    @Benchmark
+    public int compareTo() {
+        int result = 0;
+        for (TeamCityVersion version : versions) {
+            result += version.compareTo(TeamCityVersion.VERSION_2018_2);
+            result += version.compareTo(TeamCityVersion.VERSION_2020_1);
+        }
+        return result;
+    }
+
+    /**
+     * Compares adjacent versions, a mix of release and snapshot versions of differing lengths.
+     */
+    @Benchmark
+    public int compareAdjacent() {
+        int result = 0;
+        for (int i = 1; i < versions.size(); i++) {
+            result += versions.get(i - 1).compareTo(versions.get(i));
+        }
+        return result;
+    }
+}
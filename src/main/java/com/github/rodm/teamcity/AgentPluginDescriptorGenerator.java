@@ -15,8 +15,7 @@
  */
 package com.github.rodm.teamcity;
 
-import groovy.util.Node;
-import groovy.xml.XmlUtil;
+import com.github.rodm.teamcity.internal.XmlDescriptorWriter;
 
 import java.io.Writer;
 import java.util.Collections;
@@ -35,52 +34,58 @@ public class AgentPluginDescriptorGenerator {
         Map<String, String> attributes = new LinkedHashMap<>(2);
         attributes.put("xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
         attributes.put("xsi:noNamespaceSchemaLocation", "urn:schemas-jetbrains-com:teamcity-agent-plugin-v1-xml");
-        Node root = new Node(null, "teamcity-agent-plugin", attributes);
-        buildDeploymentNode(root, descriptor.getDeployment());
-        buildDependenciesNode(root, descriptor.getDependencies());
-        XmlUtil.serialize(root, writer);
+        XmlDescriptorWriter xml = new XmlDescriptorWriter(writer);
+        xml.startDocument("teamcity-agent-plugin", attributes);
+        writeDeployment(xml, descriptor.getDeployment());
+        writeDependencies(xml, descriptor.getDependencies());
+        xml.endDocument();
     }
 
-    private void buildDeploymentNode(Node root, Deployment deployment) {
+    private void writeDeployment(XmlDescriptorWriter xml, Deployment deployment) {
         if (deployment != null) {
             if (deployment instanceof PluginDeployment) {
-                buildPluginDeploymentNode(root, (PluginDeployment) deployment);
+                writePluginDeployment(xml, (PluginDeployment) deployment);
             } else {
-                buildToolDeploymentNode(root, deployment);
+                writeToolDeployment(xml, deployment);
             }
         }
     }
 
-    private void buildPluginDeploymentNode(Node root, PluginDeployment deployment) {
+    private void writePluginDeployment(XmlDescriptorWriter xml, PluginDeployment deployment) {
         Map<String, Object> attributes = new LinkedHashMap<>();
         if (deployment.getUseSeparateClassloader() != null) {
             attributes.put("use-separate-classloader", deployment.getUseSeparateClassloader());
         }
-        Node deploymentNode = root.appendNode("plugin-deployment", attributes);
-        buildLayoutNode(deploymentNode, deployment.getExecutableFiles());
+        xml.startElement("plugin-deployment", attributes);
+        writeLayout(xml, deployment.getExecutableFiles());
+        xml.endElement();
     }
 
-    private void buildToolDeploymentNode(Node root, Deployment deployment) {
-        Node toolNode = root.appendNode("tool-deployment");
-        buildLayoutNode(toolNode, deployment.getExecutableFiles());
+    private void writeToolDeployment(XmlDescriptorWriter xml, Deployment deployment) {
+        xml.startElement("tool-deployment");
+        writeLayout(xml, deployment.getExecutableFiles());
+        xml.endElement();
     }
 
-    private void buildLayoutNode(Node deploymentNode, ExecutableFiles executableFiles) {
+    private void writeLayout(XmlDescriptorWriter xml, ExecutableFiles executableFiles) {
         if (executableFiles.hasFiles()) {
-            Node layoutNode = deploymentNode.appendNode("layout");
-            final Node executableFilesNode = layoutNode.appendNode("executable-files");
+            xml.startElement("layout");
+            xml.startElement("executable-files");
             executableFiles.getIncludes().forEach(name ->
-                executableFilesNode.appendNode("include", Collections.singletonMap("name", name)));
+                xml.element("include", Collections.singletonMap("name", name)));
+            xml.endElement();
+            xml.endElement();
         }
     }
 
-    private void buildDependenciesNode(Node root, Dependencies dependencies) {
+    private void writeDependencies(XmlDescriptorWriter xml, Dependencies dependencies) {
         if (dependencies.hasDependencies()) {
-            Node dependenciesNode = root.appendNode("dependencies");
+            xml.startElement("dependencies");
             dependencies.getPlugins().forEach(name ->
-                dependenciesNode.appendNode("plugin", Collections.singletonMap("name", name)));
+                xml.element("plugin", Collections.singletonMap("name", name)));
             dependencies.getTools().forEach(name ->
-                dependenciesNode.appendNode("tool", Collections.singletonMap("name", name)));
+                xml.element("tool", Collections.singletonMap("name", name)));
+            xml.endElement();
         }
     }
 }
@@ -23,7 +23,10 @@ import org.gradle.api.file.ProjectLayout;
 import org.gradle.api.file.RegularFileProperty;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -39,8 +42,38 @@ public abstract class PluginConfiguration {
 
     private Map<String, Object> tokens = new LinkedHashMap<>();
 
+    private String beginToken = "@";
+
+    private String endToken = "@";
+
+    private ValidationMode unresolvedTokens = ValidationMode.WARN;
+
     private String archiveName;
 
+    private List<String> compatibleVersions = new ArrayList<>();
+
+    private ValidationMode apiCompatibility = ValidationMode.WARN;
+
+    private String excludeInstalledLibraries;
+
+    private String maxArchiveSize;
+
+    private String maxUncompressedSize;
+
+    private String maxLibrarySize;
+
+    private boolean incrementalArchive = false;
+
+    private boolean storeNestedArchives = false;
+
+    private boolean mergeLibraries = false;
+
+    private boolean packageIndex = false;
+
+    private boolean shrinkLibraries = false;
+
+    private List<String> keepClasses = new ArrayList<>();
+
     private final ProjectLayout layout;
 
     protected PluginConfiguration(Project project) {
@@ -109,6 +142,233 @@ public abstract class PluginConfiguration {
         this.tokens.putAll(tokens);
     }
 
+    public String getBeginToken() {
+        return beginToken;
+    }
+
+    /**
+     * Sets the delimiter that marks the start of a token in an external descriptor file. Defaults to '@'.
+     *
+     * @param beginToken The begin delimiter.
+     */
+    public void setBeginToken(String beginToken) {
+        this.beginToken = beginToken;
+    }
+
+    public String getEndToken() {
+        return endToken;
+    }
+
+    /**
+     * Sets the delimiter that marks the end of a token in an external descriptor file. Defaults to '@'.
+     *
+     * @param endToken The end delimiter.
+     */
+    public void setEndToken(String endToken) {
+        this.endToken = endToken;
+    }
+
+    public ValidationMode getUnresolvedTokens() {
+        return unresolvedTokens;
+    }
+
+    /**
+     * Sets how tokens in an external descriptor file without a value are reported. Defaults to WARN.
+     *
+     * @param mode The validation mode.
+     */
+    public void setUnresolvedTokens(ValidationMode mode) {
+        this.unresolvedTokens = mode;
+    }
+
+    public void setUnresolvedTokens(String mode) {
+        this.unresolvedTokens = ValidationMode.valueOf(mode.toUpperCase());
+    }
+
+    public List<String> getCompatibleVersions() {
+        return compatibleVersions;
+    }
+
+    /**
+     * Sets the TeamCity versions the plugin is checked against by the checkApiCompatibility task.
+     *
+     * @param versions The TeamCity versions.
+     */
+    public void setCompatibleVersions(List<String> versions) {
+        this.compatibleVersions = new ArrayList<>(versions);
+    }
+
+    /**
+     * Adds TeamCity versions the plugin is checked against by the checkApiCompatibility task.
+     *
+     * @param versions The TeamCity versions.
+     */
+    public void compatibleVersions(String... versions) {
+        this.compatibleVersions.addAll(Arrays.asList(versions));
+    }
+
+    public ValidationMode getApiCompatibility() {
+        return apiCompatibility;
+    }
+
+    /**
+     * Sets how classes, methods and fields missing from the API of a compatible version are reported.
+     * Defaults to WARN.
+     *
+     * @param mode The validation mode.
+     */
+    public void setApiCompatibility(ValidationMode mode) {
+        this.apiCompatibility = mode;
+    }
+
+    public void setApiCompatibility(String mode) {
+        this.apiCompatibility = ValidationMode.valueOf(mode.toUpperCase());
+    }
+
+    public String getExcludeInstalledLibraries() {
+        return excludeInstalledLibraries;
+    }
+
+    /**
+     * Sets the name of an environment, jars identical to jars provided by the environment's TeamCity installation
+     * are excluded from the plugin archive.
+     *
+     * @param environment The environment name.
+     */
+    public void setExcludeInstalledLibraries(String environment) {
+        this.excludeInstalledLibraries = environment;
+    }
+
+    public String getMaxArchiveSize() {
+        return maxArchiveSize;
+    }
+
+    /**
+     * Sets the maximum size of the plugin archive, for example '10MB'. The plugin size report task fails
+     * the build if the archive is larger.
+     *
+     * @param size The maximum size.
+     */
+    public void setMaxArchiveSize(String size) {
+        this.maxArchiveSize = size;
+    }
+
+    public String getMaxUncompressedSize() {
+        return maxUncompressedSize;
+    }
+
+    /**
+     * Sets the maximum total uncompressed size of the entries of the plugin archive.
+     *
+     * @param size The maximum size.
+     */
+    public void setMaxUncompressedSize(String size) {
+        this.maxUncompressedSize = size;
+    }
+
+    public String getMaxLibrarySize() {
+        return maxLibrarySize;
+    }
+
+    /**
+     * Sets the maximum size of any library packaged in the plugin archive.
+     *
+     * @param size The maximum size.
+     */
+    public void setMaxLibrarySize(String size) {
+        this.maxLibrarySize = size;
+    }
+
+    public boolean getIncrementalArchive() {
+        return incrementalArchive;
+    }
+
+    /**
+     * Sets whether the plugin archive is updated by copying the unchanged entries of the previous archive without
+     * compressing them again, only new and changed entries are compressed. Intended for local builds.
+     * Defaults to false.
+     *
+     * @param incrementalArchive Update the plugin archive incrementally.
+     */
+    public void setIncrementalArchive(boolean incrementalArchive) {
+        this.incrementalArchive = incrementalArchive;
+    }
+
+    public boolean getStoreNestedArchives() {
+        return storeNestedArchives;
+    }
+
+    /**
+     * Sets whether nested zip archives, such as the agent plugin archive in a server plugin archive, are stored
+     * in the plugin archive as is instead of being compressed again. Defaults to false.
+     *
+     * @param storeNestedArchives Store nested archives without compression.
+     */
+    public void setStoreNestedArchives(boolean storeNestedArchives) {
+        this.storeNestedArchives = storeNestedArchives;
+    }
+
+    public boolean getMergeLibraries() {
+        return mergeLibraries;
+    }
+
+    /**
+     * Sets whether the plugin jar and its runtime libraries are merged into a single jar in the plugin archive.
+     * Defaults to false.
+     *
+     * @param mergeLibraries Merge the plugin libraries.
+     */
+    public void setMergeLibraries(boolean mergeLibraries) {
+        this.mergeLibraries = mergeLibraries;
+    }
+
+    public boolean getPackageIndex() {
+        return packageIndex;
+    }
+
+    /**
+     * Sets whether a package index is added to the merged or shrunk plugin jar. Defaults to false.
+     *
+     * @param packageIndex Add a package index.
+     */
+    public void setPackageIndex(boolean packageIndex) {
+        this.packageIndex = packageIndex;
+    }
+
+    public boolean getShrinkLibraries() {
+        return shrinkLibraries;
+    }
+
+    /**
+     * Sets whether the plugin jar and its runtime libraries are replaced by a single jar containing only
+     * the classes reachable from the plugin's Spring bean definitions, service files and kept classes.
+     * Defaults to false.
+     *
+     * @param shrinkLibraries Shrink the plugin libraries.
+     */
+    public void setShrinkLibraries(boolean shrinkLibraries) {
+        this.shrinkLibraries = shrinkLibraries;
+    }
+
+    public List<String> getKeepClasses() {
+        return keepClasses;
+    }
+
+    public void setKeepClasses(List<String> keepClasses) {
+        this.keepClasses = keepClasses;
+    }
+
+    /**
+     * Adds classes that are always kept when the plugin libraries are shrunk. A pattern is a class name,
+     * a package name followed by '.*' for the classes of the package, or followed by '.**' to include
+     * the classes of sub-packages.
+     *
+     * @param patterns The class name patterns.
+     */
+    public void keepClasses(String... patterns) {
+        this.keepClasses.addAll(Arrays.asList(patterns));
+    }
+
     private void setDescriptorFile(File file) {
         if (this.descriptor != null) {
             throw new InvalidUserDataException("An inline descriptor is already defined");
@@ -37,6 +37,7 @@ public class ServerPluginConfiguration extends PluginConfiguration implements Te
     private final ConfigurableFileCollection web;
     private PublishConfiguration publish;
     private SignConfiguration sign;
+    private ValidationMode sharedLibraries = ValidationMode.WARN;
 
     private final TeamCityEnvironments environments;
 
@@ -103,6 +104,23 @@ public class ServerPluginConfiguration extends PluginConfiguration implements Te
         return sign;
     }
 
+    public ValidationMode getSharedLibraries() {
+        return sharedLibraries;
+    }
+
+    /**
+     * Sets how libraries packaged in both the server and agent parts of the plugin are reported. Defaults to WARN.
+     *
+     * @param mode The validation mode.
+     */
+    public void setSharedLibraries(ValidationMode mode) {
+        this.sharedLibraries = mode;
+    }
+
+    public void setSharedLibraries(String mode) {
+        this.sharedLibraries = ValidationMode.valueOf(mode.toUpperCase());
+    }
+
     public void setDownloadsDir(String downloadsDir) {
         LOGGER.warn("downloadsDir property in server configuration is deprecated");
         environments.setDownloadsDir(downloadsDir);
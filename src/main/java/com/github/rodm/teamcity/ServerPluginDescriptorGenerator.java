@@ -15,17 +15,16 @@
  */
 package com.github.rodm.teamcity;
 
-import groovy.util.Node;
-import groovy.xml.XmlUtil;
+import com.github.rodm.teamcity.internal.XmlDescriptorWriter;
 
 import java.io.Writer;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
-import static com.github.rodm.teamcity.TeamCityVersion.VERSION_2018_2;
-import static com.github.rodm.teamcity.TeamCityVersion.VERSION_2020_1;
-import static com.github.rodm.teamcity.TeamCityVersion.VERSION_9_0;
+import static com.github.rodm.teamcity.TeamCityFeature.NODE_RESPONSIBILITIES_AWARE;
+import static com.github.rodm.teamcity.TeamCityFeature.PLUGIN_DEPENDENCIES;
+import static com.github.rodm.teamcity.TeamCityFeature.RUNTIME_RELOAD;
 
 public class ServerPluginDescriptorGenerator {
 
@@ -41,44 +40,47 @@ public class ServerPluginDescriptorGenerator {
         LinkedHashMap<String, String> attributes = new LinkedHashMap<>(2);
         attributes.put("xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
         attributes.put("xsi:noNamespaceSchemaLocation", "urn:schemas-jetbrains-com:teamcity-plugin-v1-xml");
-        Node root = new Node(null, "teamcity-plugin", attributes);
-        buildInfoNode(root);
-        buildRequirementsNode(root);
-        buildDeploymentNode(root);
-        buildParametersNode(root, descriptor.getParameters());
-        buildDependenciesNode(root, descriptor.getDependencies());
-        XmlUtil.serialize(root, writer);
+        XmlDescriptorWriter xml = new XmlDescriptorWriter(writer);
+        xml.startDocument("teamcity-plugin", attributes);
+        writeInfo(xml);
+        writeRequirements(xml);
+        writeDeployment(xml);
+        writeParameters(xml, descriptor.getParameters());
+        writeDependencies(xml, descriptor.getDependencies());
+        xml.endDocument();
     }
 
-    private void buildInfoNode(Node root) {
-        Node infoNode = root.appendNode("info");
-        infoNode.appendNode("name", descriptor.getName());
-        infoNode.appendNode("display-name", descriptor.getDisplayName());
-        infoNode.appendNode("version", descriptor.getVersion());
+    private void writeInfo(XmlDescriptorWriter xml) {
+        xml.startElement("info");
+        xml.element("name", descriptor.getName());
+        xml.element("display-name", descriptor.getDisplayName());
+        xml.element("version", descriptor.getVersion());
         if (descriptor.getDescription() != null) {
-            infoNode.appendNode("description", descriptor.getDescription());
+            xml.element("description", descriptor.getDescription());
         }
         if (descriptor.getDownloadUrl() != null) {
-            infoNode.appendNode("download-url", descriptor.getDownloadUrl());
+            xml.element("download-url", descriptor.getDownloadUrl());
         }
         if (descriptor.getEmail() != null) {
-            infoNode.appendNode("email", descriptor.getEmail());
+            xml.element("email", descriptor.getEmail());
         }
-        buildVendorNode(infoNode);
+        writeVendor(xml);
+        xml.endElement();
     }
 
-    private void buildVendorNode(Node info) {
-        Node vendorNode = info.appendNode("vendor");
-        vendorNode.appendNode("name", descriptor.getVendorName());
+    private void writeVendor(XmlDescriptorWriter xml) {
+        xml.startElement("vendor");
+        xml.element("name", descriptor.getVendorName());
         if (descriptor.getVendorUrl() != null) {
-            vendorNode.appendNode("url", descriptor.getVendorUrl());
+            xml.element("url", descriptor.getVendorUrl());
         }
         if (descriptor.getVendorLogo() != null) {
-            vendorNode.appendNode("logo", descriptor.getVendorLogo());
+            xml.element("logo", descriptor.getVendorLogo());
         }
+        xml.endElement();
     }
 
-    private void buildRequirementsNode(Node root) {
+    private void writeRequirements(XmlDescriptorWriter xml) {
         Map<String, String> attributes = new LinkedHashMap<>();
         if (descriptor.getMinimumBuild() != null) {
             attributes.put("min-build", descriptor.getMinimumBuild());
@@ -87,41 +89,43 @@ public class ServerPluginDescriptorGenerator {
             attributes.put("max-build", descriptor.getMaximumBuild());
         }
         if (attributes.size() > 0) {
-            root.appendNode("requirements", attributes);
+            xml.element("requirements", attributes);
         }
     }
 
-    private void buildDeploymentNode(Node root) {
+    private void writeDeployment(XmlDescriptorWriter xml) {
         Map<String, Boolean> attributes = new LinkedHashMap<>();
         if (descriptor.getUseSeparateClassloader() != null) {
             attributes.put("use-separate-classloader", descriptor.getUseSeparateClassloader());
         }
-        if (version.equalOrGreaterThan(VERSION_2018_2) && descriptor.getAllowRuntimeReload() != null) {
+        if (version.supports(RUNTIME_RELOAD) && descriptor.getAllowRuntimeReload() != null) {
             attributes.put("allow-runtime-reload", descriptor.getAllowRuntimeReload());
         }
-        if (version.equalOrGreaterThan(VERSION_2020_1) && descriptor.getNodeResponsibilitiesAware() != null) {
+        if (version.supports(NODE_RESPONSIBILITIES_AWARE) && descriptor.getNodeResponsibilitiesAware() != null) {
             attributes.put("node-responsibilities-aware", descriptor.getNodeResponsibilitiesAware());
         }
         if (attributes.size() > 0) {
-            root.appendNode("deployment", attributes);
+            xml.element("deployment", attributes);
         }
     }
 
-    private void buildParametersNode(Node root, Parameters parameters) {
+    private void writeParameters(XmlDescriptorWriter xml, Parameters parameters) {
         if (parameters.hasParameters()) {
-            final Node parametersNode = root.appendNode("parameters");
+            xml.startElement("parameters");
             parameters.getParameters().forEach((name, value) ->
-                parametersNode.appendNode("parameter", Collections.singletonMap("name", name),value));
+                xml.element("parameter", Collections.singletonMap("name", name), value));
+            xml.endElement();
         }
     }
 
-    private void buildDependenciesNode(Node root, Dependencies dependencies) {
-        if (version.equalOrGreaterThan(VERSION_9_0) && dependencies.hasDependencies()) {
-            final Node dependenciesNode = root.appendNode("dependencies");
+    private void writeDependencies(XmlDescriptorWriter xml, Dependencies dependencies) {
+        if (version.supports(PLUGIN_DEPENDENCIES) && dependencies.hasDependencies()) {
+            xml.startElement("dependencies");
             dependencies.getPlugins().forEach(name ->
-                dependenciesNode.appendNode("plugin", Collections.singletonMap("name", name)));
+                xml.element("plugin", Collections.singletonMap("name", name)));
             descriptor.getDependencies().getTools().forEach(name ->
-                dependenciesNode.appendNode("tool", Collections.singletonMap("name", name)));
+                xml.element("tool", Collections.singletonMap("name", name)));
+            xml.endElement();
         }
     }
 }
@@ -25,4 +25,11 @@ public interface SignConfiguration {
 
     String getPassword();
     void setPassword(String password);
+
+    /**
+     * Signs the plugin archive reading it once, the entries are copied to the signed archive as the digest is
+     * calculated. The signed archive is the same as one signed in the default mode.
+     */
+    boolean getStreaming();
+    void setStreaming(boolean streaming);
 }
@@ -33,15 +33,22 @@ import org.gradle.api.tasks.TaskContainer;
 import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.bundling.Zip;
 
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
 import static com.github.rodm.teamcity.TeamCityPlugin.PLUGIN_DESCRIPTOR_DIR;
 import static com.github.rodm.teamcity.TeamCityPlugin.PLUGIN_DESCRIPTOR_FILENAME;
 import static com.github.rodm.teamcity.TeamCityPlugin.TEAMCITY_GROUP;
+import static com.github.rodm.teamcity.TeamCityPlugin.configureApiCompatibilityTask;
+import static com.github.rodm.teamcity.TeamCityPlugin.configureBeanDefinitionProcessor;
+import static com.github.rodm.teamcity.TeamCityPlugin.configureInstalledLibraries;
 import static com.github.rodm.teamcity.TeamCityPlugin.configureJarTask;
 import static com.github.rodm.teamcity.TeamCityPlugin.configurePluginArchiveTask;
-import static org.gradle.api.plugins.JavaPlugin.JAR_TASK_NAME;
+import static com.github.rodm.teamcity.TeamCityPlugin.configurePluginJarTask;
+import static com.github.rodm.teamcity.TeamCityPlugin.configurePluginSizeReportTask;
+import static com.github.rodm.teamcity.TeamCityPlugin.pluginLibraries;
+import static com.github.rodm.teamcity.internal.TeamCityLibraries.AGENT_LIB_DIR;
 import static org.gradle.language.base.plugins.LifecycleBasePlugin.ASSEMBLE_TASK_NAME;
 
 public class TeamCityAgentPlugin implements Plugin<Project> {
@@ -53,6 +60,8 @@ public class TeamCityAgentPlugin implements Plugin<Project> {
     public static final String PROCESS_AGENT_DESCRIPTOR_TASK_NAME = "processAgentDescriptor";
     public static final String GENERATE_AGENT_DESCRIPTOR_TASK_NAME = "generateAgentDescriptor";
     public static final String AGENT_PLUGIN_TASK_NAME = "agentPlugin";
+    public static final String AGENT_PLUGIN_SIZE_REPORT_TASK_NAME = "agentPluginSizeReport";
+    public static final String AGENT_PLUGIN_JAR_TASK_NAME = "agentPluginJar";
 
     public void apply(final Project project) {
         project.getPlugins().apply(TeamCityPlugin.class);
@@ -66,6 +75,9 @@ public class TeamCityAgentPlugin implements Plugin<Project> {
         TeamCityPluginExtension extension = project.getExtensions().getByType(TeamCityPluginExtension.class);
         configureDependencies(project, (DefaultTeamCityPluginExtension) extension);
         configureJarTask(project, extension, PLUGIN_DEFINITION_PATTERN);
+        configureBeanDefinitionProcessor(project, (DefaultTeamCityPluginExtension) extension);
+        configureApiCompatibilityTask(project, extension.getAgent(), version ->
+            Collections.singletonList("org.jetbrains.teamcity:agent-api:" + version));
         configureTasks(project, extension);
     }
 
@@ -86,6 +98,9 @@ public class TeamCityAgentPlugin implements Plugin<Project> {
             tasks.register(PROCESS_AGENT_DESCRIPTOR_TASK_NAME, ProcessDescriptor.class, task -> {
                 task.getDescriptor().set(agent.getDescriptorFile());
                 task.getTokens().set(agent.getTokens());
+                task.getBeginToken().set(project.getProviders().provider(agent::getBeginToken));
+                task.getEndToken().set(project.getProviders().provider(agent::getEndToken));
+                task.getUnresolvedTokens().set(project.getProviders().provider(agent::getUnresolvedTokens));
                 task.getDestination().set(descriptorFile);
             });
 
@@ -96,16 +111,19 @@ public class TeamCityAgentPlugin implements Plugin<Project> {
                 task.getDestination().set(descriptorFile);
             });
 
+        configurePluginJarTask(project, agent, AGENT_PLUGIN_JAR_TASK_NAME);
+
         final TaskProvider<AgentPlugin> packagePlugin =
             project.getTasks().register(AGENT_PLUGIN_TASK_NAME, AgentPlugin.class, task -> {
             task.setDescription(TEAMCITY_GROUP);
             task.getDescriptor().set(descriptorFile);
             task.getLib().from(project.getConfigurations().getByName("agent"));
-            project.getPlugins().withType(JavaPlugin.class, plugin -> {
-                task.getLib().from(project.getTasks().named(JAR_TASK_NAME));
-                task.getLib().from(project.getConfigurations().getByName("runtimeClasspath"));
-            });
+            project.getPlugins().withType(JavaPlugin.class, plugin ->
+                task.getLib().from(pluginLibraries(project, agent, AGENT_PLUGIN_JAR_TASK_NAME)));
             task.with(agent.getFiles());
+            task.getIncremental().set(project.getProviders().provider(agent::getIncrementalArchive));
+            task.getStoreNestedArchives().set(project.getProviders().provider(agent::getStoreNestedArchives));
+            configureInstalledLibraries(project, extension, agent, task, AGENT_LIB_DIR);
             task.dependsOn(processDescriptor, generateDescriptor);
         });
 
@@ -122,6 +140,9 @@ public class TeamCityAgentPlugin implements Plugin<Project> {
 
         tasks.named(ASSEMBLE_TASK_NAME, task -> task.dependsOn(packagePlugin));
 
+        configurePluginSizeReportTask(project, agent, AGENT_PLUGIN_SIZE_REPORT_TASK_NAME, packagePlugin,
+            "agent", JavaPlugin.RUNTIME_CLASSPATH_CONFIGURATION_NAME);
+
         project.getArtifacts().add("plugin", packagePlugin);
 
         tasks.named(AGENT_PLUGIN_TASK_NAME, Zip.class, task ->
@@ -16,20 +16,36 @@
 package com.github.rodm.teamcity;
 
 import com.github.rodm.teamcity.internal.DefaultTeamCityPluginExtension;
+import com.github.rodm.teamcity.tasks.PluginsReport;
 import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ConfigurationContainer;
+import org.gradle.api.attributes.Category;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.plugins.BasePlugin;
 import org.gradle.api.plugins.PluginContainer;
 import org.gradle.api.provider.Property;
 import org.gradle.util.GradleVersion;
 
+import java.util.Collections;
+import java.util.concurrent.Callable;
+
 public class TeamCityBasePlugin implements Plugin<Project> {
 
     private static final String TEAMCITY_EXTENSION_NAME = "teamcity";
 
     private static final String MINIMUM_SUPPORTED_VERSION = "7.0";
 
+    public static final String PLUGINS_TASK_NAME = "teamcityPlugins";
+
+    public static final String PLUGINS_CONFIGURATION_NAME = "teamcityPlugins";
+
+    private static final String PLUGIN_ARCHIVES_CONFIGURATION_NAME = "teamcityPluginArchives";
+
+    private static final String PLUGINS_REPORT = "reports/teamcity/teamcity-plugins.txt";
+
     public void apply(Project project) {
         PluginContainer plugins = project.getPlugins();
         plugins.apply(BasePlugin.class);
@@ -43,6 +59,9 @@ public class TeamCityBasePlugin implements Plugin<Project> {
         ((DefaultTeamCityPluginExtension) extension).init();
         validateVersion(project, (DefaultTeamCityPluginExtension) extension);
         applyInheritedProperties(project, (DefaultTeamCityPluginExtension) extension);
+        if (!isNotRootProject(project)) {
+            configurePluginsReport(project);
+        }
     }
 
     private static void validateVersion(Project project, final DefaultTeamCityPluginExtension extension) {
@@ -58,11 +77,45 @@ public class TeamCityBasePlugin implements Plugin<Project> {
                 extension.getVersionProperty().set(rootExtension.getVersionProperty());
                 extension.getAllowSnapshotVersionsProperty().set(rootExtension.getAllowSnapshotVersionsProperty());
                 extension.getValidateBeanDefinitionProperty().set(rootExtension.getValidateBeanDefinitionProperty());
+                extension.getGenerateBeanDefinitionsProperty().set(rootExtension.getGenerateBeanDefinitionsProperty());
                 extension.getDefaultRepositoriesProperty().set(rootExtension.getDefaultRepositoriesProperty());
             }
         }
     }
 
+    /**
+     * Adds a task to the root project that validates and reports the plugin archives of all projects. The archives
+     * are resolved from the 'teamcityPlugins' configuration when the build declares one, otherwise from the plugin
+     * archive variant of every project, in a single resolution. Projects without a plugin archive are skipped.
+     */
+    private static void configurePluginsReport(Project project) {
+        final ConfigurationContainer configurations = project.getConfigurations();
+        final Configuration pluginArchives = configurations.create(PLUGIN_ARCHIVES_CONFIGURATION_NAME, configuration -> {
+            configuration.setVisible(false);
+            configuration.setTransitive(false);
+            configuration.setCanBeConsumed(false);
+            configuration.setDescription("Configuration for the plugin archives of all projects.");
+            configuration.attributes(attributes -> attributes.attribute(Category.CATEGORY_ATTRIBUTE,
+                project.getObjects().named(Category.class, TeamCityPlugin.PLUGIN_CATEGORY)));
+            configuration.withDependencies(dependencies -> {
+                for (Project p : project.getAllprojects()) {
+                    dependencies.add(project.getDependencies().project(Collections.singletonMap("path", p.getPath())));
+                }
+            });
+        });
+        final FileCollection pluginArchiveFiles = pluginArchives.getIncoming()
+            .artifactView(view -> view.lenient(true))
+            .getFiles();
+        project.getTasks().register(PLUGINS_TASK_NAME, PluginsReport.class, task -> {
+            task.setGroup(TeamCityPlugin.TEAMCITY_GROUP);
+            task.getPlugins().from((Callable<FileCollection>) () -> {
+                Configuration plugins = configurations.findByName(PLUGINS_CONFIGURATION_NAME);
+                return plugins != null ? plugins : pluginArchiveFiles;
+            });
+            task.getReportFile().convention(project.getLayout().getBuildDirectory().file(PLUGINS_REPORT));
+        });
+    }
+
     private static TeamCityPluginExtension getRootExtension(Project project) {
         return project.getRootProject().getExtensions().findByType(TeamCityPluginExtension.class);
     }
@@ -66,6 +66,15 @@ public interface TeamCityEnvironment {
     void setPlugins(Object plugins);
     void plugins(Object plugin);
 
+    /**
+     * The list of agent plugins to be deployed directly to the Build Agent of this environment.
+     *
+     * @return the list of agent plugins
+     */
+    Object getAgentPlugins();
+    void setAgentPlugins(Object plugins);
+    void agentPlugins(Object plugin);
+
     /**
      * The Java command line options to be used when starting the TeamCity Server.
      * Defaults to
@@ -89,6 +98,53 @@ public interface TeamCityEnvironment {
     void setAgentOptions(Object options);
     void agentOptions(String... options);
 
+    /**
+     * The time in seconds to wait for the TeamCity Server and Build Agent to stop before the process is killed.
+     * Defaults to 60 seconds.
+     *
+     * @return the stop timeout in seconds
+     */
+    int getStopTimeout();
+    void setStopTimeout(int stopTimeout);
+
+    /**
+     * The port the TeamCity Server listens on, used to check the server has started and stopped.
+     * The port is not passed to the server, it must match the port configured in the server's
+     * {@code conf/server.xml}. Defaults to 8111.
+     *
+     * @return the server port
+     */
+    int getServerPort();
+    void setServerPort(int serverPort);
+
+    /**
+     * The port the TeamCity Build Agent listens on, used to check the agent has stopped.
+     * The port is not passed to the agent, it must match the {@code ownPort} property in the agent's
+     * {@code conf/buildAgent.properties}. Defaults to 9090.
+     *
+     * @return the agent port
+     */
+    int getAgentPort();
+    void setAgentPort(int agentPort);
+
+    /**
+     * Stop the TeamCity Server and Build Agent started by the build when the build finishes.
+     * Defaults to false, a server or agent already running with the same settings is reused by later builds.
+     *
+     * @return true if the server and agent are stopped at the end of the build
+     */
+    boolean getStopAfterBuild();
+    void setStopAfterBuild(boolean stopAfterBuild);
+
+    /**
+     * Start the TeamCity Server and Build Agent using the class data sharing archives created by the
+     * class data archive task. Requires Java 13 or later. Defaults to false.
+     *
+     * @return true if the server and agent are started using class data sharing archives
+     */
+    boolean getClassDataSharing();
+    void setClassDataSharing(boolean classDataSharing);
+
     // Convenience accessors for base properties
     String getBaseHomeDir();
     String getBaseDataDir();
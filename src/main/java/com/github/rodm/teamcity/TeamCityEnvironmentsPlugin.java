@@ -19,10 +19,14 @@ import com.github.rodm.teamcity.internal.DefaultTeamCityEnvironment;
 import com.github.rodm.teamcity.internal.DefaultTeamCityEnvironments;
 import com.github.rodm.teamcity.internal.DisablePluginAction;
 import com.github.rodm.teamcity.internal.EnablePluginAction;
+import com.github.rodm.teamcity.internal.TeamCityEnvironmentService;
+import com.github.rodm.teamcity.internal.TeamCityLibraries;
+import com.github.rodm.teamcity.tasks.CheckLibraryConflicts;
+import com.github.rodm.teamcity.tasks.CreateClassDataArchive;
 import com.github.rodm.teamcity.tasks.Deploy;
+import com.github.rodm.teamcity.tasks.DeployAgentPlugin;
 import com.github.rodm.teamcity.tasks.DownloadTeamCity;
 import com.github.rodm.teamcity.tasks.InstallTeamCity;
-import com.github.rodm.teamcity.tasks.ServerPlugin;
 import com.github.rodm.teamcity.tasks.StartAgent;
 import com.github.rodm.teamcity.tasks.StartServer;
 import com.github.rodm.teamcity.tasks.StopAgent;
@@ -32,17 +36,22 @@ import org.gradle.api.Action;
 import org.gradle.api.NamedDomainObjectContainer;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.Directory;
 import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.TaskProvider;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Callable;
 
+import static com.github.rodm.teamcity.TeamCityAgentPlugin.AGENT_PLUGIN_TASK_NAME;
+import static com.github.rodm.teamcity.TeamCityFeature.RUNTIME_RELOAD;
 import static com.github.rodm.teamcity.TeamCityPlugin.TEAMCITY_GROUP;
 import static com.github.rodm.teamcity.TeamCityServerPlugin.SERVER_PLUGIN_TASK_NAME;
-import static com.github.rodm.teamcity.TeamCityVersion.VERSION_2018_2;
 import static org.gradle.language.base.plugins.LifecycleBasePlugin.BUILD_TASK_NAME;
 
 public class TeamCityEnvironmentsPlugin implements Plugin<Project> {
@@ -66,57 +75,68 @@ public class TeamCityEnvironmentsPlugin implements Plugin<Project> {
         public void execute(final Project project) {
             DefaultTeamCityEnvironments environments = (DefaultTeamCityEnvironments) extension.getEnvironments();
             NamedDomainObjectContainer<TeamCityEnvironment> container = environments.getEnvironments();
+            final Provider<TeamCityEnvironmentService> service = project.getGradle().getSharedServices()
+                .registerIfAbsent(TeamCityEnvironmentService.SERVICE_NAME, TeamCityEnvironmentService.class, spec -> {});
+            final Directory projectDir = project.getLayout().getProjectDirectory();
             container.all(env -> {
                 final DefaultTeamCityEnvironment environment = (DefaultTeamCityEnvironment) env;
+                final Provider<String> dataDirPath = projectDir.dir(environment.getDataDirProperty())
+                    .map(dir -> dir.getAsFile().getAbsolutePath());
 
                 final String name = capitalize(environment.getName());
                 final TaskProvider<DownloadTeamCity> download = project.getTasks().register("download" + name, DownloadTeamCity.class, task -> {
                     task.setGroup(TEAMCITY_GROUP);
-                    task.src(environment.getDownloadUrl());
-                    task.dest(project.file(environment.getInstallerFile()));
+                    task.src(environment.getDownloadUrlProperty());
+                    task.dest(environment.getInstallerFile());
                 });
                 project.getTasks().register("install" + name, InstallTeamCity.class, task -> {
                     task.setGroup(TEAMCITY_GROUP);
-                    task.getSource().set(project.file(environment.getInstallerFile()));
-                    task.getTarget().set(project.file(environment.getHomeDirProperty()));
+                    task.getSource().set(projectDir.file(environment.getInstallerFile()));
+                    task.getTarget().set(projectDir.dir(environment.getHomeDirProperty()));
                     task.dependsOn(download);
                 });
 
                 final TaskProvider<Deploy> deployPlugin = project.getTasks().register("deployTo" + name, Deploy.class, task -> {
                     task.setGroup(TEAMCITY_GROUP);
                     task.getPlugins().from(environment.getPlugins());
-                    task.getPluginsDir().set(project.file(environment.getPluginsDirProperty()));
+                    task.getPluginsDir().set(projectDir.dir(environment.getPluginsDirProperty()));
                     task.dependsOn(project.getTasks().named(BUILD_TASK_NAME));
                 });
 
                 final TaskProvider<Undeploy> undeployPlugin = project.getTasks().register("undeployFrom" + name, Undeploy.class, task -> {
                     task.setGroup(TEAMCITY_GROUP);
                     task.getPlugins().from(environment.getPlugins());
-                    task.getPluginsDir().set(project.file(environment.getPluginsDirProperty()));
+                    task.getPluginsDir().set(projectDir.dir(environment.getPluginsDirProperty()));
                 });
 
-                if (TeamCityVersion.version(environment.getVersion()).equalOrGreaterThan(VERSION_2018_2)) {
-                    final File dataDir = project.file(environment.getDataDirProperty().get());
-                    deployPlugin.configure(task -> {
-                        Set<File> plugins = ((FileCollection) environment.getPlugins()).getFiles();
-                        List<String> disabledPlugins = new ArrayList<>();
-                        task.doFirst(new DisablePluginAction(project.getLogger(), dataDir, plugins, disabledPlugins));
-                        task.doLast(new EnablePluginAction(project.getLogger(), dataDir, plugins, disabledPlugins));
-                    });
-                    undeployPlugin.configure(task -> {
-                        Set<File> plugins = ((FileCollection) environment.getPlugins()).getFiles();
-                        task.doFirst(new DisablePluginAction(project.getLogger(), dataDir, plugins, new ArrayList<>()));
-                    });
-                }
+                final Provider<File> dataDir = projectDir.dir(environment.getDataDirProperty()).map(Directory::getAsFile);
+                final Provider<Boolean> runtimeReload = project.getProviders()
+                    .provider(() -> TeamCityVersion.version(environment.getVersion()).supports(RUNTIME_RELOAD));
+                final Provider<Integer> serverPort = environment.getServerPortProperty();
+                deployPlugin.configure(task -> {
+                    FileCollection plugins = task.getPlugins();
+                    List<String> disabledPlugins = new ArrayList<>();
+                    task.doFirst(new DisablePluginAction(project.getLogger(), dataDir, runtimeReload, serverPort, plugins, disabledPlugins));
+                    task.doLast(new EnablePluginAction(project.getLogger(), dataDir, runtimeReload, serverPort, plugins, disabledPlugins));
+                });
+                undeployPlugin.configure(task -> {
+                    FileCollection plugins = task.getPlugins();
+                    task.doFirst(new DisablePluginAction(project.getLogger(), dataDir, runtimeReload, serverPort, plugins, new ArrayList<>()));
+                });
 
                 final TaskProvider<StartServer> startServer = project.getTasks().register("start" + name + "Server", StartServer.class, task -> {
                     task.setGroup(TEAMCITY_GROUP);
                     task.getVersion().set(environment.getVersion());
                     task.getHomeDir().set(environment.getHomeDirProperty());
-                    task.getDataDir().set(environment.getDataDirProperty());
+                    task.getDataDir().set(dataDirPath);
                     task.getJavaHome().set(environment.getJavaHomeProperty());
-                    task.getServerOptions().set(environment.getServerOptionsProvider());
-                    task.doFirst(t -> project.mkdir(environment.getDataDirProperty()));
+                    task.getServerOptions().set(environment.getServerStartOptionsProvider());
+                    task.getClassDataSharing().set(environment.getClassDataSharingProperty());
+                    task.getPort().set(environment.getServerPortProperty());
+                    task.getStopTimeout().set(environment.getStopTimeoutProperty());
+                    task.getStopAfterBuild().set(environment.getStopAfterBuildProperty());
+                    task.getEnvironmentService().set(service);
+                    task.usesService(service);
                     task.dependsOn(deployPlugin);
                 });
 
@@ -125,6 +145,10 @@ public class TeamCityEnvironmentsPlugin implements Plugin<Project> {
                     task.getVersion().set(environment.getVersion());
                     task.getHomeDir().set(environment.getHomeDirProperty());
                     task.getJavaHome().set(environment.getJavaHomeProperty());
+                    task.getStopTimeout().set(environment.getStopTimeoutProperty());
+                    task.getPort().set(environment.getServerPortProperty());
+                    task.getEnvironmentService().set(service);
+                    task.usesService(service);
                     task.finalizedBy(undeployPlugin);
                 });
 
@@ -133,7 +157,13 @@ public class TeamCityEnvironmentsPlugin implements Plugin<Project> {
                     task.getVersion().set(environment.getVersion());
                     task.getHomeDir().set(environment.getHomeDirProperty());
                     task.getJavaHome().set(environment.getJavaHomeProperty());
-                    task.getAgentOptions().set(environment.getAgentOptionsProvider());
+                    task.getAgentOptions().set(environment.getAgentStartOptionsProvider());
+                    task.getClassDataSharing().set(environment.getClassDataSharingProperty());
+                    task.getPort().set(environment.getAgentPortProperty());
+                    task.getStopTimeout().set(environment.getStopTimeoutProperty());
+                    task.getStopAfterBuild().set(environment.getStopAfterBuildProperty());
+                    task.getEnvironmentService().set(service);
+                    task.usesService(service);
                 });
 
                 final TaskProvider<StopAgent> stopAgent = project.getTasks().register("stop" + name + "Agent", StopAgent.class, task -> {
@@ -141,6 +171,44 @@ public class TeamCityEnvironmentsPlugin implements Plugin<Project> {
                     task.getVersion().set(environment.getVersion());
                     task.getHomeDir().set(environment.getHomeDirProperty());
                     task.getJavaHome().set(environment.getJavaHomeProperty());
+                    task.getStopTimeout().set(environment.getStopTimeoutProperty());
+                    task.getPort().set(environment.getAgentPortProperty());
+                    task.getEnvironmentService().set(service);
+                    task.usesService(service);
+                });
+
+                project.getTasks().register("createClassDataArchive" + name, CreateClassDataArchive.class, task -> {
+                    task.setGroup(TEAMCITY_GROUP);
+                    task.getVersion().set(environment.getVersion());
+                    task.getHomeDir().set(environment.getHomeDirProperty());
+                    task.getDataDir().set(dataDirPath);
+                    task.getJavaHome().set(environment.getJavaHomeProperty());
+                    task.getServerOptions().set(environment.getServerOptionsProvider());
+                    task.getAgentOptions().set(environment.getAgentOptionsProvider());
+                    task.getServerPort().set(environment.getServerPortProperty());
+                    task.getAgentPort().set(environment.getAgentPortProperty());
+                    task.getStopTimeout().set(environment.getStopTimeoutProperty());
+                    task.dependsOn(deployPlugin);
+                });
+
+                project.getTasks().register("deployAgentPluginTo" + name, DeployAgentPlugin.class, task -> {
+                    task.setGroup(TEAMCITY_GROUP);
+                    task.getVersion().set(environment.getVersion());
+                    task.getHomeDir().set(environment.getHomeDirProperty());
+                    task.getJavaHome().set(environment.getJavaHomeProperty());
+                    task.getAgentOptions().set(environment.getAgentStartOptionsProvider());
+                    task.getStopTimeout().set(environment.getStopTimeoutProperty());
+                    task.getPort().set(environment.getAgentPortProperty());
+                    task.getPlugins().from(environment.getAgentPlugins());
+                });
+
+                project.getTasks().register("checkLibraryConflicts" + name, CheckLibraryConflicts.class, task -> {
+                    task.setGroup(TEAMCITY_GROUP);
+                    task.getPlugins().from(environment.getPlugins());
+                    task.getAgentPlugins().from(environment.getAgentPlugins());
+                    task.getHomeDir().set(projectDir.dir(environment.getHomeDirProperty()));
+                    task.getCacheDir().set(new File(project.getGradle().getGradleUserHomeDir(), TeamCityLibraries.CACHE_DIR));
+                    task.getReportFile().set(project.getLayout().getBuildDirectory().file("reports/teamcity/library-conflicts-" + environment.getName() + ".txt"));
                 });
 
                 project.getTasks().register("start" + name, task -> {
@@ -154,14 +222,25 @@ public class TeamCityEnvironmentsPlugin implements Plugin<Project> {
                     task.dependsOn(stopAgent, stopServer);
                 });
 
-                project.getTasks().withType(ServerPlugin.class, task -> {
-                    if (((FileCollection) environment.getPlugins()).isEmpty()) {
-                        environment.plugins(project.getTasks().named(SERVER_PLUGIN_TASK_NAME));
-                    }
-                });
+                if (((ConfigurableFileCollection) environment.getPlugins()).getFrom().isEmpty()) {
+                    environment.plugins(projectTask(project, SERVER_PLUGIN_TASK_NAME));
+                }
+                if (((ConfigurableFileCollection) environment.getAgentPlugins()).getFrom().isEmpty()) {
+                    environment.agentPlugins(projectTask(project, AGENT_PLUGIN_TASK_NAME));
+                }
             });
         }
 
+        /**
+         * Returns the outputs of the named task, if the project has the task, without realizing the task until
+         * the plugins of the environment are resolved.
+         */
+        private static Callable<Object> projectTask(Project project, String name) {
+            return () -> project.getTasks().getNames().contains(name)
+                ? project.getTasks().named(name)
+                : Collections.emptyList();
+        }
+
         private String capitalize(String name) {
             return name.substring(0, 1).toUpperCase() + name.substring(1);
         }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity;
+
+/**
+ * Features of TeamCity that depend on the version of TeamCity a plugin is built for.
+ */
+public enum TeamCityFeature {
+
+    /**
+     * Plugin dependencies in the plugin descriptor.
+     */
+    PLUGIN_DEPENDENCIES("9.0"),
+
+    /**
+     * The server-web-api dependency.
+     */
+    SERVER_WEB_API("9.0"),
+
+    /**
+     * Reloading plugins without restarting the server, the descriptor's allow-runtime-reload attribute.
+     */
+    RUNTIME_RELOAD("2018.2"),
+
+    /**
+     * The descriptor's node-responsibilities-aware attribute.
+     */
+    NODE_RESPONSIBILITIES_AWARE("2020.1");
+
+    private final String minimumVersion;
+
+    TeamCityFeature(String minimumVersion) {
+        this.minimumVersion = minimumVersion;
+    }
+
+    /**
+     * @return the first version of TeamCity that supports the feature
+     */
+    public TeamCityVersion getMinimumVersion() {
+        return TeamCityVersion.version(minimumVersion);
+    }
+}
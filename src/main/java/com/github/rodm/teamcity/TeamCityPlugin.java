@@ -15,24 +15,58 @@
  */
 package com.github.rodm.teamcity;
 
+import com.github.rodm.teamcity.internal.AbstractPluginTask;
+import com.github.rodm.teamcity.internal.BeanDefinitionProcessorArguments;
 import com.github.rodm.teamcity.internal.ClassCollectorAction;
+import com.github.rodm.teamcity.internal.DefaultTeamCityEnvironment;
+import com.github.rodm.teamcity.internal.DefaultTeamCityEnvironments;
+import com.github.rodm.teamcity.internal.DefaultTeamCityPluginExtension;
 import com.github.rodm.teamcity.internal.PluginDefinition;
 import com.github.rodm.teamcity.internal.PluginDefinitionCollectorAction;
 import com.github.rodm.teamcity.internal.PluginDefinitionValidationAction;
+import com.github.rodm.teamcity.internal.TeamCityLibraries;
+import com.github.rodm.teamcity.tasks.CheckApiCompatibility;
+import com.github.rodm.teamcity.tasks.CreatePluginJar;
+import com.github.rodm.teamcity.tasks.PluginSizeReport;
 import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.ConfigurationContainer;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.attributes.Category;
+import org.gradle.api.file.Directory;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.api.plugins.PluginContainer;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.ClasspathNormalizer;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.bundling.Jar;
 import org.gradle.api.tasks.bundling.Zip;
+import org.gradle.api.tasks.compile.JavaCompile;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+import static org.gradle.language.base.plugins.LifecycleBasePlugin.CHECK_TASK_NAME;
 
 public class TeamCityPlugin implements Plugin<Project> {
 
@@ -42,10 +76,29 @@ public class TeamCityPlugin implements Plugin<Project> {
 
     public static final String TEAMCITY_GROUP = "TeamCity";
 
+    /**
+     * The category attribute value of the plugin archive variant published by a plugin project.
+     */
+    public static final String PLUGIN_CATEGORY = "teamcity-plugin";
+
+    public static final String CHECK_API_COMPATIBILITY_TASK_NAME = "checkApiCompatibility";
+
+    public static final String PLUGIN_SIZE_REPORT_TASK_NAME = "pluginSizeReport";
+
     private static final String JETBRAINS_MAVEN_REPOSITORY = "https://download.jetbrains.com/teamcity-repository";
 
     private static final String CLASSES_PATTERN = "**/*.class";
 
+    private static final String CLASS_INDEX_CACHE_DIR = "caches/gradle-teamcity-plugin/class-index";
+
+    private static final String API_INDEX_CACHE_DIR = "caches/gradle-teamcity-plugin/api-index";
+
+    private static final String API_COMPATIBILITY_REPORT = "reports/teamcity/api-compatibility.txt";
+
+    private static final String PROCESSOR_JAR = "processor.jar";
+
+    private static final String PROCESSOR_CACHE_DIR = "caches/gradle-teamcity-plugin/processor";
+
     public void apply(Project project) {
         PluginContainer plugins = project.getPlugins();
         plugins.apply(TeamCityBasePlugin.class);
@@ -82,7 +135,9 @@ public class TeamCityPlugin implements Plugin<Project> {
         configurations.maybeCreate("plugin")
             .setVisible(false)
             .setTransitive(false)
-            .setDescription("Configuration for plugin artifact.");
+            .setDescription("Configuration for plugin artifact.")
+            .attributes(attributes -> attributes.attribute(Category.CATEGORY_ATTRIBUTE,
+                project.getObjects().named(Category.class, PLUGIN_CATEGORY)));
         project.getPlugins().withType(JavaPlugin.class, plugin -> {
             Configuration providedConfiguration = configurations.maybeCreate("provided")
                 .setVisible(false)
@@ -101,10 +156,191 @@ public class TeamCityPlugin implements Plugin<Project> {
             Set<String> classes = new LinkedHashSet<>();
             task.filesMatching(pattern, new PluginDefinitionCollectorAction(pluginDefinitions));
             task.filesMatching(CLASSES_PATTERN, new ClassCollectorAction(classes));
-            task.doLast(new PluginDefinitionValidationAction(mode, pluginDefinitions, classes));
+            FileCollection classpath = project.getConfigurations().getByName(JavaPlugin.RUNTIME_CLASSPATH_CONFIGURATION_NAME);
+            if (mode != ValidationMode.IGNORE) {
+                task.getInputs().files(classpath)
+                    .withPropertyName("runtimeClasspath")
+                    .withNormalizer(ClasspathNormalizer.class);
+            }
+            File cacheDir = new File(project.getGradle().getGradleUserHomeDir(), CLASS_INDEX_CACHE_DIR);
+            Provider<Boolean> generateBeanDefinitions = ((DefaultTeamCityPluginExtension) extension).getGenerateBeanDefinitionsProperty();
+            task.doLast(new PluginDefinitionValidationAction(mode, pluginDefinitions, classes, classpath, cacheDir,
+                generateBeanDefinitions, project.getName()));
         }));
     }
 
+    public static void configureBeanDefinitionProcessor(final Project project, final DefaultTeamCityPluginExtension extension) {
+        // the server and agent plugins both configure the processor, a plugin is only added to the
+        // container after it is applied, so the processor is configured by the first one applied
+        PluginContainer plugins = project.getPlugins();
+        if (plugins.hasPlugin(TeamCityServerPlugin.class) || plugins.hasPlugin(TeamCityAgentPlugin.class)) {
+            return;
+        }
+        Property<Boolean> generateBeanDefinitions = extension.getGenerateBeanDefinitionsProperty();
+        File cacheDir = new File(project.getGradle().getGradleUserHomeDir(), PROCESSOR_CACHE_DIR);
+        plugins.withType(JavaPlugin.class, plugin -> {
+            FileCollection processor = project.files((Callable<Object>) () ->
+                generateBeanDefinitions.get() ? processorJar(cacheDir) : Collections.emptyList());
+            project.getDependencies().add(JavaPlugin.COMPILE_ONLY_CONFIGURATION_NAME, processor);
+            project.getDependencies().add(JavaPlugin.ANNOTATION_PROCESSOR_CONFIGURATION_NAME, processor);
+            project.getTasks().named(JavaPlugin.COMPILE_JAVA_TASK_NAME, JavaCompile.class).configure(task ->
+                task.getOptions().getCompilerArgumentProviders()
+                    .add(new BeanDefinitionProcessorArguments(generateBeanDefinitions, project.getName())));
+        });
+    }
+
+    public static void configureApiCompatibilityTask(final Project project, final PluginConfiguration configuration, final Function<String, List<String>> apiArtifacts) {
+        project.getPlugins().withType(JavaPlugin.class, plugin -> {
+            TaskProvider<CheckApiCompatibility> checkApiCompatibility =
+                project.getTasks().register(CHECK_API_COMPATIBILITY_TASK_NAME, CheckApiCompatibility.class, task -> {
+                    task.setGroup(TEAMCITY_GROUP);
+                    SourceSetContainer sourceSets = project.getExtensions().getByType(SourceSetContainer.class);
+                    task.getClasses().from(sourceSets.getByName(SourceSet.MAIN_SOURCE_SET_NAME).getOutput().getClassesDirs());
+                    task.getClasspath().from(project.getConfigurations().getByName(JavaPlugin.RUNTIME_CLASSPATH_CONFIGURATION_NAME));
+                    task.getMode().set(project.getProviders().provider(configuration::getApiCompatibility));
+                    task.getCacheDir().set(new File(project.getGradle().getGradleUserHomeDir(), API_INDEX_CACHE_DIR));
+                    task.getReportFile().set(project.getLayout().getBuildDirectory().file(API_COMPATIBILITY_REPORT));
+                    for (String version : configuration.getCompatibleVersions()) {
+                        Dependency[] dependencies = apiArtifacts.apply(version).stream()
+                            .map(project.getDependencies()::create)
+                            .toArray(Dependency[]::new);
+                        task.apiVersion(version, project.getConfigurations().detachedConfiguration(dependencies));
+                    }
+                });
+            project.getTasks().named(CHECK_TASK_NAME).configure(task -> task.dependsOn(checkApiCompatibility));
+        });
+    }
+
+    public static void configureInstalledLibraries(final Project project, final TeamCityPluginExtension extension,
+                                                   final PluginConfiguration configuration, final AbstractPluginTask task,
+                                                   final String libDir)
+    {
+        final Directory projectDir = project.getLayout().getProjectDirectory();
+        task.getInstalledLibraries().set(project.getProviders().provider(configuration::getExcludeInstalledLibraries)
+            .flatMap(name -> {
+                DefaultTeamCityEnvironments environments = (DefaultTeamCityEnvironments) extension.getEnvironments();
+                TeamCityEnvironment environment = environments.getEnvironments().findByName(name);
+                if (environment == null) {
+                    throw new InvalidUserDataException(String.format("Environment '%s' not found", name));
+                }
+                return projectDir.dir(((DefaultTeamCityEnvironment) environment).getHomeDirProperty()).map(dir -> dir.dir(libDir));
+            }));
+        task.getCacheDir().set(new File(project.getGradle().getGradleUserHomeDir(), TeamCityLibraries.CACHE_DIR));
+    }
+
+    public static void configurePluginSizeReportTask(final Project project, final PluginConfiguration configuration,
+                                                     final String taskName, final TaskProvider<? extends Zip> packagePlugin,
+                                                     final String... dependencyConfigurations)
+    {
+        TaskProvider<PluginSizeReport> sizeReport = project.getTasks().register(taskName, PluginSizeReport.class, task -> {
+            task.setGroup(TEAMCITY_GROUP);
+            task.getArchive().set(packagePlugin.flatMap(Zip::getArchiveFile));
+            task.getMaxArchiveSize().set(project.getProviders().provider(configuration::getMaxArchiveSize));
+            task.getMaxUncompressedSize().set(project.getProviders().provider(configuration::getMaxUncompressedSize));
+            task.getMaxLibrarySize().set(project.getProviders().provider(configuration::getMaxLibrarySize));
+            task.getReportDir().set(project.getLayout().getBuildDirectory().dir("reports/teamcity/" + taskName));
+            for (String name : dependencyConfigurations) {
+                Configuration dependencies = project.getConfigurations().findByName(name);
+                if (dependencies != null) {
+                    task.dependencies(dependencies.getIncoming().getArtifacts());
+                }
+            }
+        });
+
+        if (project.getTasks().getNames().contains(PLUGIN_SIZE_REPORT_TASK_NAME)) {
+            project.getTasks().named(PLUGIN_SIZE_REPORT_TASK_NAME).configure(task -> task.dependsOn(sizeReport));
+        } else {
+            project.getTasks().register(PLUGIN_SIZE_REPORT_TASK_NAME, task -> {
+                task.setGroup(TEAMCITY_GROUP);
+                task.setDescription("Reports the sizes of the plugin archives");
+                task.dependsOn(sizeReport);
+            });
+        }
+        project.getTasks().named(CHECK_TASK_NAME).configure(task -> task.dependsOn(project.getProviders().provider(() -> {
+            boolean hasBudget = configuration.getMaxArchiveSize() != null || configuration.getMaxUncompressedSize() != null
+                || configuration.getMaxLibrarySize() != null;
+            return hasBudget ? Collections.singletonList(sizeReport) : Collections.emptyList();
+        })));
+    }
+
+    public static void configurePluginJarTask(final Project project, final PluginConfiguration configuration, final String taskName) {
+        project.getPlugins().withType(JavaPlugin.class, plugin -> {
+            TaskProvider<Jar> jar = project.getTasks().named(JavaPlugin.JAR_TASK_NAME, Jar.class);
+            project.getTasks().register(taskName, CreatePluginJar.class, task -> {
+                task.setGroup(TEAMCITY_GROUP);
+                task.getClasspath().from(jar);
+                task.getClasspath().from(project.getConfigurations().getByName(JavaPlugin.RUNTIME_CLASSPATH_CONFIGURATION_NAME));
+                task.getShrink().set(project.getProviders().provider(configuration::getShrinkLibraries));
+                task.getKeepClasses().set(project.getProviders().provider(configuration::getKeepClasses));
+                task.getPackageIndex().set(project.getProviders().provider(configuration::getPackageIndex));
+                task.getArchiveFile().set(project.getLayout().getBuildDirectory()
+                    .file(jar.flatMap(Jar::getArchiveFileName).map(name -> "teamcity/" + taskName + "/" + name)));
+            });
+        });
+    }
+
+    /**
+     * Returns the libraries packaged in the plugin archive, either the plugin jar and its runtime classpath or,
+     * if the libraries are merged or shrunk, the jar created by the given plugin jar task.
+     */
+    public static Callable<Object> pluginLibraries(final Project project, final PluginConfiguration configuration, final String taskName) {
+        return () -> {
+            if (configuration.getMergeLibraries() || configuration.getShrinkLibraries()) {
+                return project.getTasks().named(taskName);
+            }
+            return Arrays.asList(project.getTasks().named(JavaPlugin.JAR_TASK_NAME),
+                project.getConfigurations().getByName(JavaPlugin.RUNTIME_CLASSPATH_CONFIGURATION_NAME));
+        };
+    }
+
+    /**
+     * Returns the annotation processor jar bundled with the plugin, the jar is extracted to the cache directory
+     * using a name that includes the plugin version and is only written if it does not exist.
+     */
+    private static File processorJar(File cacheDir) {
+        String version = processorVersion();
+        File jar = new File(cacheDir, "gradle-teamcity-plugin-processor-" + version + ".jar");
+        if (jar.isFile() && !version.endsWith("-SNAPSHOT")) {
+            return jar;
+        }
+        try (InputStream is = TeamCityPlugin.class.getResourceAsStream(PROCESSOR_JAR)) {
+            if (is == null) {
+                throw new GradleException("Failed to find the annotation processor");
+            }
+            Files.createDirectories(cacheDir.toPath());
+            Path tempFile = Files.createTempFile(cacheDir.toPath(), jar.getName(), ".tmp");
+            Files.copy(is, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(tempFile, jar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException e) {
+                // the jar may be in use by a compiler daemon, use the existing copy
+                Files.deleteIfExists(tempFile);
+                if (!jar.isFile()) {
+                    throw e;
+                }
+            }
+            return jar;
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to extract the annotation processor", e);
+        }
+    }
+
+    private static String processorVersion() {
+        try (InputStream is = TeamCityPlugin.class.getResourceAsStream("processor.properties")) {
+            if (is == null) {
+                throw new GradleException("Failed to find the annotation processor version");
+            }
+            Properties properties = new Properties();
+            properties.load(is);
+            return properties.getProperty("version");
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to read the annotation processor version", e);
+        }
+    }
+
     public static void configurePluginArchiveTask(Zip task, String archiveName) {
         if (archiveName != null) {
             String name = archiveName.endsWith(".zip") ? archiveName : archiveName + ".zip";
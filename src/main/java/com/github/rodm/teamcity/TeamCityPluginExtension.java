@@ -58,6 +58,15 @@ public interface TeamCityPluginExtension {
     void setValidateBeanDefinition(String mode);
     ValidationMode getValidateBeanDefinition();
 
+    /**
+     * Generate the plugin bean definition files using the annotation processor. The generated bean
+     * definition files are not validated when the plugin jar is built.
+     *
+     * @param generateBeanDefinitions Add the annotation processor to the build
+     */
+    void setGenerateBeanDefinitions(boolean generateBeanDefinitions);
+    boolean getGenerateBeanDefinitions();
+
     /**
      * Configures the agent-side plugin.
      *
@@ -20,6 +20,9 @@ import com.github.rodm.teamcity.internal.DefaultSignConfiguration;
 import com.github.rodm.teamcity.internal.DefaultTeamCityPluginExtension;
 import com.github.rodm.teamcity.internal.PluginDescriptorContentsValidationAction;
 import com.github.rodm.teamcity.internal.PluginDescriptorValidationAction;
+import com.github.rodm.teamcity.internal.SharedLibraries;
+import com.github.rodm.teamcity.internal.SharedLibrariesValidationAction;
+import com.github.rodm.teamcity.internal.SignPluginService;
 import com.github.rodm.teamcity.tasks.GenerateServerPluginDescriptor;
 import com.github.rodm.teamcity.tasks.ProcessDescriptor;
 import com.github.rodm.teamcity.tasks.PublishPlugin;
@@ -28,6 +31,7 @@ import com.github.rodm.teamcity.tasks.SignPlugin;
 import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
 import org.gradle.api.artifacts.ConfigurationContainer;
 import org.gradle.api.file.RegularFile;
 import org.gradle.api.plugins.JavaPlugin;
@@ -38,15 +42,26 @@ import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.bundling.Jar;
 import org.gradle.api.tasks.bundling.Zip;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.github.rodm.teamcity.TeamCityAgentPlugin.AGENT_PLUGIN_TASK_NAME;
+import static com.github.rodm.teamcity.TeamCityFeature.NODE_RESPONSIBILITIES_AWARE;
+import static com.github.rodm.teamcity.TeamCityFeature.RUNTIME_RELOAD;
+import static com.github.rodm.teamcity.TeamCityFeature.SERVER_WEB_API;
 import static com.github.rodm.teamcity.TeamCityPlugin.PLUGIN_DESCRIPTOR_DIR;
 import static com.github.rodm.teamcity.TeamCityPlugin.PLUGIN_DESCRIPTOR_FILENAME;
 import static com.github.rodm.teamcity.TeamCityPlugin.TEAMCITY_GROUP;
+import static com.github.rodm.teamcity.TeamCityPlugin.configureApiCompatibilityTask;
+import static com.github.rodm.teamcity.TeamCityPlugin.configureBeanDefinitionProcessor;
+import static com.github.rodm.teamcity.TeamCityPlugin.configureInstalledLibraries;
 import static com.github.rodm.teamcity.TeamCityPlugin.configureJarTask;
 import static com.github.rodm.teamcity.TeamCityPlugin.configurePluginArchiveTask;
-import static com.github.rodm.teamcity.TeamCityVersion.VERSION_2018_2;
-import static com.github.rodm.teamcity.TeamCityVersion.VERSION_2020_1;
-import static com.github.rodm.teamcity.TeamCityVersion.VERSION_9_0;
+import static com.github.rodm.teamcity.TeamCityPlugin.configurePluginJarTask;
+import static com.github.rodm.teamcity.TeamCityPlugin.configurePluginSizeReportTask;
+import static com.github.rodm.teamcity.TeamCityPlugin.pluginLibraries;
+import static com.github.rodm.teamcity.internal.TeamCityLibraries.SERVER_LIB_DIR;
 import static org.gradle.api.plugins.JavaPlugin.JAR_TASK_NAME;
 import static org.gradle.language.base.plugins.LifecycleBasePlugin.ASSEMBLE_TASK_NAME;
 
@@ -61,6 +76,8 @@ public class TeamCityServerPlugin implements Plugin<Project> {
     public static final String SERVER_PLUGIN_TASK_NAME = "serverPlugin";
     public static final String PUBLISH_PLUGIN_TASK_NAME = "publishPlugin";
     public static final String SIGN_PLUGIN_TASK_NAME = "signPlugin";
+    public static final String SERVER_PLUGIN_SIZE_REPORT_TASK_NAME = "serverPluginSizeReport";
+    public static final String SERVER_PLUGIN_JAR_TASK_NAME = "serverPluginJar";
 
     private static final String MARKETPLACE_CONFIGURATION_NAME = "marketplace";
 
@@ -78,6 +95,8 @@ public class TeamCityServerPlugin implements Plugin<Project> {
         TeamCityPluginExtension extension = project.getExtensions().getByType(TeamCityPluginExtension.class);
         configureDependencies(project, (DefaultTeamCityPluginExtension) extension);
         configureJarTask(project, extension, PLUGIN_DEFINITION_PATTERN);
+        configureBeanDefinitionProcessor(project, (DefaultTeamCityPluginExtension) extension);
+        configureApiCompatibilityTask(project, extension.getServer(), version -> serverApiArtifacts(version, extension));
         configureServerPluginTasks(project, extension);
         configureSignPluginTask(project, extension);
         configurePublishPluginTask(project, extension);
@@ -104,12 +123,21 @@ public class TeamCityServerPlugin implements Plugin<Project> {
             project.getDependencies().add("provided", version.map(v -> "org.jetbrains.teamcity:server-api:" + v));
             project.getDependencies().add("provided", version.map(v -> {
                 TeamCityVersion teamCityVersion = TeamCityVersion.version(version.get(), allowSnapshotVersions.get());
-                return teamCityVersion.equalOrGreaterThan(VERSION_9_0) ? "org.jetbrains.teamcity:server-web-api:" + v : null;
+                return teamCityVersion.supports(SERVER_WEB_API) ? "org.jetbrains.teamcity:server-web-api:" + v : null;
             }));
             project.getDependencies().add("testImplementation", version.map(v -> "org.jetbrains.teamcity:tests-support:" + v));
         });
     }
 
+    private static List<String> serverApiArtifacts(String version, TeamCityPluginExtension extension) {
+        List<String> artifacts = new ArrayList<>();
+        artifacts.add("org.jetbrains.teamcity:server-api:" + version);
+        if (TeamCityVersion.version(version, extension.getAllowSnapshotVersions()).supports(SERVER_WEB_API)) {
+            artifacts.add("org.jetbrains.teamcity:server-web-api:" + version);
+        }
+        return artifacts;
+    }
+
     public void configureServerPluginTasks(final Project project, final TeamCityPluginExtension extension) {
         final TaskContainer tasks = project.getTasks();
         final ServerPluginConfiguration server = extension.getServer();
@@ -124,6 +152,9 @@ public class TeamCityServerPlugin implements Plugin<Project> {
         final TaskProvider<ProcessDescriptor> processDescriptor = tasks.register(PROCESS_SERVER_DESCRIPTOR_TASK_NAME, ProcessDescriptor.class, task -> {
             task.getDescriptor().set(server.getDescriptorFile());
             task.getTokens().set(server.getTokens());
+            task.getBeginToken().set(project.getProviders().provider(server::getBeginToken));
+            task.getEndToken().set(project.getProviders().provider(server::getEndToken));
+            task.getUnresolvedTokens().set(project.getProviders().provider(server::getUnresolvedTokens));
             task.getDestination().set(descriptorFile);
         });
 
@@ -133,24 +164,32 @@ public class TeamCityServerPlugin implements Plugin<Project> {
             task.getDestination().set(descriptorFile);
         });
 
+        configurePluginJarTask(project, server, SERVER_PLUGIN_JAR_TASK_NAME);
+
         final TaskProvider<ServerPlugin> packagePlugin = tasks.register(SERVER_PLUGIN_TASK_NAME, ServerPlugin.class, task -> {
             task.setGroup(TEAMCITY_GROUP);
             task.getDescriptor().set(descriptorFile);
             task.getServer().from(project.getConfigurations().getByName("server"));
-            project.getPlugins().withType(JavaPlugin.class, plugin -> {
-                task.getServer().from(tasks.named(JAR_TASK_NAME));
-                task.getServer().from(project.getConfigurations().getByName("runtimeClasspath"));
-            });
+            project.getPlugins().withType(JavaPlugin.class, plugin ->
+                task.getServer().from(pluginLibraries(project, server, SERVER_PLUGIN_JAR_TASK_NAME)));
             if (project.getPlugins().hasPlugin(TeamCityAgentPlugin.class)) {
                 task.getAgent().from(tasks.named(AGENT_PLUGIN_TASK_NAME));
             } else {
                 task.getAgent().from((project.getConfigurations().getByName("agent")));
             }
             task.with(server.getFiles());
+            task.getIncremental().set(project.getProviders().provider(server::getIncrementalArchive));
+            task.getStoreNestedArchives().set(project.getProviders().provider(server::getStoreNestedArchives));
+            configureInstalledLibraries(project, extension, server, task, SERVER_LIB_DIR);
             task.dependsOn(processDescriptor, generateDescriptor);
         });
 
         tasks.withType(ServerPlugin.class).configureEach(task -> {
+            task.getSharedLibraries().convention(project.getProviders().provider(server::getSharedLibraries));
+            task.getSharedLibrariesReport().convention(project.getLayout().getBuildDirectory()
+                .file("reports/teamcity/" + task.getName() + "-shared-libraries.txt"));
+            task.getHashCacheDir().set(new File(project.getGradle().getGradleUserHomeDir(), SharedLibraries.CACHE_DIR));
+            task.doFirst(new SharedLibrariesValidationAction());
             String schemaPath = getSchemaPath(extension.getVersion(), extension.getAllowSnapshotVersions());
             task.doLast(new PluginDescriptorValidationAction(schemaPath));
             task.doLast(new PluginDescriptorContentsValidationAction());
@@ -158,6 +197,9 @@ public class TeamCityServerPlugin implements Plugin<Project> {
 
         tasks.named(ASSEMBLE_TASK_NAME, task -> task.dependsOn(packagePlugin));
 
+        configurePluginSizeReportTask(project, server, SERVER_PLUGIN_SIZE_REPORT_TASK_NAME, packagePlugin,
+            "server", JavaPlugin.RUNTIME_CLASSPATH_CONFIGURATION_NAME);
+
         project.getArtifacts().add("plugin", packagePlugin);
 
         tasks.named(SERVER_PLUGIN_TASK_NAME, Zip.class, task ->
@@ -166,9 +208,9 @@ public class TeamCityServerPlugin implements Plugin<Project> {
 
     private static String getSchemaPath(String version, boolean allowSnapshots) {
         TeamCityVersion teamcityVersion = TeamCityVersion.version(version, allowSnapshots);
-        if (teamcityVersion.equalOrGreaterThan(VERSION_2020_1)) {
+        if (teamcityVersion.supports(NODE_RESPONSIBILITIES_AWARE)) {
             return "2020.1/teamcity-server-plugin-descriptor.xsd";
-        } else if (teamcityVersion.equalOrGreaterThan(VERSION_2018_2)) {
+        } else if (teamcityVersion.supports(RUNTIME_RELOAD)) {
             return "2018.2/teamcity-server-plugin-descriptor.xsd";
         } else {
             return "teamcity-server-plugin-descriptor.xsd";
@@ -184,18 +226,24 @@ public class TeamCityServerPlugin implements Plugin<Project> {
     }
 
     private static void configureSignPluginTask(final Project project, final TeamCityPluginExtension extension) {
+        final TaskContainer tasks = project.getTasks();
         project.afterEvaluate(p -> {
             if (extension.getServer().getSign() != null) {
                 DefaultSignConfiguration configuration = (DefaultSignConfiguration) extension.getServer().getSign();
-                Zip packagePlugin = (Zip) p.getTasks().findByName(SERVER_PLUGIN_TASK_NAME);
+                TaskProvider<Zip> packagePlugin = tasks.named(SERVER_PLUGIN_TASK_NAME, Zip.class);
+                final Provider<SignPluginService> service = p.getGradle().getSharedServices()
+                    .registerIfAbsent(SignPluginService.SERVICE_NAME, SignPluginService.class, spec -> {});
 
-                p.getTasks().register(SIGN_PLUGIN_TASK_NAME, SignPlugin.class, task -> {
+                tasks.register(SIGN_PLUGIN_TASK_NAME, SignPlugin.class, task -> {
                     task.setGroup(TEAMCITY_GROUP);
                     task.setClasspath(p.getConfigurations().getByName(MARKETPLACE_CONFIGURATION_NAME));
                     task.getCertificateChain().set(configuration.getCertificateChainProperty());
                     task.getPrivateKey().set(configuration.getPrivateKeyProperty());
                     task.getPassword().set(configuration.getPasswordProperty());
-                    task.getPluginFile().set(packagePlugin.getArchiveFile());
+                    task.getStreaming().set(configuration.getStreamingProperty());
+                    task.getPluginFile().set(packagePlugin.flatMap(Zip::getArchiveFile));
+                    task.getSignService().set(service);
+                    task.usesService(service);
                     task.dependsOn(packagePlugin);
                 });
             }
@@ -203,25 +251,32 @@ public class TeamCityServerPlugin implements Plugin<Project> {
     }
 
     private static void configurePublishPluginTask(final Project project, final TeamCityPluginExtension extension) {
+        final TaskContainer tasks = project.getTasks();
+        final boolean offline = project.getGradle().getStartParameter().isOffline();
         project.afterEvaluate(p -> {
             if (extension.getServer().getPublish() != null) {
                 DefaultPublishConfiguration configuration = (DefaultPublishConfiguration) extension.getServer().getPublish();
-                SignPlugin signTask = (SignPlugin) p.getTasks().findByName(SIGN_PLUGIN_TASK_NAME);
-                Zip packagePlugin = (Zip) p.getTasks().getByName(SERVER_PLUGIN_TASK_NAME);
-                Provider<RegularFile> distributionFile = signTask != null ? signTask.getSignedPluginFile() : packagePlugin.getArchiveFile();
+                final TaskProvider<? extends Task> distributionTask;
+                final Provider<RegularFile> distributionFile;
+                if (extension.getServer().getSign() != null) {
+                    TaskProvider<SignPlugin> signPlugin = tasks.named(SIGN_PLUGIN_TASK_NAME, SignPlugin.class);
+                    distributionTask = signPlugin;
+                    distributionFile = signPlugin.flatMap(SignPlugin::getSignedPluginFile);
+                } else {
+                    TaskProvider<Zip> packagePlugin = tasks.named(SERVER_PLUGIN_TASK_NAME, Zip.class);
+                    distributionTask = packagePlugin;
+                    distributionFile = packagePlugin.flatMap(Zip::getArchiveFile);
+                }
 
-                p.getTasks().register(PUBLISH_PLUGIN_TASK_NAME, PublishPlugin.class, task -> {
+                tasks.register(PUBLISH_PLUGIN_TASK_NAME, PublishPlugin.class, task -> {
                     task.setGroup(TEAMCITY_GROUP);
+                    task.setEnabled(!offline);
                     task.setClasspath(p.getConfigurations().getByName(MARKETPLACE_CONFIGURATION_NAME));
                     task.getChannels().set(configuration.getChannels());
                     task.getToken().set(configuration.getTokenProperty());
                     task.getNotes().set(configuration.getNotesProperty());
                     task.getDistributionFile().set(distributionFile);
-                    if (signTask != null) {
-                        task.dependsOn(signTask);
-                    } else {
-                        task.dependsOn(packagePlugin);
-                    }
+                    task.dependsOn(distributionTask);
                 });
             }
         });
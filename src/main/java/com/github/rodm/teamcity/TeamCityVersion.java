@@ -18,9 +18,17 @@ package com.github.rodm.teamcity;
 import org.gradle.api.GradleException;
 
 import java.io.Serializable;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * A TeamCity version. The version string is parsed once and the instances are cached, calling
+ * {@link #version(String)} again with the same string returns the same instance.
+ */
 public class TeamCityVersion implements Comparable<TeamCityVersion>, Serializable {
 
     private static final Pattern RELEASE_VERSION_PATTERN = Pattern.compile("^((\\d+)(\\.\\d+)+)");
@@ -31,6 +39,9 @@ public class TeamCityVersion implements Comparable<TeamCityVersion>, Serializabl
     private static final String INVALID_SNAPSHOT_MESSAGE = "'%s' is not a valid TeamCity version string (examples: '10.0-SNAPSHOT', '2021.1' '2021.2.1-SNAPSHOT')";
 
     private static final String SNAPSHOT = "SNAPSHOT";
+    private static final String SNAPSHOT_SUFFIX = "-" + SNAPSHOT;
+
+    private static final ConcurrentMap<String, TeamCityVersion> VERSIONS = new ConcurrentHashMap<>();
 
     public static final TeamCityVersion VERSION_9_0 = version("9.0");
     public static final TeamCityVersion VERSION_2018_2 = version("2018.2");
@@ -41,6 +52,10 @@ public class TeamCityVersion implements Comparable<TeamCityVersion>, Serializabl
     }
 
     public static TeamCityVersion version(String version, boolean allowSnapshots) throws IllegalArgumentException {
+        TeamCityVersion cached = VERSIONS.get(version);
+        if (cached != null && (allowSnapshots || !cached.snapshot || cached.latest)) {
+            return cached;
+        }
         if (!version.equals(SNAPSHOT)) {
             Matcher releaseMatcher = RELEASE_VERSION_PATTERN.matcher(version);
             if (allowSnapshots) {
@@ -54,13 +69,47 @@ public class TeamCityVersion implements Comparable<TeamCityVersion>, Serializabl
                 }
             }
         }
-        return new TeamCityVersion(version);
+        return cached != null ? cached : VERSIONS.computeIfAbsent(version, TeamCityVersion::new);
     }
 
     private final String version;
 
+    /**
+     * The numeric components of the version, empty for the latest snapshot version.
+     */
+    private final int[] components;
+
+    /**
+     * The version is a snapshot, either the latest snapshot or a snapshot of a release.
+     */
+    private final boolean snapshot;
+
+    /**
+     * The version is the latest snapshot, 'SNAPSHOT', and is later than all other versions.
+     */
+    private final boolean latest;
+
+    private final String dataVersion;
+
+    private transient volatile Set<TeamCityFeature> features;
+
     private TeamCityVersion(String version) {
         this.version = version;
+        this.latest = version.equals(SNAPSHOT);
+        this.snapshot = latest || version.endsWith(SNAPSHOT_SUFFIX);
+        this.components = latest ? new int[0] : parseComponents(version);
+        Matcher matcher = DATA_VERSION_PATTERN.matcher(version);
+        this.dataVersion = matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static int[] parseComponents(String version) {
+        String release = version.endsWith(SNAPSHOT_SUFFIX) ? version.substring(0, version.length() - SNAPSHOT_SUFFIX.length()) : version;
+        String[] parts = release.split("\\.");
+        int[] components = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            components[i] = Integer.parseInt(parts[i]);
+        }
+        return components;
     }
 
     public String toString() {
@@ -68,29 +117,31 @@ public class TeamCityVersion implements Comparable<TeamCityVersion>, Serializabl
     }
 
     public int compareTo(TeamCityVersion teamcityVersion) {
-        if (version.equals(SNAPSHOT) && !teamcityVersion.version.equals(SNAPSHOT)) {
+        if (this == teamcityVersion) {
+            return 0;
+        }
+        if (latest && !teamcityVersion.latest) {
             return 1;
-        } else if (teamcityVersion.version.equals(SNAPSHOT) && !version.equals(SNAPSHOT)) {
+        } else if (teamcityVersion.latest && !latest) {
             return -1;
         } else if (version.equals(teamcityVersion.version)) {
             return 0;
         }
-        String[] versionParts = version.split("[.|-]");
-        String[] otherVersionParts = teamcityVersion.version.split("[.|-]");
-
-        for (int diff = 0; diff < versionParts.length && diff < otherVersionParts.length; ++diff){
-            if (versionParts[diff].equals(SNAPSHOT)) continue;
-            if (otherVersionParts[diff].equals(SNAPSHOT)) continue;
-            int part = Integer.parseInt(versionParts[diff]);
-            int otherPart = Integer.parseInt(otherVersionParts[diff]);
-            if (part > otherPart) {
+        final int[] otherComponents = teamcityVersion.components;
+        for (int i = 0; i < components.length && i < otherComponents.length; ++i) {
+            if (components[i] > otherComponents[i]) {
                 return 1;
             }
-            if (otherPart > part) {
+            if (otherComponents[i] > components[i]) {
                 return -1;
             }
         }
-        return (versionParts.length > otherVersionParts.length) ? 1 : -1;
+        // the snapshot marker counts as a trailing component, a longer version is the later version
+        return (length() > teamcityVersion.length()) ? 1 : -1;
+    }
+
+    private int length() {
+        return snapshot ? components.length + 1 : components.length;
     }
 
     @Override
@@ -114,11 +165,32 @@ public class TeamCityVersion implements Comparable<TeamCityVersion>, Serializabl
         return compareTo(teamcityVersion) >= 0;
     }
 
+    /**
+     * @param feature the feature to check
+     * @return true if this version of TeamCity supports the feature
+     */
+    public boolean supports(TeamCityFeature feature) {
+        Set<TeamCityFeature> supported = features;
+        if (supported == null) {
+            supported = EnumSet.noneOf(TeamCityFeature.class);
+            for (TeamCityFeature value : TeamCityFeature.values()) {
+                if (equalOrGreaterThan(value.getMinimumVersion())) {
+                    supported.add(value);
+                }
+            }
+            features = supported;
+        }
+        return supported.contains(feature);
+    }
+
     public String getDataVersion() {
-        Matcher matcher = DATA_VERSION_PATTERN.matcher(version);
-        if (matcher.find()) {
-            return matcher.group(1);
+        if (dataVersion != null) {
+            return dataVersion;
         }
         throw new GradleException("Invalid version");
     }
+
+    private Object readResolve() {
+        return VERSIONS.computeIfAbsent(version, key -> this);
+    }
 }
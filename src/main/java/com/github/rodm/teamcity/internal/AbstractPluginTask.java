@@ -16,9 +16,23 @@
 package com.github.rodm.teamcity.internal;
 
 import org.gradle.api.Transformer;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileTreeElement;
 import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.bundling.Zip;
+import org.gradle.api.tasks.bundling.ZipEntryCompression;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
 
 import static com.github.rodm.teamcity.TeamCityPlugin.PLUGIN_DESCRIPTOR_FILENAME;
 
@@ -33,4 +47,72 @@ public abstract class AbstractPluginTask extends Zip {
 
     @InputFile
     public abstract RegularFileProperty getDescriptor();
+
+    /**
+     * @return the library directory of a TeamCity installation, jars provided by the installation are excluded
+     * from the plugin archive
+     */
+    @Internal
+    public abstract DirectoryProperty getInstalledLibraries();
+
+    /**
+     * @return the stamp of the installed libraries, the jars of the installation are not hashed as task inputs
+     */
+    @Input
+    @Optional
+    public Provider<String> getInstalledLibrariesStamp() {
+        return getInstalledLibraries().map(dir -> TeamCityLibraries.stamp(dir.getAsFile()));
+    }
+
+    @Internal
+    public abstract DirectoryProperty getCacheDir();
+
+    /**
+     * @return whether the archive is updated by reusing the unchanged entries of the previous archive,
+     * the archive is equivalent to an archive written in full
+     */
+    @Internal
+    public abstract Property<Boolean> getIncremental();
+
+    /**
+     * @return whether nested zip archives, such as agent plugin archives, are stored without compressing them again
+     */
+    @Input
+    @Optional
+    public abstract Property<Boolean> getStoreNestedArchives();
+
+    @Override
+    protected CopyAction createCopyAction() {
+        boolean incremental = getIncremental().getOrElse(false);
+        boolean storeNestedArchives = getStoreNestedArchives().getOrElse(false);
+        if (incremental || storeNestedArchives) {
+            if (isZip64() || !isUtf8(getMetadataCharset())) {
+                getLogger().info("{}: Writing the archive in full, Zip64 and metadata charsets other than UTF-8 are not supported by the incremental and store archive options", getPath());
+                return super.createCopyAction();
+            }
+            boolean compressed = getEntryCompression() == ZipEntryCompression.DEFLATED;
+            Predicate<String> storedEntries = name -> storeNestedArchives && name.endsWith(".zip");
+            File entriesFile = new File(getTemporaryDir(), "archive-entries.txt");
+            return new PluginArchiveCopyAction(getArchiveFile().get().getAsFile(), entriesFile, compressed,
+                isPreserveFileTimestamps(), incremental, storedEntries);
+        }
+        return super.createCopyAction();
+    }
+
+    private static boolean isUtf8(String charset) {
+        return charset == null || Charset.forName(charset).equals(StandardCharsets.UTF_8);
+    }
+
+    protected boolean isInstalledLibrary(FileTreeElement element) {
+        if (!getInstalledLibraries().isPresent() || element.isDirectory() || !element.getName().endsWith(".jar")) {
+            return false;
+        }
+        File cacheDir = getCacheDir().isPresent() ? getCacheDir().get().getAsFile() : null;
+        TeamCityLibraries libraries = TeamCityLibraries.load(getInstalledLibraries().get().getAsFile(), cacheDir);
+        String library = libraries.findIdenticalLibrary(ClasspathIndex.checksum(element.getFile()));
+        if (library != null) {
+            getLogger().info("{}: Excluding {}, the library is provided by TeamCity as {}", getPath(), element.getName(), library);
+        }
+        return library != null;
+    }
 }
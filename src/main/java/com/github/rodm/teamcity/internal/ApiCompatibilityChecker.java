@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Checks the references of a plugin against the API signature indexes of several TeamCity versions.
+ * A reference is checked if its class is in the API of at least one of the versions and is not provided by
+ * the plugin itself.
+ */
+public class ApiCompatibilityChecker {
+
+    static final String MISSING_CLASS = "Missing class %s";
+    static final String MISSING_METHOD = "Missing method %s";
+    static final String MISSING_FIELD = "Missing field %s";
+
+    private final ApiReferences references;
+    private final Set<String> providedClasses;
+
+    /**
+     * @param references the references of the plugin classes
+     * @param providedClasses the classes of the plugin's runtime classpath, internal names
+     */
+    public ApiCompatibilityChecker(ApiReferences references, Set<String> providedClasses) {
+        this.references = references;
+        this.providedClasses = providedClasses;
+    }
+
+    /**
+     * @param indexes the API signature index for each TeamCity version
+     * @return the problems found for each version, in the order of the versions
+     */
+    public Map<String, List<String>> check(Map<String, ApiSignatureIndex> indexes) {
+        Set<String> apiClasses = new HashSet<>();
+        for (ApiSignatureIndex index : indexes.values()) {
+            apiClasses.addAll(index.getClassNames());
+        }
+        apiClasses.removeAll(references.getDeclaredClasses());
+        apiClasses.removeAll(providedClasses);
+
+        Map<String, List<String>> problems = new LinkedHashMap<>();
+        indexes.keySet().forEach(version -> problems.put(version, null));
+        indexes.entrySet().parallelStream().forEach(entry -> {
+            List<String> versionProblems = check(entry.getValue(), apiClasses);
+            synchronized (problems) {
+                problems.put(entry.getKey(), versionProblems);
+            }
+        });
+        return problems;
+    }
+
+    private List<String> check(ApiSignatureIndex index, Set<String> apiClasses) {
+        Set<String> missingClasses = new TreeSet<>();
+        for (String className : references.getClasses()) {
+            if (apiClasses.contains(className) && !index.containsClass(className)) {
+                missingClasses.add(className.replace('/', '.'));
+            }
+        }
+        Set<String> missingMembers = new TreeSet<>();
+        for (ApiReferences.MemberReference member : references.getMembers()) {
+            if (!resolveMember(member.getOwner(), member, index, apiClasses, new HashSet<>())) {
+                String format = member.isField() ? MISSING_FIELD : MISSING_METHOD;
+                missingMembers.add(String.format(format, member));
+            }
+        }
+        List<String> result = new ArrayList<>();
+        missingClasses.forEach(name -> result.add(String.format(MISSING_CLASS, name)));
+        result.addAll(missingMembers);
+        return result;
+    }
+
+    /**
+     * Resolves a member through the plugin classes to the API classes that may declare it.
+     *
+     * @return false if the member is not declared by the plugin classes or by the API classes
+     */
+    private boolean resolveMember(String owner, ApiReferences.MemberReference member, ApiSignatureIndex index,
+                                  Set<String> apiClasses, Set<String> visited)
+    {
+        if (!visited.add(owner)) {
+            return false;
+        }
+        ApiSignatureIndex.ClassSignature declaredClass = references.getDeclaredClass(owner);
+        if (declaredClass == null) {
+            if (apiClasses.contains(owner) && index.containsClass(owner)) {
+                return index.resolveMember(owner, member.getName(), member.getDescriptor(), member.isField());
+            }
+            // a class of the JDK or a dependency, or a missing API class that is reported separately
+            return true;
+        }
+        String name = member.isField() ? member.getName() : member.getName() + member.getDescriptor();
+        if (member.isField() ? declaredClass.fields.contains(name) : declaredClass.methods.contains(name)) {
+            return true;
+        }
+        if (declaredClass.superName != null && resolveMember(declaredClass.superName, member, index, apiClasses, visited)) {
+            return true;
+        }
+        for (String interfaceName : declaredClass.interfaces) {
+            if (resolveMember(interfaceName, member, index, apiClasses, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The classes, methods and fields referenced by the bytecode of a plugin. The class files are read in parallel.
+ */
+public class ApiReferences {
+
+    private final Map<String, ApiSignatureIndex.ClassSignature> declaredClasses = new ConcurrentHashMap<>();
+    private final Set<String> classes = ConcurrentHashMap.newKeySet();
+    private final Set<MemberReference> members = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param files the class directories and jars of the plugin
+     * @return the references of the plugin classes
+     */
+    public static ApiReferences scan(Iterable<File> files) {
+        ApiReferences references = new ApiReferences();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                references.scanDirectory(file.toPath());
+            } else if (file.isFile()) {
+                references.scanJar(file);
+            }
+        }
+        return references;
+    }
+
+    public Set<String> getDeclaredClasses() {
+        return Collections.unmodifiableSet(declaredClasses.keySet());
+    }
+
+    ApiSignatureIndex.ClassSignature getDeclaredClass(String name) {
+        return declaredClasses.get(name);
+    }
+
+    public Set<String> getClasses() {
+        return Collections.unmodifiableSet(classes);
+    }
+
+    public Set<MemberReference> getMembers() {
+        return Collections.unmodifiableSet(members);
+    }
+
+    private void scanDirectory(Path dir) {
+        List<Path> classFiles;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            classFiles = paths.filter(path -> path.toString().endsWith(".class")).collect(Collectors.toList());
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to read classes from " + dir, e);
+        }
+        classFiles.parallelStream().forEach(path -> {
+            try (InputStream is = Files.newInputStream(path)) {
+                scanClass(is);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void scanJar(File jar) {
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            List<ZipEntry> entries = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                if (entry.getName().endsWith(".class") && !entry.getName().startsWith("META-INF/")) {
+                    entries.add(entry);
+                }
+            }
+            entries.parallelStream().forEach(entry -> {
+                try (InputStream is = zipFile.getInputStream(entry)) {
+                    scanClass(is);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (IOException | UncheckedIOException e) {
+            throw new GradleException("Failed to read classes from " + jar, e);
+        }
+    }
+
+    private void scanClass(InputStream is) throws IOException {
+        new ClassReader(is).accept(new ReferenceCollector(), ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    }
+
+    private void addType(Type type) {
+        switch (type.getSort()) {
+            case Type.ARRAY:
+                addType(type.getElementType());
+                break;
+            case Type.OBJECT:
+                classes.add(type.getInternalName());
+                break;
+            case Type.METHOD:
+                addType(type.getReturnType());
+                for (Type argumentType : type.getArgumentTypes()) {
+                    addType(argumentType);
+                }
+                break;
+            default:
+        }
+    }
+
+    private void addClass(String internalName) {
+        if (internalName.startsWith("[")) {
+            addType(Type.getType(internalName));
+        } else {
+            classes.add(internalName);
+        }
+    }
+
+    private void addMember(String owner, String name, String descriptor, boolean field) {
+        addClass(owner);
+        addType(field ? Type.getType(descriptor) : Type.getMethodType(descriptor));
+        if (!owner.startsWith("[")) {
+            members.add(new MemberReference(owner, name, descriptor, field));
+        }
+    }
+
+    private void addConstant(Object value) {
+        if (value instanceof Type) {
+            addType((Type) value);
+        } else if (value instanceof Handle) {
+            Handle handle = (Handle) value;
+            boolean field = handle.getTag() <= Opcodes.H_PUTSTATIC;
+            addMember(handle.getOwner(), handle.getName(), handle.getDesc(), field);
+        }
+    }
+
+    private class ReferenceCollector extends ClassVisitor {
+
+        private ApiSignatureIndex.ClassSignature declaredClass;
+
+        private final MethodVisitor methodCollector = new MethodVisitor(Opcodes.ASM9) {
+            @Override
+            public void visitTypeInsn(int opcode, String type) {
+                addClass(type);
+            }
+
+            @Override
+            public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                addMember(owner, name, descriptor, true);
+            }
+
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                addMember(owner, name, descriptor, false);
+            }
+
+            @Override
+            public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+                addType(Type.getMethodType(descriptor));
+                for (Object argument : bootstrapMethodArguments) {
+                    addConstant(argument);
+                }
+            }
+
+            @Override
+            public void visitLdcInsn(Object value) {
+                addConstant(value);
+            }
+
+            @Override
+            public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+                addType(Type.getType(descriptor));
+            }
+
+            @Override
+            public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+                if (type != null) {
+                    addClass(type);
+                }
+            }
+        };
+
+        ReferenceCollector() {
+            super(Opcodes.ASM9);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            declaredClass = new ApiSignatureIndex.ClassSignature(name, superName);
+            declaredClasses.put(name, declaredClass);
+            if (superName != null) {
+                addClass(superName);
+            }
+            if (interfaces != null) {
+                for (String interfaceName : interfaces) {
+                    addClass(interfaceName);
+                    declaredClass.interfaces.add(interfaceName);
+                }
+            }
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            declaredClass.fields.add(name);
+            addType(Type.getType(descriptor));
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            declaredClass.methods.add(name + descriptor);
+            addType(Type.getMethodType(descriptor));
+            if (exceptions != null) {
+                for (String exception : exceptions) {
+                    addClass(exception);
+                }
+            }
+            return methodCollector;
+        }
+    }
+
+    /**
+     * A method or field referenced by a plugin class.
+     */
+    public static final class MemberReference {
+        private final String owner;
+        private final String name;
+        private final String descriptor;
+        private final boolean field;
+
+        MemberReference(String owner, String name, String descriptor, boolean field) {
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.field = field;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        public boolean isField() {
+            return field;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            MemberReference that = (MemberReference) o;
+            return field == that.field && owner.equals(that.owner) && name.equals(that.name) && descriptor.equals(that.descriptor);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(owner, name, descriptor, field);
+        }
+
+        @Override
+        public String toString() {
+            String className = owner.replace('/', '.');
+            return field ? className + "." + name : className + "." + name + descriptor;
+        }
+    }
+}
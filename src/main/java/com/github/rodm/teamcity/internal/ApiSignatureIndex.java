@@ -0,0 +1,310 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The class and member signatures of a set of API jars. The signatures of each jar are cached by the jar's
+ * checksum in the cache directory, using a compressed format with a shared string table.
+ */
+public class ApiSignatureIndex {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String INDEX_SUFFIX = ".sig";
+
+    private static final String OBJECT_CLASS = "java/lang/Object";
+    private static final Set<String> OBJECT_METHODS = new HashSet<>(Arrays.asList(
+        "equals(Ljava/lang/Object;)Z", "hashCode()I", "toString()Ljava/lang/String;", "getClass()Ljava/lang/Class;",
+        "clone()Ljava/lang/Object;", "finalize()V", "notify()V", "notifyAll()V", "wait()V", "wait(J)V", "wait(JI)V"));
+
+    private static final int MAX_JAR_INDEXES = 1024;
+
+    private static final BoundedCache<String, Map<String, ClassSignature>> JAR_INDEXES = new BoundedCache<>(MAX_JAR_INDEXES);
+
+    private final Map<String, ClassSignature> classes;
+
+    ApiSignatureIndex(Map<String, ClassSignature> classes) {
+        this.classes = classes;
+    }
+
+    /**
+     * Creates the index of the jars, the jar indexes are read from the cache directory or created and
+     * written to the cache directory.
+     *
+     * @param jars the API jars and their dependencies
+     * @param cacheDir the cache directory, or null to not cache the jar indexes
+     * @return the index
+     */
+    public static ApiSignatureIndex create(Iterable<File> jars, File cacheDir) {
+        Map<String, ClassSignature> classes = new HashMap<>();
+        for (File jar : jars) {
+            if (jar.isFile()) {
+                String checksum = ClasspathIndex.checksum(jar);
+                Map<String, ClassSignature> jarClasses = JAR_INDEXES.computeIfAbsent(checksum, key -> load(key, jar, cacheDir));
+                jarClasses.forEach(classes::putIfAbsent);
+            }
+        }
+        return new ApiSignatureIndex(classes);
+    }
+
+    public boolean containsClass(String name) {
+        return classes.containsKey(name);
+    }
+
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(classes.keySet());
+    }
+
+    /**
+     * Resolves a method or field in the class or its super types.
+     *
+     * @return true if the member is found, or a super type other than Object is not in the index and may declare the member
+     */
+    public boolean resolveMember(String owner, String name, String descriptor, boolean field) {
+        return resolveMember(owner, field ? name : name + descriptor, field, new HashSet<>());
+    }
+
+    private boolean resolveMember(String owner, String member, boolean field, Set<String> visited) {
+        if (!visited.add(owner)) {
+            return false;
+        }
+        ClassSignature signature = classes.get(owner);
+        if (signature == null) {
+            return OBJECT_CLASS.equals(owner) ? !field && OBJECT_METHODS.contains(member) : true;
+        }
+        if (field ? signature.fields.contains(member) : signature.methods.contains(member)) {
+            return true;
+        }
+        if (signature.superName != null && resolveMember(signature.superName, member, field, visited)) {
+            return true;
+        }
+        for (String interfaceName : signature.interfaces) {
+            if (resolveMember(interfaceName, member, field, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, ClassSignature> load(String checksum, File jar, File cacheDir) {
+        Path indexFile = cacheDir == null ? null : cacheDir.toPath().resolve(checksum + INDEX_SUFFIX);
+        if (indexFile != null && Files.isRegularFile(indexFile)) {
+            try {
+                return read(indexFile);
+            }
+            catch (IOException e) {
+                // ignore and index the jar again
+            }
+        }
+        Map<String, ClassSignature> classes = index(jar);
+        if (indexFile != null) {
+            try {
+                write(indexFile, classes);
+            }
+            catch (IOException e) {
+                // the index is only a cache, it is created again by the next build
+            }
+        }
+        return classes;
+    }
+
+    static Map<String, ClassSignature> index(File jar) {
+        Map<String, ClassSignature> classes = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class") || name.startsWith("META-INF/")) {
+                    continue;
+                }
+                try (InputStream is = zipFile.getInputStream(entry)) {
+                    SignatureReader reader = new SignatureReader();
+                    new ClassReader(is).accept(reader, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                    if (reader.signature != null) {
+                        classes.put(reader.signature.name, reader.signature);
+                    }
+                }
+                catch (RuntimeException e) {
+                    // classes that cannot be read are not indexed
+                }
+            }
+        }
+        catch (IOException e) {
+            // not a valid archive, it does not provide any classes
+        }
+        return classes;
+    }
+
+    static void write(Path indexFile, Map<String, ClassSignature> classes) throws IOException {
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringIds = new HashMap<>();
+        for (ClassSignature signature : classes.values()) {
+            id(signature.name, strings, stringIds);
+            id(signature.superName == null ? "" : signature.superName, strings, stringIds);
+            signature.interfaces.forEach(value -> id(value, strings, stringIds));
+            signature.methods.forEach(value -> id(value, strings, stringIds));
+            signature.fields.forEach(value -> id(value, strings, stringIds));
+        }
+
+        Files.createDirectories(indexFile.getParent());
+        Path tempFile = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tempFile))))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(strings.size());
+            for (String value : strings) {
+                out.writeUTF(value);
+            }
+            out.writeInt(classes.size());
+            for (ClassSignature signature : classes.values()) {
+                out.writeInt(stringIds.get(signature.name));
+                out.writeInt(stringIds.get(signature.superName == null ? "" : signature.superName));
+                writeIds(out, signature.interfaces, stringIds);
+                writeIds(out, signature.methods, stringIds);
+                writeIds(out, signature.fields, stringIds);
+            }
+        }
+        try {
+            Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static Map<String, ClassSignature> read(Path indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(indexFile))))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported index format " + indexFile);
+            }
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+            int count = in.readInt();
+            Map<String, ClassSignature> classes = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String name = strings[in.readInt()];
+                String superName = strings[in.readInt()];
+                ClassSignature signature = new ClassSignature(name, superName.isEmpty() ? null : superName);
+                readIds(in, strings, signature.interfaces);
+                readIds(in, strings, signature.methods);
+                readIds(in, strings, signature.fields);
+                classes.put(name, signature);
+            }
+            return classes;
+        }
+    }
+
+    private static void id(String value, List<String> strings, Map<String, Integer> stringIds) {
+        stringIds.computeIfAbsent(value, key -> {
+            strings.add(key);
+            return strings.size() - 1;
+        });
+    }
+
+    private static void writeIds(DataOutputStream out, Iterable<String> values, Map<String, Integer> stringIds) throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        values.forEach(value -> ids.add(stringIds.get(value)));
+        out.writeInt(ids.size());
+        for (int id : ids) {
+            out.writeInt(id);
+        }
+    }
+
+    private static void readIds(DataInputStream in, String[] strings, Collection<String> target) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            target.add(strings[in.readInt()]);
+        }
+    }
+
+    static class ClassSignature {
+        final String name;
+        final String superName;
+        final List<String> interfaces = new ArrayList<>();
+        final Set<String> methods = new HashSet<>();
+        final Set<String> fields = new HashSet<>();
+
+        ClassSignature(String name, String superName) {
+            this.name = name;
+            this.superName = superName;
+        }
+    }
+
+    private static class SignatureReader extends ClassVisitor {
+        private ClassSignature signature;
+
+        SignatureReader() {
+            super(Opcodes.ASM9);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.signature = new ClassSignature(name, superName);
+            if (interfaces != null) {
+                Collections.addAll(this.signature.interfaces, interfaces);
+            }
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            if ((access & Opcodes.ACC_PRIVATE) == 0) {
+                this.signature.fields.add(name);
+            }
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            if ((access & Opcodes.ACC_PRIVATE) == 0) {
+                this.signature.methods.add(name + descriptor);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The sizes of the entries of a plugin archive, the libraries it contains and the dependencies the libraries
+ * were resolved from. The sizes are read from the central directories of the archive and the nested archives,
+ * entries are not extracted.
+ */
+public class ArchiveSizes {
+
+    private static final int MAX_DEPTH = 2;
+
+    private final String name;
+    private final long archiveSize;
+    private final List<EntrySize> entries;
+    private final List<LibrarySize> libraries;
+
+    private ArchiveSizes(String name, long archiveSize, List<EntrySize> entries, List<LibrarySize> libraries) {
+        this.name = name;
+        this.archiveSize = archiveSize;
+        this.entries = entries;
+        this.libraries = libraries;
+    }
+
+    /**
+     * Reads the sizes of a plugin archive.
+     *
+     * @param archive the plugin archive
+     * @param coordinates the dependency coordinates of the libraries, keyed by file name
+     * @return the sizes
+     * @throws IOException if the archive cannot be read
+     */
+    public static ArchiveSizes read(File archive, Map<String, String> coordinates) throws IOException {
+        ZipIndex index = ZipIndex.read(archive);
+        List<EntrySize> entries = new ArrayList<>();
+        List<LibrarySize> libraries = new ArrayList<>();
+        readEntries(index, "", coordinates, entries, libraries, 1);
+        return new ArchiveSizes(archive.getName(), archive.length(), entries, libraries);
+    }
+
+    private static void readEntries(ZipIndex index, String prefix, Map<String, String> coordinates,
+                                    List<EntrySize> entries, List<LibrarySize> libraries, int depth)
+    {
+        for (ZipIndex.Entry entry : index.getEntries()) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String path = prefix + entry.getName();
+            if (entries != null) {
+                entries.add(new EntrySize(path, entry.getCompressedSize(), entry.getSize()));
+            }
+            if (depth <= MAX_DEPTH && isArchive(entry.getName())) {
+                libraries.add(readLibrary(index, entry, path, coordinates, libraries, depth));
+            }
+        }
+    }
+
+    private static LibrarySize readLibrary(ZipIndex index, ZipIndex.Entry entry, String path, Map<String, String> coordinates,
+                                           List<LibrarySize> libraries, int depth)
+    {
+        String fileName = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+        long contentSize = 0;
+        int entryCount = 0;
+        try {
+            ZipIndex nested = index.readNested(entry);
+            for (ZipIndex.Entry nestedEntry : nested.getEntries()) {
+                if (!nestedEntry.isDirectory()) {
+                    contentSize += nestedEntry.getSize();
+                    entryCount++;
+                }
+            }
+            readEntries(nested, path + "!/", coordinates, null, libraries, depth + 1);
+        }
+        catch (IOException e) {
+            // not a valid archive, only the size of the entry is reported
+        }
+        return new LibrarySize(path, coordinates.get(fileName), entry.getCompressedSize(), entry.getSize(), contentSize, entryCount);
+    }
+
+    private static boolean isArchive(String name) {
+        return name.endsWith(".jar") || name.endsWith(".zip");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getArchiveSize() {
+        return archiveSize;
+    }
+
+    public List<EntrySize> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public List<LibrarySize> getLibraries() {
+        return Collections.unmodifiableList(libraries);
+    }
+
+    public long getCompressedSize() {
+        return entries.stream().mapToLong(EntrySize::getCompressedSize).sum();
+    }
+
+    public long getUncompressedSize() {
+        return entries.stream().mapToLong(EntrySize::getSize).sum();
+    }
+
+    /**
+     * @return the compressed and uncompressed sizes of the libraries grouped by dependency coordinates,
+     * libraries without coordinates are grouped by file name
+     */
+    public Map<String, long[]> getDependencySizes() {
+        Map<String, long[]> result = new TreeMap<>();
+        for (LibrarySize library : libraries) {
+            String key = library.getCoordinates() != null ? library.getCoordinates() : library.getFileName();
+            long[] sizes = result.computeIfAbsent(key, k -> new long[2]);
+            sizes[0] += library.getCompressedSize();
+            sizes[1] += library.getSize();
+        }
+        return result;
+    }
+
+    public void writeJson(PrintWriter writer) {
+        writer.println("{");
+        writer.println("  \"archive\": " + quote(name) + ",");
+        writer.println("  \"archiveSize\": " + archiveSize + ",");
+        writer.println("  \"compressedSize\": " + getCompressedSize() + ",");
+        writer.println("  \"uncompressedSize\": " + getUncompressedSize() + ",");
+        writer.println("  \"entries\": [");
+        List<EntrySize> sortedEntries = sortedEntries();
+        for (int i = 0; i < sortedEntries.size(); i++) {
+            EntrySize entry = sortedEntries.get(i);
+            writer.print("    {\"path\": " + quote(entry.getPath()) + ", \"compressedSize\": " + entry.getCompressedSize() + ", \"size\": " + entry.getSize() + "}");
+            writer.println(i < sortedEntries.size() - 1 ? "," : "");
+        }
+        writer.println("  ],");
+        writer.println("  \"libraries\": [");
+        List<LibrarySize> sortedLibraries = sortedLibraries();
+        for (int i = 0; i < sortedLibraries.size(); i++) {
+            LibrarySize library = sortedLibraries.get(i);
+            writer.print("    {\"path\": " + quote(library.getPath())
+                + ", \"coordinates\": " + (library.getCoordinates() == null ? "null" : quote(library.getCoordinates()))
+                + ", \"compressedSize\": " + library.getCompressedSize()
+                + ", \"size\": " + library.getSize()
+                + ", \"contentSize\": " + library.getContentSize()
+                + ", \"entryCount\": " + library.getEntryCount() + "}");
+            writer.println(i < sortedLibraries.size() - 1 ? "," : "");
+        }
+        writer.println("  ],");
+        writer.println("  \"dependencies\": [");
+        List<Map.Entry<String, long[]>> dependencies = new ArrayList<>(getDependencySizes().entrySet());
+        for (int i = 0; i < dependencies.size(); i++) {
+            Map.Entry<String, long[]> dependency = dependencies.get(i);
+            writer.print("    {\"dependency\": " + quote(dependency.getKey()) + ", \"compressedSize\": " + dependency.getValue()[0] + ", \"size\": " + dependency.getValue()[1] + "}");
+            writer.println(i < dependencies.size() - 1 ? "," : "");
+        }
+        writer.println("  ]");
+        writer.println("}");
+    }
+
+    public void writeHtml(PrintWriter writer) {
+        writer.println("<!DOCTYPE html>");
+        writer.println("<html><head><meta charset=\"UTF-8\"><title>Plugin size report: " + escape(name) + "</title>");
+        writer.println("<style>body{font-family:sans-serif}table{border-collapse:collapse}td,th{padding:2px 8px;border-bottom:1px solid #ddd}td.size{text-align:right}</style>");
+        writer.println("</head><body>");
+        writer.println("<h1>" + escape(name) + "</h1>");
+        writer.println("<p>Archive size: " + formatSize(archiveSize) + ", compressed entries: " + formatSize(getCompressedSize())
+            + ", uncompressed entries: " + formatSize(getUncompressedSize()) + "</p>");
+
+        writer.println("<h2>Entries</h2>");
+        writer.println("<table><tr><th>Path</th><th>Compressed</th><th>Uncompressed</th></tr>");
+        for (EntrySize entry : sortedEntries()) {
+            writer.println("<tr><td>" + escape(entry.getPath()) + "</td>" + sizeCell(entry.getCompressedSize()) + sizeCell(entry.getSize()) + "</tr>");
+        }
+        writer.println("</table>");
+
+        writer.println("<h2>Libraries</h2>");
+        writer.println("<table><tr><th>Path</th><th>Dependency</th><th>Compressed</th><th>Uncompressed</th><th>Content</th><th>Entries</th></tr>");
+        for (LibrarySize library : sortedLibraries()) {
+            writer.println("<tr><td>" + escape(library.getPath()) + "</td><td>" + escape(library.getCoordinates() == null ? "" : library.getCoordinates()) + "</td>"
+                + sizeCell(library.getCompressedSize()) + sizeCell(library.getSize()) + sizeCell(library.getContentSize())
+                + "<td class=\"size\">" + library.getEntryCount() + "</td></tr>");
+        }
+        writer.println("</table>");
+
+        writer.println("<h2>Dependencies</h2>");
+        writer.println("<table><tr><th>Dependency</th><th>Compressed</th><th>Uncompressed</th></tr>");
+        getDependencySizes().entrySet().stream()
+            .sorted(Comparator.comparing((Map.Entry<String, long[]> e) -> e.getValue()[0]).reversed())
+            .forEach(dependency -> writer.println("<tr><td>" + escape(dependency.getKey()) + "</td>"
+                + sizeCell(dependency.getValue()[0]) + sizeCell(dependency.getValue()[1]) + "</tr>"));
+        writer.println("</table>");
+        writer.println("</body></html>");
+    }
+
+    private List<EntrySize> sortedEntries() {
+        List<EntrySize> result = new ArrayList<>(entries);
+        result.sort(Comparator.comparingLong(EntrySize::getCompressedSize).reversed().thenComparing(EntrySize::getPath));
+        return result;
+    }
+
+    private List<LibrarySize> sortedLibraries() {
+        List<LibrarySize> result = new ArrayList<>(libraries);
+        result.sort(Comparator.comparingLong(LibrarySize::getCompressedSize).reversed().thenComparing(LibrarySize::getPath));
+        return result;
+    }
+
+    private static String sizeCell(long size) {
+        return "<td class=\"size\">" + formatSize(size) + "</td>";
+    }
+
+    public static String formatSize(long size) {
+        if (size < 1024) {
+            return size + " B";
+        }
+        if (size < 1024 * 1024) {
+            return String.format("%.1f KB", size / 1024.0);
+        }
+        return String.format("%.1f MB", size / (1024.0 * 1024.0));
+    }
+
+    private static String quote(String value) {
+        StringBuilder result = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"': result.append("\\\""); break;
+                case '\\': result.append("\\\\"); break;
+                case '\n': result.append("\\n"); break;
+                case '\r': result.append("\\r"); break;
+                case '\t': result.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        result.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        result.append(c);
+                    }
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    public static final class EntrySize {
+        private final String path;
+        private final long compressedSize;
+        private final long size;
+
+        EntrySize(String path, long compressedSize, long size) {
+            this.path = path;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    public static final class LibrarySize {
+        private final String path;
+        private final String coordinates;
+        private final long compressedSize;
+        private final long size;
+        private final long contentSize;
+        private final int entryCount;
+
+        LibrarySize(String path, String coordinates, long compressedSize, long size, long contentSize, int entryCount) {
+            this.path = path;
+            this.coordinates = coordinates;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.contentSize = contentSize;
+            this.entryCount = entryCount;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getFileName() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        /**
+         * @return the dependency coordinates, or null if the library was not resolved from a dependency
+         */
+        public String getCoordinates() {
+            return coordinates;
+        }
+
+        /**
+         * @return the size of the library in the archive that contains it
+         */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * @return the size of the library file
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the uncompressed size of the entries of the library
+         */
+        public long getContentSize() {
+            return contentSize;
+        }
+
+        public int getEntryCount() {
+            return entryCount;
+        }
+    }
+}
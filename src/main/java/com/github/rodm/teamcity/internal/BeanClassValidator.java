@@ -0,0 +1,216 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Checks that the implementation class of a bean can be created by the Spring container. The class headers are
+ * read from the plugin jar and the runtime classpath when first needed, only the class access flags and the
+ * constructor signatures are read.
+ */
+public class BeanClassValidator implements Closeable {
+
+    static final String NOT_INSTANTIABLE = "an abstract class or an interface";
+    static final String INNER_CLASS = "a non-static inner class";
+
+    private final File archive;
+    private final Set<String> archiveClasses;
+    private final List<File> classpath;
+    private final ClasspathIndex index;
+    private final Map<String, Optional<ClassHeader>> headers = new ConcurrentHashMap<>();
+    private final Map<File, ZipFile> zipFiles = new ConcurrentHashMap<>();
+
+    /**
+     * @param archive the plugin jar, or null if the jar is not available
+     * @param archiveClasses the class files in the plugin jar
+     * @param classpath the jars and directories searched in order for the bean classes not in the plugin jar
+     * @param index the index used to find the jar or directory containing a class
+     */
+    public BeanClassValidator(File archive, Set<String> archiveClasses, Iterable<File> classpath, ClasspathIndex index) {
+        this.archive = archive;
+        this.archiveClasses = archiveClasses;
+        this.classpath = new ArrayList<>();
+        classpath.forEach(this.classpath::add);
+        this.index = index;
+    }
+
+    /**
+     * @param bean the bean
+     * @return the reason the bean class cannot be instantiated, or null if the class is valid or cannot be read
+     */
+    public String checkInstantiable(PluginBean bean) {
+        if (!bean.isInstantiated()) {
+            return null;
+        }
+        ClassHeader header = header(bean.getClassName()).orElse(null);
+        if (header == null) {
+            return null;
+        }
+        if ((header.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE)) != 0) {
+            return NOT_INSTANTIABLE;
+        }
+        if (header.innerClass) {
+            return INNER_CLASS;
+        }
+        return null;
+    }
+
+    /**
+     * @param bean the bean
+     * @return true if the bean class has a constructor that accepts the bean's constructor arguments,
+     * or the class cannot be read
+     */
+    public boolean hasMatchingConstructor(PluginBean bean) {
+        if (!bean.isInstantiated()) {
+            return true;
+        }
+        ClassHeader header = header(bean.getClassName()).orElse(null);
+        if (header == null) {
+            return true;
+        }
+        int args = bean.getConstructorArgs();
+        for (int parameters : header.constructors) {
+            if (parameters == args || (bean.isAutowireConstructor() && parameters > args)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Optional<ClassHeader> header(String className) {
+        return headers.computeIfAbsent(className, name -> Optional.ofNullable(readHeader(name)));
+    }
+
+    private ClassHeader readHeader(String className) {
+        String classFile = className.replace('.', '/') + ".class";
+        File file = archiveClasses.contains(classFile) ? archive : findFile(classFile);
+        if (file == null) {
+            return null;
+        }
+        try {
+            return file.isDirectory() ? readHeader(new File(file, classFile)) : readHeader(file, classFile);
+        }
+        catch (IOException | RuntimeException e) {
+            // an unreadable class is not validated
+            return null;
+        }
+    }
+
+    private File findFile(String classFile) {
+        for (File file : classpath) {
+            if (index.classes(file).contains(classFile)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private static ClassHeader readHeader(File classFile) throws IOException {
+        try (InputStream is = Files.newInputStream(classFile.toPath())) {
+            return ClassHeader.read(is);
+        }
+    }
+
+    private ClassHeader readHeader(File jarFile, String classFile) throws IOException {
+        ZipFile zipFile = zipFiles.get(jarFile);
+        if (zipFile == null) {
+            synchronized (zipFiles) {
+                zipFile = zipFiles.get(jarFile);
+                if (zipFile == null) {
+                    zipFile = new ZipFile(jarFile);
+                    zipFiles.put(jarFile, zipFile);
+                }
+            }
+        }
+        ZipEntry entry = zipFile.getEntry(classFile);
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream is = zipFile.getInputStream(entry)) {
+            return ClassHeader.read(is);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ZipFile zipFile : zipFiles.values()) {
+            try {
+                zipFile.close();
+            }
+            catch (IOException e) {
+                // ignore
+            }
+        }
+        zipFiles.clear();
+    }
+
+    static class ClassHeader extends ClassVisitor {
+        private String name;
+        private int access;
+        private boolean innerClass;
+        private final List<Integer> constructors = new ArrayList<>();
+
+        ClassHeader() {
+            super(Opcodes.ASM9);
+        }
+
+        static ClassHeader read(InputStream is) throws IOException {
+            ClassHeader header = new ClassHeader();
+            new ClassReader(is).accept(header, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            return header;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.name = name;
+            this.access = access;
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            if (name.equals(this.name) && outerName != null && (access & Opcodes.ACC_STATIC) == 0) {
+                innerClass = true;
+            }
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            if ("<init>".equals(name)) {
+                constructors.add(Type.getArgumentTypes(descriptor).length);
+            }
+            return null;
+        }
+    }
+}
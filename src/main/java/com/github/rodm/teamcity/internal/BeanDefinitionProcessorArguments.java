@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.process.CommandLineArgumentProvider;
+
+import java.util.Collections;
+
+/**
+ * Passes the plugin name used for the generated bean definition files to the annotation processor.
+ */
+public class BeanDefinitionProcessorArguments implements CommandLineArgumentProvider {
+
+    public static final String PLUGIN_NAME_OPTION = "teamcity.plugin.name";
+
+    private final Provider<Boolean> enabled;
+    private final String pluginName;
+
+    public BeanDefinitionProcessorArguments(Provider<Boolean> enabled, String pluginName) {
+        this.enabled = enabled;
+        this.pluginName = pluginName;
+    }
+
+    @Input
+    public Provider<Boolean> getEnabled() {
+        return enabled;
+    }
+
+    @Input
+    public String getPluginName() {
+        return pluginName;
+    }
+
+    @Override
+    public Iterable<String> asArguments() {
+        if (enabled.get()) {
+            return Collections.singletonList("-A" + PLUGIN_NAME_OPTION + "=" + pluginName);
+        }
+        return Collections.emptyList();
+    }
+}
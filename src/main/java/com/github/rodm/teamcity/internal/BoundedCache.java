@@ -0,0 +1,75 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * An in-memory cache that keeps the most recently used values, up to a maximum number of entries. The caches
+ * are held by static fields and live as long as the Gradle daemon, the bound stops them growing with every
+ * jar and TeamCity installation a long-lived daemon has seen. Values are computed outside the lock, two
+ * threads may compute the same value, the first value stored is returned to both.
+ */
+public final class BoundedCache<K, V> {
+
+    private final Map<K, V> values;
+
+    public BoundedCache(final int maxEntries) {
+        this.values = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        synchronized (values) {
+            V value = values.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        V value = function.apply(key);
+        synchronized (values) {
+            V current = values.putIfAbsent(key, value);
+            return current != null ? current : value;
+        }
+    }
+
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        V current;
+        synchronized (values) {
+            current = values.get(key);
+        }
+        V value = function.apply(key, current);
+        if (value != current) {
+            synchronized (values) {
+                values.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public int size() {
+        synchronized (values) {
+            return values.size();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Calculates the fingerprint of a certificate chain used to sign a plugin. The fingerprint identifies the signer
+ * without exposing the private key, it is used as an input of the sign task in place of the key.
+ */
+public final class CertificateFingerprint {
+
+    private static final Pattern PEM_CERTIFICATE = Pattern.compile(
+        "-----BEGIN CERTIFICATE-----([A-Za-z0-9+/=\\s]+)-----END CERTIFICATE-----");
+
+    private CertificateFingerprint() {
+    }
+
+    /**
+     * Returns the SHA-256 fingerprints of the certificates of a PEM encoded certificate chain, separated by
+     * commas. Text that contains no PEM certificates is fingerprinted as a whole.
+     *
+     * @param certificateChain the PEM encoded certificate chain
+     * @return the fingerprint of the certificate chain
+     */
+    public static String of(String certificateChain) {
+        List<String> fingerprints = new ArrayList<>();
+        Matcher matcher = PEM_CERTIFICATE.matcher(certificateChain);
+        while (matcher.find()) {
+            String encoded = matcher.group(1).replaceAll("\\s", "");
+            try {
+                fingerprints.add(sha256(Base64.getDecoder().decode(encoded)));
+            }
+            catch (IllegalArgumentException e) {
+                fingerprints.add(sha256(encoded.getBytes(StandardCharsets.US_ASCII)));
+            }
+        }
+        if (fingerprints.isEmpty()) {
+            fingerprints.add(sha256(certificateChain.trim().getBytes(StandardCharsets.UTF_8)));
+        }
+        return String.join(",", fingerprints);
+    }
+
+    private static String sha256(byte[] contents) {
+        try {
+            StringBuilder result = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(contents)) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
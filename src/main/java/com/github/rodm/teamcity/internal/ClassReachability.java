@@ -0,0 +1,187 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Computes the classes reachable from a set of root classes. The references of a class are read from the
+ * strings of its constant pool, this includes the classes, descriptors and generic signatures used by the class
+ * and string constants naming a class, for example the argument of {@code Class.forName}. Only names of classes
+ * in the class pool are followed. Each wave of newly reached classes is scanned in parallel.
+ */
+public class ClassReachability {
+
+    private static final int CONSTANT_UTF8 = 1;
+
+    private static final Pattern TEXT_RESOURCE = Pattern.compile(".*\\.(xml|jsp|jspf|tag|tld|properties|handlers|schemas)|META-INF/services/.*");
+    private static final Pattern QUALIFIED_NAME = Pattern.compile("[A-Za-z_$][\\w$]*(?:\\.[A-Za-z_$][\\w$]*)+");
+    private static final Pattern TYPE_REFERENCE = Pattern.compile("L([\\w/$]+)[;<]");
+
+    private final Set<String> classNames;
+    private final Function<String, byte[]> classBytes;
+
+    /**
+     * @param classNames the internal names of the classes in the class pool
+     * @param classBytes returns the bytes of a class in the class pool, it is called concurrently
+     */
+    public ClassReachability(Set<String> classNames, Function<String, byte[]> classBytes) {
+        this.classNames = classNames;
+        this.classBytes = classBytes;
+    }
+
+    /**
+     * @param roots the internal names of the root classes
+     * @return the internal names of the roots and the classes reachable from them
+     */
+    public Set<String> reachable(Collection<String> roots) {
+        Set<String> reached = ConcurrentHashMap.newKeySet();
+        Set<String> wave = roots.stream().filter(classNames::contains).collect(Collectors.toSet());
+        reached.addAll(wave);
+        while (!wave.isEmpty()) {
+            wave = wave.parallelStream()
+                .flatMap(name -> references(name).stream())
+                .filter(reached::add)
+                .collect(Collectors.toSet());
+        }
+        return reached;
+    }
+
+    /**
+     * Finds the entry points of a plugin. These are the classes named in the text resources of the classpath,
+     * such as Spring bean definition files, service files and JSP pages, the classes of packages named in
+     * the text resources, for example by a component scan, and the classes matching the keep patterns.
+     *
+     * @param contents the plugin classpath
+     * @param keepClasses patterns of classes to keep, see {@link #matches(String, String)}
+     * @return the internal names of the root classes
+     */
+    public static Set<String> roots(ClasspathContents contents, Collection<String> keepClasses) {
+        Set<String> classNames = contents.getClasses().keySet();
+        Set<String> packages = new HashSet<>();
+        for (String name : classNames) {
+            int index = name.lastIndexOf('/');
+            packages.add(index < 0 ? "" : name.substring(0, index));
+        }
+
+        Set<String> roots = new LinkedHashSet<>();
+        List<String> rootPackages = new ArrayList<>();
+        for (Map.Entry<String, List<ClasspathContents.Entry>> resource : contents.getResources().entrySet()) {
+            if (!TEXT_RESOURCE.matcher(resource.getKey()).matches()) {
+                continue;
+            }
+            for (ClasspathContents.Entry entry : resource.getValue()) {
+                Matcher matcher = QUALIFIED_NAME.matcher(new String(entry.read(), StandardCharsets.UTF_8));
+                while (matcher.find()) {
+                    String name = matcher.group().replace('.', '/');
+                    if (classNames.contains(name)) {
+                        roots.add(name);
+                    } else if (packages.contains(name)) {
+                        rootPackages.add(name + "/**");
+                    }
+                }
+            }
+        }
+        for (String pattern : keepClasses) {
+            rootPackages.add(pattern.replace('.', '/'));
+        }
+        for (String name : classNames) {
+            if (rootPackages.stream().anyMatch(pattern -> matches(pattern, name))) {
+                roots.add(name);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * @param pattern a class name, a package name followed by '/*', or followed by '/**' to include
+     * sub-packages, using internal names
+     * @param className the internal class name
+     * @return true if the class matches the pattern, nested classes match the pattern of the outer class
+     */
+    public static boolean matches(String pattern, String className) {
+        if (pattern.endsWith("/**")) {
+            return className.startsWith(pattern.substring(0, pattern.length() - 2));
+        }
+        if (pattern.endsWith("/*")) {
+            String prefix = pattern.substring(0, pattern.length() - 1);
+            return className.startsWith(prefix) && className.indexOf('/', prefix.length()) < 0;
+        }
+        return className.equals(pattern) || className.startsWith(pattern + "$");
+    }
+
+    Set<String> references(String className) {
+        byte[] bytes = classBytes.apply(className);
+        Set<String> result = new HashSet<>();
+        ClassReader reader = new ClassReader(bytes);
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            int offset = reader.getItem(i);
+            if (offset == 0 || bytes[offset - 1] != CONSTANT_UTF8) {
+                continue;
+            }
+            addReferences(readUtf8(bytes, offset), result);
+        }
+        result.remove(className);
+        return result;
+    }
+
+    private void addReferences(String value, Set<String> result) {
+        String name = value.indexOf('/') < 0 ? value.replace('.', '/') : value;
+        if (name.startsWith("[")) {
+            name = name.substring(name.lastIndexOf('[') + 1);
+        }
+        if (classNames.contains(name)) {
+            result.add(name);
+        }
+        if (value.indexOf('L') >= 0 && value.indexOf(';') > 0) {
+            Matcher matcher = TYPE_REFERENCE.matcher(value);
+            while (matcher.find()) {
+                String type = matcher.group(1);
+                if (classNames.contains(type)) {
+                    result.add(type);
+                }
+            }
+        }
+    }
+
+    private static String readUtf8(byte[] bytes, int offset) {
+        int length = ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, offset, length + 2))) {
+            return in.readUTF();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The classes and resources of the jars and directories of a classpath. A class is taken from the first
+ * classpath element that contains it, every occurrence of a resource is kept so that files with the same
+ * name can be merged. Jars are kept open until the contents are closed, entries are read on demand and
+ * can be read concurrently.
+ */
+public class ClasspathContents implements Closeable {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    /**
+     * A class or resource in a classpath element.
+     */
+    public static class Entry {
+        private final String name;
+        private final ZipFile zip;
+        private final Path file;
+
+        Entry(String name, ZipFile zip, Path file) {
+            this.name = name;
+            this.zip = zip;
+            this.file = file;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getSource() {
+            return zip != null ? zip.getName() : file.toString();
+        }
+
+        public byte[] read() {
+            try (InputStream in = zip != null ? zip.getInputStream(zip.getEntry(name)) : Files.newInputStream(file)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+                return out.toByteArray();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Failed to read " + name + " from " + getSource(), e);
+            }
+        }
+    }
+
+    private final List<ZipFile> zips = new ArrayList<>();
+    private final Map<String, Entry> classes = new LinkedHashMap<>();
+    private final Map<String, List<Entry>> resources = new LinkedHashMap<>();
+
+    private ClasspathContents() {
+    }
+
+    public static ClasspathContents read(Iterable<File> classpath) throws IOException {
+        ClasspathContents contents = new ClasspathContents();
+        try {
+            for (File element : classpath) {
+                if (element.isDirectory()) {
+                    contents.addDirectory(element.toPath());
+                } else if (element.isFile()) {
+                    contents.addJar(element);
+                }
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            contents.close();
+            throw e;
+        }
+        return contents;
+    }
+
+    /**
+     * @return the classes, keyed by the internal class name
+     */
+    public Map<String, Entry> getClasses() {
+        return Collections.unmodifiableMap(classes);
+    }
+
+    /**
+     * @return the resources, keyed by name, with each occurrence in classpath order
+     */
+    public Map<String, List<Entry>> getResources() {
+        return Collections.unmodifiableMap(resources);
+    }
+
+    private void addJar(File file) throws IOException {
+        ZipFile zip = new ZipFile(file);
+        zips.add(zip);
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory()) {
+                add(new Entry(entry.getName(), zip, null));
+            }
+        }
+    }
+
+    private void addDirectory(Path dir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(dir)) {
+            files = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String name = dir.relativize(file).toString().replace(File.separatorChar, '/');
+            add(new Entry(name, null, file));
+        }
+    }
+
+    private void add(Entry entry) {
+        String name = entry.getName();
+        if (name.endsWith(CLASS_SUFFIX) && !name.startsWith("META-INF/") && !name.endsWith("module-info.class")) {
+            classes.putIfAbsent(name.substring(0, name.length() - CLASS_SUFFIX.length()), entry);
+        } else {
+            resources.computeIfAbsent(name, key -> new ArrayList<>()).add(entry);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (ZipFile zip : zips) {
+            try {
+                zip.close();
+            }
+            catch (IOException e) {
+                failure = e;
+            }
+        }
+        zips.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Provides the class files contained in the jars and directories of a classpath. The classes of a jar are read
+ * from its central directory and cached by the jar's checksum, in memory and in the cache directory, so a jar is
+ * only indexed once across builds.
+ */
+public class ClasspathIndex {
+
+    private static final Pattern SHA1 = Pattern.compile("[0-9a-f]{40}");
+
+    private static final String CACHES_DIR = "caches";
+    private static final String MODULES_DIR = "modules-2";
+    private static final String FILES_DIR = "files-2.1";
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String INDEX_SUFFIX = ".classes";
+
+    private static final int MAX_CHECKSUMS = 8192;
+    private static final int MAX_CLASSES = 2048;
+
+    private static final BoundedCache<String, String> CHECKSUMS = new BoundedCache<>(MAX_CHECKSUMS);
+    private static final BoundedCache<String, Set<String>> CLASSES = new BoundedCache<>(MAX_CLASSES);
+
+    private final File cacheDir;
+
+    public ClasspathIndex(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @param file a jar file or a directory of classes
+     * @return the paths of the class files, for example {@code example/Plugin.class}
+     */
+    public Set<String> classes(File file) {
+        if (file.isDirectory()) {
+            return directoryClasses(file.toPath());
+        }
+        if (!file.isFile()) {
+            return Collections.emptySet();
+        }
+        String checksum = checksum(file);
+        return CLASSES.computeIfAbsent(checksum, key -> cachedClasses(key, file));
+    }
+
+    private Set<String> cachedClasses(String checksum, File file) {
+        Path indexFile = cacheDir == null ? null : cacheDir.toPath().resolve(checksum + INDEX_SUFFIX);
+        if (indexFile != null && Files.isRegularFile(indexFile)) {
+            try (Stream<String> lines = Files.lines(indexFile, StandardCharsets.UTF_8)) {
+                return Collections.unmodifiableSet(lines.collect(Collectors.toSet()));
+            }
+            catch (IOException e) {
+                // ignore and index the jar again
+            }
+        }
+
+        Set<String> classes = jarClasses(file);
+        if (indexFile != null) {
+            writeIndex(indexFile, classes);
+        }
+        return classes;
+    }
+
+    private static Set<String> jarClasses(File file) {
+        try {
+            Set<String> classes = new HashSet<>();
+            for (ZipIndex.Entry entry : ZipIndex.read(file).getEntries()) {
+                if (entry.getName().endsWith(CLASS_SUFFIX)) {
+                    classes.add(entry.getName());
+                }
+            }
+            return Collections.unmodifiableSet(classes);
+        }
+        catch (IOException e) {
+            // not a valid archive, it cannot provide any classes
+            return Collections.emptySet();
+        }
+    }
+
+    private static Set<String> directoryClasses(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths
+                .filter(path -> path.getFileName().toString().endsWith(CLASS_SUFFIX))
+                .map(path -> dir.relativize(path).toString().replace(File.separatorChar, '/'))
+                .collect(Collectors.toSet());
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to read classes from " + dir, e);
+        }
+    }
+
+    private static void writeIndex(Path indexFile, Set<String> classes) {
+        try {
+            Files.createDirectories(indexFile.getParent());
+            Path tempFile = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+            Files.write(tempFile, classes, StandardCharsets.UTF_8);
+            try {
+                Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e) {
+            // the index is only a cache, it is created again by the next build
+        }
+    }
+
+    /**
+     * Returns the SHA-1 checksum of a file. Files in the Gradle dependency cache,
+     * {@code <gradleUserHome>/caches/modules-2/files-2.1/<group>/<module>/<version>/<sha1>/}, are stored in a
+     * directory named with their SHA-1 checksum, the name is used without reading the file.
+     *
+     * @param file the file
+     * @return the checksum as a hex string
+     */
+    public static String checksum(File file) {
+        String dirName = dependencyCacheChecksum(file);
+        if (dirName != null) {
+            return dirName;
+        }
+        String key = file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified();
+        return CHECKSUMS.computeIfAbsent(key, k -> sha1(file));
+    }
+
+    private static String dependencyCacheChecksum(File file) {
+        File checksumDir = file.getAbsoluteFile().getParentFile();
+        if (checksumDir == null || !SHA1.matcher(checksumDir.getName()).matches()) {
+            return null;
+        }
+        File filesDir = ancestor(checksumDir, 4);
+        File modulesDir = ancestor(filesDir, 1);
+        File cachesDir = ancestor(modulesDir, 1);
+        boolean dependencyCache = filesDir != null && FILES_DIR.equals(filesDir.getName())
+            && modulesDir != null && MODULES_DIR.equals(modulesDir.getName())
+            && cachesDir != null && CACHES_DIR.equals(cachesDir.getName());
+        return dependencyCache ? checksumDir.getName() : null;
+    }
+
+    private static File ancestor(File file, int levels) {
+        File result = file;
+        for (int i = 0; i < levels && result != null; i++) {
+            result = result.getParentFile();
+        }
+        return result;
+    }
+
+    private static String sha1(File file) {
+        try (InputStream is = Files.newInputStream(file.toPath())) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest.digest()) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        }
+        catch (IOException | NoSuchAlgorithmException e) {
+            throw new GradleException("Failed to calculate checksum of " + file, e);
+        }
+    }
+}
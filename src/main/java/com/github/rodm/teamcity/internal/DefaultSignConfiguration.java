@@ -27,12 +27,14 @@ public class DefaultSignConfiguration implements SignConfiguration {
     private final Property<String> certificateChain;
     private final Property<String> privateKey;
     private final Property<String> password;
+    private final Property<Boolean> streaming;
 
     @Inject
     public DefaultSignConfiguration(ObjectFactory objectFactory) {
         this.certificateChain = objectFactory.property(String.class);
         this.privateKey = objectFactory.property(String.class);
         this.password = objectFactory.property(String.class);
+        this.streaming = objectFactory.property(Boolean.class).convention(false);
     }
 
     public String getCertificateChain() {
@@ -73,4 +75,17 @@ public class DefaultSignConfiguration implements SignConfiguration {
     public Provider<String> getPasswordProperty() {
         return password;
     }
+
+    public boolean getStreaming() {
+        return streaming.get();
+    }
+
+    @Override
+    public void setStreaming(boolean streaming) {
+        this.streaming.set(streaming);
+    }
+
+    public Provider<Boolean> getStreamingProperty() {
+        return streaming;
+    }
 }
@@ -17,12 +17,16 @@ package com.github.rodm.teamcity.internal;
 
 import com.github.rodm.teamcity.TeamCityEnvironment;
 import com.github.rodm.teamcity.TeamCityVersion;
+import com.github.rodm.teamcity.tasks.CreateClassDataArchive;
+import com.github.rodm.teamcity.tasks.StopAgent;
+import com.github.rodm.teamcity.tasks.StopServer;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -51,8 +55,14 @@ public class DefaultTeamCityEnvironment implements TeamCityEnvironment {
     private final Property<String> dataDir;
     private final Property<String> javaHome;
     private final ConfigurableFileCollection plugins;
+    private final ConfigurableFileCollection agentPlugins;
     private final ListProperty<String> serverOptions;
     private final ListProperty<String> agentOptions;
+    private final Property<Integer> stopTimeout;
+    private final Property<Integer> serverPort;
+    private final Property<Integer> agentPort;
+    private final Property<Boolean> stopAfterBuild;
+    private final Property<Boolean> classDataSharing;
 
     public DefaultTeamCityEnvironment(String name, DefaultTeamCityEnvironments environments, ObjectFactory factory) {
         this.name = name;
@@ -63,9 +73,15 @@ public class DefaultTeamCityEnvironment implements TeamCityEnvironment {
         this.dataDir = factory.property(String.class).convention(defaultDataDir());
         this.javaHome = factory.property(String.class).convention(System.getProperty("java.home"));
         this.plugins = factory.fileCollection();
+        this.agentPlugins = factory.fileCollection();
         this.serverOptions = factory.listProperty(String.class);
         this.serverOptions.addAll(DEFAULT_SERVER_OPTIONS);
         this.agentOptions = factory.listProperty(String.class);
+        this.stopTimeout = factory.property(Integer.class).convention(TeamCityStopTask.DEFAULT_STOP_TIMEOUT);
+        this.serverPort = factory.property(Integer.class).convention(StopServer.DEFAULT_SERVER_PORT);
+        this.agentPort = factory.property(Integer.class).convention(StopAgent.DEFAULT_AGENT_PORT);
+        this.stopAfterBuild = factory.property(Boolean.class).convention(false);
+        this.classDataSharing = factory.property(Boolean.class).convention(false);
     }
 
     public final String getName() {
@@ -88,7 +104,11 @@ public class DefaultTeamCityEnvironment implements TeamCityEnvironment {
      * The download URL used to download the TeamCity distribution for this environment.
      */
     public String getDownloadUrl() {
-        return gradleProperty(propertyName("downloadUrl")).orElse(downloadUrl).get();
+        return getDownloadUrlProperty().get();
+    }
+
+    public Provider<String> getDownloadUrlProperty() {
+        return gradleProperty(propertyName("downloadUrl")).orElse(downloadUrl);
     }
 
     public void setDownloadUrl(String downloadUrl) {
@@ -163,6 +183,21 @@ public class DefaultTeamCityEnvironment implements TeamCityEnvironment {
         this.plugins.from(plugin);
     }
 
+    /**
+     * The list of agent plugins to be deployed directly to the Build Agent of this environment.
+     */
+    public Object getAgentPlugins() {
+        return agentPlugins;
+    }
+
+    public void setAgentPlugins(Object plugins) {
+        this.agentPlugins.setFrom(plugins);
+    }
+
+    public void agentPlugins(Object plugin) {
+        this.agentPlugins.from(plugin);
+    }
+
     /**
      * The Java command line options to be used when starting the TeamCity Server.
      * Defaults to
@@ -216,6 +251,113 @@ public class DefaultTeamCityEnvironment implements TeamCityEnvironment {
         return gradleProperty(propertyName("agentOptions")).orElse(asStringProvider(agentOptions));
     }
 
+    /**
+     * The time in seconds to wait for the TeamCity Server and Build Agent to stop before the process is killed.
+     */
+    public int getStopTimeout() {
+        return getStopTimeoutProperty().get();
+    }
+
+    public void setStopTimeout(int stopTimeout) {
+        this.stopTimeout.set(stopTimeout);
+    }
+
+    public Provider<Integer> getStopTimeoutProperty() {
+        return gradleProperty(propertyName("stopTimeout")).map(Integer::valueOf).orElse(stopTimeout);
+    }
+
+    /**
+     * The port the TeamCity Server listens on.
+     */
+    public int getServerPort() {
+        return getServerPortProperty().get();
+    }
+
+    public void setServerPort(int serverPort) {
+        this.serverPort.set(serverPort);
+    }
+
+    public Provider<Integer> getServerPortProperty() {
+        return gradleProperty(propertyName("serverPort")).map(Integer::valueOf).orElse(serverPort);
+    }
+
+    /**
+     * The port the TeamCity Build Agent listens on.
+     */
+    public int getAgentPort() {
+        return getAgentPortProperty().get();
+    }
+
+    public void setAgentPort(int agentPort) {
+        this.agentPort.set(agentPort);
+    }
+
+    public Provider<Integer> getAgentPortProperty() {
+        return gradleProperty(propertyName("agentPort")).map(Integer::valueOf).orElse(agentPort);
+    }
+
+    /**
+     * Stop the TeamCity Server and Build Agent started by the build when the build finishes.
+     */
+    public boolean getStopAfterBuild() {
+        return getStopAfterBuildProperty().get();
+    }
+
+    public void setStopAfterBuild(boolean stopAfterBuild) {
+        this.stopAfterBuild.set(stopAfterBuild);
+    }
+
+    public Provider<Boolean> getStopAfterBuildProperty() {
+        return gradleProperty(propertyName("stopAfterBuild")).map(Boolean::valueOf).orElse(stopAfterBuild);
+    }
+
+    /**
+     * Start the TeamCity Server and Build Agent using class data sharing archives.
+     */
+    public boolean getClassDataSharing() {
+        return getClassDataSharingProperty().get();
+    }
+
+    public void setClassDataSharing(boolean classDataSharing) {
+        this.classDataSharing.set(classDataSharing);
+    }
+
+    public Provider<Boolean> getClassDataSharingProperty() {
+        return gradleProperty(propertyName("classDataSharing")).map(Boolean::valueOf).orElse(classDataSharing);
+    }
+
+    /**
+     * The server options used to start the server, includes the class data sharing archive when enabled.
+     */
+    public Provider<String> getServerStartOptionsProvider() {
+        return withSharedArchive(getServerOptionsProvider(), CreateClassDataArchive.SERVER_ARCHIVE_FILE);
+    }
+
+    /**
+     * The agent options used to start the agent, includes the class data sharing archive when enabled.
+     */
+    public Provider<String> getAgentStartOptionsProvider() {
+        return withSharedArchive(getAgentOptionsProvider(), CreateClassDataArchive.AGENT_ARCHIVE_FILE);
+    }
+
+    private Provider<String> withSharedArchive(Provider<String> options, String archivePath) {
+        return getClassDataSharingProperty().flatMap(enabled -> {
+            if (!enabled) {
+                return options;
+            }
+            Provider<String> sharingOptions = getHomeDirProperty().zip(getJavaHomeProperty(), (homeDir, javaHome) ->
+                CreateClassDataArchive.supportsClassDataSharing(javaHome)
+                    ? "-Xshare:auto -XX:SharedArchiveFile=" + new File(homeDir, archivePath).getAbsolutePath()
+                    : "");
+            return options.zip(sharingOptions, (value, sharing) -> {
+                if (sharing.isEmpty()) {
+                    return value;
+                }
+                return value.trim().isEmpty() ? sharing : value + " " + sharing;
+            });
+        });
+    }
+
     public String getBaseHomeDir() {
         return environments.getBaseHomeDirProperty().get();
     }
@@ -164,7 +164,7 @@ public class DefaultTeamCityEnvironments implements TeamCityEnvironments {
     }
 
     Provider<String> gradleProperty(final String name) {
-        return providers.gradleProperty(name).forUseAtConfigurationTime();
+        return providers.gradleProperty(name);
     }
 
     public final NamedDomainObjectContainer<TeamCityEnvironment> getEnvironments() {
@@ -39,6 +39,7 @@ public class DefaultTeamCityPluginExtension implements TeamCityPluginExtension {
     private final Property<Boolean> defaultRepositories;
     private final Property<Boolean> allowSnapshotVersions;
     private final Property<ValidationMode> validateBeanDefinition;
+    private final Property<Boolean> generateBeanDefinitions;
 
     private AgentPluginConfiguration agent;
     private ServerPluginConfiguration server;
@@ -52,6 +53,7 @@ public class DefaultTeamCityPluginExtension implements TeamCityPluginExtension {
         this.defaultRepositories = project.getObjects().property(Boolean.class).convention(true);
         this.allowSnapshotVersions = project.getObjects().property(Boolean.class).convention(false);
         this.validateBeanDefinition = project.getObjects().property(ValidationMode.class).convention(WARN);
+        this.generateBeanDefinitions = project.getObjects().property(Boolean.class).convention(false);
     }
 
     public void init() {
@@ -122,6 +124,20 @@ public class DefaultTeamCityPluginExtension implements TeamCityPluginExtension {
         return validateBeanDefinition;
     }
 
+    @Override
+    public void setGenerateBeanDefinitions(boolean generateBeanDefinitions) {
+        this.generateBeanDefinitions.set(generateBeanDefinitions);
+    }
+
+    @Override
+    public boolean getGenerateBeanDefinitions() {
+        return generateBeanDefinitions.get();
+    }
+
+    public Property<Boolean> getGenerateBeanDefinitionsProperty() {
+        return generateBeanDefinitions;
+    }
+
     @Override
     public void agent(Action<AgentPluginConfiguration> configuration) {
         if (!project.getPlugins().hasPlugin(TeamCityAgentPlugin.class))
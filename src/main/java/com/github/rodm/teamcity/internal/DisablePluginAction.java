@@ -18,6 +18,7 @@ package com.github.rodm.teamcity.internal;
 import org.gradle.api.GradleException;
 import org.gradle.api.Task;
 import org.gradle.api.logging.Logger;
+import org.gradle.api.provider.Provider;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -25,7 +26,6 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 public class DisablePluginAction extends PluginAction {
@@ -34,8 +34,12 @@ public class DisablePluginAction extends PluginAction {
     private static final String PLUGIN_PARTIALLY_UNLOADED = "{}: Plugin '{}' partially unloaded - some parts could still be running. Server restart could be needed.";
     private static final String DISABLING_PLUGIN_FAILED = "{}: Disabling plugin '{}' failed: {}";
 
-    public DisablePluginAction(Logger logger, File dataDir, Set<File> plugins, List<String> disabledPlugins) {
-        super(logger, dataDir, plugins, disabledPlugins, false);
+    public DisablePluginAction(Logger logger, File dataDir, Provider<Integer> serverPort, Iterable<File> plugins, List<String> disabledPlugins) {
+        super(logger, dataDir, serverPort, plugins, disabledPlugins, false);
+    }
+
+    public DisablePluginAction(Logger logger, Provider<File> dataDir, Provider<Boolean> runtimeReload, Provider<Integer> serverPort, Iterable<File> plugins, List<String> disabledPlugins) {
+        super(logger, dataDir, runtimeReload, serverPort, plugins, disabledPlugins, false);
     }
 
     @Override
@@ -18,6 +18,7 @@ package com.github.rodm.teamcity.internal;
 import org.gradle.api.GradleException;
 import org.gradle.api.Task;
 import org.gradle.api.logging.Logger;
+import org.gradle.api.provider.Provider;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -25,7 +26,6 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 public class EnablePluginAction extends PluginAction {
@@ -33,8 +33,12 @@ public class EnablePluginAction extends PluginAction {
     private static final String PLUGIN_SUCCESSFULLY_LOADED = "{}: Plugin '{}' successfully loaded";
     private static final String ENABLING_PLUGIN_FAILED = "{}: Enabling plugin '{}' failed: {}";
 
-    public EnablePluginAction(Logger logger, File dataDir, Set<File> plugins, List<String> disabledPlugins) {
-        super(logger, dataDir, plugins, disabledPlugins, true);
+    public EnablePluginAction(Logger logger, File dataDir, Provider<Integer> serverPort, Iterable<File> plugins, List<String> disabledPlugins) {
+        super(logger, dataDir, serverPort, plugins, disabledPlugins, true);
+    }
+
+    public EnablePluginAction(Logger logger, Provider<File> dataDir, Provider<Boolean> runtimeReload, Provider<Integer> serverPort, Iterable<File> plugins, List<String> disabledPlugins) {
+        super(logger, dataDir, runtimeReload, serverPort, plugins, disabledPlugins, true);
     }
 
     @Override
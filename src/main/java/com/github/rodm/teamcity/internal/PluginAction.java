@@ -19,6 +19,7 @@ import org.gradle.api.Action;
 import org.gradle.api.GradleException;
 import org.gradle.api.Task;
 import org.gradle.api.logging.Logger;
+import org.gradle.api.provider.Provider;
 
 import java.io.File;
 import java.io.IOException;
@@ -32,24 +33,40 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Base64;
 import java.util.List;
-import java.util.Set;
 
 public abstract class PluginAction implements Action<Task> {
 
     private static final String SUPER_USER_TOKEN_PATH = "system/pluginData/superUser/token.txt";
 
     private final Logger logger;
+    private final Provider<File> dataDirProvider;
+    private final Provider<Boolean> runtimeReload;
+    private final Provider<Integer> serverPort;
     protected File dataDir;
-    protected Set<File> plugins;
+    protected Iterable<File> plugins;
     protected List<String> unloadedPlugins;
     private final boolean enable;
     private String path;
 
     private static final String host = "localhost";
-    private static final int port = 8111;
 
-    protected PluginAction(Logger logger, File dataDir, Set<File> plugins, List<String> unloadedPlugins, boolean enable) {
+    protected PluginAction(Logger logger, File dataDir, Provider<Integer> serverPort, Iterable<File> plugins, List<String> unloadedPlugins, boolean enable) {
+        this(logger, null, null, serverPort, dataDir, plugins, unloadedPlugins, enable);
+    }
+
+    /**
+     * @param runtimeReload whether the server supports reloading plugins, the action does nothing if it does not
+     * @param serverPort the port of the server the requests are sent to
+     */
+    protected PluginAction(Logger logger, Provider<File> dataDir, Provider<Boolean> runtimeReload, Provider<Integer> serverPort, Iterable<File> plugins, List<String> unloadedPlugins, boolean enable) {
+        this(logger, dataDir, runtimeReload, serverPort, null, plugins, unloadedPlugins, enable);
+    }
+
+    private PluginAction(Logger logger, Provider<File> dataDirProvider, Provider<Boolean> runtimeReload, Provider<Integer> serverPort, File dataDir, Iterable<File> plugins, List<String> unloadedPlugins, boolean enable) {
         this.logger = logger;
+        this.dataDirProvider = dataDirProvider;
+        this.runtimeReload = runtimeReload;
+        this.serverPort = serverPort;
         this.dataDir = dataDir;
         this.plugins = plugins;
         this.unloadedPlugins = unloadedPlugins;
@@ -64,9 +81,23 @@ public abstract class PluginAction implements Action<Task> {
         return path;
     }
 
+    public int getServerPort() {
+        return serverPort.get();
+    }
+
+    public boolean isRuntimeReloadSupported() {
+        return runtimeReload == null || runtimeReload.get();
+    }
+
     @Override
     public void execute(final Task task) {
+        if (!isRuntimeReloadSupported()) {
+            return;
+        }
         path = task.getPath();
+        if (dataDirProvider != null) {
+            dataDir = dataDirProvider.get();
+        }
         plugins.forEach(file -> {
             if (canExecuteAction(task, file.getName())) {
                 executeAction(file.getName());
@@ -81,6 +112,7 @@ public abstract class PluginAction implements Action<Task> {
     public abstract void sendRequest(HttpURLConnection request, String pluginName);
 
     public void executeAction(String pluginName) {
+        int port = getServerPort();
         if (!isServerAvailable()) {
             logger.info("{}: Cannot connect to the server on http://{}:{}.", getPath(), host, port);
             return;
@@ -138,7 +170,7 @@ public abstract class PluginAction implements Action<Task> {
     }
 
     public boolean isServerAvailable() {
-        try (Socket socket = new Socket(host, port)) {
+        try (Socket socket = new Socket(host, getServerPort())) {
             return socket.isConnected();
         }
         catch (IOException ignored) {
@@ -149,7 +181,7 @@ public abstract class PluginAction implements Action<Task> {
     private URL getPluginActionURL(final String pluginName) {
         try {
             final String pluginPath = URLEncoder.encode("<TeamCity Data Directory>/plugins/" + pluginName, "UTF-8");
-            return new URL("http://" + host + ":" + port + "/httpAuth/admin/plugins.html?action=setEnabled&enabled=" + enable + "&pluginPath=" + pluginPath);
+            return new URL("http://" + host + ":" + getServerPort() + "/httpAuth/admin/plugins.html?action=setEnabled&enabled=" + enable + "&pluginPath=" + pluginPath);
         }
         catch (MalformedURLException | UnsupportedEncodingException e) {
             throw new GradleException("Failure creating plugin action URL");
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import java.io.File;
+import java.io.IOException;
+
+public abstract class PluginArchiveCheckAction implements WorkAction<PluginArchiveCheckAction.CheckParameters> {
+
+    public interface CheckParameters extends WorkParameters {
+        RegularFileProperty getPluginFile();
+        RegularFileProperty getSummaryFile();
+    }
+
+    @Override
+    public void execute() {
+        File pluginFile = getParameters().getPluginFile().get().getAsFile();
+        File summaryFile = getParameters().getSummaryFile().get().getAsFile();
+        try {
+            PluginArchiveSummary.check(pluginFile).store(summaryFile);
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to write summary of plugin archive " + pluginFile, e);
+        }
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCopyDetails;
+import org.gradle.api.internal.file.copy.CopyAction;
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.tasks.WorkResult;
+import org.gradle.api.tasks.WorkResults;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a plugin archive, the zip file written is equivalent to the zip file written by the {@code Zip} task.
+ * Each file is streamed into the archive once, the CRC-32 and sizes are calculated while the file is written and
+ * patched into the entry headers afterwards.
+ *
+ * <p>Nested archives matching the stored entries predicate, such as an agent plugin archive packaged in a server
+ * plugin archive, are stored as is instead of compressing the already compressed archive again.</p>
+ *
+ * <p>When incremental, the size and last modified time of each file are recorded in an entries file written alongside
+ * the zip file. A file with the same size and last modified time as recorded for the entry of the same name in the
+ * previous zip file is unchanged and is not read. Any other file is compared with the previous entry by CRC-32 and
+ * size. The compressed data of an unchanged entry is copied from the previous zip file as is, only new and changed
+ * entries are compressed.</p>
+ *
+ * <p>Zip64 extensions are not supported.</p>
+ */
+public class PluginArchiveCopyAction implements CopyAction {
+
+    private static final Logger LOGGER = Logging.getLogger(PluginArchiveCopyAction.class);
+
+    private static final long CONSTANT_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).getTimeInMillis();
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int VERSION = 20;
+    private static final int UNIX_HOST = 3;
+    private static final int UTF8_FLAG = 0x0800;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int FILE_TYPE = 0100000;
+    private static final int DIRECTORY_TYPE = 040000;
+    private static final long MAX_SIZE = 0xffffffffL;
+    private static final int MAX_ENTRIES = 0xffff;
+    private static final String ZIP64_NOT_SUPPORTED = "Archive requires Zip64 extensions, disable the incremental and store archive options";
+
+    private final File zipFile;
+    private final File entriesFile;
+    private final boolean compressed;
+    private final boolean preserveFileTimestamps;
+    private final boolean incremental;
+    private final Predicate<String> storedEntries;
+
+    /**
+     * @param zipFile the zip file to write
+     * @param entriesFile the file recording the size and last modified time of the files of each entry
+     * @param compressed whether entries are compressed
+     * @param preserveFileTimestamps whether the timestamps of the files are used for the entries
+     * @param incremental whether the unchanged entries of the previous zip file are reused
+     * @param storedEntries the names of the entries stored without compression
+     */
+    public PluginArchiveCopyAction(File zipFile, File entriesFile, boolean compressed, boolean preserveFileTimestamps,
+                                   boolean incremental, Predicate<String> storedEntries)
+    {
+        this.zipFile = zipFile;
+        this.entriesFile = entriesFile;
+        this.compressed = compressed;
+        this.preserveFileTimestamps = preserveFileTimestamps;
+        this.incremental = incremental;
+        this.storedEntries = storedEntries;
+    }
+
+    @Override
+    public WorkResult execute(CopyActionProcessingStream stream) {
+        Map<String, ZipIndex.Entry> previousEntries = new HashMap<>();
+        Map<String, FileState> previousFiles = new HashMap<>();
+        if (incremental && zipFile.isFile()) {
+            try {
+                for (ZipIndex.Entry entry : ZipIndex.read(zipFile).getEntries()) {
+                    previousEntries.put(entry.getName(), entry);
+                }
+                previousFiles = readEntriesFile();
+            }
+            catch (IOException e) {
+                LOGGER.info("Previous archive {} cannot be read, all entries are written: {}", zipFile, e.getMessage());
+            }
+        }
+
+        Path tempFile = null;
+        try {
+            Files.createDirectories(zipFile.getParentFile().toPath());
+            tempFile = Files.createTempFile(zipFile.getParentFile().toPath(), zipFile.getName(), ".tmp");
+            Writer writer;
+            try (FileChannel previous = previousEntries.isEmpty() ? null : FileChannel.open(zipFile.toPath(), StandardOpenOption.READ);
+                 FileChannel output = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writer = new Writer(output, previous, previousEntries, previousFiles);
+                stream.process(details -> writer.write(details));
+                writer.finish();
+            }
+            Files.move(tempFile, zipFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (incremental) {
+                writeEntriesFile(writer.files);
+            }
+            LOGGER.info("Reused {} and wrote {} entries of {}", writer.reused, writer.written, zipFile);
+        }
+        catch (IOException | UncheckedIOException e) {
+            throw new GradleException("Failed to create archive " + zipFile, e);
+        }
+        finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                }
+                catch (IOException e) {
+                    // ignore, the file is in the build directory
+                }
+            }
+        }
+        return WorkResults.didWork(true);
+    }
+
+    /**
+     * Reads the entries file, the file is ignored if it was not written for the current zip file.
+     */
+    private Map<String, FileState> readEntriesFile() throws IOException {
+        Map<String, FileState> files = new HashMap<>();
+        if (!entriesFile.isFile()) {
+            return files;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(entriesFile.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null || !line.equals(zipFileState())) {
+                return files;
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split(" ", 3);
+                if (values.length == 3) {
+                    files.put(values[2], new FileState(Long.parseLong(values[0]), Long.parseLong(values[1])));
+                }
+            }
+        }
+        catch (NumberFormatException e) {
+            files.clear();
+        }
+        return files;
+    }
+
+    private void writeEntriesFile(Map<String, FileState> files) throws IOException {
+        Files.createDirectories(entriesFile.getParentFile().toPath());
+        try (BufferedWriter writer = Files.newBufferedWriter(entriesFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(zipFileState());
+            writer.newLine();
+            for (Map.Entry<String, FileState> file : files.entrySet()) {
+                writer.write(file.getValue().size + " " + file.getValue().lastModified + " " + file.getKey());
+                writer.newLine();
+            }
+        }
+    }
+
+    private String zipFileState() {
+        return zipFile.length() + " " + zipFile.lastModified();
+    }
+
+    private class Writer {
+        private final FileChannel output;
+        private final FileChannel previous;
+        private final Map<String, ZipIndex.Entry> previousEntries;
+        private final Map<String, FileState> previousFiles;
+        private final Map<String, FileState> files = new LinkedHashMap<>();
+        private final ByteArrayBuilder centralDirectory = new ByteArrayBuilder();
+        private int count;
+        private int reused;
+        private int written;
+
+        Writer(FileChannel output, FileChannel previous, Map<String, ZipIndex.Entry> previousEntries,
+               Map<String, FileState> previousFiles)
+        {
+            this.output = output;
+            this.previous = previous;
+            this.previousEntries = previousEntries;
+            this.previousFiles = previousFiles;
+        }
+
+        void write(FileCopyDetails details) {
+            try {
+                if (details.isDirectory()) {
+                    String name = details.getRelativePath().getPathString() + '/';
+                    writeHeaders(name, STORED, 0, 0, 0, DIRECTORY_TYPE | details.getMode(), time(details));
+                    return;
+                }
+                String name = details.getRelativePath().getPathString();
+                int method = compressed && !storedEntries.test(name) ? DEFLATED : STORED;
+                ZipIndex.Entry entry = previousEntries.get(name);
+                if (entry != null && entry.getMethod() == method && (isUnchanged(name, entry, details) || hasSameContent(entry, details))) {
+                    long dataOffset = dataOffset(entry);
+                    writeHeaders(name, method, entry.getCrc(), entry.getCompressedSize(), entry.getSize(), FILE_TYPE | details.getMode(), time(details));
+                    transfer(dataOffset, entry.getCompressedSize());
+                    files.put(name, new FileState(entry.getSize(), details.getLastModified()));
+                    reused++;
+                    return;
+                }
+                long size = writeEntry(name, method, details);
+                files.put(name, new FileState(size, details.getLastModified()));
+                written++;
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private boolean isUnchanged(String name, ZipIndex.Entry entry, FileCopyDetails details) {
+            FileState file = previousFiles.get(name);
+            return file != null && file.size == entry.getSize() && file.lastModified == details.getLastModified()
+                && file.size == details.getSize();
+        }
+
+        private boolean hasSameContent(ZipIndex.Entry entry, FileCopyDetails details) {
+            CountingCrcStream content = new CountingCrcStream(null);
+            details.copyTo(content);
+            return entry.getCrc() == content.crc.getValue() && entry.getSize() == content.count;
+        }
+
+        private long writeEntry(String name, int method, FileCopyDetails details) throws IOException {
+            long headerOffset = output.position();
+            writeHeaders(name, method, 0, 0, 0, FILE_TYPE | details.getMode(), time(details));
+            long dataStart = output.position();
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(output), 65536);
+            CountingCrcStream content;
+            if (method == DEFLATED) {
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                try (DeflaterOutputStream deflated = new DeflaterOutputStream(new NonClosingStream(out), deflater, 65536)) {
+                    content = new CountingCrcStream(deflated);
+                    details.copyTo(content);
+                }
+                finally {
+                    deflater.end();
+                }
+            } else {
+                content = new CountingCrcStream(out);
+                details.copyTo(content);
+            }
+            out.flush();
+            patchHeaders(headerOffset, content.crc.getValue(), output.position() - dataStart, content.count);
+            return content.count;
+        }
+
+        private void writeHeaders(String name, int method, long crc, long compressedSize, long size, int mode, long time) throws IOException {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            long offset = output.position();
+            if (++count > MAX_ENTRIES || offset > MAX_SIZE || size > MAX_SIZE || compressedSize > MAX_SIZE) {
+                throw new ZipException(ZIP64_NOT_SUPPORTED);
+            }
+            long dosTime = dosTime(time);
+
+            ByteBuffer local = buffer(LOCAL_HEADER_SIZE + nameBytes.length);
+            local.putInt(LOCAL_HEADER_SIGNATURE).putShort((short) VERSION).putShort((short) UTF8_FLAG).putShort((short) method)
+                .putInt((int) dosTime).putInt((int) crc).putInt((int) compressedSize).putInt((int) size)
+                .putShort((short) nameBytes.length).putShort((short) 0).put(nameBytes);
+            write(local);
+
+            ByteBuffer central = buffer(CENTRAL_DIRECTORY_HEADER_SIZE + nameBytes.length);
+            central.putInt(CENTRAL_DIRECTORY_HEADER_SIGNATURE).putShort((short) (UNIX_HOST << 8 | VERSION)).putShort((short) VERSION)
+                .putShort((short) UTF8_FLAG).putShort((short) method).putInt((int) dosTime).putInt((int) crc)
+                .putInt((int) compressedSize).putInt((int) size).putShort((short) nameBytes.length)
+                .putShort((short) 0).putShort((short) 0).putShort((short) 0).putShort((short) 0)
+                .putInt(mode << 16).putInt((int) offset).put(nameBytes);
+            centralDirectory.add(central.array());
+        }
+
+        private void patchHeaders(long headerOffset, long crc, long compressedSize, long size) throws IOException {
+            if (compressedSize > MAX_SIZE || size > MAX_SIZE) {
+                throw new ZipException(ZIP64_NOT_SUPPORTED);
+            }
+            ByteBuffer values = buffer(12).putInt((int) crc).putInt((int) compressedSize).putInt((int) size);
+            values.flip();
+            output.write(values, headerOffset + 14);
+            centralDirectory.patchLast(16, values.array());
+        }
+
+        private long dataOffset(ZipIndex.Entry entry) throws IOException {
+            ByteBuffer header = buffer(LOCAL_HEADER_SIZE);
+            previous.read(header, entry.getLocalHeaderOffset());
+            if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header for " + entry.getName() + " in " + zipFile);
+            }
+            return entry.getLocalHeaderOffset() + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+        }
+
+        private void transfer(long position, long length) throws IOException {
+            long transferred = 0;
+            while (transferred < length) {
+                long count = previous.transferTo(position + transferred, length - transferred, output);
+                if (count <= 0) {
+                    throw new ZipException("Unexpected end of " + zipFile);
+                }
+                transferred += count;
+            }
+        }
+
+        void finish() throws IOException {
+            long offset = output.position();
+            byte[] directory = centralDirectory.toByteArray();
+            write(ByteBuffer.wrap(directory));
+            ByteBuffer end = buffer(END_OF_CENTRAL_DIRECTORY_SIZE);
+            end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE).putShort((short) 0).putShort((short) 0)
+                .putShort((short) count).putShort((short) count).putInt(directory.length).putInt((int) offset).putShort((short) 0);
+            write(end);
+        }
+
+        private void write(ByteBuffer buffer) throws IOException {
+            buffer.position(0);
+            while (buffer.hasRemaining()) {
+                output.write(buffer);
+            }
+        }
+    }
+
+    private long time(FileCopyDetails details) {
+        return preserveFileTimestamps ? details.getLastModified() : CONSTANT_TIME;
+    }
+
+    static long dosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (long) (year - 1980) << 25 | (long) (calendar.get(Calendar.MONTH) + 1) << 21
+            | (long) calendar.get(Calendar.DAY_OF_MONTH) << 16 | (long) calendar.get(Calendar.HOUR_OF_DAY) << 11
+            | (long) calendar.get(Calendar.MINUTE) << 5 | (long) calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static class FileState {
+        private final long size;
+        private final long lastModified;
+
+        FileState(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Calculates the CRC-32 and size of the content written, the content is passed on or discarded.
+     */
+    private static class CountingCrcStream extends OutputStream {
+        private final OutputStream out;
+        private final CRC32 crc = new CRC32();
+        private long count;
+
+        CountingCrcStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            crc.update(b);
+            count++;
+            if (out != null) {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            crc.update(b, off, len);
+            count += len;
+            if (out != null) {
+                out.write(b, off, len);
+            }
+        }
+    }
+
+    private static class NonClosingStream extends FilterOutputStream {
+        NonClosingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static class ByteArrayBuilder {
+        private byte[] bytes = new byte[8192];
+        private int size;
+        private int last;
+
+        void add(byte[] value) {
+            if (size + value.length > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, size + value.length)];
+                System.arraycopy(bytes, 0, grown, 0, size);
+                bytes = grown;
+            }
+            System.arraycopy(value, 0, bytes, size, value.length);
+            last = size;
+            size += value.length;
+        }
+
+        void patchLast(int offset, byte[] value) {
+            System.arraycopy(value, 0, bytes, last + offset, value.length);
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[size];
+            System.arraycopy(bytes, 0, result, 0, size);
+            return result;
+        }
+    }
+}
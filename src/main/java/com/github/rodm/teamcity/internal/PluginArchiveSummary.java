@@ -0,0 +1,180 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static com.github.rodm.teamcity.internal.ArchiveSizes.formatSize;
+
+/**
+ * The sizes and validation problems of a plugin archive, used to build the combined report of the plugins of
+ * a multi-project build. A summary is stored as a properties file so it can be passed from a worker back to
+ * the task that submitted it.
+ */
+public class PluginArchiveSummary {
+
+    private static final String PLUGIN_DESCRIPTOR = "teamcity-plugin.xml";
+
+    private final String name;
+    private final long archiveSize;
+    private final long uncompressedSize;
+    private final int libraryCount;
+    private final List<String> problems;
+
+    PluginArchiveSummary(String name, long archiveSize, long uncompressedSize, int libraryCount, List<String> problems) {
+        this.name = name;
+        this.archiveSize = archiveSize;
+        this.uncompressedSize = uncompressedSize;
+        this.libraryCount = libraryCount;
+        this.problems = problems;
+    }
+
+    /**
+     * Reads the sizes of a plugin archive and checks that it contains a plugin descriptor and that the
+     * archives it contains can be read.
+     *
+     * @param archive the plugin archive
+     * @return the summary of the archive
+     */
+    public static PluginArchiveSummary check(File archive) {
+        List<String> problems = new ArrayList<>();
+        try {
+            ArchiveSizes sizes = ArchiveSizes.read(archive, Collections.emptyMap());
+            boolean hasDescriptor = sizes.getEntries().stream().anyMatch(entry -> PLUGIN_DESCRIPTOR.equals(entry.getPath()));
+            if (!hasDescriptor) {
+                problems.add("the archive does not contain a plugin descriptor, " + PLUGIN_DESCRIPTOR);
+            }
+            for (ArchiveSizes.LibrarySize library : sizes.getLibraries()) {
+                if (library.getEntryCount() == 0) {
+                    problems.add(String.format("%s is empty or not a valid archive", library.getPath()));
+                }
+            }
+            return new PluginArchiveSummary(archive.getName(), sizes.getArchiveSize(), sizes.getUncompressedSize(),
+                sizes.getLibraries().size(), problems);
+        }
+        catch (IOException e) {
+            problems.add("the archive cannot be read, " + e.getMessage());
+            return new PluginArchiveSummary(archive.getName(), archive.length(), 0, 0, problems);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getArchiveSize() {
+        return archiveSize;
+    }
+
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    public int getLibraryCount() {
+        return libraryCount;
+    }
+
+    public List<String> getProblems() {
+        return Collections.unmodifiableList(problems);
+    }
+
+    public void store(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("name", name);
+        properties.setProperty("archiveSize", String.valueOf(archiveSize));
+        properties.setProperty("uncompressedSize", String.valueOf(uncompressedSize));
+        properties.setProperty("libraryCount", String.valueOf(libraryCount));
+        for (int i = 0; i < problems.size(); i++) {
+            properties.setProperty("problem." + i, problems.get(i));
+        }
+        Files.createDirectories(file.getParentFile().toPath());
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            properties.store(out, null);
+        }
+    }
+
+    public static PluginArchiveSummary load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        }
+        List<String> problems = new ArrayList<>();
+        for (int i = 0; properties.containsKey("problem." + i); i++) {
+            problems.add(properties.getProperty("problem." + i));
+        }
+        return new PluginArchiveSummary(properties.getProperty("name"),
+            Long.parseLong(properties.getProperty("archiveSize")),
+            Long.parseLong(properties.getProperty("uncompressedSize")),
+            Integer.parseInt(properties.getProperty("libraryCount")),
+            problems);
+    }
+
+    /**
+     * Returns the problems found across the plugin archives, the problems of each archive and plugin archives
+     * with the same file name, these overwrite each other when deployed to the server.
+     *
+     * @param summaries the summaries of the plugin archives
+     * @return the problems, prefixed with the name of the archive
+     */
+    public static List<String> problems(List<PluginArchiveSummary> summaries) {
+        List<String> result = new ArrayList<>();
+        Map<String, Integer> names = new HashMap<>();
+        for (PluginArchiveSummary summary : summaries) {
+            names.merge(summary.getName(), 1, Integer::sum);
+            for (String problem : summary.getProblems()) {
+                result.add(summary.getName() + ": " + problem);
+            }
+        }
+        names.forEach((name, count) -> {
+            if (count > 1) {
+                result.add(String.format("%s: %d plugin archives have the same name", name, count));
+            }
+        });
+        return result;
+    }
+
+    public static void writeReport(List<PluginArchiveSummary> summaries, PrintWriter writer) {
+        long totalSize = 0;
+        long totalUncompressedSize = 0;
+        for (PluginArchiveSummary summary : summaries) {
+            writer.println(String.format("%s: %s, %s uncompressed, %d libraries", summary.getName(),
+                formatSize(summary.getArchiveSize()), formatSize(summary.getUncompressedSize()), summary.getLibraryCount()));
+            totalSize += summary.getArchiveSize();
+            totalUncompressedSize += summary.getUncompressedSize();
+        }
+        writer.println(String.format("Total: %d plugins, %s, %s uncompressed", summaries.size(),
+            formatSize(totalSize), formatSize(totalUncompressedSize)));
+        List<String> problems = problems(summaries);
+        if (!problems.isEmpty()) {
+            writer.println();
+            writer.println("Problems:");
+            for (String problem : problems) {
+                writer.println("  " + problem);
+            }
+        }
+    }
+}
@@ -19,10 +19,20 @@ public class PluginBean {
 
     private final String id;
     private final String className;
+    private final boolean instantiated;
+    private final int constructorArgs;
+    private final boolean autowireConstructor;
 
     PluginBean(String id, String className) {
+        this(id, className, true, 0, false);
+    }
+
+    PluginBean(String id, String className, boolean instantiated, int constructorArgs, boolean autowireConstructor) {
         this.id = id;
         this.className = className;
+        this.instantiated = instantiated;
+        this.constructorArgs = constructorArgs;
+        this.autowireConstructor = autowireConstructor;
     }
 
     public String getId() {
@@ -32,4 +42,25 @@ public class PluginBean {
     public String getClassName() {
         return className;
     }
+
+    /**
+     * @return false if the bean is abstract or created by a factory method
+     */
+    public boolean isInstantiated() {
+        return instantiated;
+    }
+
+    /**
+     * @return the number of constructor-arg elements defined for the bean
+     */
+    public int getConstructorArgs() {
+        return constructorArgs;
+    }
+
+    /**
+     * @return true if the remaining constructor arguments are autowired
+     */
+    public boolean isAutowireConstructor() {
+        return autowireConstructor;
+    }
 }
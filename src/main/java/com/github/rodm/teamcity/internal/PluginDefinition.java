@@ -42,8 +42,9 @@ public class PluginDefinition {
         XmlParser parser = ValidationSupport.createXmlParser(offline);
         try {
             Node beans = parser.parse(definitionFile);
+            String defaultAutowire = (String) beans.attribute("default-autowire");
             return ((List<Node>) beans.get("bean")).stream()
-                .map(this::createPluginBean)
+                .map(node -> createPluginBean(node, defaultAutowire))
                 .collect(Collectors.toList());
         }
         catch (SAXException e) {
@@ -52,7 +53,14 @@ public class PluginDefinition {
     }
 
     @NotNull
-    private PluginBean createPluginBean(Node node) {
-        return new PluginBean((String) node.attribute("id"), (String) node.attribute("class"));
+    private PluginBean createPluginBean(Node node, String defaultAutowire) {
+        String autowire = (String) node.attribute("autowire");
+        if (autowire == null || "default".equals(autowire)) {
+            autowire = defaultAutowire;
+        }
+        boolean instantiated = !"true".equals(node.attribute("abstract")) && node.attribute("factory-method") == null;
+        int constructorArgs = ((List<?>) node.get("constructor-arg")).size();
+        return new PluginBean((String) node.attribute("id"), (String) node.attribute("class"),
+            instantiated, constructorArgs, "constructor".equals(autowire));
     }
 }
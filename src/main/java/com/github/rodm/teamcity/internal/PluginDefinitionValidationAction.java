@@ -19,45 +19,99 @@ import com.github.rodm.teamcity.ValidationMode;
 import org.gradle.api.Action;
 import org.gradle.api.GradleException;
 import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.bundling.AbstractArchiveTask;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.github.rodm.teamcity.ValidationMode.FAIL;
 import static com.github.rodm.teamcity.ValidationMode.IGNORE;
 
 public class PluginDefinitionValidationAction implements Action<Task> {
 
-    private static final String NO_BEAN_CLASS_WARNING_MESSAGE = "%s: Plugin definition file %s defines a bean but the implementation class %s was not found in the jar.";
+    private static final String NO_BEAN_CLASS_WARNING_MESSAGE = "%s: Plugin definition file %s defines a bean but the implementation class %s was not found in the jar or the runtime classpath.";
     private static final String NO_BEAN_CLASSES_WARNING_MESSAGE = "%s: Plugin definition file %s contains no beans.";
     private static final String NO_BEAN_CLASSES_NON_PARSED_WARNING_MESSAGE = "%s: Failed to parse plugin definition file %s: %s";
+    private static final String NOT_INSTANTIABLE_WARNING_MESSAGE = "%s: Plugin definition file %s defines a bean but the implementation class %s is %s and cannot be instantiated.";
+    private static final String NO_CONSTRUCTOR_WARNING_MESSAGE = "%s: Plugin definition file %s defines a bean with %d constructor arguments but the implementation class %s has no matching constructor.";
     private static final String NO_DEFINITION_WARNING_MESSAGE = "%s: No valid plugin definition files were found in META-INF";
 
     private final ValidationMode mode;
     private final List<PluginDefinition> definitions;
     private final Set<String> classes;
+    private final FileCollection classpath;
+    private final File cacheDir;
+    private final Provider<Boolean> generateBeanDefinitions;
+    private final String pluginName;
     private boolean warningShown;
 
     public PluginDefinitionValidationAction(ValidationMode mode, List<PluginDefinition> definitions, Set<String> classes) {
+        this(mode, definitions, classes, null, null);
+    }
+
+    /**
+     * @param classpath the runtime classpath searched for bean classes that are not in the jar
+     * @param cacheDir the directory used to cache the class indexes of the classpath jars
+     */
+    public PluginDefinitionValidationAction(ValidationMode mode, List<PluginDefinition> definitions, Set<String> classes,
+                                            FileCollection classpath, File cacheDir)
+    {
+        this(mode, definitions, classes, classpath, cacheDir, null, null);
+    }
+
+    /**
+     * @param generateBeanDefinitions if the bean definition files for the plugin are generated by the annotation processor
+     * @param pluginName the plugin name used for the generated bean definition files, these are not validated
+     */
+    public PluginDefinitionValidationAction(ValidationMode mode, List<PluginDefinition> definitions, Set<String> classes,
+                                            FileCollection classpath, File cacheDir,
+                                            Provider<Boolean> generateBeanDefinitions, String pluginName)
+    {
         this.mode = mode;
         this.definitions = definitions;
         this.classes = classes;
+        this.classpath = classpath;
+        this.cacheDir = cacheDir;
+        this.generateBeanDefinitions = generateBeanDefinitions;
+        this.pluginName = pluginName;
         this.warningShown = false;
     }
 
     @Override
     public void execute(Task task) {
+        // the collections are filled by the collector actions while the task runs,
+        // take a copy and clear them so nothing is carried over to another execution
+        final List<PluginDefinition> collectedDefinitions = new ArrayList<>(definitions);
+        final Set<String> collectedClasses = new HashSet<>(classes);
+        definitions.clear();
+        classes.clear();
+        warningShown = false;
+
         if (mode.equals(IGNORE)) {
             return;
         }
 
-        if (definitions.isEmpty()) {
+        boolean generated = generateBeanDefinitions != null && generateBeanDefinitions.get();
+        if (generated) {
+            // the generated bean definition files are validated by the annotation processor
+            collectedDefinitions.removeIf(definition -> isGenerated(definition, pluginName));
+        }
+
+        if (collectedDefinitions.isEmpty()) {
+            if (generated) {
+                return;
+            }
             report(task, String.format(NO_DEFINITION_WARNING_MESSAGE, task.getPath()));
         } else {
-            for (PluginDefinition definition : definitions) {
-                validateDefinition(definition, task);
-            }
+            validateDefinitions(collectedDefinitions, collectedClasses, task);
         }
 
         if (mode.equals(FAIL) && warningShown) {
@@ -65,32 +119,116 @@ public class PluginDefinitionValidationAction implements Action<Task> {
         }
     }
 
-    private void validateDefinition(PluginDefinition definition, Task task) {
+    private void validateDefinitions(List<PluginDefinition> definitions, Set<String> jarClasses, Task task) {
         Object value = task.getInputs().getProperties().getOrDefault("gradle-offline", false);
         boolean offline = Boolean.parseBoolean(value.toString());
-        List<PluginBean> beans;
+        String path = task.getPath();
+
+        // the definition files are parsed and validated in parallel, the results are reported in order
+        List<DefinitionResult> results = definitions.parallelStream()
+            .map(definition -> readBeans(definition, offline, path))
+            .collect(Collectors.toList());
+
+        Set<String> missingClasses = new HashSet<>();
+        for (DefinitionResult result : results) {
+            for (PluginBean bean : result.beans) {
+                String classFile = classFile(bean);
+                if (!jarClasses.contains(classFile)) {
+                    missingClasses.add(classFile);
+                }
+            }
+        }
+        // only search the runtime classpath for the bean classes that are not in the jar
+        ClasspathIndex index = new ClasspathIndex(cacheDir);
+        Iterable<File> classpathFiles = classpath != null ? classpath.getFiles() : Collections.emptyList();
+        missingClasses.removeAll(findClasses(missingClasses, classpathFiles, index));
+
+        File archive = task instanceof AbstractArchiveTask ? ((AbstractArchiveTask) task).getArchiveFile().get().getAsFile() : null;
+        try (BeanClassValidator validator = new BeanClassValidator(archive, jarClasses, classpathFiles, index)) {
+            results.parallelStream().forEach(result -> validateBeans(result, missingClasses, validator, path));
+        }
+
+        for (DefinitionResult result : results) {
+            for (String message : result.messages) {
+                report(task, message, result.failure != null ? new Object[] { result.failure } : new Object[0]);
+            }
+        }
+    }
+
+    private static DefinitionResult readBeans(PluginDefinition definition, boolean offline, String path) {
+        DefinitionResult result = new DefinitionResult(definition);
         try {
-            beans = definition.getBeans(offline);
+            result.beans.addAll(definition.getBeans(offline));
+            if (result.beans.isEmpty()) {
+                result.messages.add(String.format(NO_BEAN_CLASSES_WARNING_MESSAGE, path, definition.getName()));
+            }
         }
         catch (IOException e) {
-            report(task, String.format(NO_BEAN_CLASSES_NON_PARSED_WARNING_MESSAGE, task.getPath(), definition.getName(), e.getMessage()), e);
-            return;
+            result.messages.add(String.format(NO_BEAN_CLASSES_NON_PARSED_WARNING_MESSAGE, path, definition.getName(), e.getMessage()));
+            result.failure = e;
         }
+        return result;
+    }
 
-        if (beans.isEmpty()) {
-            report(task, String.format(NO_BEAN_CLASSES_WARNING_MESSAGE, task.getPath(), definition.getName()));
-        } else {
-            for (PluginBean bean : beans) {
-                String fqcn = bean.getClassName().replace(".", "/") + ".class";
-                if (!classes.contains(fqcn)) {
-                    report(task, String.format(NO_BEAN_CLASS_WARNING_MESSAGE, task.getPath(), definition.getName(), bean.getClassName()));
+    private static Set<String> findClasses(Set<String> classFiles, Iterable<File> classpath, ClasspathIndex index) {
+        if (classFiles.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> remaining = new HashSet<>(classFiles);
+        Set<String> found = new HashSet<>();
+        for (File file : classpath) {
+            Set<String> fileClasses = index.classes(file);
+            for (String classFile : remaining) {
+                if (fileClasses.contains(classFile)) {
+                    found.add(classFile);
                 }
             }
+            remaining.removeAll(found);
+            if (remaining.isEmpty()) {
+                break;
+            }
+        }
+        return found;
+    }
+
+    private static void validateBeans(DefinitionResult result, Set<String> missingClasses, BeanClassValidator validator, String path) {
+        String name = result.definition.getName();
+        for (PluginBean bean : result.beans) {
+            if (missingClasses.contains(classFile(bean))) {
+                result.messages.add(String.format(NO_BEAN_CLASS_WARNING_MESSAGE, path, name, bean.getClassName()));
+                continue;
+            }
+            String reason = validator.checkInstantiable(bean);
+            if (reason != null) {
+                result.messages.add(String.format(NOT_INSTANTIABLE_WARNING_MESSAGE, path, name, bean.getClassName(), reason));
+            } else if (!validator.hasMatchingConstructor(bean)) {
+                result.messages.add(String.format(NO_CONSTRUCTOR_WARNING_MESSAGE, path, name, bean.getConstructorArgs(), bean.getClassName()));
+            }
         }
     }
 
+    private static boolean isGenerated(PluginDefinition definition, String pluginName) {
+        String name = definition.getName();
+        return name.equals("build-server-plugin-" + pluginName + ".xml") || name.equals("build-agent-plugin-" + pluginName + ".xml");
+    }
+
+    private static String classFile(PluginBean bean) {
+        return bean.getClassName().replace(".", "/") + ".class";
+    }
+
     private void report(Task task, String message, Object... objects) {
         task.getLogger().warn(message, objects);
         warningShown = true;
     }
+
+    private static class DefinitionResult {
+        private final PluginDefinition definition;
+        private final List<PluginBean> beans = new ArrayList<>();
+        private final List<String> messages = new ArrayList<>();
+        private Exception failure;
+
+        DefinitionResult(PluginDefinition definition) {
+            this.definition = definition;
+        }
+    }
 }
@@ -45,6 +45,8 @@ public class PluginExecutableFilesValidationAction implements Action<Task> {
         List<String> paths = files.stream()
             .map(FileCopyDetails::getPath)
             .collect(Collectors.toList());
+        // clear the files collected while the task ran so nothing is carried over to another execution
+        files.clear();
 
         List<String> executableFiles = getExecutableFiles(pluginTask.getDescriptor().get().getAsFile());
         for (String executableFile : executableFiles) {
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecSpec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static com.github.rodm.teamcity.internal.TeamCityTask.isWindows;
+
+public class ProcessSupport {
+
+    private static final String LOCALHOST = "localhost";
+    private static final int CONNECT_TIMEOUT = 1000;
+    private static final long POLL_INTERVAL = 500;
+    private static final long PORT_RELEASE_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Reads a process id from a pid file.
+     *
+     * @param pidFile the pid file
+     * @return the process id or null if the file does not exist or is malformed
+     */
+    public static Long readPid(File pidFile) {
+        if (!pidFile.isFile()) {
+            return null;
+        }
+        try {
+            String content = new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.UTF_8).trim();
+            return content.isEmpty() ? null : Long.valueOf(content);
+        }
+        catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static boolean isAlive(long pid) {
+        if (isWindows()) {
+            String output = run("tasklist", "/FI", "PID eq " + pid, "/NH", "/FO", "CSV");
+            return output.contains("\"" + pid + "\"");
+        } else {
+            return exitValue("kill", "-0", String.valueOf(pid)) == 0;
+        }
+    }
+
+    public static void forceKill(long pid) {
+        if (isWindows()) {
+            exitValue("taskkill", "/F", "/T", "/PID", String.valueOf(pid));
+        } else {
+            exitValue("kill", "-9", String.valueOf(pid));
+        }
+    }
+
+    public static boolean isPortInUse(int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(LOCALHOST, port), CONNECT_TIMEOUT);
+            return true;
+        }
+        catch (IOException ignored) {
+            return false;
+        }
+    }
+
+    /**
+     * Waits for a condition to become true.
+     *
+     * @param condition the condition to poll
+     * @param timeoutMillis the maximum time to wait
+     * @return true if the condition became true before the timeout expired
+     */
+    public static boolean waitFor(BooleanSupplier condition, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return condition.getAsBoolean();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs a TeamCity script, the exit value is ignored and the output is logged at info level.
+     *
+     * @param execOperations the operations used to run the script
+     * @param configure configures the script and its arguments
+     * @param logger the logger for the output
+     */
+    public static void run(ExecOperations execOperations, Action<? super ExecSpec> configure, Logger logger) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        execOperations.exec(execSpec -> {
+            configure.execute(execSpec);
+            execSpec.setStandardOutput(out);
+            execSpec.setErrorOutput(out);
+            execSpec.setIgnoreExitValue(true);
+        });
+        logger.info(out.toString());
+    }
+
+    /**
+     * Waits for a process that has been asked to stop to exit, kills the process if it does not exit
+     * before the timeout expires, and then waits for the port used by the process to be released.
+     *
+     * @param name the name used as the prefix of log messages
+     * @param pid the process id, or null if not known, then only the port is checked
+     * @param port the port the process listens on
+     * @param timeoutSeconds the time in seconds to wait for the process to exit
+     * @param logger the logger for progress messages
+     * @throws GradleException if the process could not be killed or the port is still in use
+     */
+    public static void awaitStop(String name, Long pid, int port, int timeoutSeconds, Logger logger) {
+        final long timeout = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        if (pid != null) {
+            if (!waitFor(() -> !isAlive(pid), timeout)) {
+                logger.warn("{}: Process {} did not stop within {} seconds, killing process.", name, pid, timeoutSeconds);
+                forceKill(pid);
+                if (!waitFor(() -> !isAlive(pid), PORT_RELEASE_TIMEOUT)) {
+                    throw new GradleException(String.format("Failed to kill process %d", pid));
+                }
+            }
+            logger.info("{}: Process {} stopped", name, pid);
+        } else {
+            waitFor(() -> !isPortInUse(port), timeout);
+        }
+
+        if (!waitFor(() -> !isPortInUse(port), PORT_RELEASE_TIMEOUT)) {
+            throw new GradleException(String.format("Port %d is still in use after stopping the process", port));
+        }
+    }
+
+    /**
+     * Deletes a pid file, a failure to delete the file is logged.
+     *
+     * @param name the name used as the prefix of log messages
+     * @param pidFile the pid file
+     * @param logger the logger for the failure message
+     */
+    public static void deletePidFile(String name, File pidFile, Logger logger) {
+        if (pidFile.isFile() && !pidFile.delete()) {
+            logger.warn("{}: Failed to delete pid file {}", name, pidFile);
+        }
+    }
+
+    private static int exitValue(String... command) {
+        try {
+            Process process = start(Arrays.asList(command));
+            drain(process.getInputStream());
+            return process.waitFor();
+        }
+        catch (IOException e) {
+            return -1;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private static String run(String... command) {
+        try {
+            Process process = start(Arrays.asList(command));
+            String output = drain(process.getInputStream());
+            process.waitFor();
+            return output;
+        }
+        catch (IOException e) {
+            return "";
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+
+    private static Process start(List<String> command) throws IOException {
+        return new ProcessBuilder(command).redirectErrorStream(true).start();
+    }
+
+    private static String drain(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private ProcessSupport() {
+        throw new IllegalStateException("Utility class");
+    }
+}
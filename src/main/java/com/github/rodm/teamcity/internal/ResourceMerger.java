@@ -0,0 +1,156 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Merges resources that occur in more than one jar when the jars are combined into a single jar. Service files
+ * are merged by combining the providers, the Spring handler, schema and tooling mappings are merged by key and
+ * the values of the keys of Spring factories files are combined.
+ */
+public class ResourceMerger {
+
+    private static final String SERVICES_PREFIX = "META-INF/services/";
+    private static final String SPRING_FACTORIES = "META-INF/spring.factories";
+    private static final Set<String> SPRING_MAPPINGS = new LinkedHashSet<>();
+
+    static {
+        SPRING_MAPPINGS.add("META-INF/spring.handlers");
+        SPRING_MAPPINGS.add("META-INF/spring.schemas");
+        SPRING_MAPPINGS.add("META-INF/spring.tooling");
+    }
+
+    private ResourceMerger() {
+    }
+
+    public static boolean isMergeable(String name) {
+        return name.startsWith(SERVICES_PREFIX) || name.equals(SPRING_FACTORIES) || SPRING_MAPPINGS.contains(name);
+    }
+
+    /**
+     * @param name the resource name
+     * @param contents the content of each occurrence of the resource, in classpath order
+     * @return the merged content
+     */
+    public static byte[] merge(String name, List<byte[]> contents) {
+        if (name.startsWith(SERVICES_PREFIX)) {
+            return mergeServices(contents);
+        }
+        if (name.equals(SPRING_FACTORIES)) {
+            return mergeProperties(contents, true);
+        }
+        if (SPRING_MAPPINGS.contains(name)) {
+            return mergeProperties(contents, false);
+        }
+        throw new IllegalArgumentException("Resource " + name + " cannot be merged");
+    }
+
+    /**
+     * Creates a jar index listing the packages of a jar, the index lets a class loader that supports jar indexes
+     * find the jar containing a class without searching the jar's entries.
+     *
+     * @param jarName the file name of the jar
+     * @param entryNames the names of the entries of the jar
+     * @return the content of the META-INF/INDEX.LIST entry
+     */
+    public static byte[] packageIndex(String jarName, Collection<String> entryNames) {
+        Set<String> packages = new TreeSet<>();
+        for (String name : entryNames) {
+            int index = name.lastIndexOf('/');
+            if (index > 0 && !name.startsWith("META-INF/")) {
+                packages.add(name.substring(0, index));
+            }
+        }
+        StringBuilder result = new StringBuilder("JarIndex-Version: 1.0\n\n").append(jarName).append('\n');
+        packages.forEach(name -> result.append(name).append('\n'));
+        return result.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] mergeServices(List<byte[]> contents) {
+        Set<String> providers = new LinkedHashSet<>();
+        for (byte[] content : contents) {
+            for (String line : lines(content)) {
+                String provider = line.replaceAll("#.*", "").trim();
+                if (!provider.isEmpty()) {
+                    providers.add(provider);
+                }
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        providers.forEach(provider -> result.append(provider).append('\n'));
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] mergeProperties(List<byte[]> contents, boolean combineValues) {
+        Map<String, String> merged = new TreeMap<>();
+        for (byte[] content : contents) {
+            Properties properties = new Properties();
+            try {
+                properties.load(new ByteArrayInputStream(content));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            for (String key : properties.stringPropertyNames()) {
+                merged.merge(key, properties.getProperty(key), (existing, added) -> combineValues ? combine(existing, added) : existing);
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        merged.forEach((key, value) -> result.append(escape(key, true)).append('=').append(escape(value, false)).append('\n'));
+        return result.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String combine(String existing, String added) {
+        Set<String> values = new LinkedHashSet<>();
+        for (String value : (existing + "," + added).split(",")) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return String.join(",", values);
+    }
+
+    private static String escape(String value, boolean key) {
+        StringBuilder result = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if (c > 0x7e) {
+                result.append(String.format("\\u%04x", (int) c));
+                continue;
+            }
+            if (c == '\\' || (key && (c == ':' || c == '=' || c == ' ' || c == '#' || c == '!'))) {
+                result.append('\\');
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    private static String[] lines(byte[] content) {
+        return new String(content, StandardCharsets.UTF_8).split("\\r?\\n");
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import static com.github.rodm.teamcity.internal.ArchiveSizes.formatSize;
+
+/**
+ * Finds libraries packaged in both the server and the agent parts of a plugin. Libraries are compared by content,
+ * the CRC-32 and size of a jar in an agent plugin archive are read from the archive's central directory, the
+ * CRC-32 of a server library is calculated once and cached by the checksum of the library.
+ */
+public class SharedLibraries {
+
+    /**
+     * The location of the cache of library hashes, relative to the Gradle user home directory.
+     */
+    public static final String CACHE_DIR = "caches/gradle-teamcity-plugin/library-hash";
+
+    private static final String JAR_SUFFIX = ".jar";
+    private static final String HASH_SUFFIX = ".crc";
+
+    private static final Map<String, String> HASHES = new ConcurrentHashMap<>();
+
+    /**
+     * A server library that is also packaged in an agent plugin archive.
+     */
+    public static class SharedLibrary {
+        private final String serverLibrary;
+        private final String agentArchive;
+        private final String agentLibrary;
+        private final long size;
+
+        SharedLibrary(String serverLibrary, String agentArchive, String agentLibrary, long size) {
+            this.serverLibrary = serverLibrary;
+            this.agentArchive = agentArchive;
+            this.agentLibrary = agentLibrary;
+            this.size = size;
+        }
+
+        public String getServerLibrary() {
+            return serverLibrary;
+        }
+
+        public String getAgentArchive() {
+            return agentArchive;
+        }
+
+        public String getAgentLibrary() {
+            return agentLibrary;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    private final File cacheDir;
+
+    public SharedLibraries(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @param serverFiles the files packaged in the server directory of the plugin archive
+     * @param agentArchives the agent plugin archives packaged in the agent directory of the plugin archive
+     * @return the server libraries also packaged in an agent plugin archive
+     */
+    public List<SharedLibrary> find(Collection<File> serverFiles, Collection<File> agentArchives) {
+        Map<String, List<String[]>> agentLibraries = new HashMap<>();
+        for (File archive : agentArchives) {
+            if (!archive.isFile()) {
+                continue;
+            }
+            try {
+                for (ZipIndex.Entry entry : ZipIndex.read(archive).getEntries()) {
+                    if (!entry.isDirectory() && entry.getName().endsWith(JAR_SUFFIX)) {
+                        String hash = hash(entry.getCrc(), entry.getSize());
+                        agentLibraries.computeIfAbsent(hash, key -> new ArrayList<>()).add(new String[] {archive.getName(), entry.getName()});
+                    }
+                }
+            }
+            catch (IOException e) {
+                // not a valid archive, it cannot contain any libraries
+            }
+        }
+        if (agentLibraries.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<SharedLibrary> result = new ArrayList<>();
+        for (File file : serverFiles) {
+            if (!file.isFile() || !file.getName().endsWith(JAR_SUFFIX)) {
+                continue;
+            }
+            for (String[] agentLibrary : agentLibraries.getOrDefault(contentHash(file), Collections.emptyList())) {
+                result.add(new SharedLibrary(file.getName(), agentLibrary[0], agentLibrary[1], file.length()));
+            }
+        }
+        return result;
+    }
+
+    public static void writeReport(List<SharedLibrary> libraries, PrintWriter writer) {
+        long total = libraries.stream().mapToLong(SharedLibrary::getSize).sum();
+        writer.println("Libraries packaged in both the server and agent parts of the plugin: " + libraries.size() + ", " + formatSize(total));
+        for (SharedLibrary library : libraries) {
+            writer.println();
+            writer.println("server/" + library.getServerLibrary() + " (" + formatSize(library.getSize()) + ")");
+            writer.println("    agent/" + library.getAgentArchive() + "!/" + library.getAgentLibrary());
+        }
+    }
+
+    String contentHash(File file) {
+        return HASHES.computeIfAbsent(ClasspathIndex.checksum(file), checksum -> cachedHash(checksum, file));
+    }
+
+    private String cachedHash(String checksum, File file) {
+        Path hashFile = cacheDir == null ? null : cacheDir.toPath().resolve(checksum + HASH_SUFFIX);
+        if (hashFile != null && Files.isRegularFile(hashFile)) {
+            try {
+                return new String(Files.readAllBytes(hashFile), StandardCharsets.UTF_8).trim();
+            }
+            catch (IOException e) {
+                // ignore and calculate the hash again
+            }
+        }
+
+        String hash = hash(crc(file), file.length());
+        if (hashFile != null) {
+            try {
+                Files.createDirectories(hashFile.getParent());
+                Path tempFile = Files.createTempFile(hashFile.getParent(), hashFile.getFileName().toString(), ".tmp");
+                Files.write(tempFile, hash.getBytes(StandardCharsets.UTF_8));
+                Files.move(tempFile, hashFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (IOException e) {
+                // the hash is only cached, it is calculated again by the next build
+            }
+        }
+        return hash;
+    }
+
+    private static long crc(File file) {
+        try (InputStream is = Files.newInputStream(file.toPath())) {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                crc.update(buffer, 0, read);
+            }
+            return crc.getValue();
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to calculate hash of " + file, e);
+        }
+    }
+
+    private static String hash(long crc, long size) {
+        return Long.toHexString(crc) + ':' + size;
+    }
+}
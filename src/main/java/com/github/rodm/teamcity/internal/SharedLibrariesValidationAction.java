@@ -0,0 +1,79 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import com.github.rodm.teamcity.ValidationMode;
+import com.github.rodm.teamcity.tasks.ServerPlugin;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Reports the libraries packaged in both the server and agent parts of a plugin archive, the libraries are
+ * compressed and shipped twice.
+ */
+public class SharedLibrariesValidationAction implements Action<Task> {
+
+    private static final String SHARED_LIBRARIES_WARNING = "{}: {} libraries, {}, are packaged in both the server and agent parts of the plugin, run with --info for details.";
+
+    @Override
+    public void execute(Task task) {
+        ServerPlugin pluginTask = (ServerPlugin) task;
+        ValidationMode mode = pluginTask.getSharedLibraries().get();
+        if (mode == ValidationMode.IGNORE) {
+            return;
+        }
+
+        File cacheDir = pluginTask.getHashCacheDir().isPresent() ? pluginTask.getHashCacheDir().get().getAsFile() : null;
+        SharedLibraries sharedLibraries = new SharedLibraries(cacheDir);
+        List<SharedLibraries.SharedLibrary> libraries = sharedLibraries.find(pluginTask.getServer().getFiles(), pluginTask.getAgent().getFiles());
+
+        File reportFile = pluginTask.getSharedLibrariesReport().isPresent() ? pluginTask.getSharedLibrariesReport().get().getAsFile() : null;
+        if (reportFile != null) {
+            writeReport(libraries, reportFile);
+        }
+
+        if (!libraries.isEmpty()) {
+            long total = libraries.stream().mapToLong(SharedLibraries.SharedLibrary::getSize).sum();
+            for (SharedLibraries.SharedLibrary library : libraries) {
+                task.getLogger().info("{}: server/{} is also packaged in agent/{}", task.getPath(), library.getServerLibrary(), library.getAgentArchive());
+            }
+            task.getLogger().warn(SHARED_LIBRARIES_WARNING, task.getPath(), libraries.size(), ArchiveSizes.formatSize(total));
+            if (mode == ValidationMode.FAIL) {
+                throw new GradleException("Libraries are packaged in both the server and agent parts of the plugin");
+            }
+        }
+    }
+
+    private static void writeReport(List<SharedLibraries.SharedLibrary> libraries, File reportFile) {
+        try {
+            Files.createDirectories(reportFile.getParentFile().toPath());
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8))) {
+                SharedLibraries.writeReport(libraries, writer);
+            }
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to write shared libraries report " + reportFile, e);
+        }
+    }
+}
@@ -24,47 +24,110 @@ import org.jetbrains.zip.signer.signer.CertificateUtils;
 import org.jetbrains.zip.signer.signer.PrivateKeyUtils;
 import org.jetbrains.zip.signer.signer.PublicKeyUtils;
 import org.jetbrains.zip.signer.signing.DefaultSignatureProvider;
+import org.jetbrains.zip.signer.signing.SignatureProvider;
 import org.jetbrains.zip.signer.signing.ZipSigner;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Signs a plugin archive. The action runs in a worker with an isolated class loader over the zip signer
+ * libraries, Gradle reuses the class loader for all sign tasks of a build with the same classpath. The parsed
+ * certificate chain is kept for the sign tasks of the current build, keyed by a digest of the certificate chain,
+ * and discarded when a sign task of a later build runs. The private key is decrypted by each sign task and is
+ * not kept after the plugin archive is signed.
+ */
 public abstract class SignAction implements WorkAction<SignAction.SignParameters> {
 
+    private static final Map<String, List<X509Certificate>> CERTIFICATES = new HashMap<>();
+    private static String certificatesBuildId;
+
     public interface SignParameters extends WorkParameters {
         RegularFileProperty getPluginFile();
         Property<String> getCertificateChain();
         Property<String> getPrivateKey();
         Property<String> getPassword();
+        Property<Boolean> getStreaming();
         RegularFileProperty getSignedPluginFile();
+        Property<String> getBuildId();
     }
 
     @Override
     public void execute() {
+        SignParameters parameters = getParameters();
+        File pluginFile = parameters.getPluginFile().get().getAsFile();
+        File signedPluginFile = parameters.getSignedPluginFile().get().getAsFile();
+        String certificate = parameters.getCertificateChain().get();
+        String encodedPrivateKey = parameters.getPrivateKey().get();
+        String password = parameters.getPassword().getOrNull();
         try {
-            SignParameters parameters = getParameters();
-            File pluginFile = parameters.getPluginFile().get().getAsFile();
-            File signedPluginFile = parameters.getSignedPluginFile().get().getAsFile();
-            String certificate = parameters.getCertificateChain().get();
-            List<X509Certificate> certificateChain = CertificateUtils.loadCertificates(certificate);
-            String encodedPrivateKey = parameters.getPrivateKey().get();
-            String password = parameters.getPassword().getOrNull();
+            List<X509Certificate> certificateChain = certificateChain(parameters.getBuildId().getOrElse(""), certificate);
             PrivateKey privateKey = PrivateKeyUtils.loadPrivateKey(encodedPrivateKey, (password == null) ? null : password.toCharArray());
-
-            ZipSigner.sign(
-                pluginFile,
-                signedPluginFile,
-                certificateChain,
-                new DefaultSignatureProvider(
-                    PublicKeyUtils.INSTANCE.getSuggestedSignatureAlgorithm(certificateChain.get(0).getPublicKey()),
-                    privateKey));
+            SignatureProvider signatureProvider = new DefaultSignatureProvider(
+                PublicKeyUtils.INSTANCE.getSuggestedSignatureAlgorithm(certificateChain.get(0).getPublicKey()),
+                privateKey);
+            if (parameters.getStreaming().getOrElse(false)) {
+                StreamingZipSigner.sign(pluginFile, signedPluginFile, certificateChain, signatureProvider);
+            } else {
+                ZipSigner.sign(pluginFile, signedPluginFile, certificateChain, signatureProvider);
+            }
         }
         catch (IOException | CertificateException e) {
             throw new GradleException("Failure signing plugin", e);
         }
     }
+
+    /**
+     * @return the number of certificate chains cached for the current build
+     */
+    public static int cachedCertificateChains() {
+        synchronized (CERTIFICATES) {
+            return CERTIFICATES.size();
+        }
+    }
+
+    private static List<X509Certificate> certificateChain(String buildId, String certificate) throws IOException, CertificateException {
+        synchronized (CERTIFICATES) {
+            if (!buildId.equals(certificatesBuildId)) {
+                CERTIFICATES.clear();
+                certificatesBuildId = buildId;
+            }
+            String key = digest(certificate);
+            List<X509Certificate> certificateChain = CERTIFICATES.get(key);
+            if (certificateChain == null) {
+                certificateChain = CertificateUtils.loadCertificates(certificate);
+                CERTIFICATES.put(key, certificateChain);
+            }
+            return certificateChain;
+        }
+    }
+
+    private static String digest(String... values) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String value : values) {
+                if (value != null) {
+                    digest.update(value.getBytes(StandardCharsets.UTF_8));
+                }
+                digest.update((byte) 0);
+            }
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest.digest()) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
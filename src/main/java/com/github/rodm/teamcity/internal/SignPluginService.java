@@ -0,0 +1,37 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.util.UUID;
+
+/**
+ * A shared build service that identifies the build the sign tasks run in. The sign action only reuses a parsed
+ * certificate chain for sign tasks with the same build id, the certificate chains loaded by an earlier build are
+ * discarded by the first sign task of the next build.
+ */
+public abstract class SignPluginService implements BuildService<BuildServiceParameters.None> {
+
+    public static final String SERVICE_NAME = "teamcitySignPlugin";
+
+    private final String buildId = UUID.randomUUID().toString();
+
+    public String getBuildId() {
+        return buildId;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.jetbrains.zip.signer.datasource.DataSource;
+import org.jetbrains.zip.signer.datasource.FileChannelDataSource;
+import org.jetbrains.zip.signer.digest.DigestUtils;
+import org.jetbrains.zip.signer.metadata.Digest;
+import org.jetbrains.zip.signer.metadata.ZipMetadata;
+import org.jetbrains.zip.signer.signer.CertificateUtils;
+import org.jetbrains.zip.signer.signing.SignatureProvider;
+import org.jetbrains.zip.signer.signing.SigningKt;
+import org.jetbrains.zip.signer.signing.ZipSigner;
+import org.jetbrains.zip.signer.zip.ZipSections;
+import org.jetbrains.zip.signer.zip.ZipSectionsInformation;
+import org.jetbrains.zip.signer.zip.ZipUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Signs a plugin archive producing the same output as {@link ZipSigner#sign} without building the signed archive
+ * in memory. The signed archive is the unsigned archive with the signature block inserted before the central
+ * directory. The entries of the archive are copied to the signed archive as the digest reads them in order, the
+ * parts not read in order are copied after the digest is computed, then the signature block, the central
+ * directory and the end of central directory record are appended. An archive that is already signed is passed
+ * to {@link ZipSigner#sign}.
+ */
+public final class StreamingZipSigner {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int EOCD_CENTRAL_DIRECTORY_OFFSET = 16;
+
+    private StreamingZipSigner() {
+    }
+
+    public static void sign(File inputFile, File outputFile, List<X509Certificate> certificates, SignatureProvider signatureProvider) throws IOException {
+        if (!CertificateUtils.INSTANCE.isValidCertificateChain(certificates)) {
+            throw new IllegalArgumentException("Provided certificates doesn't form a valid certificate trust chain");
+        }
+        try (FileChannel input = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            DataSource source = new FileChannelDataSource(input, 0, input.size());
+            ZipSectionsInformation information = ZipUtils.INSTANCE.findZipSectionsInformation(source);
+            if (ZipMetadata.Companion.findInZip(source, information) != null) {
+                ZipSigner.sign(inputFile, outputFile, certificates, signatureProvider);
+                return;
+            }
+
+            try (FileChannel output = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                long centralDirectoryOffset = information.getCentralDirectoryOffset();
+                CopyingDataSource entries = new CopyingDataSource(source.slice(0, centralDirectoryOffset), output);
+                DataSource centralDirectory = source.slice(centralDirectoryOffset, information.getCentralDirectorySizeBytes());
+                DataSource endOfCentralDirectory = source.slice(information.getEndOfCentralDirectoryOffset(), information.getEndOfCentralDirectorySizeBytes());
+                ZipSections sections = new ZipSections(entries, centralDirectory, endOfCentralDirectory);
+
+                List<Digest> digests = DigestUtils.INSTANCE.computeDigest(
+                    Collections.singletonList(signatureProvider.getSignatureAlgorithm().getContentDigestAlgorithm()),
+                    sections.toList(), CHUNK_SIZE);
+                ZipMetadata metadata = new ZipMetadata(digests,
+                    Collections.singletonList(SigningKt.generateSignerBlock(certificates, signatureProvider, digests)));
+
+                entries.copyRemaining();
+                write(output, ByteBuffer.wrap(metadata.toByteArray()));
+                centralDirectory.feed(output, 0, centralDirectory.size());
+                ByteBuffer eocd = copy(endOfCentralDirectory.getByteBuffer(0, (int) endOfCentralDirectory.size()));
+                eocd.putInt(EOCD_CENTRAL_DIRECTORY_OFFSET, (int) (centralDirectoryOffset + metadata.getSize()));
+                write(output, eocd);
+            }
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        ByteBuffer result = ByteBuffer.allocate(buffer.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        result.put(buffer);
+        ((Buffer) result).flip();
+        return result;
+    }
+
+    private static void write(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * A data source that copies the bytes read from it to an output channel. Each chunk read in order is written
+     * to the output as it is read, the parts read through a slice or not read in order are read again and copied
+     * by {@link #copyRemaining()}.
+     */
+    private static final class CopyingDataSource implements DataSource {
+
+        private final DataSource source;
+        private final WritableByteChannel output;
+        private long copied;
+
+        CopyingDataSource(DataSource source, WritableByteChannel output) {
+            this.source = source;
+            this.output = output;
+        }
+
+        @Override
+        public long size() {
+            return source.size();
+        }
+
+        @Override
+        public ByteBuffer getByteBuffer(long offset, int size) {
+            ByteBuffer result = source.getByteBuffer(offset, size);
+            if (offset <= copied && copied < offset + size) {
+                ByteBuffer remaining = result.duplicate();
+                ((Buffer) remaining).position(remaining.position() + (int) (copied - offset));
+                try {
+                    write(output, remaining);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                copied = offset + size;
+            }
+            return result;
+        }
+
+        @Override
+        public void copyTo(long offset, int size, ByteBuffer destination) {
+            destination.put(getByteBuffer(offset, size));
+        }
+
+        @Override
+        public void feed(WritableByteChannel channel, long offset, long size) {
+            source.feed(channel, offset, size);
+        }
+
+        @Override
+        public DataSource slice(long offset, long size) {
+            return source.slice(offset, size);
+        }
+
+        void copyRemaining() {
+            if (copied < source.size()) {
+                source.feed(output, copied, source.size() - copied);
+                copied = source.size();
+            }
+        }
+    }
+}
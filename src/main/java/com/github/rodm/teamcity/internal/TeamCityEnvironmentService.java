@@ -0,0 +1,230 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import com.github.rodm.teamcity.tasks.StartAgent;
+import com.github.rodm.teamcity.tasks.StartServer;
+import org.gradle.api.GradleException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.process.ExecOperations;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.github.rodm.teamcity.internal.ProcessSupport.awaitStop;
+import static com.github.rodm.teamcity.internal.ProcessSupport.deletePidFile;
+import static com.github.rodm.teamcity.internal.ProcessSupport.isAlive;
+import static com.github.rodm.teamcity.internal.ProcessSupport.isPortInUse;
+import static com.github.rodm.teamcity.internal.ProcessSupport.readPid;
+import static com.github.rodm.teamcity.internal.TeamCityTask.isWindows;
+
+/**
+ * A shared build service that keeps track of the TeamCity Servers and Build Agents started by the
+ * environment tasks. The settings used to start a server are recorded in the TeamCity home directory
+ * so that a later build can reuse a server that is still running with the same settings. Servers and
+ * agents started with the stop after build option are stopped when the service is closed at the end
+ * of the build.
+ */
+public abstract class TeamCityEnvironmentService implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+
+    public static final String SERVICE_NAME = "teamcityEnvironments";
+
+    /**
+     * The location of the file, relative to the TeamCity home directory, the server settings are written to.
+     */
+    public static final String SERVER_SETTINGS_FILE = "logs/teamcity-server.properties";
+
+    private static final Logger LOGGER = Logging.getLogger(TeamCityEnvironmentService.class);
+
+    private final Map<String, StartedProcess> servers = new ConcurrentHashMap<>();
+    private final Map<String, StartedProcess> agents = new ConcurrentHashMap<>();
+
+    /**
+     * Checks if a server started from the TeamCity home directory is running.
+     *
+     * @param homeDir the TeamCity home directory
+     * @param port the port the server listens on
+     * @return true if the server process is alive and the server port is in use
+     */
+    public boolean isServerRunning(String homeDir, int port) {
+        Long pid = readPid(new File(homeDir, StartServer.SERVER_PID_FILE));
+        return pid != null && isAlive(pid) && isPortInUse(port);
+    }
+
+    /**
+     * Checks if a server started from the TeamCity home directory is running with the same settings.
+     *
+     * @param homeDir the TeamCity home directory
+     * @param port the port the server listens on
+     * @param settings the settings used to start the server
+     * @return true if the running server was started with the same settings
+     */
+    public boolean isCompatibleServerRunning(String homeDir, int port, Properties settings) {
+        return isServerRunning(homeDir, port) && settings.equals(readSettings(homeDir));
+    }
+
+    public boolean isAgentRunning(String homeDir) {
+        Long pid = readPid(new File(homeDir, StartAgent.AGENT_PID_FILE));
+        return pid != null && isAlive(pid);
+    }
+
+    /**
+     * Records a server started by the build.
+     *
+     * @param homeDir the TeamCity home directory
+     * @param javaHome the Java used to run the server
+     * @param settings the settings used to start the server
+     * @param port the port the server listens on
+     * @param stopTimeout the time in seconds to wait for the server to stop before it is killed
+     * @param stopAfterBuild true if the server is stopped when the build finishes
+     */
+    public void serverStarted(String homeDir, String javaHome, Properties settings, int port, int stopTimeout, boolean stopAfterBuild) {
+        writeSettings(homeDir, settings);
+        servers.put(key(homeDir), new StartedProcess(serverScript(homeDir), javaHome,
+            new File(homeDir, StartServer.SERVER_PID_FILE), port, stopTimeout, stopAfterBuild));
+    }
+
+    public void serverStopped(String homeDir) {
+        servers.remove(key(homeDir));
+        File settingsFile = new File(homeDir, SERVER_SETTINGS_FILE);
+        if (settingsFile.isFile() && !settingsFile.delete()) {
+            LOGGER.warn("Failed to delete server settings file {}", settingsFile);
+        }
+    }
+
+    /**
+     * Records an agent started by the build.
+     *
+     * @param homeDir the TeamCity home directory
+     * @param javaHome the Java used to run the agent
+     * @param port the port the agent listens on
+     * @param stopTimeout the time in seconds to wait for the agent to stop before it is killed
+     * @param stopAfterBuild true if the agent is stopped when the build finishes
+     */
+    public void agentStarted(String homeDir, String javaHome, int port, int stopTimeout, boolean stopAfterBuild) {
+        agents.put(key(homeDir), new StartedProcess(agentScript(homeDir), javaHome,
+            new File(homeDir, StartAgent.AGENT_PID_FILE), port, stopTimeout, stopAfterBuild));
+    }
+
+    public void agentStopped(String homeDir) {
+        agents.remove(key(homeDir));
+    }
+
+    @Inject
+    protected abstract ExecOperations getExecOperations();
+
+    @Override
+    public void close() {
+        // stop agents before the servers they are connected to
+        stopAll(agents);
+        stopAll(servers);
+    }
+
+    private void stopAll(Map<String, StartedProcess> processes) {
+        for (String key : new ArrayList<>(processes.keySet())) {
+            StartedProcess process = processes.remove(key);
+            if (process != null && process.stopAfterBuild) {
+                process.stop(getExecOperations());
+            }
+        }
+    }
+
+    private static String key(String homeDir) {
+        return new File(homeDir).getAbsolutePath();
+    }
+
+    private static String serverScript(String homeDir) {
+        return homeDir + "/bin/" + (isWindows() ? "teamcity-server.bat" : "teamcity-server.sh");
+    }
+
+    private static String agentScript(String homeDir) {
+        return homeDir + "/buildAgent/bin/" + (isWindows() ? "agent.bat" : "agent.sh");
+    }
+
+    private static Properties readSettings(String homeDir) {
+        Properties settings = new Properties();
+        File settingsFile = new File(homeDir, SERVER_SETTINGS_FILE);
+        if (settingsFile.isFile()) {
+            try (InputStream is = Files.newInputStream(settingsFile.toPath())) {
+                settings.load(is);
+            }
+            catch (IOException e) {
+                LOGGER.info("Failed to read server settings file {}", settingsFile);
+            }
+        }
+        return settings;
+    }
+
+    private static void writeSettings(String homeDir, Properties settings) {
+        File settingsFile = new File(homeDir, SERVER_SETTINGS_FILE);
+        try {
+            Files.createDirectories(settingsFile.getParentFile().toPath());
+            try (OutputStream os = Files.newOutputStream(settingsFile.toPath())) {
+                settings.store(os, "Settings used to start the TeamCity Server");
+            }
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to write server settings file " + settingsFile, e);
+        }
+    }
+
+    private static class StartedProcess {
+
+        private final String script;
+        private final String javaHome;
+        private final File pidFile;
+        private final int port;
+        private final int stopTimeout;
+        private final boolean stopAfterBuild;
+
+        StartedProcess(String script, String javaHome, File pidFile, int port, int stopTimeout, boolean stopAfterBuild) {
+            this.script = script;
+            this.javaHome = javaHome;
+            this.pidFile = pidFile;
+            this.port = port;
+            this.stopTimeout = stopTimeout;
+            this.stopAfterBuild = stopAfterBuild;
+        }
+
+        void stop(ExecOperations execOperations) {
+            Long pid = readPid(pidFile);
+            LOGGER.lifecycle("Stopping {}", script);
+            try {
+                ProcessSupport.run(execOperations, execSpec -> {
+                    execSpec.executable(script);
+                    execSpec.environment("JAVA_HOME", javaHome);
+                    execSpec.args("stop");
+                }, LOGGER);
+                awaitStop(script, pid, port, stopTimeout, LOGGER);
+            }
+            catch (GradleException e) {
+                LOGGER.warn("Failed to stop {}: {}", script, e.getMessage());
+            }
+            deletePidFile(script, pidFile, LOGGER);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An index of the jars shipped with a TeamCity installation, the jars are indexed by artifact name, checksum and
+ * the packages they contain. The index of a library directory is cached in memory and in the cache directory,
+ * it is only rebuilt when a jar in the directory is added, removed or modified.
+ */
+public class TeamCityLibraries {
+
+    /**
+     * The location of the server libraries, relative to the TeamCity home directory.
+     */
+    public static final String SERVER_LIB_DIR = "webapps/ROOT/WEB-INF/lib";
+
+    /**
+     * The location of the agent libraries, relative to the TeamCity home directory.
+     */
+    public static final String AGENT_LIB_DIR = "buildAgent/lib";
+
+    /**
+     * The location of the cache of library indexes, relative to the Gradle user home directory.
+     */
+    public static final String CACHE_DIR = "caches/gradle-teamcity-plugin/library-index";
+
+    private static final Pattern VERSIONED_NAME = Pattern.compile("(.+?)-\\d[^/]*\\.jar");
+
+    private static final String INDEX_SUFFIX = ".libs";
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int MAX_LIBRARIES = 16;
+
+    private static final BoundedCache<String, TeamCityLibraries> LIBRARIES = new BoundedCache<>(MAX_LIBRARIES);
+
+    private final Map<String, String> artifacts = new HashMap<>();
+    private final Map<String, String> checksums = new HashMap<>();
+    private final Map<String, String> packages = new HashMap<>();
+    private final String stamp;
+
+    TeamCityLibraries(List<Library> libraries, String stamp) {
+        this.stamp = stamp;
+        for (Library library : libraries) {
+            artifacts.putIfAbsent(artifactName(library.name), library.name);
+            checksums.putIfAbsent(library.checksum, library.name);
+            for (String packageName : library.packages) {
+                packages.putIfAbsent(packageName, library.name);
+            }
+        }
+    }
+
+    /**
+     * Loads the index of the jars in a TeamCity library directory.
+     *
+     * @param libDir the library directory
+     * @param cacheDir the cache directory, or null to not cache the index
+     * @return the index, empty if the directory does not exist
+     */
+    public static TeamCityLibraries load(File libDir, File cacheDir) {
+        File[] files = jars(libDir);
+        if (files == null) {
+            return new TeamCityLibraries(Collections.emptyList(), "");
+        }
+        String stamp = stamp(files);
+        return LIBRARIES.compute(libDir.getAbsolutePath(), (key, current) -> {
+            if (current != null && stamp.equals(current.stamp)) {
+                return current;
+            }
+            return new TeamCityLibraries(cachedLibraries(libDir, files, stamp, cacheDir), stamp);
+        });
+    }
+
+    /**
+     * Finds the installed jar that provides the same library as a plugin jar, either with the same checksum or
+     * with the same artifact name ignoring the version.
+     *
+     * @param name the file name of the plugin jar
+     * @param checksum the checksum of the plugin jar
+     * @return the name of the installed jar, or null if the library is not installed
+     */
+    public String findLibrary(String name, String checksum) {
+        String library = checksums.get(checksum);
+        return library != null ? library : artifacts.get(artifactName(name));
+    }
+
+    /**
+     * Finds the installed jar that is identical to a plugin jar. Only a jar with the same checksum is returned,
+     * a jar with the same artifact name but a different version is not the same library.
+     *
+     * @param checksum the checksum of the plugin jar
+     * @return the name of the installed jar, or null if the jar is not installed
+     */
+    public String findIdenticalLibrary(String checksum) {
+        return checksums.get(checksum);
+    }
+
+    /**
+     * Finds the packages of a plugin jar that are also provided by installed jars.
+     *
+     * @param packageNames the packages of the plugin jar
+     * @return the split packages and the name of the installed jar providing each package
+     */
+    public Map<String, String> findSplitPackages(Collection<String> packageNames) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String packageName : new TreeSet<>(packageNames)) {
+            String library = packages.get(packageName);
+            if (library != null) {
+                result.put(packageName, library);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the packages of the classes of a jar, classes in the default package and multi-release
+     * versions of classes are ignored.
+     *
+     * @param classFiles the class file paths, for example {@code example/Plugin.class}
+     * @return the package names, for example {@code example}
+     */
+    public static Set<String> packages(Collection<String> classFiles) {
+        Set<String> result = new TreeSet<>();
+        for (String classFile : classFiles) {
+            int index = classFile.lastIndexOf('/');
+            if (index > 0 && !classFile.startsWith("META-INF/")) {
+                result.add(classFile.substring(0, index).replace('/', '.'));
+            }
+        }
+        return result;
+    }
+
+    static String artifactName(String name) {
+        Matcher matcher = VERSIONED_NAME.matcher(name);
+        if (matcher.matches()) {
+            return matcher.group(1);
+        }
+        return name.endsWith(".jar") ? name.substring(0, name.length() - ".jar".length()) : name;
+    }
+
+    private static List<Library> cachedLibraries(File libDir, File[] files, String stamp, File cacheDir) {
+        Path indexFile = cacheDir == null ? null : cacheDir.toPath().resolve(sha1(libDir.getAbsolutePath()) + INDEX_SUFFIX);
+        if (indexFile != null && Files.isRegularFile(indexFile)) {
+            List<Library> libraries = readIndex(indexFile, stamp);
+            if (libraries != null) {
+                return libraries;
+            }
+        }
+
+        ClasspathIndex classpathIndex = new ClasspathIndex(cacheDir);
+        List<Library> libraries = new ArrayList<>();
+        for (File file : files) {
+            Set<String> classes = classpathIndex.classes(file);
+            libraries.add(new Library(file.getName(), ClasspathIndex.checksum(file), packages(classes)));
+        }
+        if (indexFile != null) {
+            writeIndex(indexFile, stamp, libraries);
+        }
+        return libraries;
+    }
+
+    private static List<Library> readIndex(Path indexFile, String stamp) {
+        try {
+            List<String> lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals(FORMAT_VERSION + ":" + stamp)) {
+                return null;
+            }
+            List<Library> libraries = new ArrayList<>();
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split("\t", -1);
+                List<String> packageNames = fields[2].isEmpty() ? Collections.emptyList() : Arrays.asList(fields[2].split(","));
+                libraries.add(new Library(fields[0], fields[1], packageNames));
+            }
+            return libraries;
+        }
+        catch (IOException | ArrayIndexOutOfBoundsException e) {
+            // ignore and index the directory again
+            return null;
+        }
+    }
+
+    private static void writeIndex(Path indexFile, String stamp, List<Library> libraries) {
+        List<String> lines = new ArrayList<>();
+        lines.add(FORMAT_VERSION + ":" + stamp);
+        for (Library library : libraries) {
+            lines.add(library.name + '\t' + library.checksum + '\t' + String.join(",", library.packages));
+        }
+        try {
+            Files.createDirectories(indexFile.getParent());
+            Path tempFile = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+            Files.write(tempFile, lines, StandardCharsets.UTF_8);
+            try {
+                Files.move(tempFile, indexFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e) {
+            // the index is only a cache, it is created again by the next build
+        }
+    }
+
+    /**
+     * Returns a stamp of the jars in a TeamCity library directory, from the names, sizes and modification times
+     * of the jars, without reading them. The stamp changes when the index of the directory is created again.
+     *
+     * @param libDir the library directory
+     * @return the stamp, empty if the directory does not exist
+     */
+    public static String stamp(File libDir) {
+        File[] files = jars(libDir);
+        return files == null ? "" : stamp(files);
+    }
+
+    private static File[] jars(File libDir) {
+        File[] files = libDir.listFiles((dir, name) -> name.endsWith(".jar"));
+        if (files != null) {
+            Arrays.sort(files);
+        }
+        return files;
+    }
+
+    private static String stamp(File[] files) {
+        StringBuilder listing = new StringBuilder();
+        for (File file : files) {
+            listing.append(file.getName()).append(':').append(file.length()).append(':').append(file.lastModified()).append('\n');
+        }
+        return sha1(listing.toString());
+    }
+
+    private static String sha1(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest.digest(value.getBytes(StandardCharsets.UTF_8))) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Library {
+        private final String name;
+        private final String checksum;
+        private final Collection<String> packages;
+
+        private Library(String name, String checksum, Collection<String> packages) {
+            this.name = name;
+            this.checksum = checksum;
+            this.packages = packages;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.process.ExecOperations;
+
+import java.io.File;
+
+import static com.github.rodm.teamcity.internal.ProcessSupport.awaitStop;
+import static com.github.rodm.teamcity.internal.ProcessSupport.deletePidFile;
+import static com.github.rodm.teamcity.internal.ProcessSupport.readPid;
+
+/**
+ * Base class for tasks that stop a TeamCity Server or Build Agent. After the stop script
+ * has run the task waits for the process to exit, kills it if it does not exit before
+ * the stop timeout expires, and then waits for the port used by the process to be released.
+ */
+public abstract class TeamCityStopTask extends TeamCityTask {
+
+    public static final int DEFAULT_STOP_TIMEOUT = 60;
+
+    protected TeamCityStopTask(ExecOperations execOperations) {
+        super(execOperations);
+        getStopTimeout().convention(DEFAULT_STOP_TIMEOUT);
+    }
+
+    /**
+     * @return the time in seconds to wait for the process to stop before it is killed
+     */
+    @Input
+    public abstract Property<Integer> getStopTimeout();
+
+    /**
+     * @return the port the process listens on, the task fails if the port is still in use after stopping.
+     * Set from the environment's server or agent port, defaults to the TeamCity default port
+     */
+    @Input
+    public abstract Property<Integer> getPort();
+
+    /**
+     * @return the file containing the process id written when the process was started
+     */
+    @Internal
+    public abstract File getPidFile();
+
+    @Override
+    public void exec() {
+        final Long pid = readPid(getPidFile());
+        super.exec();
+
+        if (pid == null) {
+            getLogger().info("{}: No process id found in {}", getPath(), getPidFile());
+        }
+        awaitStop(getPath(), pid, getPort().get(), getStopTimeout().get(), getLogger());
+        deletePidFile(getPath(), getPidFile(), getLogger());
+    }
+}
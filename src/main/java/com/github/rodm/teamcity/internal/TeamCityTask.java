@@ -16,16 +16,17 @@
 package com.github.rodm.teamcity.internal;
 
 import com.github.rodm.teamcity.TeamCityVersion;
+import org.gradle.api.Action;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.GradleException;
 import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.process.ExecOperations;
 import org.gradle.process.ExecSpec;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -58,17 +59,25 @@ public abstract class TeamCityTask extends DefaultTask {
     @Input
     public abstract Property<String> getJavaHome();
 
+    /**
+     * @return the shared service that tracks the TeamCity processes started by the build
+     */
+    @Internal
+    public abstract Property<TeamCityEnvironmentService> getEnvironmentService();
+
     @TaskAction
     public void exec() {
         validate();
-        final ByteArrayOutputStream out = new ByteArrayOutputStream();
-        execOperations.exec(execSpec -> {
-            configure(execSpec);
-            execSpec.setStandardOutput(out);
-            execSpec.setErrorOutput(out);
-            execSpec.setIgnoreExitValue(true);
-        });
-        getLogger().info(out.toString());
+        run(this::configure);
+    }
+
+    /**
+     * Runs a TeamCity script configured by the action, the output is logged at info level.
+     *
+     * @param configure configures the script and its arguments
+     */
+    protected void run(Action<? super ExecSpec> configure) {
+        ProcessSupport.run(execOperations, configure, getLogger());
     }
 
     public abstract void configure(ExecSpec execSpec);
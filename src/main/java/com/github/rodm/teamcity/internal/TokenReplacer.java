@@ -0,0 +1,111 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.InvalidUserDataException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Replaces tokens, a key surrounded by a begin and end delimiter, with the values in a map. The input is
+ * processed a line at a time, tokens cannot span lines. Tokens with a key that is not in the map are left
+ * unchanged and are returned as unresolved tokens.
+ */
+public class TokenReplacer {
+
+    /**
+     * Only keys that look like token names are reported as unresolved, so text such as an email address
+     * between two delimiters is not reported.
+     */
+    private static final Pattern TOKEN_NAME = Pattern.compile("[A-Za-z0-9_.-]+");
+
+    private final Map<String, ?> tokens;
+    private final String beginToken;
+    private final String endToken;
+
+    public TokenReplacer(Map<String, ?> tokens, String beginToken, String endToken) {
+        if (beginToken == null || beginToken.isEmpty() || endToken == null || endToken.isEmpty()) {
+            throw new InvalidUserDataException("Token delimiters cannot be empty");
+        }
+        this.tokens = tokens;
+        this.beginToken = beginToken;
+        this.endToken = endToken;
+    }
+
+    /**
+     * Copies the reader to the writer replacing the tokens.
+     *
+     * @param reader the input
+     * @param writer the output
+     * @return the keys of the tokens that were not replaced, in the order they were found
+     * @throws IOException if reading or writing fails
+     */
+    public Set<String> replace(Reader reader, Writer writer) throws IOException {
+        Set<String> unresolved = new LinkedHashSet<>();
+        StringBuilder line = new StringBuilder(256);
+        char[] buffer = new char[8192];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            int start = 0;
+            for (int i = 0; i < count; i++) {
+                if (buffer[i] == '\n') {
+                    line.append(buffer, start, i + 1 - start);
+                    replaceLine(line.toString(), writer, unresolved);
+                    line.setLength(0);
+                    start = i + 1;
+                }
+            }
+            line.append(buffer, start, count - start);
+        }
+        if (line.length() > 0) {
+            replaceLine(line.toString(), writer, unresolved);
+        }
+        writer.flush();
+        return unresolved;
+    }
+
+    private void replaceLine(String line, Writer writer, Set<String> unresolved) throws IOException {
+        int from = 0;
+        int begin = line.indexOf(beginToken);
+        while (begin >= 0) {
+            int keyStart = begin + beginToken.length();
+            int end = line.indexOf(endToken, keyStart);
+            if (end < 0) {
+                break;
+            }
+            String key = line.substring(keyStart, end);
+            if (tokens.containsKey(key)) {
+                writer.write(line, from, begin - from);
+                writer.write(String.valueOf(tokens.get(key)));
+                from = end + endToken.length();
+                begin = line.indexOf(beginToken, from);
+            } else {
+                if (TOKEN_NAME.matcher(key).matches()) {
+                    unresolved.add(key);
+                }
+                // continue after the begin delimiter, the next token may start within the key or at the end delimiter
+                begin = line.indexOf(beginToken, keyStart);
+            }
+        }
+        writer.write(line, from, line.length() - from);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import org.gradle.api.GradleException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Map;
+
+/**
+ * Writes a plugin descriptor directly to a {@link Writer}. The output is formatted the same as a Groovy
+ * {@code Node} serialized using {@code XmlUtil.serialize}, elements are indented by two spaces, elements
+ * without content are written as empty elements and characters are escaped the same way.
+ */
+public class XmlDescriptorWriter {
+
+    private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+    private static final String INDENT = "  ";
+
+    private final Writer writer;
+    private final Deque<String> elements = new ArrayDeque<>();
+
+    /**
+     * The start tag of the current element has not been closed, if the element is ended before any content
+     * is written it is written as an empty element.
+     */
+    private boolean startTagOpen;
+
+    public XmlDescriptorWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public XmlDescriptorWriter startDocument(String name, Map<String, ?> attributes) {
+        write(DECLARATION);
+        return startElement(name, attributes);
+    }
+
+    public void endDocument() {
+        while (!elements.isEmpty()) {
+            endElement();
+        }
+        try {
+            writer.flush();
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure writing descriptor", e);
+        }
+    }
+
+    public XmlDescriptorWriter startElement(String name) {
+        return startElement(name, Collections.emptyMap());
+    }
+
+    public XmlDescriptorWriter startElement(String name, Map<String, ?> attributes) {
+        closeStartTag();
+        if (!elements.isEmpty()) {
+            indent();
+        }
+        write("<");
+        write(name);
+        writeAttributes(attributes);
+        elements.push(name);
+        startTagOpen = true;
+        return this;
+    }
+
+    public XmlDescriptorWriter endElement() {
+        String name = elements.pop();
+        if (startTagOpen) {
+            write("/>\n");
+            startTagOpen = false;
+        } else {
+            indent();
+            write("</");
+            write(name);
+            write(">\n");
+        }
+        return this;
+    }
+
+    public XmlDescriptorWriter element(String name, Map<String, ?> attributes) {
+        return startElement(name, attributes).endElement();
+    }
+
+    public XmlDescriptorWriter element(String name, Object text) {
+        return element(name, Collections.emptyMap(), text);
+    }
+
+    public XmlDescriptorWriter element(String name, Map<String, ?> attributes, Object text) {
+        startElement(name, attributes);
+        String value = (text == null) ? "" : String.valueOf(text);
+        if (!value.isEmpty()) {
+            write(">");
+            writeEscaped(value, false);
+            write("</");
+            write(name);
+            write(">\n");
+            elements.pop();
+            startTagOpen = false;
+            return this;
+        }
+        return endElement();
+    }
+
+    private void closeStartTag() {
+        if (startTagOpen) {
+            write(">\n");
+            startTagOpen = false;
+        }
+    }
+
+    private void indent() {
+        for (int i = 0; i < elements.size(); i++) {
+            write(INDENT);
+        }
+    }
+
+    private void writeAttributes(Map<String, ?> attributes) {
+        for (Map.Entry<String, ?> attribute : attributes.entrySet()) {
+            write(" ");
+            write(attribute.getKey());
+            write("=\"");
+            writeEscaped(String.valueOf(attribute.getValue()), true);
+            write("\"");
+        }
+    }
+
+    private void writeEscaped(String value, boolean attribute) {
+        StringBuilder builder = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    builder.append("&amp;");
+                    break;
+                case '<':
+                    builder.append("&lt;");
+                    break;
+                case '>':
+                    builder.append("&gt;");
+                    break;
+                case '"':
+                    builder.append(attribute ? "&quot;" : "\"");
+                    break;
+                case '\n':
+                    builder.append(attribute ? "&#10;" : "\n");
+                    break;
+                case '\r':
+                    if (attribute) {
+                        builder.append("&#13;");
+                    } else {
+                        // line endings in text are normalized to a line feed
+                        builder.append('\n');
+                        if (i + 1 < value.length() && value.charAt(i + 1) == '\n') {
+                            i++;
+                        }
+                    }
+                    break;
+                case '\t':
+                    builder.append(attribute ? ' ' : '\t');
+                    break;
+                default:
+                    if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        builder.append("&#").append(Character.toCodePoint(c, value.charAt(++i))).append(';');
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        write(builder.toString());
+    }
+
+    private void write(String value) {
+        try {
+            writer.write(value);
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure writing descriptor", e);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the entries of a zip file from its central directory. Only the end of the file and the central directory
+ * are read, entries are not extracted. The central directory is read into a heap buffer. The index of a zip file stored
+ * within the zip file, such as a jar in a plugin archive, is read in place if the entry is not compressed.
+ */
+public final class ZipIndex {
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE = 56;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final int UNIX_HOST = 3;
+    private static final Charset CP437 = charset("IBM437");
+
+    private final File file;
+    private final Source source;
+    private final long centralDirectoryOffset;
+    private final long centralDirectorySize;
+    private final List<Entry> entries;
+
+    private ZipIndex(File file, Source source, long centralDirectoryOffset, long centralDirectorySize, List<Entry> entries) {
+        this.file = file;
+        this.source = source;
+        this.centralDirectoryOffset = centralDirectoryOffset;
+        this.centralDirectorySize = centralDirectorySize;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the offset of the central directory, the end of the entry data
+     */
+    public long getCentralDirectoryOffset() {
+        return centralDirectoryOffset;
+    }
+
+    public long getCentralDirectorySize() {
+        return centralDirectorySize;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public static ZipIndex read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read(file, new FileSource(file, 0, channel.size()), channel);
+        }
+    }
+
+    /**
+     * Reads the index of a zip file stored as an entry of this zip file. A stored entry is read in place, only
+     * its central directory is read, a compressed entry is inflated into memory.
+     *
+     * @param entry a zip or jar entry of this zip file
+     * @return the index of the nested zip file, entry offsets are relative to the start of the nested zip file
+     * @throws IOException if the entry is not a valid zip file
+     */
+    public ZipIndex readNested(Entry entry) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = source.read(channel, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+            if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header for " + entry.name + " in " + file);
+            }
+            long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE
+                + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+            if (entry.method == STORED) {
+                return read(file, source.slice(dataOffset, entry.compressedSize), channel);
+            }
+            if (entry.method != DEFLATED || entry.size > Integer.MAX_VALUE || entry.compressedSize > Integer.MAX_VALUE) {
+                throw new ZipException("Unsupported nested entry " + entry.name + " in " + file);
+            }
+            ByteBuffer compressed = source.read(channel, dataOffset, (int) entry.compressedSize);
+            return read(file, new ByteSource(inflate(compressed, (int) entry.size)), channel);
+        }
+    }
+
+    private static ZipIndex read(File file, Source source, FileChannel channel) throws IOException {
+        long fileSize = source.size();
+        int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE + ZIP64_LOCATOR_SIZE);
+        ByteBuffer tail = source.read(channel, fileSize - tailSize, tailSize);
+        int end = findEndOfCentralDirectory(tail);
+        if (end < 0) {
+            throw new ZipException("End of central directory not found in " + file);
+        }
+        long count = tail.getShort(end + 10) & 0xffff;
+        long size = tail.getInt(end + 12) & 0xffffffffL;
+        long offset = tail.getInt(end + 16) & 0xffffffffL;
+        int locator = end - ZIP64_LOCATOR_SIZE;
+        if (locator >= 0 && tail.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+            long zip64EndOffset = tail.getLong(locator + 8);
+            ByteBuffer zip64End = source.read(channel, zip64EndOffset, ZIP64_END_OF_CENTRAL_DIRECTORY_SIZE);
+            if (zip64End.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                throw new ZipException("Invalid zip64 end of central directory in " + file);
+            }
+            count = zip64End.getLong(32);
+            size = zip64End.getLong(40);
+            offset = zip64End.getLong(48);
+        }
+        if (offset + size > fileSize || size > Integer.MAX_VALUE) {
+            throw new ZipException("Invalid central directory in " + file);
+        }
+        ByteBuffer directory = source.read(channel, offset, (int) size);
+        return new ZipIndex(file, source, offset, size, readEntries(file, directory, count));
+    }
+
+    private static ByteBuffer inflate(ByteBuffer compressed, int size) throws ZipException {
+        Inflater inflater = new Inflater(true);
+        try {
+            byte[] input = new byte[compressed.remaining() + 1];
+            compressed.get(input, 0, input.length - 1);
+            inflater.setInput(input);
+            byte[] output = new byte[size];
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                int inflated = inflater.inflate(output, length, size - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != size) {
+                throw new ZipException("Unexpected end of nested zip file");
+            }
+            return ByteBuffer.wrap(output).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        catch (DataFormatException e) {
+            throw new ZipException("Invalid compressed data: " + e.getMessage());
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    private static List<Entry> readEntries(File file, ByteBuffer directory, long count) throws ZipException {
+        List<Entry> entries = new ArrayList<>((int) Math.min(count, 1 << 16));
+        int position = 0;
+        byte[] name = new byte[256];
+        while (position + CENTRAL_DIRECTORY_HEADER_SIZE <= directory.limit()) {
+            if (directory.getInt(position) != CENTRAL_DIRECTORY_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header in " + file);
+            }
+            int versionMadeBy = directory.getShort(position + 4) & 0xffff;
+            int flags = directory.getShort(position + 8) & 0xffff;
+            int method = directory.getShort(position + 10) & 0xffff;
+            long crc = directory.getInt(position + 16) & 0xffffffffL;
+            long compressedSize = directory.getInt(position + 20) & 0xffffffffL;
+            long size = directory.getInt(position + 24) & 0xffffffffL;
+            int nameLength = directory.getShort(position + 28) & 0xffff;
+            int extraLength = directory.getShort(position + 30) & 0xffff;
+            int commentLength = directory.getShort(position + 32) & 0xffff;
+            long externalAttributes = (versionMadeBy >> 8) == UNIX_HOST ? directory.getInt(position + 38) & 0xffffffffL : 0;
+            long localHeaderOffset = directory.getInt(position + 42) & 0xffffffffL;
+
+            int nameStart = position + CENTRAL_DIRECTORY_HEADER_SIZE;
+            if (name.length < nameLength) {
+                name = new byte[nameLength];
+            }
+            for (int i = 0; i < nameLength; i++) {
+                name[i] = directory.get(nameStart + i);
+            }
+            Charset charset = (flags & UTF8_FLAG) != 0 || isAscii(name, nameLength) ? StandardCharsets.UTF_8 : CP437;
+            String entryName = new String(name, 0, nameLength, charset);
+
+            if (size == 0xffffffffL || compressedSize == 0xffffffffL || localHeaderOffset == 0xffffffffL) {
+                int extra = nameStart + nameLength;
+                int extraEnd = extra + extraLength;
+                while (extra + 4 <= extraEnd) {
+                    int id = directory.getShort(extra) & 0xffff;
+                    int length = directory.getShort(extra + 2) & 0xffff;
+                    if (id == 0x0001) {
+                        int value = extra + 4;
+                        if (size == 0xffffffffL) { size = directory.getLong(value); value += 8; }
+                        if (compressedSize == 0xffffffffL) { compressedSize = directory.getLong(value); value += 8; }
+                        if (localHeaderOffset == 0xffffffffL) { localHeaderOffset = directory.getLong(value); }
+                        break;
+                    }
+                    extra += 4 + length;
+                }
+            }
+            entries.add(new Entry(entryName, method, crc, compressedSize, size, localHeaderOffset, externalAttributes));
+            position = nameStart + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer tail) {
+        for (int position = tail.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                int commentLength = tail.getShort(position + 20) & 0xffff;
+                if (position + END_OF_CENTRAL_DIRECTORY_SIZE + commentLength == tail.limit()) {
+                    return position;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The bytes of a zip file, either a region of a file or an inflated nested zip file.
+     */
+    private interface Source {
+        long size();
+
+        ByteBuffer read(FileChannel channel, long position, int size) throws IOException;
+
+        Source slice(long position, long size);
+    }
+
+    private static final class FileSource implements Source {
+        private final File file;
+        private final long start;
+        private final long size;
+
+        private FileSource(File file, long start, long size) {
+            this.file = file;
+            this.start = start;
+            this.size = size;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + position + buffer.position()) < 0) {
+                    throw new ZipException("Unexpected end of zip file " + file);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        @Override
+        public Source slice(long position, long length) {
+            return new FileSource(file, start + position, length);
+        }
+    }
+
+    private static final class ByteSource implements Source {
+        private final ByteBuffer bytes;
+
+        private ByteSource(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public long size() {
+            return bytes.limit();
+        }
+
+        @Override
+        public ByteBuffer read(FileChannel channel, long position, int length) throws ZipException {
+            if (position < 0 || position + length > bytes.limit()) {
+                throw new ZipException("Unexpected end of nested zip file");
+            }
+            ByteBuffer buffer = bytes.duplicate();
+            buffer.position((int) position);
+            buffer.limit((int) position + length);
+            return buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public Source slice(long position, long length) {
+            ByteBuffer buffer = bytes.duplicate();
+            buffer.position((int) position);
+            buffer.limit((int) (position + length));
+            return new ByteSource(buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    private static boolean isAscii(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Charset charset(String name) {
+        try {
+            return Charset.forName(name);
+        }
+        catch (IllegalArgumentException e) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+
+    /**
+     * An entry in the central directory of a zip file.
+     */
+    public static final class Entry {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+        private final long externalAttributes;
+
+        Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset, long externalAttributes) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.externalAttributes = externalAttributes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+
+        /**
+         * @return the Unix file mode of the entry, or 0 if the entry was not created on a Unix system
+         */
+        public int getUnixMode() {
+            return (int) (externalAttributes >> 16) & 0xffff;
+        }
+    }
+}
@@ -24,9 +24,10 @@ public abstract class AgentPlugin extends AbstractPluginTask {
     public AgentPlugin() {
         setDescription("Package TeamCity Agent plugin");
         onlyIf(task -> getDescriptor().get().getAsFile().exists());
-        into("lib", copySpec ->
-            copySpec.from(getLib())
-        );
+        into("lib", copySpec -> {
+            copySpec.from(getLib());
+            copySpec.exclude(this::isInstalledLibrary);
+        });
         into("", copySpec -> {
             copySpec.from(getDescriptor());
             copySpec.rename(PLUGIN_DESCRIPTOR_RENAMER);
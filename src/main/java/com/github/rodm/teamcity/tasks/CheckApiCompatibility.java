@@ -0,0 +1,164 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.tasks;
+
+import com.github.rodm.teamcity.ValidationMode;
+import com.github.rodm.teamcity.internal.ApiCompatibilityChecker;
+import com.github.rodm.teamcity.internal.ApiReferences;
+import com.github.rodm.teamcity.internal.ApiSignatureIndex;
+import com.github.rodm.teamcity.internal.ClasspathIndex;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks the classes, methods and fields used by the plugin are available in the TeamCity API of each of
+ * the configured versions. The plugin classes are scanned once, the signatures of the API jars are indexed
+ * once and cached by the jar checksum.
+ */
+public abstract class CheckApiCompatibility extends DefaultTask {
+
+    private static final String INCOMPATIBLE_VERSION = "{}: Plugin is not compatible with TeamCity {}, {} problem(s) found:\n  {}";
+
+    private final Map<String, FileCollection> apiClasspaths = new LinkedHashMap<>();
+    private final ObjectFactory objects;
+
+    @Inject
+    public CheckApiCompatibility(ObjectFactory objects) {
+        this.objects = objects;
+        setDescription("Checks the plugin is compatible with the API of the TeamCity versions");
+        getMode().convention(ValidationMode.WARN);
+        onlyIf(task -> !apiClasspaths.isEmpty());
+    }
+
+    /**
+     * @return the class directories and jars of the plugin
+     */
+    @Classpath
+    public abstract ConfigurableFileCollection getClasses();
+
+    /**
+     * @return the runtime classpath of the plugin, references to these classes are not checked
+     */
+    @Classpath
+    public abstract ConfigurableFileCollection getClasspath();
+
+    @Input
+    public abstract Property<ValidationMode> getMode();
+
+    @Internal
+    public abstract DirectoryProperty getCacheDir();
+
+    @OutputFile
+    public abstract RegularFileProperty getReportFile();
+
+    /**
+     * Adds a TeamCity version to check.
+     *
+     * @param version the TeamCity version
+     * @param classpath the API jars of the version and their dependencies
+     */
+    public void apiVersion(String version, FileCollection classpath) {
+        apiClasspaths.put(version, classpath);
+    }
+
+    @Input
+    public List<String> getVersions() {
+        return new ArrayList<>(apiClasspaths.keySet());
+    }
+
+    @Classpath
+    public FileCollection getApiClasspath() {
+        return objects.fileCollection().from(apiClasspaths.values());
+    }
+
+    @TaskAction
+    public void checkCompatibility() {
+        File cacheDir = getCacheDir().isPresent() ? getCacheDir().get().getAsFile() : null;
+        ApiReferences references = ApiReferences.scan(getClasses().getFiles());
+
+        Set<String> providedClasses = new HashSet<>();
+        ClasspathIndex classpathIndex = new ClasspathIndex(cacheDir);
+        for (File file : getClasspath().getFiles()) {
+            for (String classFile : classpathIndex.classes(file)) {
+                providedClasses.add(classFile.substring(0, classFile.length() - ".class".length()));
+            }
+        }
+
+        Map<String, ApiSignatureIndex> indexes = new LinkedHashMap<>();
+        apiClasspaths.forEach((version, classpath) ->
+            indexes.put(version, ApiSignatureIndex.create(classpath.getFiles(), cacheDir)));
+
+        Map<String, List<String>> problems = new ApiCompatibilityChecker(references, providedClasses).check(indexes);
+        writeReport(problems);
+
+        boolean incompatible = false;
+        for (Map.Entry<String, List<String>> entry : problems.entrySet()) {
+            List<String> versionProblems = entry.getValue();
+            if (!versionProblems.isEmpty()) {
+                incompatible = true;
+                if (getMode().get() != ValidationMode.IGNORE) {
+                    getLogger().warn(INCOMPATIBLE_VERSION, getPath(), entry.getKey(), versionProblems.size(), String.join("\n  ", versionProblems));
+                }
+            }
+        }
+        if (incompatible && getMode().get() == ValidationMode.FAIL) {
+            throw new GradleException("Plugin is not compatible with all TeamCity versions, see " + getReportFile().get().getAsFile());
+        }
+    }
+
+    private void writeReport(Map<String, List<String>> problems) {
+        File reportFile = getReportFile().get().getAsFile();
+        try {
+            Files.createDirectories(reportFile.getParentFile().toPath());
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8))) {
+                for (Map.Entry<String, List<String>> entry : problems.entrySet()) {
+                    List<String> versionProblems = entry.getValue();
+                    writer.println("TeamCity " + entry.getKey() + ": " + (versionProblems.isEmpty() ? "compatible" : versionProblems.size() + " problem(s)"));
+                    for (String problem : versionProblems) {
+                        writer.println("  " + problem);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to write report " + reportFile, e);
+        }
+    }
+}
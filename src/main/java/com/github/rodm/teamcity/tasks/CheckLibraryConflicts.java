@@ -0,0 +1,233 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.tasks;
+
+import com.github.rodm.teamcity.internal.TeamCityLibraries;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static com.github.rodm.teamcity.internal.TeamCityLibraries.AGENT_LIB_DIR;
+import static com.github.rodm.teamcity.internal.TeamCityLibraries.SERVER_LIB_DIR;
+
+/**
+ * Reports the jars of the server and agent plugins that are already shipped with the TeamCity installation of an
+ * environment, and the packages of the plugin jars that are split with the jars of the installation. Bundling a
+ * library TeamCity already provides increases the size of the plugin and the number of classes loaded by the
+ * plugin classloader.
+ */
+public abstract class CheckLibraryConflicts extends DefaultTask {
+
+    private static final Pattern SERVER_JAR = Pattern.compile("server/[^/]+\\.jar");
+    private static final Pattern AGENT_ARCHIVE = Pattern.compile("agent/[^/]+\\.zip");
+    private static final Pattern AGENT_JAR = Pattern.compile("([^/]+/)?lib/[^/]+\\.jar");
+
+    private static final String INSTALLED_LIBRARY = "%s: library is provided by TeamCity as %s";
+    private static final String SPLIT_PACKAGE = "%s: package %s is also provided by TeamCity in %s";
+
+    private final ObjectFactory objects;
+
+    @Inject
+    public CheckLibraryConflicts(ObjectFactory objects) {
+        this.objects = objects;
+        setDescription("Reports libraries of the plugins that are provided by the TeamCity installation");
+    }
+
+    /**
+     * @return the server plugin archives, the jars in the server and agent folders are checked
+     */
+    @InputFiles
+    public abstract ConfigurableFileCollection getPlugins();
+
+    /**
+     * @return the agent plugin archives, the jars in the lib folder are checked
+     */
+    @InputFiles
+    public abstract ConfigurableFileCollection getAgentPlugins();
+
+    @Internal
+    public abstract DirectoryProperty getHomeDir();
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getInstalledLibraries() {
+        return objects.fileCollection().from(getHomeDir().dir(SERVER_LIB_DIR), getHomeDir().dir(AGENT_LIB_DIR));
+    }
+
+    @Internal
+    public abstract DirectoryProperty getCacheDir();
+
+    @OutputFile
+    public abstract RegularFileProperty getReportFile();
+
+    @TaskAction
+    public void checkConflicts() {
+        File homeDir = getHomeDir().get().getAsFile();
+        File serverLibDir = new File(homeDir, SERVER_LIB_DIR);
+        if (!serverLibDir.isDirectory()) {
+            throw new InvalidUserDataException(String.format("TeamCity is not installed in %s", homeDir));
+        }
+        File cacheDir = getCacheDir().isPresent() ? getCacheDir().get().getAsFile() : null;
+        TeamCityLibraries serverLibraries = TeamCityLibraries.load(serverLibDir, cacheDir);
+        TeamCityLibraries agentLibraries = TeamCityLibraries.load(new File(homeDir, AGENT_LIB_DIR), cacheDir);
+
+        List<String> problems = new ArrayList<>();
+        for (File plugin : getPlugins().getFiles()) {
+            readArchive(plugin, (path, jar) -> {
+                if (SERVER_JAR.matcher(path).matches()) {
+                    check(plugin.getName() + "!" + path, jar, serverLibraries, problems);
+                } else if (AGENT_ARCHIVE.matcher(path).matches()) {
+                    readNestedArchive(jar, (agentPath, agentJar) -> {
+                        if (AGENT_JAR.matcher(agentPath).matches()) {
+                            check(plugin.getName() + "!" + path + "!" + agentPath, agentJar, agentLibraries, problems);
+                        }
+                    });
+                }
+            });
+        }
+        for (File plugin : getAgentPlugins().getFiles()) {
+            readArchive(plugin, (path, jar) -> {
+                if (AGENT_JAR.matcher(path).matches()) {
+                    check(plugin.getName() + "!" + path, jar, agentLibraries, problems);
+                }
+            });
+        }
+
+        writeReport(problems);
+        if (problems.isEmpty()) {
+            getLogger().info("{}: No libraries provided by TeamCity found in the plugins", getPath());
+        } else {
+            getLogger().warn("{}: Plugins contain libraries provided by TeamCity:\n  {}", getPath(), String.join("\n  ", problems));
+        }
+    }
+
+    private static void check(String path, byte[] jar, TeamCityLibraries libraries, List<String> problems) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        String library = libraries.findLibrary(name, sha1(jar));
+        if (library != null) {
+            problems.add(String.format(INSTALLED_LIBRARY, path, library));
+            return;
+        }
+        Set<String> classes = new HashSet<>();
+        readNestedArchive(jar, (entryName, ignore) -> classes.add(entryName));
+        Map<String, String> splitPackages = libraries.findSplitPackages(TeamCityLibraries.packages(classes));
+        splitPackages.forEach((packageName, packageLibrary) ->
+            problems.add(String.format(SPLIT_PACKAGE, path, packageName, packageLibrary)));
+    }
+
+    private interface EntryConsumer {
+        void accept(String path, byte[] contents);
+    }
+
+    private static void readArchive(File archive, EntryConsumer consumer) {
+        try (ZipFile zip = new ZipFile(archive)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().endsWith(".jar") || entry.getName().endsWith(".zip")) {
+                    try (InputStream is = zip.getInputStream(entry)) {
+                        consumer.accept(entry.getName(), readAll(is));
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to read plugin archive " + archive, e);
+        }
+    }
+
+    /**
+     * Reads the entries of an archive within an archive, only the contents of nested jars are read.
+     */
+    private static void readNestedArchive(byte[] archive, EntryConsumer consumer) {
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                byte[] contents = entry.getName().endsWith(".jar") ? readAll(zip) : null;
+                consumer.accept(entry.getName(), contents);
+            }
+        }
+        catch (IOException e) {
+            // not a valid archive, it does not contain any libraries
+        }
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[65536];
+        int read;
+        while ((read = is.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static String sha1(byte[] contents) {
+        try {
+            StringBuilder result = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(contents)) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeReport(List<String> problems) {
+        File reportFile = getReportFile().get().getAsFile();
+        try {
+            Files.createDirectories(reportFile.getParentFile().toPath());
+            Files.write(reportFile.toPath(), problems, StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to write report " + reportFile, e);
+        }
+    }
+}
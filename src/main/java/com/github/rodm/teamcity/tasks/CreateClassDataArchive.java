@@ -0,0 +1,286 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.tasks;
+
+import com.github.rodm.teamcity.internal.TeamCityStopTask;
+import com.github.rodm.teamcity.internal.TeamCityTask;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.Task;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecSpec;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.rodm.teamcity.internal.ProcessSupport.awaitStop;
+import static com.github.rodm.teamcity.internal.ProcessSupport.deletePidFile;
+import static com.github.rodm.teamcity.internal.ProcessSupport.isPortInUse;
+import static com.github.rodm.teamcity.internal.ProcessSupport.readPid;
+import static com.github.rodm.teamcity.internal.ProcessSupport.waitFor;
+
+/**
+ * Performs a training run of the TeamCity Server and Build Agent and creates a class data sharing archive
+ * for each process. The classes loaded during the training run are written to the archive when the process
+ * exits, later starts using the archive load the classes from the archive instead of the jar files.
+ * Requires Java 13 or later.
+ */
+public abstract class CreateClassDataArchive extends TeamCityTask {
+
+    /**
+     * The location of the server archive, relative to the TeamCity home directory.
+     */
+    public static final String SERVER_ARCHIVE_FILE = "cds/teamcity-server.jsa";
+
+    /**
+     * The location of the agent archive, relative to the TeamCity home directory.
+     */
+    public static final String AGENT_ARCHIVE_FILE = "cds/buildAgent.jsa";
+
+    public static final int DEFAULT_TRAINING_TIME = 60;
+
+    private static final int MINIMUM_JAVA_VERSION = 13;
+    private static final long STARTUP_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    private static final String SERVER_RUNNING = "A TeamCity Server is already running on port %d. Stop the server before creating the class data archives.";
+    private static final String UNSUPPORTED_JAVA_VERSION = "Class data sharing archives require Java %d or later, the Java installation at %s is version %s.";
+
+    @Inject
+    public CreateClassDataArchive(ExecOperations execOperations) {
+        super(execOperations);
+        setDescription("Creates class data sharing archives for the TeamCity Server and Build Agent");
+        getTrainingTime().convention(DEFAULT_TRAINING_TIME);
+        getServerPort().convention(StopServer.DEFAULT_SERVER_PORT);
+        getAgentPort().convention(StopAgent.DEFAULT_AGENT_PORT);
+        getStopTimeout().convention(TeamCityStopTask.DEFAULT_STOP_TIMEOUT);
+    }
+
+    @Input
+    public abstract Property<String> getDataDir();
+
+    @Input
+    public abstract Property<String> getServerOptions();
+
+    @Input
+    public abstract Property<String> getAgentOptions();
+
+    /**
+     * @return the time in seconds the server and agent are left running, after starting, to load classes
+     */
+    @Input
+    public abstract Property<Integer> getTrainingTime();
+
+    /**
+     * @return the port the server listens on, used to check the server has started and stopped
+     */
+    @Input
+    public abstract Property<Integer> getServerPort();
+
+    /**
+     * @return the port the agent listens on, used to check the agent has stopped
+     */
+    @Input
+    public abstract Property<Integer> getAgentPort();
+
+    /**
+     * @return the time in seconds to wait for the server and agent to stop, and write the archives, before they are killed
+     */
+    @Input
+    public abstract Property<Integer> getStopTimeout();
+
+    @OutputFile
+    public File getServerArchive() {
+        return new File(getHomeDir().get(), SERVER_ARCHIVE_FILE);
+    }
+
+    @OutputFile
+    public File getAgentArchive() {
+        return new File(getHomeDir().get(), AGENT_ARCHIVE_FILE);
+    }
+
+    @Override
+    public void validate() {
+        super.validate();
+        validJavaVersion(getJavaHome().get());
+        if (isPortInUse(getServerPort().get())) {
+            throw new GradleException(String.format(SERVER_RUNNING, getServerPort().get()));
+        }
+    }
+
+    @Override
+    public void exec() {
+        validate();
+        StartServer.createDataDir(getDataDir().get());
+        deleteArchive(getServerArchive());
+        deleteArchive(getAgentArchive());
+
+        final long trainingTime = TimeUnit.SECONDS.toMillis(getTrainingTime().get());
+        final File serverPidFile = new File(getHomeDir().get(), StartServer.SERVER_PID_FILE);
+        final File agentPidFile = new File(getHomeDir().get(), StartAgent.AGENT_PID_FILE);
+        try {
+            getLogger().lifecycle("{}: Starting TeamCity Server training run", getPath());
+            run(this::configure);
+            final int serverPort = getServerPort().get();
+            if (!waitFor(() -> isPortInUse(serverPort), STARTUP_TIMEOUT)) {
+                throw new GradleException("TeamCity Server failed to start for the training run");
+            }
+
+            getLogger().lifecycle("{}: Starting TeamCity Agent training run", getPath());
+            run(this::configureAgentStart);
+            // leave the server and agent running to load the classes used after startup
+            waitFor(() -> false, trainingTime);
+        }
+        finally {
+            getLogger().lifecycle("{}: Stopping TeamCity Agent and Server", getPath());
+            try {
+                stop(this::configureAgentStop, agentPidFile, getAgentPort().get());
+            }
+            finally {
+                stop(this::configureServerStop, serverPidFile, getServerPort().get());
+            }
+        }
+
+        checkArchive(getServerArchive());
+        checkArchive(getAgentArchive());
+    }
+
+    @Override
+    public void configure(ExecSpec execSpec) {
+        String name = TeamCityTask.isWindows() ? "teamcity-server.bat" : "teamcity-server.sh";
+        execSpec.executable(getHomeDir().get() + "/bin/" + name);
+        execSpec.environment("JAVA_HOME", getJavaHome().get());
+        execSpec.environment("TEAMCITY_DATA_PATH", getDataDir().get());
+        execSpec.environment("TEAMCITY_SERVER_OPTS", trainingOptions(getServerOptions().get(), getServerArchive()));
+        execSpec.environment("CATALINA_PID", new File(getHomeDir().get(), StartServer.SERVER_PID_FILE).getAbsolutePath());
+        execSpec.args("start");
+    }
+
+    private void configureServerStop(ExecSpec execSpec) {
+        String name = TeamCityTask.isWindows() ? "teamcity-server.bat" : "teamcity-server.sh";
+        execSpec.executable(getHomeDir().get() + "/bin/" + name);
+        execSpec.environment("JAVA_HOME", getJavaHome().get());
+        execSpec.args("stop");
+    }
+
+    private void configureAgentStart(ExecSpec execSpec) {
+        final String name = TeamCityTask.isWindows() ? "agent.bat" : "agent.sh";
+        execSpec.executable(getHomeDir().get() + "/buildAgent/bin/" + name);
+        execSpec.environment("JAVA_HOME", getJavaHome().get());
+        execSpec.environment("TEAMCITY_AGENT_OPTS", trainingOptions(getAgentOptions().get(), getAgentArchive()));
+        execSpec.args("start");
+    }
+
+    private void configureAgentStop(ExecSpec execSpec) {
+        final String name = TeamCityTask.isWindows() ? "agent.bat" : "agent.sh";
+        execSpec.executable(getHomeDir().get() + "/buildAgent/bin/" + name);
+        execSpec.environment("JAVA_HOME", getJavaHome().get());
+        execSpec.args("stop");
+    }
+
+    private void stop(Action<ExecSpec> configure, File pidFile, int port) {
+        final Long pid = readPid(pidFile);
+        run(configure);
+        // the archive is written as the process exits, the stop timeout must allow time for it to be written
+        awaitStop(getPath(), pid, port, getStopTimeout().get(), getLogger());
+        deletePidFile(getPath(), pidFile, getLogger());
+    }
+
+    private void checkArchive(File archive) {
+        if (!archive.isFile()) {
+            throw new GradleException(String.format("Class data sharing archive %s was not created", archive));
+        }
+        getLogger().lifecycle("{}: Created class data sharing archive {}", getPath(), archive);
+    }
+
+    private static void deleteArchive(File archive) {
+        try {
+            Files.deleteIfExists(archive.toPath());
+            Files.createDirectories(archive.getParentFile().toPath());
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to prepare class data sharing archive " + archive, e);
+        }
+    }
+
+    private static String trainingOptions(String options, File archive) {
+        String archiveOption = "-XX:ArchiveClassesAtExit=" + archive.getAbsolutePath();
+        return options.trim().isEmpty() ? archiveOption : options + " " + archiveOption;
+    }
+
+    static void validJavaVersion(String javaHome) {
+        if (!supportsClassDataSharing(javaHome)) {
+            throw new InvalidUserDataException(unsupportedJavaVersion(javaHome));
+        }
+    }
+
+    /**
+     * Returns true if the Java installation supports dynamic class data sharing archives.
+     */
+    public static boolean supportsClassDataSharing(String javaHome) {
+        String version = readJavaVersion(javaHome);
+        return version != null && javaMajorVersion(version) >= MINIMUM_JAVA_VERSION;
+    }
+
+    /**
+     * Logs a warning if class data sharing is enabled and the Java installation does not support it, the start
+     * options do not include the class data sharing archive.
+     */
+    static void warnUnsupportedClassDataSharing(Task task, boolean enabled, String javaHome) {
+        if (enabled && !supportsClassDataSharing(javaHome)) {
+            task.getLogger().warn("{}: {} Starting without the class data sharing archive.", task.getPath(), unsupportedJavaVersion(javaHome));
+        }
+    }
+
+    private static String unsupportedJavaVersion(String javaHome) {
+        return String.format(UNSUPPORTED_JAVA_VERSION, MINIMUM_JAVA_VERSION, javaHome, readJavaVersion(javaHome));
+    }
+
+    static String readJavaVersion(String javaHome) {
+        File releaseFile = new File(javaHome, "release");
+        if (!releaseFile.isFile()) {
+            return null;
+        }
+        try (InputStream is = Files.newInputStream(releaseFile.toPath())) {
+            Properties properties = new Properties();
+            properties.load(is);
+            String version = properties.getProperty("JAVA_VERSION");
+            return version == null ? null : version.replace("\"", "");
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    static int javaMajorVersion(String version) {
+        String[] parts = version.split("[._+-]");
+        try {
+            int major = Integer.parseInt(parts[0]);
+            return (major == 1 && parts.length > 1) ? Integer.parseInt(parts[1]) : major;
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
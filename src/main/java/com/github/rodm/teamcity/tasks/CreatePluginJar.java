@@ -0,0 +1,178 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.tasks;
+
+import com.github.rodm.teamcity.internal.ClassReachability;
+import com.github.rodm.teamcity.internal.ClasspathContents;
+import com.github.rodm.teamcity.internal.ResourceMerger;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Combines the plugin jar and its runtime libraries into a single jar, so the plugin class loader opens
+ * and searches one jar instead of one per library. Resources found in more than one jar are merged
+ * where possible, see {@link ResourceMerger}, otherwise the first copy is used. When shrinking, only
+ * the classes reachable from the plugin's entry points are included, see {@link ClassReachability#roots}.
+ */
+@CacheableTask
+public abstract class CreatePluginJar extends DefaultTask {
+
+    private static final long CONSTANT_TIME = new GregorianCalendar(1980, 1, 1, 0, 0, 0).getTimeInMillis();
+
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final String INDEX_LIST = "META-INF/INDEX.LIST";
+    private static final String VERSIONS_PREFIX = "META-INF/versions/";
+
+    private static final Pattern SIGNATURE_FILE = Pattern.compile("META-INF/([^/]+\\.(SF|RSA|DSA|EC)|SIG-[^/]+|INDEX\\.LIST)", Pattern.CASE_INSENSITIVE);
+
+    public CreatePluginJar() {
+        setDescription("Combines the plugin jar and its runtime libraries into a single jar");
+        getShrink().convention(false);
+        getPackageIndex().convention(false);
+    }
+
+    /**
+     * @return the plugin jar followed by its runtime libraries
+     */
+    @Classpath
+    public abstract ConfigurableFileCollection getClasspath();
+
+    /**
+     * @return whether only the classes reachable from the plugin's entry points are included
+     */
+    @Input
+    public abstract Property<Boolean> getShrink();
+
+    /**
+     * @return patterns of classes that are always included, a class name, a package name followed by '.*',
+     * or a package name followed by '.**' to include sub-packages
+     */
+    @Input
+    public abstract ListProperty<String> getKeepClasses();
+
+    /**
+     * @return whether a META-INF/INDEX.LIST entry listing the packages of the jar is added
+     */
+    @Input
+    public abstract Property<Boolean> getPackageIndex();
+
+    @OutputFile
+    public abstract RegularFileProperty getArchiveFile();
+
+    @TaskAction
+    public void createJar() {
+        File archive = getArchiveFile().get().getAsFile();
+        try (ClasspathContents contents = ClasspathContents.read(getClasspath())) {
+            Map<String, ClasspathContents.Entry> classes = contents.getClasses();
+            Set<String> included = classes.keySet();
+            if (getShrink().get()) {
+                ClassReachability reachability = new ClassReachability(classes.keySet(), name -> classes.get(name).read());
+                included = reachability.reachable(ClassReachability.roots(contents, getKeepClasses().get()));
+                getLogger().info("{}: Included {} of {} classes", getPath(), included.size(), classes.size());
+            }
+            Files.createDirectories(archive.getParentFile().toPath());
+            try (OutputStream out = Files.newOutputStream(archive.toPath())) {
+                write(contents, included, archive.getName(), out);
+            }
+        }
+        catch (IOException | UncheckedIOException e) {
+            throw new GradleException("Failed to create plugin jar " + archive, e);
+        }
+    }
+
+    private void write(ClasspathContents contents, Set<String> included, String jarName, OutputStream out) throws IOException {
+        List<String> entryNames = new ArrayList<>();
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        try (JarOutputStream jar = new JarOutputStream(out)) {
+            ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+            manifest.write(manifestBytes);
+            writeEntry(jar, MANIFEST, manifestBytes.toByteArray());
+
+            for (Map.Entry<String, List<ClasspathContents.Entry>> resource : contents.getResources().entrySet()) {
+                String name = resource.getKey();
+                if (name.equals(MANIFEST) || name.endsWith("module-info.class") || SIGNATURE_FILE.matcher(name).matches()) {
+                    continue;
+                }
+                if (name.startsWith(VERSIONS_PREFIX) && name.endsWith(".class") && !included.contains(versionedClassName(name))) {
+                    continue;
+                }
+                List<byte[]> entries = resource.getValue().stream().map(ClasspathContents.Entry::read).collect(Collectors.toList());
+                if (entries.size() > 1 && ResourceMerger.isMergeable(name)) {
+                    writeEntry(jar, name, ResourceMerger.merge(name, entries));
+                } else {
+                    if (entries.stream().anyMatch(bytes -> !Arrays.equals(bytes, entries.get(0)))) {
+                        getLogger().warn("{}: Duplicate resource {} with different contents, using the copy from {}", getPath(), name, resource.getValue().get(0).getSource());
+                    }
+                    writeEntry(jar, name, entries.get(0));
+                }
+                entryNames.add(name);
+            }
+
+            for (Map.Entry<String, ClasspathContents.Entry> entry : contents.getClasses().entrySet()) {
+                if (included.contains(entry.getKey())) {
+                    writeEntry(jar, entry.getKey() + ".class", entry.getValue().read());
+                    entryNames.add(entry.getKey() + ".class");
+                }
+            }
+
+            if (getPackageIndex().get()) {
+                writeEntry(jar, INDEX_LIST, ResourceMerger.packageIndex(jarName, entryNames));
+            }
+        }
+    }
+
+    private static String versionedClassName(String name) {
+        String path = name.substring(name.indexOf('/', VERSIONS_PREFIX.length()) + 1);
+        return path.substring(0, path.length() - ".class".length());
+    }
+
+    private static void writeEntry(JarOutputStream jar, String name, byte[] bytes) throws IOException {
+        JarEntry entry = new JarEntry(name);
+        entry.setTime(CONSTANT_TIME);
+        jar.putNextEntry(entry);
+        jar.write(bytes);
+        jar.closeEntry();
+    }
+}
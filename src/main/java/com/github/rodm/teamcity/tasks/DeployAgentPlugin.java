@@ -0,0 +1,192 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.tasks;
+
+import com.github.rodm.teamcity.internal.TeamCityStopTask;
+import com.github.rodm.teamcity.internal.TeamCityTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ArchiveOperations;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.process.ExecOperations;
+import org.gradle.process.ExecSpec;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.github.rodm.teamcity.internal.ProcessSupport.awaitStop;
+import static com.github.rodm.teamcity.internal.ProcessSupport.deletePidFile;
+import static com.github.rodm.teamcity.internal.ProcessSupport.isAlive;
+import static com.github.rodm.teamcity.internal.ProcessSupport.readPid;
+
+/**
+ * Deploys agent plugins directly to the Build Agent of an environment. Each plugin archive is unpacked into
+ * the agent's plugins directory, bypassing the server and the agent upgrade. If the agent is running it is
+ * stopped before the plugins are unpacked and started again afterwards. The agent does not support reloading
+ * plugins, restarting the agent is the quickest way to load the new plugin. The plugin directories unpacked by
+ * the previous run of the task are removed, so a plugin archive with a new version in its name does not leave the
+ * directory of the old version behind.
+ */
+public abstract class DeployAgentPlugin extends TeamCityTask {
+
+    /**
+     * The location of the agent plugins directory, relative to the TeamCity home directory.
+     */
+    public static final String AGENT_PLUGINS_DIR = "buildAgent/plugins";
+
+    private static final String DEPLOYED_PLUGINS_FILE = "deployed-plugins.txt";
+
+    private final FileSystemOperations fileSystemOperations;
+    private final ArchiveOperations archiveOperations;
+
+    @Inject
+    public DeployAgentPlugin(ExecOperations execOperations, FileSystemOperations fileSystemOperations, ArchiveOperations archiveOperations) {
+        super(execOperations);
+        this.fileSystemOperations = fileSystemOperations;
+        this.archiveOperations = archiveOperations;
+        setDescription("Deploys agent plugins to the TeamCity Build Agent");
+        getStopTimeout().convention(TeamCityStopTask.DEFAULT_STOP_TIMEOUT);
+        getPort().convention(StopAgent.DEFAULT_AGENT_PORT);
+    }
+
+    @InputFiles
+    public abstract ConfigurableFileCollection getPlugins();
+
+    @Input
+    public abstract Property<String> getAgentOptions();
+
+    /**
+     * @return the time in seconds to wait for the agent to stop before the process is killed
+     */
+    @Input
+    public abstract Property<Integer> getStopTimeout();
+
+    /**
+     * @return the port the agent listens on, used to check the agent has stopped
+     */
+    @Input
+    public abstract Property<Integer> getPort();
+
+    @Internal
+    public File getPluginsDir() {
+        return new File(getHomeDir().get(), AGENT_PLUGINS_DIR);
+    }
+
+    @Override
+    public void exec() {
+        validate();
+        final File pidFile = new File(getHomeDir().get(), StartAgent.AGENT_PID_FILE);
+        final Long pid = readPid(pidFile);
+        final boolean running = pid != null && isAlive(pid);
+        if (running) {
+            stopAgent(pid, pidFile);
+        }
+
+        final File deployedFile = new File(getTemporaryDir(), DEPLOYED_PLUGINS_FILE);
+        final Set<File> pluginDirs = new LinkedHashSet<>();
+        for (File plugin : getPlugins().getFiles()) {
+            pluginDirs.add(new File(getPluginsDir(), pluginName(plugin)));
+        }
+        for (File previousDir : readDeployedPlugins(deployedFile)) {
+            if (!pluginDirs.contains(previousDir) && getPluginsDir().equals(previousDir.getParentFile())) {
+                getLogger().info("{}: Removing previously deployed plugin {}", getPath(), previousDir);
+                fileSystemOperations.delete(spec -> spec.delete(previousDir));
+            }
+        }
+
+        for (File plugin : getPlugins().getFiles()) {
+            File pluginDir = new File(getPluginsDir(), pluginName(plugin));
+            getLogger().info("{}: Unpacking {} to {}", getPath(), plugin, pluginDir);
+            fileSystemOperations.sync(spec -> {
+                spec.from(archiveOperations.zipTree(plugin));
+                spec.into(pluginDir);
+            });
+        }
+        writeDeployedPlugins(deployedFile, pluginDirs);
+
+        if (running) {
+            getLogger().lifecycle("{}: Restarting TeamCity Agent", getPath());
+            run(this::configure);
+        }
+    }
+
+    @Override
+    public void configure(ExecSpec execSpec) {
+        execSpec.executable(agentScript());
+        execSpec.environment("JAVA_HOME", getJavaHome().get());
+        execSpec.environment("TEAMCITY_AGENT_OPTS", getAgentOptions().get());
+        execSpec.args("start");
+    }
+
+    private void stopAgent(long pid, File pidFile) {
+        getLogger().lifecycle("{}: Stopping TeamCity Agent", getPath());
+        run(execSpec -> {
+            execSpec.executable(agentScript());
+            execSpec.environment("JAVA_HOME", getJavaHome().get());
+            execSpec.args("stop");
+        });
+        awaitStop(getPath(), pid, getPort().get(), getStopTimeout().get(), getLogger());
+        deletePidFile(getPath(), pidFile, getLogger());
+    }
+
+    private String agentScript() {
+        final String name = TeamCityTask.isWindows() ? "agent.bat" : "agent.sh";
+        return getHomeDir().get() + "/buildAgent/bin/" + name;
+    }
+
+    static List<File> readDeployedPlugins(File deployedFile) {
+        if (!deployedFile.isFile()) {
+            return Collections.emptyList();
+        }
+        try {
+            return Files.readAllLines(deployedFile.toPath(), StandardCharsets.UTF_8).stream()
+                .filter(line -> !line.trim().isEmpty())
+                .map(File::new)
+                .collect(Collectors.toList());
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to read the previously deployed plugins from " + deployedFile, e);
+        }
+    }
+
+    static void writeDeployedPlugins(File deployedFile, Set<File> pluginDirs) {
+        List<String> lines = pluginDirs.stream().map(File::getAbsolutePath).collect(Collectors.toList());
+        try {
+            Files.write(deployedFile.toPath(), lines, StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to record the deployed plugins to " + deployedFile, e);
+        }
+    }
+
+    static String pluginName(File plugin) {
+        String name = plugin.getName();
+        int index = name.lastIndexOf('.');
+        return index > 0 ? name.substring(0, index) : name;
+    }
+}
@@ -34,7 +34,7 @@ import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 
-import static com.github.rodm.teamcity.TeamCityVersion.VERSION_9_0;
+import static com.github.rodm.teamcity.TeamCityFeature.PLUGIN_DEPENDENCIES;
 
 @CacheableTask
 public abstract class GenerateAgentPluginDescriptor extends DefaultTask {
@@ -59,7 +59,7 @@ public abstract class GenerateAgentPluginDescriptor extends DefaultTask {
     public void generateDescriptor() {
         final TeamCityVersion version = getVersion().get();
         final AgentPluginDescriptor descriptor = getDescriptor().get();
-        if (version.lessThan(VERSION_9_0) && descriptor.getDependencies().hasDependencies()) {
+        if (!version.supports(PLUGIN_DEPENDENCIES) && descriptor.getDependencies().hasDependencies()) {
             getLogger().warn(DEPENDENCIES_NOT_SUPPORTED, getPath(), version);
         }
 
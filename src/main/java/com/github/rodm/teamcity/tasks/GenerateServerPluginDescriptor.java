@@ -34,9 +34,9 @@ import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 
-import static com.github.rodm.teamcity.TeamCityVersion.VERSION_2018_2;
-import static com.github.rodm.teamcity.TeamCityVersion.VERSION_2020_1;
-import static com.github.rodm.teamcity.TeamCityVersion.VERSION_9_0;
+import static com.github.rodm.teamcity.TeamCityFeature.NODE_RESPONSIBILITIES_AWARE;
+import static com.github.rodm.teamcity.TeamCityFeature.PLUGIN_DEPENDENCIES;
+import static com.github.rodm.teamcity.TeamCityFeature.RUNTIME_RELOAD;
 
 @CacheableTask
 public abstract class GenerateServerPluginDescriptor extends DefaultTask {
@@ -61,15 +61,15 @@ public abstract class GenerateServerPluginDescriptor extends DefaultTask {
     public void generateDescriptor() {
         final TeamCityVersion version = getVersion().get();
         final ServerPluginDescriptor descriptor = getDescriptor().get();
-        if (version.lessThan(VERSION_9_0) && descriptor.getDependencies().hasDependencies()) {
+        if (!version.supports(PLUGIN_DEPENDENCIES) && descriptor.getDependencies().hasDependencies()) {
             getLogger().warn(UNSUPPORTED_FEATURE, getPath(), "dependencies", version);
         }
 
-        if (version.lessThan(VERSION_2018_2) && descriptor.getAllowRuntimeReload() != null) {
+        if (!version.supports(RUNTIME_RELOAD) && descriptor.getAllowRuntimeReload() != null) {
             getLogger().warn(UNSUPPORTED_FEATURE, getPath(), "allowRuntimeReload", version);
         }
 
-        if (version.lessThan(VERSION_2020_1) && descriptor.getNodeResponsibilitiesAware() != null) {
+        if (!version.supports(NODE_RESPONSIBILITIES_AWARE) && descriptor.getNodeResponsibilitiesAware() != null) {
             getLogger().warn(UNSUPPORTED_FEATURE, getPath(), "nodeResponsibilitiesAware", version);
         }
 
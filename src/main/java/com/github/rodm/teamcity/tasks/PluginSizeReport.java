@@ -0,0 +1,196 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.tasks;
+
+import com.github.rodm.teamcity.internal.ArchiveSizes;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
+import org.gradle.api.artifacts.ArtifactCollection;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.github.rodm.teamcity.internal.ArchiveSizes.formatSize;
+
+/**
+ * Reports the sizes of the entries of a plugin archive, of the libraries it contains and of the dependencies the
+ * libraries were resolved from, as JSON and HTML. The sizes are read from the zip central directories only.
+ * The build fails if the archive exceeds any of the configured size budgets.
+ */
+public abstract class PluginSizeReport extends DefaultTask {
+
+    public static final String JSON_REPORT = "plugin-size.json";
+    public static final String HTML_REPORT = "plugin-size.html";
+
+    private static final Pattern SIZE = Pattern.compile("(\\d+)\\s*(B|KB|MB|GB)?");
+
+    private final List<ArtifactCollection> dependencies = new ArrayList<>();
+
+    public PluginSizeReport() {
+        setDescription("Reports the sizes of the entries and libraries of the plugin archive");
+    }
+
+    @InputFile
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract RegularFileProperty getArchive();
+
+    /**
+     * @return the maximum size of the plugin archive, for example '10MB'
+     */
+    @Input
+    @Optional
+    public abstract Property<String> getMaxArchiveSize();
+
+    /**
+     * @return the maximum total uncompressed size of the entries of the plugin archive
+     */
+    @Input
+    @Optional
+    public abstract Property<String> getMaxUncompressedSize();
+
+    /**
+     * @return the maximum size of any library in the plugin archive
+     */
+    @Input
+    @Optional
+    public abstract Property<String> getMaxLibrarySize();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getReportDir();
+
+    /**
+     * Adds the artifacts of resolved dependencies, libraries in the archive are reported with the coordinates
+     * of the dependency they were resolved from.
+     *
+     * @param artifacts the resolved artifacts
+     */
+    public void dependencies(ArtifactCollection artifacts) {
+        dependencies.add(artifacts);
+    }
+
+    @Internal
+    public List<ArtifactCollection> getDependencies() {
+        return dependencies;
+    }
+
+    @TaskAction
+    public void report() {
+        File archive = getArchive().get().getAsFile();
+        ArchiveSizes sizes;
+        try {
+            sizes = ArchiveSizes.read(archive, coordinates());
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to read plugin archive " + archive, e);
+        }
+
+        File reportDir = getReportDir().get().getAsFile();
+        writeReport(new File(reportDir, JSON_REPORT), sizes::writeJson);
+        writeReport(new File(reportDir, HTML_REPORT), sizes::writeHtml);
+        getLogger().lifecycle("{}: Plugin archive {} is {}, {} uncompressed, see {}", getPath(), sizes.getName(),
+            formatSize(sizes.getArchiveSize()), formatSize(sizes.getUncompressedSize()), new File(reportDir, HTML_REPORT));
+
+        List<String> exceeded = new ArrayList<>();
+        checkBudget(getMaxArchiveSize(), sizes.getArchiveSize(), "archive " + sizes.getName(), exceeded);
+        checkBudget(getMaxUncompressedSize(), sizes.getUncompressedSize(), "uncompressed entries of " + sizes.getName(), exceeded);
+        for (ArchiveSizes.LibrarySize library : sizes.getLibraries()) {
+            checkBudget(getMaxLibrarySize(), library.getSize(), "library " + library.getPath(), exceeded);
+        }
+        if (!exceeded.isEmpty()) {
+            throw new GradleException("Plugin archive exceeds the size budget:\n  " + String.join("\n  ", exceeded));
+        }
+    }
+
+    private Map<String, String> coordinates() {
+        Map<String, String> result = new HashMap<>();
+        for (ArtifactCollection artifacts : dependencies) {
+            for (ResolvedArtifactResult artifact : artifacts.getArtifacts()) {
+                ComponentIdentifier id = artifact.getId().getComponentIdentifier();
+                if (id instanceof ModuleComponentIdentifier) {
+                    ModuleComponentIdentifier module = (ModuleComponentIdentifier) id;
+                    String coordinates = module.getGroup() + ":" + module.getModule() + ":" + module.getVersion();
+                    result.putIfAbsent(artifact.getFile().getName(), coordinates);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void checkBudget(Property<String> budget, long size, String description, List<String> exceeded) {
+        if (budget.isPresent()) {
+            long maxSize = parseSize(budget.get());
+            if (size > maxSize) {
+                exceeded.add(String.format("%s is %s, the budget is %s", description, formatSize(size), budget.get()));
+            }
+        }
+    }
+
+    static long parseSize(String value) {
+        Matcher matcher = SIZE.matcher(value.trim().toUpperCase(Locale.ROOT));
+        if (!matcher.matches()) {
+            throw new InvalidUserDataException(String.format("Invalid size '%s', use a number of bytes or a size such as '512KB' or '10MB'", value));
+        }
+        long size = Long.parseLong(matcher.group(1));
+        String unit = matcher.group(2) == null ? "B" : matcher.group(2);
+        switch (unit) {
+            case "KB": return size * 1024;
+            case "MB": return size * 1024 * 1024;
+            case "GB": return size * 1024 * 1024 * 1024;
+            default: return size;
+        }
+    }
+
+    private interface ReportWriter {
+        void write(PrintWriter writer);
+    }
+
+    private static void writeReport(File file, ReportWriter report) {
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+                report.write(writer);
+            }
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to write report " + file, e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity.tasks;
+
+import com.github.rodm.teamcity.ValidationMode;
+import com.github.rodm.teamcity.internal.PluginArchiveCheckAction;
+import com.github.rodm.teamcity.internal.PluginArchiveSummary;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.github.rodm.teamcity.internal.ArchiveSizes.formatSize;
+
+/**
+ * Validates and reports the sizes of the plugin archives of a multi-project build. Each archive is checked
+ * concurrently by a worker, the results are combined into a single report.
+ */
+public abstract class PluginsReport extends DefaultTask {
+
+    private final WorkerExecutor executor;
+
+    @Inject
+    public PluginsReport(WorkerExecutor executor) {
+        this.executor = executor;
+        setDescription("Validates and reports the sizes of the plugin archives of all projects");
+        getValidation().convention(ValidationMode.WARN);
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract ConfigurableFileCollection getPlugins();
+
+    @Input
+    public abstract Property<ValidationMode> getValidation();
+
+    @OutputFile
+    public abstract RegularFileProperty getReportFile();
+
+    @TaskAction
+    public void report() {
+        File summaryDir = getTemporaryDir();
+        List<File> summaryFiles = new ArrayList<>();
+        WorkQueue queue = executor.noIsolation();
+        for (File plugin : getPlugins().getFiles()) {
+            File summaryFile = new File(summaryDir, summaryFiles.size() + ".properties");
+            summaryFiles.add(summaryFile);
+            queue.submit(PluginArchiveCheckAction.class, params -> {
+                params.getPluginFile().set(plugin);
+                params.getSummaryFile().set(summaryFile);
+            });
+        }
+        queue.await();
+
+        List<PluginArchiveSummary> summaries = new ArrayList<>();
+        try {
+            for (File summaryFile : summaryFiles) {
+                summaries.add(PluginArchiveSummary.load(summaryFile));
+            }
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to read plugin archive summaries", e);
+        }
+        summaries.sort(Comparator.comparing(PluginArchiveSummary::getName));
+
+        File reportFile = getReportFile().get().getAsFile();
+        writeReport(summaries, reportFile);
+        long totalSize = summaries.stream().mapToLong(PluginArchiveSummary::getArchiveSize).sum();
+        getLogger().lifecycle("{}: {} plugin archives, {}, see {}", getPath(), summaries.size(), formatSize(totalSize), reportFile);
+
+        List<String> problems = PluginArchiveSummary.problems(summaries);
+        if (!problems.isEmpty() && getValidation().get() != ValidationMode.IGNORE) {
+            for (String problem : problems) {
+                getLogger().warn("{}: {}", getPath(), problem);
+            }
+            if (getValidation().get() == ValidationMode.FAIL) {
+                throw new GradleException("Plugin archives failed validation, see " + reportFile);
+            }
+        }
+    }
+
+    private static void writeReport(List<PluginArchiveSummary> summaries, File reportFile) {
+        try {
+            Files.createDirectories(reportFile.getParentFile().toPath());
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8))) {
+                PluginArchiveSummary.writeReport(summaries, writer);
+            }
+        }
+        catch (IOException e) {
+            throw new GradleException("Failed to write plugins report " + reportFile, e);
+        }
+    }
+}
@@ -15,11 +15,13 @@
  */
 package com.github.rodm.teamcity.tasks;
 
-import org.apache.tools.ant.filters.ReplaceTokens;
+import com.github.rodm.teamcity.ValidationMode;
+import com.github.rodm.teamcity.internal.TokenReplacer;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.file.FileSystemOperations;
+import org.gradle.api.GradleException;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
@@ -28,19 +30,26 @@ import org.gradle.api.tasks.PathSensitive;
 import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
 
-import javax.inject.Inject;
-import java.util.Collections;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
 
 @CacheableTask
 public abstract class ProcessDescriptor extends DefaultTask {
 
-    private final FileSystemOperations fileSystemOperations;
+    private static final String UNRESOLVED_TOKENS_MESSAGE = "%s: Descriptor %s contains tokens without a value: %s";
 
-    @Inject
-    public ProcessDescriptor(FileSystemOperations fileSystemOperations) {
-        this.fileSystemOperations = fileSystemOperations;
+    public ProcessDescriptor() {
         setDescription("Processes the plugin descriptor");
         onlyIf(task -> getDescriptor().isPresent());
+        getBeginToken().convention("@");
+        getEndToken().convention("@");
+        getUnresolvedTokens().convention(ValidationMode.WARN);
     }
 
     @InputFile
@@ -50,18 +59,47 @@ public abstract class ProcessDescriptor extends DefaultTask {
     @Input
     public abstract MapProperty<String, Object> getTokens();
 
+    @Input
+    public abstract Property<String> getBeginToken();
+
+    @Input
+    public abstract Property<String> getEndToken();
+
+    @Input
+    public abstract Property<ValidationMode> getUnresolvedTokens();
+
     @OutputFile
     public abstract RegularFileProperty getDestination();
 
     @TaskAction
     public void process() {
-        fileSystemOperations.copy(copySpec -> {
-            copySpec.into(getDestination().get().getAsFile().getParentFile());
-            copySpec.from(getDescriptor().get().getAsFile());
-            copySpec.rename(name -> getDestination().get().getAsFile().getName());
-            if (!getTokens().get().isEmpty()) {
-                copySpec.filter(Collections.singletonMap("tokens", getTokens().get()), ReplaceTokens.class);
+        final Path source = getDescriptor().get().getAsFile().toPath();
+        final Path destination = getDestination().get().getAsFile().toPath();
+        final Map<String, Object> tokens = getTokens().get();
+        try {
+            Files.createDirectories(destination.getParent());
+            TokenReplacer replacer = new TokenReplacer(tokens, getBeginToken().get(), getEndToken().get());
+            Set<String> unresolved;
+            try (Reader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8);
+                 Writer writer = Files.newBufferedWriter(destination, StandardCharsets.UTF_8)) {
+                unresolved = replacer.replace(reader, writer);
             }
-        });
+            reportUnresolvedTokens(source, unresolved);
+        }
+        catch (IOException e) {
+            throw new GradleException("Failure processing descriptor " + source, e);
+        }
+    }
+
+    private void reportUnresolvedTokens(Path source, Set<String> unresolved) {
+        ValidationMode mode = getUnresolvedTokens().get();
+        if (unresolved.isEmpty() || mode == ValidationMode.IGNORE) {
+            return;
+        }
+        String message = String.format(UNRESOLVED_TOKENS_MESSAGE, getPath(), source.getFileName(), String.join(", ", unresolved));
+        if (mode == ValidationMode.FAIL) {
+            throw new GradleException(message);
+        }
+        getLogger().warn(message);
     }
 }
@@ -15,18 +15,28 @@
  */
 package com.github.rodm.teamcity.tasks;
 
+import com.github.rodm.teamcity.ValidationMode;
 import com.github.rodm.teamcity.internal.AbstractPluginTask;
 import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
 
 public abstract class ServerPlugin extends AbstractPluginTask {
 
     public ServerPlugin() {
         setDescription("Package TeamCity plugin");
+        getSharedLibraries().convention(ValidationMode.WARN);
         onlyIf(task -> getDescriptor().get().getAsFile().exists());
-        into("server", copySpec ->
-            copySpec.from(getServer())
-        );
+        into("server", copySpec -> {
+            copySpec.from(getServer());
+            copySpec.exclude(this::isInstalledLibrary);
+        });
         into("agent", copySpec ->
             copySpec.from(getAgent())
         );
@@ -41,4 +51,17 @@ public abstract class ServerPlugin extends AbstractPluginTask {
 
     @InputFiles
     public abstract ConfigurableFileCollection getAgent();
+
+    /**
+     * @return how libraries packaged in both the server and agent parts of the plugin are reported
+     */
+    @Input
+    public abstract Property<ValidationMode> getSharedLibraries();
+
+    @Optional
+    @OutputFile
+    public abstract RegularFileProperty getSharedLibrariesReport();
+
+    @Internal
+    public abstract DirectoryProperty getHashCacheDir();
 }
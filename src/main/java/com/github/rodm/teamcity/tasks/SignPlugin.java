@@ -15,7 +15,9 @@
  */
 package com.github.rodm.teamcity.tasks;
 
+import com.github.rodm.teamcity.internal.CertificateFingerprint;
 import com.github.rodm.teamcity.internal.SignAction;
+import com.github.rodm.teamcity.internal.SignPluginService;
 import org.apache.commons.io.FilenameUtils;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.file.FileCollection;
@@ -23,17 +25,27 @@ import org.gradle.api.file.ProjectLayout;
 import org.gradle.api.file.RegularFile;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.Classpath;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
-import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.workers.WorkQueue;
 import org.gradle.workers.WorkerExecutor;
 
 import javax.inject.Inject;
 
+/**
+ * Signs a plugin archive. The task is cacheable, it is keyed by the content of the plugin archive and the
+ * fingerprint of the certificate chain, the private key and its password are not inputs. A signed archive is
+ * reused from the build cache, or left in place, while the content of the unsigned archive is unchanged.
+ */
+@CacheableTask
 public abstract class SignPlugin extends DefaultTask {
 
     private final WorkerExecutor executor;
@@ -43,6 +55,7 @@ public abstract class SignPlugin extends DefaultTask {
     public SignPlugin(WorkerExecutor executor, ProjectLayout layout) {
         setDescription("Signs the plugin");
         getSignedPluginFile().convention(getPluginFile().map(this::signedName));
+        getStreaming().convention(false);
         this.executor = executor;
         this.layout = layout;
     }
@@ -56,6 +69,7 @@ public abstract class SignPlugin extends DefaultTask {
      * @return the plugin file that will be signed
      */
     @InputFile
+    @PathSensitive(PathSensitivity.NONE)
     public abstract RegularFileProperty getPluginFile();
 
     /**
@@ -64,27 +78,48 @@ public abstract class SignPlugin extends DefaultTask {
     @OutputFile
     public abstract RegularFileProperty getSignedPluginFile();
 
-    @Input
+    @Internal
     public abstract Property<String> getCertificateChain();
 
-    @Input
+    @Internal
     public abstract Property<String> getPrivateKey();
 
-    @Input
-    @Optional
+    @Internal
     public abstract Property<String> getPassword();
 
+    /**
+     * @return whether the archive is signed in a single pass, the signed archive is the same in either mode
+     */
+    @Internal
+    public abstract Property<Boolean> getStreaming();
+
+    /**
+     * @return the SHA-256 fingerprint of the certificate chain, identifies the signer in place of the private key
+     */
+    @Input
+    public Provider<String> getCertificateFingerprint() {
+        return getCertificateChain().map(CertificateFingerprint::of);
+    }
+
+    /**
+     * @return the shared service that identifies the build, the parsed certificate chain is only reused within a build
+     */
+    @Internal
+    public abstract Property<SignPluginService> getSignService();
+
     @TaskAction
     protected void signPlugin() {
         WorkQueue queue = executor.classLoaderIsolation(spec -> spec.getClasspath().from(getClasspath()));
+        // the work is not awaited, the sign tasks of other plugins run while this archive is signed
         queue.submit(SignAction.class, params -> {
             params.getPluginFile().set(getPluginFile());
             params.getCertificateChain().set(getCertificateChain());
             params.getPrivateKey().set(getPrivateKey());
             params.getPassword().set(getPassword());
+            params.getStreaming().set(getStreaming());
             params.getSignedPluginFile().set(getSignedPluginFile());
+            params.getBuildId().set(getSignService().map(SignPluginService::getBuildId));
         });
-        queue.await();
     }
 
     public RegularFile signedName(RegularFile file) {
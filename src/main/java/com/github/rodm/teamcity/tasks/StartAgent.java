@@ -15,6 +15,8 @@
  */
 package com.github.rodm.teamcity.tasks;
 
+import com.github.rodm.teamcity.internal.TeamCityEnvironmentService;
+import com.github.rodm.teamcity.internal.TeamCityStopTask;
 import com.github.rodm.teamcity.internal.TeamCityTask;
 import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
@@ -25,15 +27,66 @@ import javax.inject.Inject;
 
 public abstract class StartAgent extends TeamCityTask {
 
+    /**
+     * The location of the file, relative to the TeamCity home directory, the agent process id is written to.
+     */
+    public static final String AGENT_PID_FILE = "buildAgent/logs/buildAgent.pid";
+
     @Inject
     public StartAgent(ExecOperations execOperations) {
         super(execOperations);
         setDescription("Starts the TeamCity Agent");
+        getPort().convention(StopAgent.DEFAULT_AGENT_PORT);
+        getStopTimeout().convention(TeamCityStopTask.DEFAULT_STOP_TIMEOUT);
+        getStopAfterBuild().convention(false);
+        getClassDataSharing().convention(false);
     }
 
     @Input
     public abstract Property<String> getAgentOptions();
 
+    /**
+     * @return true if the agent options include a class data sharing archive, when supported by the Java installation
+     */
+    @Input
+    public abstract Property<Boolean> getClassDataSharing();
+
+    /**
+     * @return the port the agent listens on, used to check the agent has stopped when stopped after the build
+     */
+    @Input
+    public abstract Property<Integer> getPort();
+
+    /**
+     * @return the time in seconds to wait for the agent to stop, when stopped after the build, before it is killed
+     */
+    @Input
+    public abstract Property<Integer> getStopTimeout();
+
+    /**
+     * @return true if the agent should be stopped when the build finishes
+     */
+    @Input
+    public abstract Property<Boolean> getStopAfterBuild();
+
+    @Override
+    public void exec() {
+        CreateClassDataArchive.warnUnsupportedClassDataSharing(this, getClassDataSharing().get(), getJavaHome().get());
+        final TeamCityEnvironmentService service = getEnvironmentService().getOrNull();
+        if (service == null) {
+            super.exec();
+            return;
+        }
+
+        final String homeDir = getHomeDir().get();
+        if (service.isAgentRunning(homeDir)) {
+            getLogger().lifecycle("{}: Reusing TeamCity Agent already running from {}", getPath(), homeDir);
+        } else {
+            super.exec();
+        }
+        service.agentStarted(homeDir, getJavaHome().get(), getPort().get(), getStopTimeout().get(), getStopAfterBuild().get());
+    }
+
     @Override
     public void configure(ExecSpec execSpec) {
         final String name = TeamCityTask.isWindows() ? "agent.bat" : "agent.sh";
@@ -15,20 +15,37 @@
  */
 package com.github.rodm.teamcity.tasks;
 
+import com.github.rodm.teamcity.internal.TeamCityEnvironmentService;
+import com.github.rodm.teamcity.internal.TeamCityStopTask;
 import com.github.rodm.teamcity.internal.TeamCityTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
 import org.gradle.process.ExecOperations;
 import org.gradle.process.ExecSpec;
 
 import javax.inject.Inject;
+import java.io.File;
+import java.util.Properties;
 
 public abstract class StartServer extends TeamCityTask {
 
+    /**
+     * The location of the file, relative to the TeamCity home directory, the server process id is written to.
+     */
+    public static final String SERVER_PID_FILE = "logs/teamcity-server.pid";
+
+    private static final String SERVER_RUNNING_WITH_DIFFERENT_SETTINGS = "A TeamCity Server started from %s is running with different settings. Stop the server before starting it with new settings.";
+
     @Inject
     public StartServer(ExecOperations execOperations) {
         super(execOperations);
         setDescription("Starts the TeamCity Server");
+        getPort().convention(StopServer.DEFAULT_SERVER_PORT);
+        getStopTimeout().convention(TeamCityStopTask.DEFAULT_STOP_TIMEOUT);
+        getStopAfterBuild().convention(false);
+        getClassDataSharing().convention(false);
     }
 
     @Input
@@ -37,6 +54,53 @@ public abstract class StartServer extends TeamCityTask {
     @Input
     public abstract Property<String> getServerOptions();
 
+    /**
+     * @return true if the server options include a class data sharing archive, when supported by the Java installation
+     */
+    @Input
+    public abstract Property<Boolean> getClassDataSharing();
+
+    /**
+     * @return the port the server listens on, used to check if a server started by an earlier build is running
+     */
+    @Input
+    public abstract Property<Integer> getPort();
+
+    /**
+     * @return the time in seconds to wait for the server to stop, when stopped after the build, before it is killed
+     */
+    @Input
+    public abstract Property<Integer> getStopTimeout();
+
+    /**
+     * @return true if the server should be stopped when the build finishes
+     */
+    @Input
+    public abstract Property<Boolean> getStopAfterBuild();
+
+    @Override
+    public void exec() {
+        CreateClassDataArchive.warnUnsupportedClassDataSharing(this, getClassDataSharing().get(), getJavaHome().get());
+        createDataDir(getDataDir().get());
+        final TeamCityEnvironmentService service = getEnvironmentService().getOrNull();
+        if (service == null) {
+            super.exec();
+            return;
+        }
+
+        final String homeDir = getHomeDir().get();
+        final Properties settings = getServerSettings();
+        final int port = getPort().get();
+        if (service.isCompatibleServerRunning(homeDir, port, settings)) {
+            getLogger().lifecycle("{}: Reusing TeamCity Server already running from {}", getPath(), homeDir);
+        } else if (service.isServerRunning(homeDir, port)) {
+            throw new InvalidUserDataException(String.format(SERVER_RUNNING_WITH_DIFFERENT_SETTINGS, homeDir));
+        } else {
+            super.exec();
+        }
+        service.serverStarted(homeDir, getJavaHome().get(), settings, port, getStopTimeout().get(), getStopAfterBuild().get());
+    }
+
     @Override
     public void configure(ExecSpec execSpec) {
         String name = TeamCityTask.isWindows() ? "teamcity-server.bat" : "teamcity-server.sh";
@@ -44,6 +108,23 @@ public abstract class StartServer extends TeamCityTask {
         execSpec.environment("JAVA_HOME", getJavaHome().get());
         execSpec.environment("TEAMCITY_DATA_PATH", getDataDir().get());
         execSpec.environment("TEAMCITY_SERVER_OPTS", getServerOptions().get());
+        execSpec.environment("CATALINA_PID", new File(getHomeDir().get(), SERVER_PID_FILE).getAbsolutePath());
         execSpec.args("start");
     }
+
+    private Properties getServerSettings() {
+        Properties settings = new Properties();
+        settings.setProperty("version", getVersion().get());
+        settings.setProperty("dataDir", new File(getDataDir().get()).getAbsolutePath());
+        settings.setProperty("javaHome", getJavaHome().get());
+        settings.setProperty("serverOptions", getServerOptions().get());
+        return settings;
+    }
+
+    static void createDataDir(String dataDir) {
+        File dir = new File(dataDir);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new GradleException("Failed to create data directory " + dir);
+        }
+    }
 }
@@ -15,18 +15,38 @@
  */
 package com.github.rodm.teamcity.tasks;
 
+import com.github.rodm.teamcity.internal.TeamCityStopTask;
 import com.github.rodm.teamcity.internal.TeamCityTask;
+import org.gradle.api.tasks.Internal;
 import org.gradle.process.ExecOperations;
 import org.gradle.process.ExecSpec;
 
 import javax.inject.Inject;
+import java.io.File;
 
-public abstract class StopAgent extends TeamCityTask {
+public abstract class StopAgent extends TeamCityStopTask {
+
+    public static final int DEFAULT_AGENT_PORT = 9090;
 
     @Inject
     public StopAgent(ExecOperations execOperations) {
         super(execOperations);
         setDescription("Stops the TeamCity Agent");
+        getPort().convention(DEFAULT_AGENT_PORT);
+    }
+
+    @Override
+    public void exec() {
+        super.exec();
+        if (getEnvironmentService().isPresent()) {
+            getEnvironmentService().get().agentStopped(getHomeDir().get());
+        }
+    }
+
+    @Override
+    @Internal
+    public File getPidFile() {
+        return new File(getHomeDir().get(), StartAgent.AGENT_PID_FILE);
     }
 
     @Override
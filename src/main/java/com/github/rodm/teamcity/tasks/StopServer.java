@@ -15,18 +15,38 @@
  */
 package com.github.rodm.teamcity.tasks;
 
+import com.github.rodm.teamcity.internal.TeamCityStopTask;
 import com.github.rodm.teamcity.internal.TeamCityTask;
+import org.gradle.api.tasks.Internal;
 import org.gradle.process.ExecOperations;
 import org.gradle.process.ExecSpec;
 
 import javax.inject.Inject;
+import java.io.File;
 
-public abstract class StopServer extends TeamCityTask {
+public abstract class StopServer extends TeamCityStopTask {
+
+    public static final int DEFAULT_SERVER_PORT = 8111;
 
     @Inject
     public StopServer(ExecOperations execOperations) {
         super(execOperations);
         setDescription("Stops the TeamCity Server");
+        getPort().convention(DEFAULT_SERVER_PORT);
+    }
+
+    @Override
+    public void exec() {
+        super.exec();
+        if (getEnvironmentService().isPresent()) {
+            getEnvironmentService().get().serverStopped(getHomeDir().get());
+        }
+    }
+
+    @Override
+    @Internal
+    public File getPidFile() {
+        return new File(getHomeDir().get(), StartServer.SERVER_PID_FILE);
     }
 
     @Override
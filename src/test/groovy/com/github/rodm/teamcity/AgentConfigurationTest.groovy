@@ -18,10 +18,14 @@ package com.github.rodm.teamcity
 import com.github.rodm.teamcity.internal.PluginDescriptorValidationAction
 import com.github.rodm.teamcity.internal.PluginExecutableFilesValidationAction
 import com.github.rodm.teamcity.tasks.AgentPlugin
+import com.github.rodm.teamcity.tasks.CheckApiCompatibility
+import com.github.rodm.teamcity.tasks.CreatePluginJar
 import com.github.rodm.teamcity.tasks.GenerateAgentPluginDescriptor
 import org.gradle.api.InvalidUserDataException
 import org.gradle.api.artifacts.Configuration
+import org.gradle.api.artifacts.FileCollectionDependency
 import org.gradle.api.tasks.bundling.Zip
+import org.gradle.api.tasks.compile.JavaCompile
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
 
@@ -41,7 +45,9 @@ import static org.hamcrest.Matchers.equalTo
 import static org.hamcrest.Matchers.hasEntry
 import static org.hamcrest.Matchers.hasSize
 import static org.hamcrest.Matchers.is
+import static org.hamcrest.Matchers.not
 import static org.hamcrest.Matchers.nullValue
+import static org.hamcrest.Matchers.startsWith
 import static org.junit.jupiter.api.Assertions.assertEquals
 import static org.junit.jupiter.api.Assertions.fail
 
@@ -490,6 +496,79 @@ class AgentConfigurationTest extends ConfigurationTestCase {
         assertThat(configuration, hasDependency('org.jetbrains.teamcity', 'tests-support', '9.0'))
     }
 
+    @Test
+    void 'configures check api compatibility task with the agent-api of each compatible version'() {
+        project.apply plugin: 'java'
+        project.apply plugin: 'com.github.rodm.teamcity-agent'
+        project.teamcity {
+            agent {
+                compatibleVersions '2020.1', '2021.2'
+                apiCompatibility = 'fail'
+            }
+        }
+
+        project.evaluate()
+
+        CheckApiCompatibility task = project.tasks.getByName('checkApiCompatibility') as CheckApiCompatibility
+        assertThat(task.versions, equalTo(['2020.1', '2021.2']))
+        assertThat(task.mode.get(), equalTo(ValidationMode.FAIL))
+        assertThat(project.tasks.getByName('check').taskDependencies.getDependencies(null), hasItem(task))
+    }
+
+    @Test
+    void 'merge libraries packages the merged plugin jar in the agent plugin'() {
+        project.apply plugin: 'java'
+        project.apply plugin: 'com.github.rodm.teamcity-agent'
+        project.teamcity {
+            agent {
+                mergeLibraries = true
+                packageIndex = true
+            }
+        }
+
+        project.evaluate()
+
+        CreatePluginJar pluginJar = project.tasks.getByName('agentPluginJar') as CreatePluginJar
+        assertThat(pluginJar.shrink.get(), is(false))
+        assertThat(pluginJar.packageIndex.get(), is(true))
+        AgentPlugin agentPlugin = project.tasks.getByName('agentPlugin') as AgentPlugin
+        assertThat(agentPlugin.lib.buildDependencies.getDependencies(agentPlugin), hasItem(pluginJar))
+        assertThat(agentPlugin.lib.buildDependencies.getDependencies(agentPlugin), not(hasItem(project.tasks.getByName('jar'))))
+    }
+
+    @Test
+    void 'generate bean definitions adds the annotation processor'() {
+        project.apply plugin: 'java'
+        project.apply plugin: 'com.github.rodm.teamcity-agent'
+        project.teamcity {
+            generateBeanDefinitions = true
+        }
+
+        project.evaluate()
+
+        def processorFiles = { String name ->
+            project.configurations.getByName(name).allDependencies.withType(FileCollectionDependency)
+                .collectMany { it.files.files }.collect { it.name }
+        }
+        assertThat(processorFiles('annotationProcessor'), hasItem(startsWith('gradle-teamcity-plugin-processor-')))
+        assertThat(processorFiles('compileOnly'), hasItem(startsWith('gradle-teamcity-plugin-processor-')))
+        JavaCompile compileJava = project.tasks.getByName('compileJava') as JavaCompile
+        assertThat(compileJava.options.allCompilerArgs, hasItem('-Ateamcity.plugin.name=' + project.name))
+    }
+
+    @Test
+    void 'annotation processor is not added by default'() {
+        project.apply plugin: 'java'
+        project.apply plugin: 'com.github.rodm.teamcity-agent'
+
+        project.evaluate()
+
+        Configuration configuration = project.configurations.getByName('annotationProcessor')
+        assertThat(configuration.files, hasSize(0))
+        JavaCompile compileJava = project.tasks.getByName('compileJava') as JavaCompile
+        assertThat(compileJava.options.allCompilerArgs, not(hasItem(containsString('teamcity.plugin.name'))))
+    }
+
     @Test
     void 'agent-side plugin artifact is published to the plugin configuration'() {
         project.apply plugin: 'java'
@@ -183,4 +183,41 @@ class AgentDescriptorGeneratorTest {
 
         assertThat(writer.toString(), hasXPath('//dependencies/tool/@name', equalTo('tool-name')))
     }
+
+    @Test
+    void 'writes formatted descriptor'() {
+        descriptor.toolDeployment {
+            executableFiles {
+                include 'bin/tool & script'
+            }
+        }
+        descriptor.dependencies {
+            tool 'tool-name'
+        }
+
+        generator.writeTo(writer)
+
+        def expected = '''<?xml version="1.0" encoding="UTF-8"?><teamcity-agent-plugin xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:noNamespaceSchemaLocation="urn:schemas-jetbrains-com:teamcity-agent-plugin-v1-xml">
+  <tool-deployment>
+    <layout>
+      <executable-files>
+        <include name="bin/tool &amp; script"/>
+      </executable-files>
+    </layout>
+  </tool-deployment>
+  <dependencies>
+    <tool name="tool-name"/>
+  </dependencies>
+</teamcity-agent-plugin>
+'''
+        assertThat(writer.toString(), equalTo(expected))
+    }
+
+    @Test
+    void 'writes empty root element when nothing is configured'() {
+        generator.writeTo(writer)
+
+        def expected = '<?xml version="1.0" encoding="UTF-8"?><teamcity-agent-plugin xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:noNamespaceSchemaLocation="urn:schemas-jetbrains-com:teamcity-agent-plugin-v1-xml"/>\n'
+        assertThat(writer.toString(), equalTo(expected))
+    }
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.ApiCompatibilityChecker
+import com.github.rodm.teamcity.internal.ApiReferences
+import com.github.rodm.teamcity.internal.ApiSignatureIndex
+import com.github.rodm.teamcity.internal.ClasspathIndex
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.MethodVisitor
+
+import java.nio.file.Path
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.contains
+import static org.hamcrest.Matchers.empty
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.hasSize
+import static org.hamcrest.Matchers.is
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC
+import static org.objectweb.asm.Opcodes.ACC_STATIC
+import static org.objectweb.asm.Opcodes.ALOAD
+import static org.objectweb.asm.Opcodes.CHECKCAST
+import static org.objectweb.asm.Opcodes.GETSTATIC
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL
+import static org.objectweb.asm.Opcodes.RETURN
+import static org.objectweb.asm.Opcodes.V1_8
+
+class ApiCompatibilityCheckerTest {
+
+    private static final String API_CLASS = 'jetbrains/buildServer/Api'
+    private static final String BASE_CLASS = 'jetbrains/buildServer/Base'
+    private static final String OLD_CLASS = 'jetbrains/buildServer/Old'
+
+    @TempDir
+    public Path testDir
+
+    private File createApiJar(String name, Map<String, byte[]> classes) {
+        File jar = testDir.resolve(name).toFile()
+        new ZipOutputStream(new FileOutputStream(jar)).withCloseable { zip ->
+            classes.each { className, bytes ->
+                zip.putNextEntry(new ZipEntry(className + '.class'))
+                zip.write(bytes)
+                zip.closeEntry()
+            }
+        }
+        return jar
+    }
+
+    private static byte[] apiClass(String name, String superName, List<String> methods, List<String> fields) {
+        ClassWriter writer = new ClassWriter(0)
+        writer.visit(V1_8, ACC_PUBLIC, name, null, superName, null)
+        methods.each { method -> writer.visitMethod(ACC_PUBLIC, method, '()V', null, null).visitEnd() }
+        fields.each { field -> writer.visitField(ACC_PUBLIC | ACC_STATIC, field, 'Ljava/lang/String;', null, null).visitEnd() }
+        writer.visitEnd()
+        return writer.toByteArray()
+    }
+
+    private File createPluginClasses() {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS)
+        writer.visit(V1_8, ACC_PUBLIC, 'example/Plugin', null, 'java/lang/Object', null)
+        MethodVisitor method = writer.visitMethod(ACC_PUBLIC, 'execute', "(L${API_CLASS};Ljava/lang/Object;)V", null, null)
+        method.visitCode()
+        method.visitVarInsn(ALOAD, 1)
+        method.visitMethodInsn(INVOKEVIRTUAL, API_CLASS, 'run', '()V', false)
+        method.visitFieldInsn(GETSTATIC, API_CLASS, 'NAME', 'Ljava/lang/String;')
+        method.visitVarInsn(ALOAD, 2)
+        method.visitTypeInsn(CHECKCAST, OLD_CLASS)
+        method.visitInsn(RETURN)
+        method.visitMaxs(0, 0)
+        method.visitEnd()
+        writer.visitEnd()
+
+        File classesDir = testDir.resolve('classes').toFile()
+        File classFile = new File(classesDir, 'example/Plugin.class')
+        classFile.parentFile.mkdirs()
+        classFile.bytes = writer.toByteArray()
+        return classesDir
+    }
+
+    private Map<String, List<String>> check(Map<String, File> apiJars, Set<String> providedClasses = [] as Set) {
+        ApiReferences references = ApiReferences.scan([createPluginClasses()])
+        Map<String, ApiSignatureIndex> indexes = [:]
+        apiJars.each { version, jar -> indexes.put(version, ApiSignatureIndex.create([jar], null)) }
+        return new ApiCompatibilityChecker(references, providedClasses).check(indexes)
+    }
+
+    @Test
+    void 'no problems reported for a version with all the referenced classes and members'() {
+        File api = createApiJar('api-1.0.jar', [
+            (API_CLASS): apiClass(API_CLASS, 'java/lang/Object', ['run'], ['NAME']),
+            (OLD_CLASS): apiClass(OLD_CLASS, 'java/lang/Object', [], [])])
+
+        Map<String, List<String>> problems = check(['1.0': api])
+
+        assertThat(problems['1.0'], is(empty()))
+    }
+
+    @Test
+    void 'reports classes, methods and fields missing from a version'() {
+        File api1 = createApiJar('api-1.0.jar', [
+            (API_CLASS): apiClass(API_CLASS, 'java/lang/Object', ['run'], ['NAME']),
+            (OLD_CLASS): apiClass(OLD_CLASS, 'java/lang/Object', [], [])])
+        File api2 = createApiJar('api-2.0.jar', [
+            (API_CLASS): apiClass(API_CLASS, 'java/lang/Object', ['start'], [])])
+
+        Map<String, List<String>> problems = check(['1.0': api1, '2.0': api2])
+
+        assertThat(problems.keySet(), contains('1.0', '2.0'))
+        assertThat(problems['1.0'], is(empty()))
+        assertThat(problems['2.0'], contains(
+            'Missing class jetbrains.buildServer.Old',
+            'Missing field jetbrains.buildServer.Api.NAME',
+            'Missing method jetbrains.buildServer.Api.run()V'))
+    }
+
+    @Test
+    void 'resolves members inherited from an api super class'() {
+        File api1 = createApiJar('api-1.0.jar', [
+            (API_CLASS): apiClass(API_CLASS, 'java/lang/Object', ['run'], ['NAME']),
+            (OLD_CLASS): apiClass(OLD_CLASS, 'java/lang/Object', [], [])])
+        File api2 = createApiJar('api-2.0.jar', [
+            (BASE_CLASS): apiClass(BASE_CLASS, 'java/lang/Object', ['run'], ['NAME']),
+            (API_CLASS): apiClass(API_CLASS, BASE_CLASS, [], []),
+            (OLD_CLASS): apiClass(OLD_CLASS, 'java/lang/Object', [], [])])
+
+        Map<String, List<String>> problems = check(['1.0': api1, '2.0': api2])
+
+        assertThat(problems['2.0'], is(empty()))
+    }
+
+    @Test
+    void 'classes provided by the runtime classpath are not reported'() {
+        File api1 = createApiJar('api-1.0.jar', [
+            (API_CLASS): apiClass(API_CLASS, 'java/lang/Object', ['run'], ['NAME']),
+            (OLD_CLASS): apiClass(OLD_CLASS, 'java/lang/Object', [], [])])
+        File api2 = createApiJar('api-2.0.jar', [
+            (API_CLASS): apiClass(API_CLASS, 'java/lang/Object', ['run'], ['NAME'])])
+
+        Map<String, List<String>> problems = check(['1.0': api1, '2.0': api2], [OLD_CLASS] as Set)
+
+        assertThat(problems['2.0'], is(empty()))
+    }
+
+    @Test
+    void 'api signatures are cached by jar checksum'() {
+        File api = createApiJar('api-cached.jar', [
+            (API_CLASS): apiClass(API_CLASS, 'java/lang/Object', ['run'], ['CACHED'])])
+        File cacheDir = testDir.resolve('cache').toFile()
+
+        ApiSignatureIndex.create([api], cacheDir)
+
+        File[] cached = cacheDir.listFiles()
+        assertThat(cached.toList(), hasSize(1))
+        assertThat(cached[0].name, equalTo(ClasspathIndex.checksum(api) + '.sig'))
+        ApiSignatureIndex index = ApiSignatureIndex.create([api], cacheDir)
+        assertThat(index.containsClass(API_CLASS), is(true))
+        assertThat(index.resolveMember(API_CLASS, 'run', '()V', false), is(true))
+        assertThat(index.resolveMember(API_CLASS, 'stop', '()V', false), is(false))
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.BoundedCache
+import org.junit.jupiter.api.Test
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.equalTo
+
+class BoundedCacheTest {
+
+    @Test
+    void 'computes a value once'() {
+        BoundedCache<String, String> cache = new BoundedCache<>(2)
+        int computed = 0
+
+        cache.computeIfAbsent('a', { key -> computed++; key.toUpperCase() })
+        String value = cache.computeIfAbsent('a', { key -> computed++; key.toUpperCase() })
+
+        assertThat(value, equalTo('A'))
+        assertThat(computed, equalTo(1))
+    }
+
+    @Test
+    void 'removes the least recently used value when full'() {
+        BoundedCache<String, String> cache = new BoundedCache<>(2)
+        cache.computeIfAbsent('a', { 'A' })
+        cache.computeIfAbsent('b', { 'B' })
+        cache.computeIfAbsent('a', { 'A' })
+
+        cache.computeIfAbsent('c', { 'C' })
+
+        assertThat(cache.size(), equalTo(2))
+        assertThat(cache.computeIfAbsent('a', { 'new A' }), equalTo('A'))
+        assertThat(cache.computeIfAbsent('b', { 'new B' }), equalTo('new B'))
+    }
+}
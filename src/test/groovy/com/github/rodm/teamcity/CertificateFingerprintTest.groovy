@@ -0,0 +1,69 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.CertificateFingerprint
+import org.junit.jupiter.api.Test
+
+import java.security.MessageDigest
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.not
+
+class CertificateFingerprintTest {
+
+    private static String pem(byte[] der) {
+        String encoded = Base64.mimeEncoder.encodeToString(der)
+        return "-----BEGIN CERTIFICATE-----\n${encoded}\n-----END CERTIFICATE-----\n"
+    }
+
+    private static String sha256(byte[] contents) {
+        return MessageDigest.getInstance('SHA-256').digest(contents).collect { String.format('%02x', it) }.join('')
+    }
+
+    @Test
+    void 'fingerprint of a certificate is the digest of the encoded certificate'() {
+        byte[] der = (0..200).collect { (byte) it } as byte[]
+
+        assertThat(CertificateFingerprint.of(pem(der)), equalTo(sha256(der)))
+    }
+
+    @Test
+    void 'fingerprint of a certificate chain includes each certificate'() {
+        byte[] certificate = 'certificate'.bytes
+        byte[] issuer = 'issuer'.bytes
+
+        String fingerprint = CertificateFingerprint.of(pem(certificate) + pem(issuer))
+
+        assertThat(fingerprint, equalTo(sha256(certificate) + ',' + sha256(issuer)))
+    }
+
+    @Test
+    void 'fingerprint is not changed by line endings and surrounding text'() {
+        byte[] der = 'certificate'.bytes
+
+        String chain = 'Subject: test\r\n' + pem(der).replace('\n', '\r\n')
+
+        assertThat(CertificateFingerprint.of(chain), equalTo(CertificateFingerprint.of(pem(der))))
+    }
+
+    @Test
+    void 'text without certificates is fingerprinted as a whole'() {
+        assertThat(CertificateFingerprint.of('certificate-chain'), equalTo(sha256('certificate-chain'.bytes)))
+        assertThat(CertificateFingerprint.of('certificate-chain'), not(equalTo(CertificateFingerprint.of('other-chain'))))
+    }
+}
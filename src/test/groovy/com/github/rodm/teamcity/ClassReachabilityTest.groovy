@@ -0,0 +1,130 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.ClassReachability
+import com.github.rodm.teamcity.internal.ClasspathContents
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.MethodVisitor
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.containsInAnyOrder
+import static org.hamcrest.Matchers.is
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC
+import static org.objectweb.asm.Opcodes.ARETURN
+import static org.objectweb.asm.Opcodes.INVOKESTATIC
+import static org.objectweb.asm.Opcodes.V1_8
+
+class ClassReachabilityTest {
+
+    @TempDir
+    public Path testDir
+
+    private static byte[] createClass(Map<String, Object> options = [:], String name) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS)
+        writer.visit(V1_8, ACC_PUBLIC, name, null, options.superName ?: 'java/lang/Object', null)
+        if (options.fieldType) {
+            writer.visitField(ACC_PUBLIC, 'field', "L${options.fieldType};", options.signature as String, null).visitEnd()
+        }
+        if (options.forName) {
+            MethodVisitor method = writer.visitMethod(ACC_PUBLIC, 'load', '()Ljava/lang/Class;', null, null)
+            method.visitCode()
+            method.visitLdcInsn(options.forName)
+            method.visitMethodInsn(INVOKESTATIC, 'java/lang/Class', 'forName', '(Ljava/lang/String;)Ljava/lang/Class;', false)
+            method.visitInsn(ARETURN)
+            method.visitMaxs(0, 0)
+            method.visitEnd()
+        }
+        writer.visitEnd()
+        return writer.toByteArray()
+    }
+
+    private static Set<String> reachable(Map<String, byte[]> classes, String... roots) {
+        ClassReachability reachability = new ClassReachability(classes.keySet(), { name -> classes[name] })
+        return reachability.reachable(Arrays.asList(roots))
+    }
+
+    private void createFile(String name, byte[] bytes) {
+        Path file = testDir.resolve(name)
+        Files.createDirectories(file.parent)
+        Files.write(file, bytes)
+    }
+
+    @Test
+    void 'classes referenced by supertypes, descriptors and signatures are reachable'() {
+        Map<String, byte[]> classes = [
+            'example/Plugin': createClass('example/Plugin', superName: 'example/Base', fieldType: 'java/util/List', signature: 'Ljava/util/List<Lexample/Item;>;'),
+            'example/Base': createClass('example/Base', fieldType: 'example/Helper'),
+            'example/Helper': createClass('example/Helper'),
+            'example/Item': createClass('example/Item'),
+            'example/Unused': createClass('example/Unused', fieldType: 'example/Helper')
+        ]
+
+        Set<String> result = reachable(classes, 'example/Plugin')
+
+        assertThat(result, containsInAnyOrder('example/Plugin', 'example/Base', 'example/Helper', 'example/Item'))
+    }
+
+    @Test
+    void 'classes named by string constants are reachable'() {
+        Map<String, byte[]> classes = [
+            'example/Plugin': createClass('example/Plugin', forName: 'example.impl.Loaded'),
+            'example/impl/Loaded': createClass('example/impl/Loaded'),
+            'example/Unused': createClass('example/Unused')
+        ]
+
+        Set<String> result = reachable(classes, 'example/Plugin')
+
+        assertThat(result, containsInAnyOrder('example/Plugin', 'example/impl/Loaded'))
+    }
+
+    @Test
+    void 'roots are the classes and packages named by text resources and the kept classes'() {
+        createFile('example/Controller.class', createClass('example/Controller'))
+        createFile('example/scan/Component.class', createClass('example/scan/Component'))
+        createFile('example/keep/Kept.class', createClass('example/keep/Kept'))
+        createFile('example/keep/sub/NotKept.class', createClass('example/keep/sub/NotKept'))
+        createFile('example/Unused.class', createClass('example/Unused'))
+        createFile('META-INF/build-server-plugin-example.xml', '''
+            <beans xmlns="http://www.springframework.org/schema/beans">
+                <bean class="example.Controller"/>
+                <context:component-scan base-package="example.scan"/>
+            </beans>
+        '''.bytes)
+
+        Set<String> roots = ClasspathContents.read([testDir.toFile()]).withCloseable { contents ->
+            ClassReachability.roots(contents, ['example.keep.*'])
+        }
+
+        assertThat(roots, containsInAnyOrder('example/Controller', 'example/scan/Component', 'example/keep/Kept'))
+    }
+
+    @Test
+    void 'keep patterns match classes, packages and sub-packages'() {
+        assertThat(ClassReachability.matches('example/Plugin', 'example/Plugin'), is(true))
+        assertThat(ClassReachability.matches('example/Plugin', 'example/Plugin$Inner'), is(true))
+        assertThat(ClassReachability.matches('example/Plugin', 'example/PluginOther'), is(false))
+        assertThat(ClassReachability.matches('example/*', 'example/Plugin'), is(true))
+        assertThat(ClassReachability.matches('example/*', 'example/sub/Plugin'), is(false))
+        assertThat(ClassReachability.matches('example/**', 'example/sub/Plugin'), is(true))
+        assertThat(ClassReachability.matches('example/**', 'examples/Plugin'), is(false))
+    }
+}
@@ -18,7 +18,11 @@ package com.github.rodm.teamcity
 import com.github.rodm.teamcity.internal.DisablePluginAction
 import com.github.rodm.teamcity.internal.EnablePluginAction
 import com.github.rodm.teamcity.internal.PluginAction
+import com.github.rodm.teamcity.internal.TeamCityEnvironmentService
+import com.github.rodm.teamcity.tasks.CheckLibraryConflicts
+import com.github.rodm.teamcity.tasks.CreateClassDataArchive
 import com.github.rodm.teamcity.tasks.Deploy
+import com.github.rodm.teamcity.tasks.DeployAgentPlugin
 import com.github.rodm.teamcity.tasks.DownloadTeamCity
 import com.github.rodm.teamcity.tasks.InstallTeamCity
 import com.github.rodm.teamcity.tasks.StartAgent
@@ -32,6 +36,7 @@ import org.gradle.api.Project
 import org.gradle.api.Task
 import org.gradle.api.internal.project.ProjectInternal
 import org.gradle.api.logging.Logger
+import org.gradle.api.provider.Provider
 import org.gradle.api.tasks.Copy
 import org.gradle.api.tasks.Delete
 import org.gradle.initialization.GradlePropertiesController
@@ -56,10 +61,13 @@ import static org.hamcrest.MatcherAssert.assertThat
 import static org.hamcrest.Matchers.containsString
 import static org.hamcrest.Matchers.endsWith
 import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.everyItem
 import static org.hamcrest.Matchers.hasItem
 import static org.hamcrest.Matchers.hasSize
+import static org.hamcrest.Matchers.is
 import static org.hamcrest.Matchers.isA
 import static org.hamcrest.Matchers.not
+import static org.hamcrest.Matchers.sameInstance
 import static org.hamcrest.Matchers.startsWith
 import static org.junit.jupiter.api.Assertions.assertFalse
 import static org.junit.jupiter.api.Assertions.assertThrows
@@ -626,6 +634,9 @@ class EnvironmentsTest {
         assertThat(project, hasTask('stopTeamcity9Agent'))
         assertThat(project, hasTask('startTeamcity9'))
         assertThat(project, hasTask('stopTeamcity9'))
+        assertThat(project, hasTask('createClassDataArchiveTeamcity9'))
+        assertThat(project, hasTask('deployAgentPluginToTeamcity9'))
+        assertThat(project, hasTask('checkLibraryConflictsTeamcity9'))
     }
 
     @Test
@@ -646,7 +657,7 @@ class EnvironmentsTest {
     }
 
     @Test
-    void 'configures deploy task without actions to disable and enable plugin for version 2018_1 and earlier'() {
+    void 'deploy task does not disable and enable plugin for version 2018_1 and earlier'() {
         project.apply plugin: 'com.github.rodm.teamcity-environments'
         project.teamcity {
             environments {
@@ -658,8 +669,8 @@ class EnvironmentsTest {
         project.evaluate()
 
         Copy deployPlugin = project.tasks.getByName('deployToTest') as Copy
-        assertThat(deployPlugin, not(hasAction(DisablePluginAction)))
-        assertThat(deployPlugin, not(hasAction(EnablePluginAction)))
+        assertThat(pluginActions(deployPlugin), hasSize(2))
+        assertThat(pluginActions(deployPlugin)*.runtimeReloadSupported, everyItem(is(false)))
     }
 
     @Test
@@ -679,7 +690,7 @@ class EnvironmentsTest {
     }
 
     @Test
-    void 'configures undeploy task without action to disable the plugin for version 2018_1 and earlier'() {
+    void 'undeploy task does not disable the plugin for version 2018_1 and earlier'() {
         project.apply plugin: 'com.github.rodm.teamcity-environments'
         project.teamcity {
             environments {
@@ -691,7 +702,15 @@ class EnvironmentsTest {
         project.evaluate()
 
         Delete undeployPlugin = project.tasks.getByName('undeployFromTest') as Delete
-        assertThat(undeployPlugin, not(hasAction(DisablePluginAction)))
+        assertThat(pluginActions(undeployPlugin), hasSize(1))
+        assertThat(pluginActions(undeployPlugin)*.runtimeReloadSupported, everyItem(is(false)))
+    }
+
+    private static List<PluginAction> pluginActions(Task task) {
+        task.taskActions
+            .findAll { it.hasProperty('action') }
+            .collect { it.action }
+            .findAll { it instanceof PluginAction } as List<PluginAction>
     }
 
     @Test
@@ -739,6 +758,132 @@ class EnvironmentsTest {
         assertThat(normalizePath(undeployPlugin.pluginsDir), endsWith('data/10.0/plugins'))
     }
 
+    @Test
+    void 'environments plugin configures deploy agent plugin task with project agent plugin'() {
+        project.apply plugin: 'com.github.rodm.teamcity-agent'
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '10.0.3'
+                }
+            }
+        }
+        project.evaluate()
+
+        def deployAgentPlugin = project.tasks.getByName('deployAgentPluginToTest') as DeployAgentPlugin
+        Set<File> files = deployAgentPlugin.plugins.files
+        assertThat(files, hasSize(1))
+        assertThat(files, hasItem(project.file('build/distributions/test.zip')))
+        assertThat(normalizePath(deployAgentPlugin.pluginsDir), endsWith('servers/TeamCity-10.0.3/buildAgent/plugins'))
+        assertThat(deployAgentPlugin.stopTimeout.get(), equalTo(60))
+        assertThat(deployAgentPlugin.port.get(), equalTo(9090))
+    }
+
+    @Test
+    void 'environments plugin configures deploy agent plugin task with environment agent plugins'() {
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '10.0.3'
+                    agentOptions = '-DagentOption=agentValue'
+                    agentPlugins 'agent-plugin1.zip'
+                    agentPlugins 'agent-plugin2.zip'
+                }
+            }
+        }
+        project.evaluate()
+
+        def deployAgentPlugin = project.tasks.getByName('deployAgentPluginToTest') as DeployAgentPlugin
+        Set<File> files = deployAgentPlugin.plugins.files
+        assertThat(files, hasSize(2))
+        assertThat(files, hasItem(project.file('agent-plugin1.zip')))
+        assertThat(files, hasItem(project.file('agent-plugin2.zip')))
+        assertThat(deployAgentPlugin.agentOptions.get(), equalTo('-DagentOption=agentValue'))
+    }
+
+    @Test
+    void 'environments plugin configures check library conflicts task with environment plugins'() {
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '2020.1'
+                    plugins 'plugin.zip'
+                    agentPlugins 'agent-plugin.zip'
+                }
+            }
+        }
+        project.evaluate()
+
+        def checkLibraryConflicts = project.tasks.getByName('checkLibraryConflictsTest') as CheckLibraryConflicts
+        assertThat(checkLibraryConflicts.plugins.files, hasItem(project.file('plugin.zip')))
+        assertThat(checkLibraryConflicts.agentPlugins.files, hasItem(project.file('agent-plugin.zip')))
+        assertThat(normalizePath(checkLibraryConflicts.homeDir), endsWith('servers/TeamCity-2020.1'))
+        assertThat(normalizePath(checkLibraryConflicts.reportFile), endsWith('build/reports/teamcity/library-conflicts-test.txt'))
+    }
+
+    @Test
+    void 'deploy agent plugin task unpacks plugins into directory named after the archive'() {
+        assertThat(DeployAgentPlugin.pluginName(new File('build/distributions/test-agent.zip')), equalTo('test-agent'))
+        assertThat(DeployAgentPlugin.pluginName(new File('plugin')), equalTo('plugin'))
+    }
+
+    @Test
+    void 'deploy agent plugin task records the deployed plugin directories'() {
+        File deployedFile = projectDir.resolve('deployed-plugins.txt').toFile()
+        assertThat(DeployAgentPlugin.readDeployedPlugins(deployedFile), hasSize(0))
+
+        File pluginDir = projectDir.resolve('buildAgent/plugins/test-agent-1.0').toFile()
+        DeployAgentPlugin.writeDeployedPlugins(deployedFile, [pluginDir] as Set)
+
+        assertThat(DeployAgentPlugin.readDeployedPlugins(deployedFile), equalTo([pluginDir.absoluteFile]))
+    }
+
+    @Test
+    void 'configuring environment tasks does not resolve plugins'() {
+        project.apply plugin: 'com.github.rodm.teamcity-server'
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        def resolved = []
+        project.teamcity {
+            environments {
+                test {
+                    version = '2020.1'
+                    plugins project.provider({ resolved << 'plugins'; 'plugin.zip' })
+                }
+            }
+        }
+        project.evaluate()
+
+        project.tasks.getByName('deployToTest')
+        project.tasks.getByName('undeployFromTest')
+        project.tasks.getByName('installTest')
+
+        assertThat(resolved, hasSize(0))
+    }
+
+    @Test
+    void 'configuring environments does not realize the plugin packaging tasks'() {
+        project.apply plugin: 'com.github.rodm.teamcity-server'
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        def realized = []
+        project.tasks.named('serverPlugin').configure { realized << it.name }
+        project.teamcity {
+            environments {
+                test1 {
+                    version = '2020.1'
+                }
+                test2 {
+                    version = '2021.2'
+                }
+            }
+        }
+        project.evaluate()
+
+        assertThat(realized, hasSize(0))
+    }
+
     @Test
     void 'environments plugin configures deploy and undeploy tasks with multiple plugins'() {
         project.apply plugin: 'com.github.rodm.teamcity-environments'
@@ -873,6 +1018,9 @@ class EnvironmentsTest {
         StopServer stopServer = project.tasks.getByName('stopTeamcity10Server') as StopServer
         assertThat(normalize(stopServer.homeDir.get()), endsWith('servers/TeamCity-10.0.4'))
         assertThat(normalize(stopServer.javaHome.get()), endsWith('/opt/jdk1.8.0'))
+        assertThat(stopServer.stopTimeout.get(), equalTo(60))
+        assertThat(stopServer.port.get(), equalTo(8111))
+        assertThat(normalizePath(stopServer.pidFile), endsWith('servers/TeamCity-10.0.4/logs/teamcity-server.pid'))
     }
 
     @Test
@@ -898,6 +1046,284 @@ class EnvironmentsTest {
         StopAgent stopAgent = project.tasks.getByName('stopTeamcity10Agent') as StopAgent
         assertThat(normalize(stopAgent.homeDir.get()), endsWith('servers/TeamCity-10.0.4'))
         assertThat(normalize(stopAgent.javaHome.get()), endsWith('/opt/jdk1.8.0'))
+        assertThat(stopAgent.stopTimeout.get(), equalTo(60))
+        assertThat(stopAgent.port.get(), equalTo(9090))
+        assertThat(normalizePath(stopAgent.pidFile), endsWith('servers/TeamCity-10.0.4/buildAgent/logs/buildAgent.pid'))
+    }
+
+    @Test
+    void 'configures stop tasks with environment stop timeout'() {
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '2020.1'
+                    stopTimeout = 120
+                }
+            }
+        }
+
+        project.evaluate()
+
+        StopServer stopServer = project.tasks.getByName('stopTestServer') as StopServer
+        StopAgent stopAgent = project.tasks.getByName('stopTestAgent') as StopAgent
+        assertThat(stopServer.stopTimeout.get(), equalTo(120))
+        assertThat(stopAgent.stopTimeout.get(), equalTo(120))
+    }
+
+    @Test
+    void 'configures stop tasks with environment ports'() {
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '2020.1'
+                    serverPort = 8222
+                    agentPort = 9191
+                }
+            }
+        }
+
+        project.evaluate()
+
+        StopServer stopServer = project.tasks.getByName('stopTestServer') as StopServer
+        StopAgent stopAgent = project.tasks.getByName('stopTestAgent') as StopAgent
+        assertThat(stopServer.port.get(), equalTo(8222))
+        assertThat(stopAgent.port.get(), equalTo(9191))
+    }
+
+    @Test
+    void 'configures start tasks with environment ports and stop timeout'() {
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '2020.1'
+                    serverPort = 8222
+                    agentPort = 9191
+                    stopTimeout = 120
+                }
+            }
+        }
+
+        project.evaluate()
+
+        StartServer startServer = project.tasks.getByName('startTestServer') as StartServer
+        StartAgent startAgent = project.tasks.getByName('startTestAgent') as StartAgent
+        assertThat(startServer.port.get(), equalTo(8222))
+        assertThat(startServer.stopTimeout.get(), equalTo(120))
+        assertThat(startAgent.port.get(), equalTo(9191))
+        assertThat(startAgent.stopTimeout.get(), equalTo(120))
+    }
+
+    @Test
+    void 'configures stop tasks with stop timeout from gradle properties'() {
+        projectDir.resolve('gradle.properties').toFile() << '''
+        teamcity.environments.test.stopTimeout = 15
+        '''
+        project = ProjectBuilder.builder().withProjectDir(projectDir.toFile()).build()
+        // workaround for https://github.com/gradle/gradle/issues/13122
+        (project as ProjectInternal).services.get(GradlePropertiesController).loadGradlePropertiesFrom(projectDir.toFile())
+
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '2020.1'
+                    stopTimeout = 120
+                }
+            }
+        }
+
+        project.evaluate()
+
+        StopServer stopServer = project.tasks.getByName('stopTestServer') as StopServer
+        assertThat(stopServer.stopTimeout.get(), equalTo(15))
+    }
+
+    @Test
+    void 'configures environment tasks to use shared environment service'() {
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity TEAMCITY10_ENVIRONMENT
+
+        project.evaluate()
+
+        StartServer startServer = project.tasks.getByName('startTeamcity10Server') as StartServer
+        StopServer stopServer = project.tasks.getByName('stopTeamcity10Server') as StopServer
+        StartAgent startAgent = project.tasks.getByName('startTeamcity10Agent') as StartAgent
+        StopAgent stopAgent = project.tasks.getByName('stopTeamcity10Agent') as StopAgent
+        def service = startServer.environmentService.get()
+        assertThat(service, isA(TeamCityEnvironmentService))
+        assertThat(stopServer.environmentService.get(), sameInstance(service))
+        assertThat(startAgent.environmentService.get(), sameInstance(service))
+        assertThat(stopAgent.environmentService.get(), sameInstance(service))
+        assertThat(startServer.stopAfterBuild.get(), is(false))
+        assertThat(startAgent.stopAfterBuild.get(), is(false))
+    }
+
+    @Test
+    void 'configures start tasks to stop after build'() {
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '2020.1'
+                    stopAfterBuild = true
+                }
+            }
+        }
+
+        project.evaluate()
+
+        StartServer startServer = project.tasks.getByName('startTestServer') as StartServer
+        StartAgent startAgent = project.tasks.getByName('startTestAgent') as StartAgent
+        assertThat(startServer.stopAfterBuild.get(), is(true))
+        assertThat(startAgent.stopAfterBuild.get(), is(true))
+    }
+
+    @Test
+    void 'configures start tasks with stop after build from gradle properties'() {
+        projectDir.resolve('gradle.properties').toFile() << '''
+        teamcity.environments.test.stopAfterBuild = true
+        '''
+        project = ProjectBuilder.builder().withProjectDir(projectDir.toFile()).build()
+        // workaround for https://github.com/gradle/gradle/issues/13122
+        (project as ProjectInternal).services.get(GradlePropertiesController).loadGradlePropertiesFrom(projectDir.toFile())
+
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '2020.1'
+                }
+            }
+        }
+
+        project.evaluate()
+
+        StartServer startServer = project.tasks.getByName('startTestServer') as StartServer
+        assertThat(startServer.stopAfterBuild.get(), is(true))
+    }
+
+    @Test
+    void 'configures create class data archive task'() {
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity TEAMCITY10_ENVIRONMENT
+
+        project.evaluate()
+
+        CreateClassDataArchive createArchive = project.tasks.getByName('createClassDataArchiveTeamcity10') as CreateClassDataArchive
+        assertThat(normalize(createArchive.homeDir.get()), endsWith('servers/TeamCity-10.0.4'))
+        assertThat(normalize(createArchive.dataDir.get()), endsWith('data/10.0'))
+        assertThat(createArchive.agentOptions.get(), endsWith('-DagentOption=agentValue'))
+        assertThat(createArchive.trainingTime.get(), equalTo(60))
+        assertThat(createArchive.stopTimeout.get(), equalTo(60))
+        assertThat(createArchive.serverPort.get(), equalTo(8111))
+        assertThat(createArchive.agentPort.get(), equalTo(9090))
+        assertThat(normalizePath(createArchive.serverArchive), endsWith('servers/TeamCity-10.0.4/cds/teamcity-server.jsa'))
+        assertThat(normalizePath(createArchive.agentArchive), endsWith('servers/TeamCity-10.0.4/cds/buildAgent.jsa'))
+    }
+
+    @Test
+    void 'start tasks do not use class data archives by default'() {
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity TEAMCITY10_ENVIRONMENT
+
+        project.evaluate()
+
+        StartServer startServer = project.tasks.getByName('startTeamcity10Server') as StartServer
+        StartAgent startAgent = project.tasks.getByName('startTeamcity10Agent') as StartAgent
+        assertThat(startServer.serverOptions.get(), not(containsString('SharedArchiveFile')))
+        assertThat(startAgent.agentOptions.get(), not(containsString('SharedArchiveFile')))
+    }
+
+    @Test
+    void 'configures start tasks to use class data archives'() {
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '2021.2'
+                    homeDir = '/tmp/servers/TeamCity-2021.2'
+                    agentOptions = '-DagentOption=agentValue'
+                    classDataSharing = true
+                }
+            }
+        }
+
+        project.evaluate()
+
+        StartServer startServer = project.tasks.getByName('startTestServer') as StartServer
+        StartAgent startAgent = project.tasks.getByName('startTestAgent') as StartAgent
+        assertThat(startServer.serverOptions.get(), startsWith('-Dteamcity.development.mode=true'))
+        assertThat(normalize(startServer.serverOptions.get()), endsWith('-Xshare:auto -XX:SharedArchiveFile=/tmp/servers/TeamCity-2021.2/cds/teamcity-server.jsa'))
+        assertThat(startAgent.agentOptions.get(), startsWith('-DagentOption=agentValue'))
+        assertThat(normalize(startAgent.agentOptions.get()), endsWith('-Xshare:auto -XX:SharedArchiveFile=/tmp/servers/TeamCity-2021.2/cds/buildAgent.jsa'))
+    }
+
+    @Test
+    void 'start tasks do not use class data archives with Java versions before 13'() {
+        File jdk8Home = createDirectory(projectDir.resolve('jdk8'))
+        createFile(jdk8Home.toPath().resolve('release')) << 'JAVA_VERSION="1.8.0_292"\n'
+
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '2021.2'
+                    javaHome = project.file(jdk8Home)
+                    classDataSharing = true
+                }
+            }
+        }
+
+        project.evaluate()
+
+        StartServer startServer = project.tasks.getByName('startTestServer') as StartServer
+        StartAgent startAgent = project.tasks.getByName('startTestAgent') as StartAgent
+        assertThat(startServer.serverOptions.get(), not(containsString('SharedArchiveFile')))
+        assertThat(startAgent.agentOptions.get(), not(containsString('SharedArchiveFile')))
+        assertThat(startServer.classDataSharing.get(), is(true))
+        assertThat(startAgent.classDataSharing.get(), is(true))
+    }
+
+    @Test
+    void 'configures start tasks to use class data archives from gradle properties'() {
+        projectDir.resolve('gradle.properties').toFile() << '''
+        teamcity.environments.test.classDataSharing = true
+        '''
+        project = ProjectBuilder.builder().withProjectDir(projectDir.toFile()).build()
+        // workaround for https://github.com/gradle/gradle/issues/13122
+        (project as ProjectInternal).services.get(GradlePropertiesController).loadGradlePropertiesFrom(projectDir.toFile())
+
+        project.apply plugin: 'com.github.rodm.teamcity-environments'
+        project.teamcity {
+            environments {
+                test {
+                    version = '2021.2'
+                }
+            }
+        }
+
+        project.evaluate()
+
+        StartServer startServer = project.tasks.getByName('startTestServer') as StartServer
+        assertThat(startServer.serverOptions.get(), containsString('-XX:SharedArchiveFile='))
+    }
+
+    @Test
+    void 'create class data archive task requires Java 13 or later'() {
+        File javaHome = createDirectory(projectDir.resolve('jdk8'))
+        createFile(javaHome.toPath().resolve('release')) << 'JAVA_VERSION="1.8.0_292"\n'
+
+        def e = assertThrows(InvalidUserDataException, { ->
+            CreateClassDataArchive.validJavaVersion(javaHome.toString())
+        })
+        assertThat(e.message, containsString('require Java 13 or later'))
+
+        File javaHome17 = createDirectory(projectDir.resolve('jdk17'))
+        createFile(javaHome17.toPath().resolve('release')) << 'JAVA_VERSION="17.0.1"\n'
+        CreateClassDataArchive.validJavaVersion(javaHome17.toString())
     }
 
     @Test
@@ -1107,8 +1533,8 @@ class EnvironmentsTest {
         HttpURLConnection request
         String pluginName
 
-        TestPluginAction(Logger logger, File dataDir, boolean enable) {
-            super(logger, dataDir, [] as Set, [], enable)
+        TestPluginAction(Logger logger, File dataDir, Provider<Integer> serverPort, boolean enable) {
+            super(logger, dataDir, serverPort, [] as Set, [], enable)
         }
 
         @Override
@@ -1127,6 +1553,10 @@ class EnvironmentsTest {
         }
     }
 
+    private Provider<Integer> serverPort(int port = 8111) {
+        return project.providers.provider { port }
+    }
+
     private void createMaintenanceTokenFile() {
         File pluginDir = createDirectory(projectDir.resolve('system/pluginData/superUser'))
         File maintenanceTokenFile = new File(pluginDir, 'token.txt')
@@ -1135,7 +1565,7 @@ class EnvironmentsTest {
 
     @Test
     void 'does not send plugin action request when maintenance token file is not available'() {
-        def action = new TestPluginAction(project.logger, projectDir.toFile(), false) {
+        def action = new TestPluginAction(project.logger, projectDir.toFile(), serverPort(), false) {
             @Override
             void sendRequest(HttpURLConnection request, String pluginName) {
                 fail('Should not send request when maintenance token file not available')
@@ -1150,7 +1580,7 @@ class EnvironmentsTest {
 
     @Test
     void 'sends plugin action to correct path'() {
-        def action = new TestPluginAction(project.logger, projectDir.toFile(), false)
+        def action = new TestPluginAction(project.logger, projectDir.toFile(), serverPort(), false)
         createMaintenanceTokenFile()
 
         action.executeAction('test-plugin.zip')
@@ -1159,9 +1589,20 @@ class EnvironmentsTest {
         assertThat(url.path, equalTo('/httpAuth/admin/plugins.html') )
     }
 
+    @Test
+    void 'sends plugin action to the server port of the environment'() {
+        def action = new TestPluginAction(project.logger, projectDir.toFile(), serverPort(8080), false)
+        createMaintenanceTokenFile()
+
+        action.executeAction('test-plugin.zip')
+
+        def url = action.request.URL
+        assertThat(url.port, equalTo(8080))
+    }
+
     @Test
     void 'sends plugin action with authorization token from maintenance file'() {
-        def action = new TestPluginAction(project.logger, projectDir.toFile(), true)
+        def action = new TestPluginAction(project.logger, projectDir.toFile(), serverPort(), true)
         createMaintenanceTokenFile()
 
         action.executeAction('test-plugin.zip')
@@ -1172,7 +1613,7 @@ class EnvironmentsTest {
 
     @Test
     void 'sends plugin action with settings to disable plugin'() {
-        def action = new TestPluginAction(project.logger, projectDir.toFile(), false)
+        def action = new TestPluginAction(project.logger, projectDir.toFile(), serverPort(), false)
         createMaintenanceTokenFile()
 
         action.executeAction('test-plugin.zip')
@@ -1183,7 +1624,7 @@ class EnvironmentsTest {
 
     @Test
     void 'sends plugin action with settings to enable plugin'() {
-        def action = new TestPluginAction(project.logger, projectDir.toFile(), true)
+        def action = new TestPluginAction(project.logger, projectDir.toFile(), serverPort(), true)
         createMaintenanceTokenFile()
 
         action.executeAction('test-plugin.zip')
@@ -1194,7 +1635,7 @@ class EnvironmentsTest {
 
     @Test
     void 'sends plugin action with encoded plugin path'() {
-        def action = new TestPluginAction(project.logger, projectDir.toFile(), true)
+        def action = new TestPluginAction(project.logger, projectDir.toFile(), serverPort(), true)
         createMaintenanceTokenFile()
 
         action.executeAction('plugin-1.0.0+test.zip')
@@ -1205,7 +1646,7 @@ class EnvironmentsTest {
 
     @Test
     void 'disabling plugin unload response logs success'() {
-        def action = new DisablePluginAction(project.logger, projectDir.toFile(), [] as Set, [])
+        def action = new DisablePluginAction(project.logger, projectDir.toFile(), serverPort(), [] as Set, [])
         createMaintenanceTokenFile()
 
         def request = mock(HttpURLConnection)
@@ -1220,7 +1661,7 @@ class EnvironmentsTest {
 
     @Test
     void 'disabling plugin unexpected response logs failure'() {
-        def action = new DisablePluginAction(project.logger, projectDir.toFile(), [] as Set, [])
+        def action = new DisablePluginAction(project.logger, projectDir.toFile(), serverPort(), [] as Set, [])
         createMaintenanceTokenFile()
 
         def request = mock(HttpURLConnection)
@@ -1233,7 +1674,7 @@ class EnvironmentsTest {
 
     @Test
     void 'enabling plugin loaded response logs success'() {
-        def action = new EnablePluginAction(project.logger, projectDir.toFile(), [] as Set, [])
+        def action = new EnablePluginAction(project.logger, projectDir.toFile(), serverPort(), [] as Set, [])
         createMaintenanceTokenFile()
 
         def request = mock(HttpURLConnection)
@@ -1246,7 +1687,7 @@ class EnvironmentsTest {
 
     @Test
     void 'enabling plugin unexpected response logs failure'() {
-        def action = new EnablePluginAction(project.logger, projectDir.toFile(), [] as Set, [])
+        def action = new EnablePluginAction(project.logger, projectDir.toFile(), serverPort(), [] as Set, [])
         createMaintenanceTokenFile()
 
         def request = mock(HttpURLConnection)
@@ -1266,7 +1707,7 @@ class EnvironmentsTest {
     private DisablePluginAction createDisablePluginAction(def plugins, def unloaded, String response) {
         def request = mock(HttpURLConnection)
         when(request.inputStream).thenReturn(new ByteArrayInputStream(response.bytes))
-        new DisablePluginAction(project.logger, projectDir.toFile(), plugins , unloaded) {
+        new DisablePluginAction(project.logger, projectDir.toFile(), serverPort(), plugins , unloaded) {
             void executeAction(String pluginName) {
                 sendRequest(request, pluginName)
                 EnvironmentsTest.this.wasRequestSent = true
@@ -1278,7 +1719,7 @@ class EnvironmentsTest {
         def request = mock(HttpURLConnection)
         def response = 'Plugin loaded successfully'
         when(request.inputStream).thenReturn(new ByteArrayInputStream(response.bytes))
-        new EnablePluginAction(project.logger, projectDir.toFile(), plugins, unloaded) {
+        new EnablePluginAction(project.logger, projectDir.toFile(), serverPort(), plugins, unloaded) {
             void executeAction(String pluginName) {
                 sendRequest(request, pluginName)
                 EnvironmentsTest.this.wasRequestSent = true
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.PluginArchiveCopyAction
+import org.gradle.api.file.RelativePath
+import org.gradle.api.internal.file.CopyActionProcessingStreamAction
+import org.gradle.api.internal.file.copy.CopyActionProcessingStream
+import org.gradle.api.internal.file.copy.FileCopyDetailsInternal
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
+import java.util.zip.ZipInputStream
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.contains
+import static org.hamcrest.Matchers.equalTo
+
+class PluginArchiveCopyActionTest {
+
+    @TempDir
+    public Path testDir
+
+    private static FileCopyDetailsInternal file(String path, String content, long lastModified = 0L) {
+        byte[] bytes = content.bytes
+        return [
+            isDirectory: { false },
+            getRelativePath: { RelativePath.parse(true, path) },
+            getMode: { 0644 },
+            getLastModified: { lastModified },
+            getSize: { (long) bytes.length },
+            copyTo: { OutputStream out -> out.write(bytes); true }
+        ] as FileCopyDetailsInternal
+    }
+
+    private static FileCopyDetailsInternal unreadableFile(String path, int size, long lastModified) {
+        return [
+            isDirectory: { false },
+            getRelativePath: { RelativePath.parse(true, path) },
+            getMode: { 0644 },
+            getLastModified: { lastModified },
+            getSize: { (long) size },
+            copyTo: { OutputStream out -> throw new AssertionError("File ${path} should not be read") }
+        ] as FileCopyDetailsInternal
+    }
+
+    private static File entriesFile(File zipFile) {
+        return new File(zipFile.parentFile, zipFile.name + '.entries')
+    }
+
+    private static FileCopyDetailsInternal directory(String path) {
+        return [
+            isDirectory: { true },
+            getRelativePath: { RelativePath.parse(false, path) },
+            getMode: { 0755 },
+            getLastModified: { 0L }
+        ] as FileCopyDetailsInternal
+    }
+
+    private static CopyActionProcessingStream stream(List<FileCopyDetailsInternal> details) {
+        return { CopyActionProcessingStreamAction action -> details.each { action.processFile(it) } } as CopyActionProcessingStream
+    }
+
+    private static PluginArchiveCopyAction incremental(File zipFile) {
+        return new PluginArchiveCopyAction(zipFile, entriesFile(zipFile), true, false, true, { false })
+    }
+
+    /**
+     * Reads the entries using a ZipInputStream, the stream checks the CRC-32 and sizes of each entry.
+     */
+    private static Map<String, String> contents(File zipFile) {
+        Map<String, String> result = [:]
+        new ZipInputStream(new FileInputStream(zipFile)).withCloseable { zip ->
+            ZipEntry entry
+            while ((entry = zip.nextEntry) != null) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream()
+                byte[] buffer = new byte[8192]
+                int read
+                while ((read = zip.read(buffer)) != -1) {
+                    content.write(buffer, 0, read)
+                }
+                result[entry.name] = content.toString()
+            }
+        }
+        return result
+    }
+
+    @Test
+    void 'writes a readable zip file'() {
+        File zipFile = testDir.resolve('plugin.zip').toFile()
+
+        incremental(zipFile).execute(stream([
+            directory('server'), file('server/plugin.jar', 'plugin classes'), file('teamcity-plugin.xml', '<descriptor/>')]))
+
+        Map<String, String> entries = contents(zipFile)
+        assertThat(entries.keySet().toList(), contains('server/', 'server/plugin.jar', 'teamcity-plugin.xml'))
+        assertThat(entries['server/plugin.jar'], equalTo('plugin classes'))
+        assertThat(entries['teamcity-plugin.xml'], equalTo('<descriptor/>'))
+    }
+
+    @Test
+    void 'updated zip file is the same as a zip file written in full'() {
+        File zipFile = testDir.resolve('plugin.zip').toFile()
+        File fullZipFile = testDir.resolve('full.zip').toFile()
+        incremental(zipFile).execute(stream([
+            file('server/library.jar', 'library content ' * 100), file('server/plugin.jar', 'plugin classes')]))
+
+        List<FileCopyDetailsInternal> updated = [
+            file('server/library.jar', 'library content ' * 100), file('server/plugin.jar', 'changed plugin classes'),
+            file('server/added.jar', 'added library')]
+        incremental(zipFile).execute(stream(updated))
+        new PluginArchiveCopyAction(fullZipFile, entriesFile(fullZipFile), true, false, false, { false }).execute(stream(updated))
+
+        assertThat(contents(zipFile)['server/plugin.jar'], equalTo('changed plugin classes'))
+        assertThat(contents(zipFile)['server/added.jar'], equalTo('added library'))
+        assertThat(Files.readAllBytes(zipFile.toPath()), equalTo(Files.readAllBytes(fullZipFile.toPath())))
+    }
+
+    @Test
+    void 'stored entries are written uncompressed'() {
+        File zipFile = testDir.resolve('plugin.zip').toFile()
+
+        new PluginArchiveCopyAction(zipFile, entriesFile(zipFile), false, false, true, { false }).execute(stream([file('server/plugin.jar', 'plugin classes')]))
+        new PluginArchiveCopyAction(zipFile, entriesFile(zipFile), false, false, true, { false }).execute(stream([file('server/plugin.jar', 'plugin classes')]))
+
+        new ZipFile(zipFile).withCloseable { zip ->
+            assertThat(zip.getEntry('server/plugin.jar').method, equalTo(ZipEntry.STORED))
+            assertThat(zip.getInputStream(zip.getEntry('server/plugin.jar')).text, equalTo('plugin classes'))
+        }
+    }
+
+    @Test
+    void 'nested archives are stored without compression'() {
+        File zipFile = testDir.resolve('plugin.zip').toFile()
+        PluginArchiveCopyAction action = new PluginArchiveCopyAction(zipFile, entriesFile(zipFile), true, false, false, { name -> name.endsWith('.zip') })
+
+        action.execute(stream([file('agent/plugin-agent.zip', 'agent archive ' * 100), file('server/plugin.jar', 'plugin classes ' * 100)]))
+
+        new ZipFile(zipFile).withCloseable { zip ->
+            assertThat(zip.getEntry('agent/plugin-agent.zip').method, equalTo(ZipEntry.STORED))
+            assertThat(zip.getEntry('server/plugin.jar').method, equalTo(ZipEntry.DEFLATED))
+        }
+        assertThat(contents(zipFile)['agent/plugin-agent.zip'], equalTo('agent archive ' * 100))
+        assertThat(contents(zipFile)['server/plugin.jar'], equalTo('plugin classes ' * 100))
+    }
+
+    @Test
+    void 'unchanged nested archives are reused when updating incrementally'() {
+        File zipFile = testDir.resolve('plugin.zip').toFile()
+        File fullZipFile = testDir.resolve('full.zip').toFile()
+        List<FileCopyDetailsInternal> details = [file('agent/plugin-agent.zip', 'agent archive'), file('teamcity-plugin.xml', '<descriptor/>')]
+
+        new PluginArchiveCopyAction(zipFile, entriesFile(zipFile), true, false, true, { name -> name.endsWith('.zip') }).execute(stream(details))
+        new PluginArchiveCopyAction(zipFile, entriesFile(zipFile), true, false, true, { name -> name.endsWith('.zip') }).execute(stream(details))
+        new PluginArchiveCopyAction(fullZipFile, entriesFile(fullZipFile), true, false, false, { name -> name.endsWith('.zip') }).execute(stream(details))
+
+        assertThat(contents(zipFile)['agent/plugin-agent.zip'], equalTo('agent archive'))
+        assertThat(Files.readAllBytes(zipFile.toPath()), equalTo(Files.readAllBytes(fullZipFile.toPath())))
+    }
+
+    @Test
+    void 'files with the recorded size and last modified time are reused without being read'() {
+        File zipFile = testDir.resolve('plugin.zip').toFile()
+        incremental(zipFile).execute(stream([file('server/plugin.jar', 'plugin classes')]))
+
+        incremental(zipFile).execute(stream([unreadableFile('server/plugin.jar', 'plugin classes'.length(), 0L)]))
+
+        assertThat(contents(zipFile)['server/plugin.jar'], equalTo('plugin classes'))
+    }
+
+    @Test
+    void 'files with a different last modified time are compared by content'() {
+        File zipFile = testDir.resolve('plugin.zip').toFile()
+        incremental(zipFile).execute(stream([file('server/plugin.jar', 'plugin classes')]))
+
+        incremental(zipFile).execute(stream([file('server/plugin.jar', 'plugin changes', 1000L)]))
+
+        assertThat(contents(zipFile)['server/plugin.jar'], equalTo('plugin changes'))
+    }
+}
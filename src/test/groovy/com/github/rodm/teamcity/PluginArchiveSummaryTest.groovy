@@ -0,0 +1,121 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.PluginArchiveSummary
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.file.Path
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.containsString
+import static org.hamcrest.Matchers.empty
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.hasItem
+import static org.hamcrest.Matchers.hasSize
+import static org.hamcrest.Matchers.is
+
+class PluginArchiveSummaryTest {
+
+    @TempDir
+    public Path testDir
+
+    private File createArchive(String name, Map<String, byte[]> entries) {
+        File archive = testDir.resolve(name).toFile()
+        archive.parentFile.mkdirs()
+        new ZipOutputStream(new FileOutputStream(archive)).withCloseable { zip ->
+            entries.each { entryName, content ->
+                zip.putNextEntry(new ZipEntry(entryName))
+                zip.write(content)
+                zip.closeEntry()
+            }
+        }
+        return archive
+    }
+
+    private byte[] archiveContent(Map<String, byte[]> entries) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        new ZipOutputStream(out).withCloseable { zip ->
+            entries.each { entryName, content ->
+                zip.putNextEntry(new ZipEntry(entryName))
+                zip.write(content)
+                zip.closeEntry()
+            }
+        }
+        return out.toByteArray()
+    }
+
+    @Test
+    void 'summary of a valid plugin archive has sizes and no problems'() {
+        File archive = createArchive('plugin1/test-plugin.zip', [
+            'teamcity-plugin.xml': '<teamcity-plugin/>'.bytes,
+            'server/test-plugin.jar': archiveContent(['Test.class': new byte[100]])])
+
+        PluginArchiveSummary summary = PluginArchiveSummary.check(archive)
+
+        assertThat(summary.name, equalTo('test-plugin.zip'))
+        assertThat(summary.archiveSize, equalTo(archive.length()))
+        assertThat(summary.libraryCount, equalTo(1))
+        assertThat(summary.problems, is(empty()))
+    }
+
+    @Test
+    void 'reports a plugin archive without a descriptor and with an invalid library'() {
+        File archive = createArchive('plugin1/test-plugin.zip', [
+            'server/test-plugin.jar': 'not an archive'.bytes])
+
+        PluginArchiveSummary summary = PluginArchiveSummary.check(archive)
+
+        assertThat(summary.problems, hasSize(2))
+        assertThat(summary.problems[0], containsString('teamcity-plugin.xml'))
+        assertThat(summary.problems[1], containsString('server/test-plugin.jar'))
+    }
+
+    @Test
+    void 'summary is restored from the stored file'() {
+        File archive = createArchive('plugin1/test-plugin.zip', ['server/test.jar': 'invalid'.bytes])
+        File summaryFile = testDir.resolve('summaries/0.properties').toFile()
+
+        PluginArchiveSummary.check(archive).store(summaryFile)
+        PluginArchiveSummary summary = PluginArchiveSummary.load(summaryFile)
+
+        assertThat(summary.name, equalTo('test-plugin.zip'))
+        assertThat(summary.archiveSize, equalTo(archive.length()))
+        assertThat(summary.libraryCount, equalTo(1))
+        assertThat(summary.problems, hasSize(2))
+    }
+
+    @Test
+    void 'combined report includes totals and plugin archives with the same name'() {
+        byte[] descriptor = '<teamcity-plugin/>'.bytes
+        File archive1 = createArchive('plugin1/test-plugin.zip', ['teamcity-plugin.xml': descriptor])
+        File archive2 = createArchive('plugin2/test-plugin.zip', ['teamcity-plugin.xml': descriptor])
+        File archive3 = createArchive('plugin3/other-plugin.zip', ['teamcity-plugin.xml': descriptor])
+        List<PluginArchiveSummary> summaries = [archive1, archive2, archive3].collect { PluginArchiveSummary.check(it) }
+
+        StringWriter report = new StringWriter()
+        new PrintWriter(report).withCloseable { writer ->
+            PluginArchiveSummary.writeReport(summaries, writer)
+        }
+
+        assertThat(PluginArchiveSummary.problems(summaries), hasItem('test-plugin.zip: 2 plugin archives have the same name'))
+        assertThat(report.toString(), containsString('Total: 3 plugins'))
+        assertThat(report.toString(), containsString('other-plugin.zip: '))
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.ArchiveSizes
+import com.github.rodm.teamcity.tasks.PluginSizeReport
+import org.gradle.api.InvalidUserDataException
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.file.Path
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.containsString
+import static org.hamcrest.Matchers.contains
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.nullValue
+import static org.junit.jupiter.api.Assertions.assertThrows
+
+class PluginSizeReportTest {
+
+    @TempDir
+    public Path testDir
+
+    private static byte[] zip(Map<String, byte[]> entries) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        new ZipOutputStream(out).withCloseable { zip ->
+            entries.each { name, content ->
+                zip.putNextEntry(new ZipEntry(name))
+                zip.write(content)
+                zip.closeEntry()
+            }
+        }
+        return out.toByteArray()
+    }
+
+    private File createPluginArchive() {
+        byte[] library = zip(['org/example/Library.class': new byte[1000]])
+        byte[] pluginJar = zip(['example/Plugin.class': new byte[100]])
+        byte[] agentLibrary = zip(['org/example/agent/Agent.class': new byte[200]])
+        byte[] agentZip = zip(['test-agent/lib/agent-library-1.0.jar': agentLibrary])
+        File archive = testDir.resolve('test-plugin.zip').toFile()
+        archive.bytes = zip([
+            'teamcity-plugin.xml': '<teamcity-plugin/>'.bytes,
+            'server/test-plugin.jar': pluginJar,
+            'server/library-1.2.jar': library,
+            'agent/test-agent.zip': agentZip])
+        return archive
+    }
+
+    @Test
+    void 'reads sizes of entries and nested libraries'() {
+        ArchiveSizes sizes = ArchiveSizes.read(createPluginArchive(), ['library-1.2.jar': 'org.example:library:1.2'])
+
+        assertThat(sizes.entries*.path, contains('teamcity-plugin.xml', 'server/test-plugin.jar', 'server/library-1.2.jar', 'agent/test-agent.zip'))
+        assertThat(sizes.libraries*.path, contains(
+            'server/test-plugin.jar', 'server/library-1.2.jar',
+            'agent/test-agent.zip!/test-agent/lib/agent-library-1.0.jar', 'agent/test-agent.zip'))
+        ArchiveSizes.LibrarySize library = sizes.libraries.find { it.path == 'server/library-1.2.jar' }
+        assertThat(library.coordinates, equalTo('org.example:library:1.2'))
+        assertThat(library.contentSize, equalTo(1000L))
+        assertThat(library.entryCount, equalTo(1))
+        assertThat(sizes.libraries[0].coordinates, nullValue())
+        assertThat(sizes.dependencySizes.keySet(), contains('agent-library-1.0.jar', 'org.example:library:1.2', 'test-agent.zip', 'test-plugin.jar'))
+    }
+
+    @Test
+    void 'writes json and html reports'() {
+        ArchiveSizes sizes = ArchiveSizes.read(createPluginArchive(), [:])
+
+        StringWriter json = new StringWriter()
+        sizes.writeJson(new PrintWriter(json))
+        StringWriter html = new StringWriter()
+        sizes.writeHtml(new PrintWriter(html))
+
+        assertThat(json.toString(), containsString('"archive": "test-plugin.zip"'))
+        assertThat(json.toString(), containsString('"path": "server/library-1.2.jar", "coordinates": null'))
+        assertThat(html.toString(), containsString('<td>agent/test-agent.zip!/test-agent/lib/agent-library-1.0.jar</td>'))
+    }
+
+    @Test
+    void 'parses size budgets'() {
+        assertThat(PluginSizeReport.parseSize('512'), equalTo(512L))
+        assertThat(PluginSizeReport.parseSize('64KB'), equalTo(65536L))
+        assertThat(PluginSizeReport.parseSize('10 mb'), equalTo(10485760L))
+        assertThrows(InvalidUserDataException, { PluginSizeReport.parseSize('ten megabytes') })
+    }
+}
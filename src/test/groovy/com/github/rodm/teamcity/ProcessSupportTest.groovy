@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import org.gradle.api.logging.Logging
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.file.Path
+
+import static com.github.rodm.teamcity.internal.ProcessSupport.awaitStop
+import static com.github.rodm.teamcity.internal.ProcessSupport.deletePidFile
+import static com.github.rodm.teamcity.internal.ProcessSupport.isPortInUse
+import static com.github.rodm.teamcity.internal.ProcessSupport.readPid
+import static com.github.rodm.teamcity.internal.ProcessSupport.waitFor
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.nullValue
+import static org.junit.jupiter.api.Assertions.assertFalse
+import static org.junit.jupiter.api.Assertions.assertTrue
+
+class ProcessSupportTest {
+
+    @TempDir
+    public Path tempDir
+
+    @Test
+    void 'read process id from pid file'() {
+        File pidFile = tempDir.resolve('test.pid').toFile()
+        pidFile << '12345\n'
+
+        assertThat(readPid(pidFile), equalTo(12345L))
+    }
+
+    @Test
+    void 'read process id returns null when pid file does not exist'() {
+        File pidFile = tempDir.resolve('missing.pid').toFile()
+
+        assertThat(readPid(pidFile), nullValue())
+    }
+
+    @Test
+    void 'read process id returns null when pid file is malformed'() {
+        File pidFile = tempDir.resolve('test.pid').toFile()
+        pidFile << 'not-a-pid'
+
+        assertThat(readPid(pidFile), nullValue())
+    }
+
+    @Test
+    void 'port is in use while a server socket is bound to it'() {
+        ServerSocket socket = new ServerSocket(0)
+        int port = socket.localPort
+        try {
+            assertTrue(isPortInUse(port))
+        } finally {
+            socket.close()
+        }
+        assertFalse(isPortInUse(port))
+    }
+
+    @Test
+    void 'wait for returns false when condition is not met before timeout'() {
+        assertFalse(waitFor({ false }, 100))
+    }
+
+    @Test
+    void 'wait for returns true when condition is met'() {
+        int count = 0
+        assertTrue(waitFor({ ++count > 1 }, 5000))
+    }
+
+    @Test
+    void 'await stop returns when the port is not in use'() {
+        ServerSocket socket = new ServerSocket(0)
+        int port = socket.localPort
+        socket.close()
+
+        awaitStop('test', null, port, 1, Logging.getLogger(ProcessSupportTest))
+    }
+
+    @Test
+    void 'delete pid file removes the file'() {
+        File pidFile = tempDir.resolve('test.pid').toFile()
+        pidFile << '12345\n'
+
+        deletePidFile('test', pidFile, Logging.getLogger(ProcessSupportTest))
+
+        assertFalse(pidFile.exists())
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.ResourceMerger
+import org.junit.jupiter.api.Test
+
+import java.nio.charset.StandardCharsets
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.is
+
+class ResourceMergerTest {
+
+    private static String merge(String name, String... contents) {
+        byte[] merged = ResourceMerger.merge(name, contents.collect { it.getBytes(StandardCharsets.ISO_8859_1) })
+        return new String(merged, StandardCharsets.ISO_8859_1)
+    }
+
+    @Test
+    void 'service files and spring resources are mergeable'() {
+        assertThat(ResourceMerger.isMergeable('META-INF/services/example.Service'), is(true))
+        assertThat(ResourceMerger.isMergeable('META-INF/spring.handlers'), is(true))
+        assertThat(ResourceMerger.isMergeable('META-INF/spring.schemas'), is(true))
+        assertThat(ResourceMerger.isMergeable('META-INF/spring.factories'), is(true))
+        assertThat(ResourceMerger.isMergeable('META-INF/build-server-plugin.xml'), is(false))
+    }
+
+    @Test
+    void 'merges the providers of service files'() {
+        String merged = merge('META-INF/services/example.Service',
+            '# providers\nexample.First\nexample.Second\n',
+            'example.Second\r\nexample.Third # comment\n')
+
+        assertThat(merged, equalTo('example.First\nexample.Second\nexample.Third\n'))
+    }
+
+    @Test
+    void 'merges spring handlers by key keeping the first value'() {
+        String merged = merge('META-INF/spring.handlers',
+            'http\\://www.example.com/schema/first=example.FirstHandler\n',
+            'http\\://www.example.com/schema/second=example.SecondHandler\n' +
+            'http\\://www.example.com/schema/first=example.OtherHandler\n')
+
+        assertThat(merged, equalTo(
+            'http\\://www.example.com/schema/first=example.FirstHandler\n' +
+            'http\\://www.example.com/schema/second=example.SecondHandler\n'))
+    }
+
+    @Test
+    void 'merges spring factories by combining the values of each key'() {
+        String merged = merge('META-INF/spring.factories',
+            'example.Factory=example.First\n',
+            'example.Factory=example.Second,\\\n  example.First\n')
+
+        assertThat(merged, equalTo('example.Factory=example.First,example.Second\n'))
+    }
+
+    @Test
+    void 'package index lists the packages of the jar'() {
+        byte[] index = ResourceMerger.packageIndex('plugin.jar', [
+            'META-INF/build-server-plugin.xml', 'example/Plugin.class', 'example/impl/Helper.class',
+            'example/impl/Other.class', 'buildServerResources/page.jsp', 'root.properties'])
+
+        assertThat(new String(index, StandardCharsets.UTF_8), equalTo(
+            'JarIndex-Version: 1.0\n\nplugin.jar\nbuildServerResources\nexample\nexample/impl\n\n'))
+    }
+}
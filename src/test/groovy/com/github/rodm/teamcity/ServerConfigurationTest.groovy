@@ -15,11 +15,15 @@
  */
 package com.github.rodm.teamcity
 
+import com.github.rodm.teamcity.internal.CertificateFingerprint
 import com.github.rodm.teamcity.internal.PluginDescriptorContentsValidationAction
 import com.github.rodm.teamcity.internal.PluginDescriptorValidationAction
 import com.github.rodm.teamcity.internal.PublishAction
+import com.github.rodm.teamcity.internal.SharedLibrariesValidationAction
 import com.github.rodm.teamcity.internal.SignAction
+import com.github.rodm.teamcity.tasks.CreatePluginJar
 import com.github.rodm.teamcity.tasks.GenerateServerPluginDescriptor
+import com.github.rodm.teamcity.tasks.PluginSizeReport
 import com.github.rodm.teamcity.tasks.ProcessDescriptor
 import com.github.rodm.teamcity.tasks.PublishPlugin
 import com.github.rodm.teamcity.tasks.ServerPlugin
@@ -73,6 +77,8 @@ import static org.hamcrest.CoreMatchers.equalTo
 import static org.hamcrest.CoreMatchers.hasItem
 import static org.hamcrest.CoreMatchers.isA
 import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.contains
+import static org.hamcrest.Matchers.emptyOrNullString
 import static org.hamcrest.Matchers.greaterThan
 import static org.hamcrest.Matchers.hasEntry
 import static org.hamcrest.Matchers.is
@@ -208,6 +214,82 @@ class ServerConfigurationTest extends ConfigurationTestCase {
         assertThat(project, hasTask('serverPlugin'))
     }
 
+    @Test
+    void 'configures plugin size report task with the size budgets'() {
+        project.teamcity {
+            server {
+                maxArchiveSize = '10MB'
+                maxLibrarySize = '2MB'
+            }
+        }
+
+        PluginSizeReport sizeReport = project.tasks.getByName('serverPluginSizeReport') as PluginSizeReport
+        assertThat(project, hasTask('pluginSizeReport'))
+        assertThat(sizeReport.maxArchiveSize.get(), equalTo('10MB'))
+        assertThat(sizeReport.maxUncompressedSize.isPresent(), is(false))
+        assertThat(sizeReport.maxLibrarySize.get(), equalTo('2MB'))
+        assertThat(normalizePath(sizeReport.archive), endsWith('build/distributions/test.zip'))
+    }
+
+    @Test
+    void 'configures server plugin task to update the archive incrementally'() {
+        project.teamcity {
+            server {
+                incrementalArchive = true
+            }
+        }
+
+        ServerPlugin serverPlugin = project.tasks.getByName('serverPlugin') as ServerPlugin
+        assertThat(serverPlugin.incremental.get(), is(true))
+    }
+
+    @Test
+    void 'configures server plugin task to store nested archives'() {
+        project.teamcity {
+            server {
+                storeNestedArchives = true
+            }
+        }
+
+        ServerPlugin serverPlugin = project.tasks.getByName('serverPlugin') as ServerPlugin
+        assertThat(serverPlugin.storeNestedArchives.get(), is(true))
+        assertThat(serverPlugin.incremental.get(), is(false))
+    }
+
+    @Test
+    void 'configures server plugin task to report shared libraries'() {
+        project.teamcity {
+            server {
+                sharedLibraries = 'fail'
+            }
+        }
+
+        ServerPlugin serverPlugin = project.tasks.getByName('serverPlugin') as ServerPlugin
+        assertThat(serverPlugin.sharedLibraries.get(), equalTo(ValidationMode.FAIL))
+        assertThat(normalizePath(serverPlugin.sharedLibrariesReport), endsWith('build/reports/teamcity/serverPlugin-shared-libraries.txt'))
+        assertThat(serverPlugin, hasAction(SharedLibrariesValidationAction))
+    }
+
+    @Test
+    void 'configures plugin jar task to shrink the plugin libraries'() {
+        project.apply plugin: 'java'
+        project.teamcity {
+            server {
+                shrinkLibraries = true
+                keepClasses 'example.Plugin', 'example.api.**'
+            }
+        }
+
+        CreatePluginJar pluginJar = project.tasks.getByName('serverPluginJar') as CreatePluginJar
+        assertThat(pluginJar.shrink.get(), is(true))
+        assertThat(pluginJar.keepClasses.get(), contains('example.Plugin', 'example.api.**'))
+        assertThat(normalizePath(pluginJar.archiveFile), containsString('build/teamcity/serverPluginJar/'))
+
+        ServerPlugin serverPlugin = project.tasks.getByName('serverPlugin') as ServerPlugin
+        assertThat(serverPlugin.server.buildDependencies.getDependencies(serverPlugin), hasItem(pluginJar))
+        assertThat(serverPlugin.server.buildDependencies.getDependencies(serverPlugin), not(hasItem(project.tasks.getByName('jar'))))
+    }
+
     @Test
     void 'apply configures generate server descriptor task'() {
         project.teamcity {
@@ -375,6 +457,85 @@ class ServerConfigurationTest extends ConfigurationTestCase {
         assertThat(contents, containsString('456'))
     }
 
+    @Test
+    void 'process descriptor replaces tokens using configured delimiters'() {
+        project.teamcity {
+            server {
+                descriptor = project.file('teamcity-plugin.xml')
+                tokens VERSION: '1.2.3'
+                beginToken = '${'
+                endToken = '}'
+            }
+        }
+        File descriptorFile = createFile(projectDir.resolve('teamcity-plugin.xml'))
+        descriptorFile << '<version>${VERSION}</version><email>@VERSION@</email>'
+
+        File outputDir = createDirectory(projectDir.resolve('build/descriptor/server'))
+        def task = project.tasks.getByName('processServerDescriptor') as ProcessDescriptor
+        task.process()
+
+        String contents = new String(new File(outputDir, 'teamcity-plugin.xml').bytes, 'UTF-8')
+        assertThat(contents, equalTo('<version>1.2.3</version><email>@VERSION@</email>'))
+    }
+
+    @Test
+    void 'process descriptor warns about unresolved tokens'() {
+        project.teamcity {
+            server {
+                descriptor = project.file('teamcity-plugin.xml')
+                tokens VERSION: '1.2.3'
+            }
+        }
+        File descriptorFile = createFile(projectDir.resolve('teamcity-plugin.xml'))
+        descriptorFile << '<version>@VERSION@</version><name>@VENDOR_NAME@</name><email>dev@example.com</email>'
+
+        createDirectory(projectDir.resolve('build/descriptor/server'))
+        def task = project.tasks.getByName('processServerDescriptor') as ProcessDescriptor
+        task.process()
+
+        String output = outputEventListener.toString()
+        assertThat(output, containsString('contains tokens without a value: VENDOR_NAME'))
+        assertThat(output, not(containsString('example.com')))
+    }
+
+    @Test
+    void 'process descriptor warns about unresolved tokens without tokens configured'() {
+        project.teamcity {
+            server {
+                descriptor = project.file('teamcity-plugin.xml')
+            }
+        }
+        File descriptorFile = createFile(projectDir.resolve('teamcity-plugin.xml'))
+        descriptorFile << '<version>@VERSION@</version>'
+
+        File outputDir = createDirectory(projectDir.resolve('build/descriptor/server'))
+        def task = project.tasks.getByName('processServerDescriptor') as ProcessDescriptor
+        task.process()
+
+        String contents = new String(new File(outputDir, 'teamcity-plugin.xml').bytes, 'UTF-8')
+        assertThat(contents, equalTo('<version>@VERSION@</version>'))
+        assertThat(outputEventListener.toString(), containsString('contains tokens without a value: VERSION'))
+    }
+
+    @Test
+    void 'process descriptor fails on unresolved tokens'() {
+        project.teamcity {
+            server {
+                descriptor = project.file('teamcity-plugin.xml')
+                tokens VERSION: '1.2.3'
+                unresolvedTokens = 'fail'
+            }
+        }
+        File descriptorFile = createFile(projectDir.resolve('teamcity-plugin.xml'))
+        descriptorFile << '<version>@VERSION@</version><name>@VENDOR_NAME@</name>'
+
+        createDirectory(projectDir.resolve('build/descriptor/server'))
+        def task = project.tasks.getByName('processServerDescriptor') as ProcessDescriptor
+        def e = assertThrows(GradleException, { task.process() })
+
+        assertThat(e.message, containsString('contains tokens without a value: VENDOR_NAME'))
+    }
+
     @Test
     void 'server plugin archive includes additional files'() {
         project.teamcity {
@@ -592,6 +753,40 @@ class ServerConfigurationTest extends ConfigurationTestCase {
             assertThat(signPlugin.certificateChain.get(), equalTo('certificate-chain'))
         }
 
+        @Test
+        void 'sign task uses the sign plugin service'() {
+            project.teamcity {
+                server {
+                    sign {
+                        certificateChain = 'certificate-chain'
+                    }
+                }
+            }
+
+            project.evaluate()
+
+            SignPlugin signPlugin = (SignPlugin) project.tasks.findByPath(':signPlugin')
+            assertThat(signPlugin.signService.isPresent(), is(true))
+            assertThat(signPlugin.signService.get().buildId, not(emptyOrNullString()))
+        }
+
+        @Test
+        void 'sign task input is the certificate fingerprint'() {
+            project.teamcity {
+                server {
+                    sign {
+                        certificateChain = 'certificate-chain'
+                        privateKey = 'private-key'
+                    }
+                }
+            }
+
+            project.evaluate()
+
+            SignPlugin signPlugin = (SignPlugin) project.tasks.findByPath(':signPlugin')
+            assertThat(signPlugin.certificateFingerprint.get(), equalTo(CertificateFingerprint.of('certificate-chain')))
+        }
+
         @Test
         void 'sign task is configured with a password file and no password'() {
             project.teamcity {
@@ -627,6 +822,22 @@ class ServerConfigurationTest extends ConfigurationTestCase {
             assertThat(signPlugin.password.orNull, equalTo('password'))
         }
 
+        @Test
+        void 'sign task is configured with streaming mode'() {
+            project.teamcity {
+                server {
+                    sign {
+                        streaming = true
+                    }
+                }
+            }
+
+            project.evaluate()
+
+            SignPlugin signPlugin = (SignPlugin) project.tasks.findByPath(':signPlugin')
+            assertThat(signPlugin.streaming.get(), is(true))
+        }
+
         @Test
         void 'sign task is configured with output of package task'() {
             project.teamcity {
@@ -744,6 +955,98 @@ class ServerConfigurationTest extends ConfigurationTestCase {
             assertThat('signed plugin file should be much larger than original', signed.size(), greaterThan(plugin.size() + 1000))
         }
 
+        @Test
+        void 'sign action signs multiple plugins with the same key'() {
+            KeyPair keyPair = generateKeyPair()
+            def certificateChain = convertCertificateToPEM(generateCertificate(keyPair))
+            def privateKey = convertPrivateKeyToPEM(keyPair.private)
+
+            ['plugin1', 'plugin2'].each { name ->
+                File plugin = projectDir.resolve("build/distributions/${name}.zip").toFile()
+                File signed = projectDir.resolve("build/distributions/${name}-signed.zip").toFile()
+                createFakePlugin(plugin)
+
+                def sign = new SignAction() {
+                    private SignAction.SignParameters parameters = new TestSignParameters(project)
+
+                    @Override
+                    SignAction.SignParameters getParameters() {
+                        return this.parameters
+                    }
+                }
+                sign.parameters.pluginFile.set(plugin)
+                sign.parameters.certificateChain.set(certificateChain)
+                sign.parameters.privateKey.set(privateKey)
+                sign.parameters.signedPluginFile.set(signed)
+
+                sign.execute()
+
+                assertThat('signed plugin file should be much larger than original', signed.size(), greaterThan(plugin.size() + 1000))
+            }
+        }
+
+        @Test
+        void 'sign action clears the cached certificate chains for a new build'() {
+            File plugin = projectDir.resolve('build/distributions/test.zip').toFile()
+            createFakePlugin(plugin)
+
+            Closure<Void> signWith = { String buildId, KeyPair keyPair ->
+                def sign = new SignAction() {
+                    private SignAction.SignParameters parameters = new TestSignParameters(project)
+
+                    @Override
+                    SignAction.SignParameters getParameters() {
+                        return this.parameters
+                    }
+                }
+                sign.parameters.pluginFile.set(plugin)
+                sign.parameters.certificateChain.set(convertCertificateToPEM(generateCertificate(keyPair)))
+                sign.parameters.privateKey.set(convertPrivateKeyToPEM(keyPair.private))
+                sign.parameters.signedPluginFile.set(projectDir.resolve("build/distributions/${buildId}-signed.zip").toFile())
+                sign.parameters.buildId.set(buildId)
+                sign.execute()
+            }
+
+            signWith('build1', generateKeyPair())
+            signWith('build1', generateKeyPair())
+            assertThat(SignAction.cachedCertificateChains(), equalTo(2))
+
+            signWith('build2', generateKeyPair())
+            assertThat(SignAction.cachedCertificateChains(), equalTo(1))
+        }
+
+        @Test
+        void 'streaming sign action creates the same signed plugin as the default mode'() {
+            File plugin = projectDir.resolve('build/distributions/test.zip').toFile()
+            createFakePlugin(plugin)
+            KeyPair keyPair = generateKeyPair()
+            def certificateChain = convertCertificateToPEM(generateCertificate(keyPair))
+            def privateKey = convertPrivateKeyToPEM(keyPair.private)
+
+            Map<Boolean, File> signedFiles = [:]
+            [false, true].each { streaming ->
+                File signed = projectDir.resolve("build/distributions/signed-${streaming}.zip").toFile()
+                def sign = new SignAction() {
+                    private SignAction.SignParameters parameters = new TestSignParameters(project)
+
+                    @Override
+                    SignAction.SignParameters getParameters() {
+                        return this.parameters
+                    }
+                }
+                sign.parameters.pluginFile.set(plugin)
+                sign.parameters.certificateChain.set(certificateChain)
+                sign.parameters.privateKey.set(privateKey)
+                sign.parameters.streaming.set(streaming)
+                sign.parameters.signedPluginFile.set(signed)
+
+                sign.execute()
+                signedFiles[streaming] = signed
+            }
+
+            assertThat(signedFiles[true].bytes, equalTo(signedFiles[false].bytes))
+        }
+
         private void createFakePlugin(File plugin) {
             plugin.parentFile.mkdirs()
             FileOutputStream fos = new FileOutputStream(plugin)
@@ -795,14 +1098,18 @@ class ServerConfigurationTest extends ConfigurationTestCase {
             Property<String> certificateChain
             Property<String> privateKey
             Property<String> password
+            Property<Boolean> streaming
             RegularFileProperty signedPluginFile
+            Property<String> buildId
 
             TestSignParameters(Project project) {
                 pluginFile = project.objects.fileProperty()
                 certificateChain = project.objects.property(String)
                 privateKey = project.objects.property(String)
                 password = project.objects.property(String)
+                streaming = project.objects.property(Boolean)
                 signedPluginFile = project.objects.fileProperty()
+                buildId = project.objects.property(String)
             }
         }
     }
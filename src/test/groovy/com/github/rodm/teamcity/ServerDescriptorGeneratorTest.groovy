@@ -26,6 +26,7 @@ import javax.xml.XMLConstants
 
 import static XPathMatcher.hasXPath
 import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.containsString
 import static org.hamcrest.Matchers.equalTo
 import static org.hamcrest.Matchers.not
 
@@ -122,6 +123,17 @@ class ServerDescriptorGeneratorTest {
         assertThat(writer.toString(), hasXPath('//info/vendor/name'))
     }
 
+    @Test
+    void writesRequiredInfoPropertiesNotSetAsEmptyElements() {
+        ServerPluginDescriptor descriptor = createDescriptor()
+        ServerPluginDescriptorGenerator generator = createGenerator(descriptor)
+
+        generator.writeTo(writer)
+
+        assertThat(writer.toString(), not(containsString('null')))
+        assertThat(writer.toString(), hasXPath('//info/name', equalTo('')))
+    }
+
     @Test
     void writesOptionalInfoProperties() {
         project.teamcity {
@@ -469,4 +481,46 @@ class ServerDescriptorGeneratorTest {
 
         assertThat(writer.toString(), not(hasXPath('//requirements')))
     }
+
+    @Test
+    void 'writes formatted descriptor with escaped values'() {
+        ServerPluginDescriptor descriptor = createDescriptor()
+        descriptor.name = 'test-plugin'
+        descriptor.displayName = 'Test & <plugin>'
+        descriptor.version = '1.0'
+        descriptor.vendorName = ''
+        descriptor.minimumBuild = '1234'
+        descriptor.useSeparateClassloader = true
+        descriptor.parameters {
+            parameter 'name "1"', 'value\nline'
+        }
+        descriptor.dependencies {
+            plugin 'plugin-name'
+        }
+        ServerPluginDescriptorGenerator generator = createGenerator(descriptor)
+
+        generator.writeTo(writer)
+
+        def expected = '''<?xml version="1.0" encoding="UTF-8"?><teamcity-plugin xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xsi:noNamespaceSchemaLocation="urn:schemas-jetbrains-com:teamcity-plugin-v1-xml">
+  <info>
+    <name>test-plugin</name>
+    <display-name>Test &amp; &lt;plugin&gt;</display-name>
+    <version>1.0</version>
+    <vendor>
+      <name/>
+    </vendor>
+  </info>
+  <requirements min-build="1234"/>
+  <deployment use-separate-classloader="true"/>
+  <parameters>
+    <parameter name="name &quot;1&quot;">value
+line</parameter>
+  </parameters>
+  <dependencies>
+    <plugin name="plugin-name"/>
+  </dependencies>
+</teamcity-plugin>
+'''
+        assertThat(writer.toString(), equalTo(expected))
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.SharedLibraries
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.containsString
+import static org.hamcrest.Matchers.empty
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.hasSize
+import static org.hamcrest.Matchers.is
+
+class SharedLibrariesTest {
+
+    @TempDir
+    public Path testDir
+
+    private File createFile(String name, byte[] content) {
+        Path file = testDir.resolve(name)
+        Files.createDirectories(file.parent)
+        Files.write(file, content)
+        return file.toFile()
+    }
+
+    private File createArchive(String name, Map<String, byte[]> entries) {
+        File archive = testDir.resolve(name).toFile()
+        archive.parentFile.mkdirs()
+        new ZipOutputStream(new FileOutputStream(archive)).withCloseable { zip ->
+            entries.each { entryName, content ->
+                zip.putNextEntry(new ZipEntry(entryName))
+                zip.write(content)
+                zip.closeEntry()
+            }
+        }
+        return archive
+    }
+
+    @Test
+    void 'finds server libraries with the same content as libraries in an agent archive'() {
+        byte[] common = 'shared library content'.bytes
+        File sharedJar = createFile('server/common-1.0.jar', common)
+        File serverJar = createFile('server/server-only.jar', 'server library content'.bytes)
+        File agentArchive = createArchive('agent/plugin-agent.zip', [
+            'plugin-agent/lib/common.jar': common,
+            'plugin-agent/lib/agent-only.jar': 'agent library content'.bytes])
+
+        SharedLibraries libraries = new SharedLibraries(testDir.resolve('cache').toFile())
+        List<SharedLibraries.SharedLibrary> shared = libraries.find([sharedJar, serverJar], [agentArchive])
+
+        assertThat(shared, hasSize(1))
+        assertThat(shared[0].serverLibrary, equalTo('common-1.0.jar'))
+        assertThat(shared[0].agentArchive, equalTo('plugin-agent.zip'))
+        assertThat(shared[0].agentLibrary, equalTo('plugin-agent/lib/common.jar'))
+        assertThat(shared[0].size, equalTo((long) common.length))
+    }
+
+    @Test
+    void 'libraries with the same name and different content are not shared'() {
+        File serverJar = createFile('server/common.jar', 'server version'.bytes)
+        File agentArchive = createArchive('agent/plugin-agent.zip', ['lib/common.jar': 'agent version'.bytes])
+
+        SharedLibraries libraries = new SharedLibraries(null)
+
+        assertThat(libraries.find([serverJar], [agentArchive]), is(empty()))
+    }
+
+    @Test
+    void 'library hashes are cached by library checksum'() {
+        File serverJar = createFile('server/cached-library.jar', 'cached library content'.bytes)
+        File cacheDir = testDir.resolve('cache').toFile()
+
+        String hash = new SharedLibraries(cacheDir).contentHash(serverJar)
+
+        File[] cached = cacheDir.listFiles()
+        assertThat(cached.length, equalTo(1))
+        assertThat(cached[0].name, containsString('.crc'))
+        assertThat(cached[0].text, equalTo(hash))
+    }
+
+    @Test
+    void 'report lists the shared libraries'() {
+        byte[] common = 'reported library content'.bytes
+        File sharedJar = createFile('server/common.jar', common)
+        File agentArchive = createArchive('agent/plugin-agent.zip', ['lib/common.jar': common])
+        List<SharedLibraries.SharedLibrary> shared = new SharedLibraries(null).find([sharedJar], [agentArchive])
+
+        StringWriter report = new StringWriter()
+        new PrintWriter(report).withCloseable { writer -> SharedLibraries.writeReport(shared, writer) }
+
+        assertThat(report.toString(), containsString('server/common.jar'))
+        assertThat(report.toString(), containsString('agent/plugin-agent.zip!/lib/common.jar'))
+    }
+}
@@ -17,6 +17,7 @@ package com.github.rodm.teamcity
 
 import org.gradle.api.Project
 import org.gradle.api.ProjectConfigurationException
+import org.gradle.api.attributes.Category
 import org.gradle.api.plugins.BasePlugin
 import org.gradle.testfixtures.ProjectBuilder
 import org.junit.jupiter.api.BeforeEach
@@ -28,6 +29,7 @@ import static com.github.rodm.teamcity.ValidationMode.FAIL
 import static com.github.rodm.teamcity.ValidationMode.IGNORE
 import static org.hamcrest.CoreMatchers.equalTo
 import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.containsInAnyOrder
 import static org.hamcrest.Matchers.instanceOf
 import static org.hamcrest.Matchers.is
 import static org.hamcrest.Matchers.not
@@ -204,6 +206,20 @@ class TeamCityBasePluginTest {
             assertThat(extension.validateBeanDefinition, is(IGNORE))
         }
 
+        @Test
+        void 'plugins report depends on every project without inspecting their configurations'() {
+            rootProject.apply plugin: 'com.github.rodm.teamcity-base'
+            subproject.apply plugin: 'com.github.rodm.teamcity-server'
+
+            def configuration = rootProject.configurations.getByName('teamcityPluginArchives')
+            def paths = configuration.allDependencies.collect { it.path }
+            assertThat(paths, containsInAnyOrder(':', subproject.path))
+            def category = configuration.attributes.getAttribute(Category.CATEGORY_ATTRIBUTE)
+            assertThat(category.name, equalTo(TeamCityPlugin.PLUGIN_CATEGORY))
+            def pluginCategory = subproject.configurations.getByName('plugin').attributes.getAttribute(Category.CATEGORY_ATTRIBUTE)
+            assertThat(pluginCategory.name, equalTo(TeamCityPlugin.PLUGIN_CATEGORY))
+        }
+
         @Test
         void 'sub-project lazily inherits properties from root project'() {
             rootProject.apply plugin: 'com.github.rodm.teamcity-base'
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.ClasspathIndex
+import com.github.rodm.teamcity.internal.TeamCityLibraries
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.file.Path
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.contains
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.hasSize
+import static org.hamcrest.Matchers.is
+import static org.hamcrest.Matchers.not
+import static org.hamcrest.Matchers.nullValue
+
+class TeamCityLibrariesTest {
+
+    @TempDir
+    public Path testDir
+
+    private static File createJar(File file, String... entries) {
+        file.parentFile.mkdirs()
+        new ZipOutputStream(new FileOutputStream(file)).withCloseable { zip ->
+            entries.each { entry ->
+                zip.putNextEntry(new ZipEntry(entry))
+                zip.write(entry.bytes)
+                zip.closeEntry()
+            }
+        }
+        return file
+    }
+
+    private File createLibDir() {
+        File libDir = testDir.resolve('TeamCity/webapps/ROOT/WEB-INF/lib').toFile()
+        createJar(new File(libDir, 'commons-io-2.11.0.jar'), 'org/apache/commons/io/IOUtils.class')
+        createJar(new File(libDir, 'server-api.jar'), 'jetbrains/buildServer/serverSide/SBuildServer.class')
+        return libDir
+    }
+
+    @Test
+    void 'finds installed library with the same artifact name'() {
+        TeamCityLibraries libraries = TeamCityLibraries.load(createLibDir(), null)
+
+        assertThat(libraries.findLibrary('commons-io-2.6.jar', 'checksum'), equalTo('commons-io-2.11.0.jar'))
+        assertThat(libraries.findLibrary('commons-lang3-3.12.0.jar', 'checksum'), is(nullValue()))
+    }
+
+    @Test
+    void 'finds installed library with the same checksum'() {
+        File libDir = createLibDir()
+        TeamCityLibraries libraries = TeamCityLibraries.load(libDir, null)
+
+        String checksum = ClasspathIndex.checksum(new File(libDir, 'server-api.jar'))
+        assertThat(libraries.findLibrary('renamed.jar', checksum), equalTo('server-api.jar'))
+    }
+
+    @Test
+    void 'finds identical installed library only with the same checksum'() {
+        File libDir = createLibDir()
+        TeamCityLibraries libraries = TeamCityLibraries.load(libDir, null)
+
+        String checksum = ClasspathIndex.checksum(new File(libDir, 'commons-io-2.11.0.jar'))
+        assertThat(libraries.findIdenticalLibrary(checksum), equalTo('commons-io-2.11.0.jar'))
+        assertThat(libraries.findIdenticalLibrary('checksum'), is(nullValue()))
+    }
+
+    @Test
+    void 'finds packages split with installed libraries'() {
+        TeamCityLibraries libraries = TeamCityLibraries.load(createLibDir(), null)
+
+        Set<String> packages = TeamCityLibraries.packages(['org/apache/commons/io/FileUtils.class', 'example/Plugin.class', 'Default.class'])
+        Map<String, String> splitPackages = libraries.findSplitPackages(packages)
+
+        assertThat(packages, contains('example', 'org.apache.commons.io'))
+        assertThat(splitPackages.keySet(), contains('org.apache.commons.io'))
+        assertThat(splitPackages['org.apache.commons.io'], equalTo('commons-io-2.11.0.jar'))
+    }
+
+    @Test
+    void 'library index is cached and rebuilt when the directory changes'() {
+        File libDir = createLibDir()
+        File cacheDir = testDir.resolve('cache').toFile()
+
+        TeamCityLibraries.load(libDir, cacheDir)
+        File[] indexFiles = cacheDir.listFiles({ dir, name -> name.endsWith('.libs') } as FilenameFilter)
+        assertThat(indexFiles.toList(), hasSize(1))
+
+        createJar(new File(libDir, 'guava-31.1-jre.jar'), 'com/google/common/collect/Lists.class')
+        TeamCityLibraries libraries = TeamCityLibraries.load(libDir, cacheDir)
+
+        assertThat(libraries.findLibrary('guava-30.0-jre.jar', 'checksum'), equalTo('guava-31.1-jre.jar'))
+        assertThat(indexFiles[0].readLines().size(), equalTo(4))
+    }
+
+    @Test
+    void 'library directory stamp changes when a jar is added'() {
+        File libDir = createLibDir()
+        String stamp = TeamCityLibraries.stamp(libDir)
+
+        assertThat(TeamCityLibraries.stamp(libDir), equalTo(stamp))
+        createJar(new File(libDir, 'guava-31.1-jre.jar'), 'com/google/common/collect/Lists.class')
+        assertThat(TeamCityLibraries.stamp(libDir), not(equalTo(stamp)))
+        assertThat(TeamCityLibraries.stamp(testDir.resolve('missing').toFile()), equalTo(''))
+    }
+}
@@ -18,6 +18,9 @@ package com.github.rodm.teamcity
 import org.junit.jupiter.api.Nested
 import org.junit.jupiter.api.Test
 
+import static com.github.rodm.teamcity.TeamCityFeature.NODE_RESPONSIBILITIES_AWARE
+import static com.github.rodm.teamcity.TeamCityFeature.PLUGIN_DEPENDENCIES
+import static com.github.rodm.teamcity.TeamCityFeature.RUNTIME_RELOAD
 import static com.github.rodm.teamcity.TeamCityVersion.INVALID_RELEASE_MESSAGE
 import static com.github.rodm.teamcity.TeamCityVersion.INVALID_SNAPSHOT_MESSAGE
 import static com.github.rodm.teamcity.TeamCityVersion.VERSION_2018_2
@@ -26,6 +29,7 @@ import static org.hamcrest.MatcherAssert.assertThat
 import static org.hamcrest.Matchers.equalTo
 import static org.hamcrest.Matchers.lessThan
 import static org.hamcrest.Matchers.greaterThan
+import static org.hamcrest.Matchers.sameInstance
 import static org.hamcrest.core.StringEndsWith.endsWith
 import static org.junit.jupiter.api.Assertions.assertFalse
 import static org.junit.jupiter.api.Assertions.assertTrue
@@ -91,6 +95,30 @@ class TeamCityVersionTest {
         assertThat(version('2021.1.1').dataVersion, equalTo('2021.1'))
     }
 
+    @Test
+    void 'versions are cached'() {
+        assertThat(version('2020.1'), sameInstance(TeamCityVersion.VERSION_2020_1))
+        assertThat(version('2021.2.3'), sameInstance(version('2021.2.3')))
+    }
+
+    @Test
+    void 'cached snapshot version is not valid when snapshots are not allowed'() {
+        TeamCityVersion.version('2021.2-SNAPSHOT', true)
+
+        assertInvalidVersion('2021.2-SNAPSHOT')
+    }
+
+    @Test
+    void 'features supported by TeamCity versions'() {
+        assertFalse(version('8.1').supports(PLUGIN_DEPENDENCIES))
+        assertTrue(version('9.0').supports(PLUGIN_DEPENDENCIES))
+        assertFalse(version('2018.1').supports(RUNTIME_RELOAD))
+        assertTrue(version('2018.2').supports(RUNTIME_RELOAD))
+        assertFalse(version('2019.2.4').supports(NODE_RESPONSIBILITIES_AWARE))
+        assertTrue(version('2020.1').supports(NODE_RESPONSIBILITIES_AWARE))
+        assertTrue(version('SNAPSHOT').supports(NODE_RESPONSIBILITIES_AWARE))
+    }
+
     @Nested
     class TeamCityVersionAllowingSnapshots {
 
@@ -130,6 +158,14 @@ class TeamCityVersionTest {
             assertThat(version('SNAPSHOT'), greaterThan(version('2020.2-SNAPSHOT')))
         }
 
+        @Test
+        void 'features supported by snapshot versions'() {
+            assertFalse(version('2018.1-SNAPSHOT').supports(RUNTIME_RELOAD))
+            assertTrue(version('2018.2-SNAPSHOT').supports(RUNTIME_RELOAD))
+            assertFalse(version('2019.2-SNAPSHOT').supports(NODE_RESPONSIBILITIES_AWARE))
+            assertTrue(version('2020.1-SNAPSHOT').supports(NODE_RESPONSIBILITIES_AWARE))
+        }
+
         @Test
         void 'data version'() {
             assertThat(version('9.0-SNAPSHOT').dataVersion, equalTo('9.0'))
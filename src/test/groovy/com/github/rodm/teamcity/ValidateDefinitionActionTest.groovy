@@ -17,6 +17,7 @@
 package com.github.rodm.teamcity
 
 import com.github.rodm.teamcity.internal.ClassCollectorAction
+import com.github.rodm.teamcity.internal.ClasspathIndex
 import com.github.rodm.teamcity.internal.PluginDefinition
 import com.github.rodm.teamcity.internal.PluginDefinitionCollectorAction
 import com.github.rodm.teamcity.internal.PluginDefinitionValidationAction
@@ -24,6 +25,7 @@ import org.gradle.api.Action
 import org.gradle.api.GradleException
 import org.gradle.api.Project
 import org.gradle.api.Task
+import org.gradle.api.file.FileCollection
 import org.gradle.api.file.FileCopyDetails
 import org.gradle.api.file.RelativePath
 import org.gradle.api.plugins.JavaPlugin
@@ -34,6 +36,10 @@ import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.extension.RegisterExtension
 import org.junit.jupiter.api.io.TempDir
+import org.objectweb.asm.ClassWriter
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
 
 import static com.github.rodm.teamcity.GradleMatchers.hasAction
 import static com.github.rodm.teamcity.ValidationMode.FAIL
@@ -41,16 +47,22 @@ import static com.github.rodm.teamcity.ValidationMode.IGNORE
 import static com.github.rodm.teamcity.ValidationMode.WARN
 import static com.github.rodm.teamcity.internal.PluginDefinitionValidationAction.NO_BEAN_CLASSES_WARNING_MESSAGE
 import static com.github.rodm.teamcity.internal.PluginDefinitionValidationAction.NO_BEAN_CLASS_WARNING_MESSAGE
+import static com.github.rodm.teamcity.internal.PluginDefinitionValidationAction.NO_CONSTRUCTOR_WARNING_MESSAGE
 import static com.github.rodm.teamcity.internal.PluginDefinitionValidationAction.NO_DEFINITION_WARNING_MESSAGE
+import static com.github.rodm.teamcity.internal.PluginDefinitionValidationAction.NOT_INSTANTIABLE_WARNING_MESSAGE
 import static org.hamcrest.CoreMatchers.containsString
 import static org.hamcrest.CoreMatchers.equalTo
 import static org.hamcrest.CoreMatchers.hasItem
 import static org.hamcrest.CoreMatchers.not
 import static org.hamcrest.MatcherAssert.assertThat
 import static org.hamcrest.Matchers.hasKey
+import static org.hamcrest.Matchers.hasSize
 import static org.junit.jupiter.api.Assertions.fail
 import static org.mockito.Mockito.mock
 import static org.mockito.Mockito.when
+import static org.objectweb.asm.Opcodes.ACC_ABSTRACT
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC
+import static org.objectweb.asm.Opcodes.V1_8
 
 class ValidateDefinitionActionTest {
 
@@ -67,9 +79,20 @@ class ValidateDefinitionActionTest {
             </beans>
         """
 
+    public static final String CONSTRUCTOR_ARG_BEAN_DEFINITION_FILE = """<?xml version="1.0" encoding="UTF-8"?>
+        <!DOCTYPE beans PUBLIC "-//SPRING//DTD BEAN//EN" "http://www.springframework.org/dtd/spring-beans.dtd">
+            <beans default-autowire="@autowire@">
+                <bean id="examplePlugin" class="example.Plugin">
+                    <constructor-arg value="example"/>
+                </bean>
+            </beans>
+        """
+
     private static final String NO_DEFINITION_WARNING = NO_DEFINITION_WARNING_MESSAGE.substring(4)
     private static final String NO_BEAN_CLASS_WARNING = NO_BEAN_CLASS_WARNING_MESSAGE.substring(4)
     private static final String NO_BEAN_CLASSES_WARNING = NO_BEAN_CLASSES_WARNING_MESSAGE.substring(4)
+    private static final String NOT_INSTANTIABLE_WARNING = NOT_INSTANTIABLE_WARNING_MESSAGE.substring(4)
+    private static final String NO_CONSTRUCTOR_WARNING = NO_CONSTRUCTOR_WARNING_MESSAGE.substring(4)
 
     private final ResettableOutputEventListener outputEventListener = new ResettableOutputEventListener()
 
@@ -91,6 +114,32 @@ class ValidateDefinitionActionTest {
         new PluginDefinitionValidationAction(mode, definitions, classes)
     }
 
+    private PluginDefinitionValidationAction createValidationAction(ValidationMode mode, FileCollection classpath, File cacheDir) {
+        new PluginDefinitionValidationAction(mode, definitions, classes, classpath, cacheDir)
+    }
+
+    private static File createClass(File classesDir, String name, int access, String constructorDescriptor) {
+        ClassWriter writer = new ClassWriter(0)
+        writer.visit(V1_8, access, name, null, 'java/lang/Object', null)
+        writer.visitMethod(ACC_PUBLIC, '<init>', constructorDescriptor, null, null).visitEnd()
+        writer.visitEnd()
+        File classFile = new File(classesDir, name + '.class')
+        classFile.parentFile.mkdirs()
+        classFile.bytes = writer.toByteArray()
+        return classesDir
+    }
+
+    private static File createJar(File file, String... entries) {
+        file.parentFile.mkdirs()
+        new ZipOutputStream(new FileOutputStream(file)).withCloseable { zip ->
+            entries.each { entry ->
+                zip.putNextEntry(new ZipEntry(entry))
+                zip.closeEntry()
+            }
+        }
+        return file
+    }
+
     @Test
     void logWarningMessageForMissingPluginDefinitionFiles() {
         Action<Task> pluginValidationAction = createValidationAction()
@@ -156,6 +205,25 @@ class ValidateDefinitionActionTest {
         assertThat(outputEventListener.toString(), not(containsString(expectedMessage)))
     }
 
+    @Test
+    void 'collected definitions and classes are not carried over to the next execution'() {
+        File definitionFile = project.file('build-server-plugin.xml')
+        definitionFile << BEAN_DEFINITION_FILE
+        definitions.add(new PluginDefinition(definitionFile))
+        classes.add('example/Plugin.class')
+        Action<Task> pluginValidationAction = createValidationAction()
+
+        pluginValidationAction.execute(stubTask)
+
+        assertThat(definitions, hasSize(0))
+        assertThat(classes, hasSize(0))
+
+        outputEventListener.reset()
+        pluginValidationAction.execute(stubTask)
+
+        assertThat(outputEventListener.toString(), containsString(NO_DEFINITION_WARNING))
+    }
+
     @Test
     void 'no warning message for missing plugin definition files with validation mode set to ignore'() {
         Action<Task> pluginValidationAction = createValidationAction(IGNORE)
@@ -165,6 +233,99 @@ class ValidateDefinitionActionTest {
         assertThat(outputEventListener.toString(), not(containsString(NO_DEFINITION_WARNING)))
     }
 
+    @Test
+    void 'no warning message with class in a runtime classpath jar'() {
+        File definitionFile = project.file('build-server-plugin.xml')
+        definitionFile << BEAN_DEFINITION_FILE
+        definitions.add(new PluginDefinition(definitionFile))
+        File jarFile = createJar(project.file('lib/example.jar'), 'example/Plugin.class')
+        File cacheDir = project.file('cache')
+        Action<Task> pluginValidationAction = createValidationAction(WARN, project.files(jarFile), cacheDir)
+        outputEventListener.reset()
+
+        pluginValidationAction.execute(stubTask)
+
+        String expectedMessage = String.format(NO_BEAN_CLASS_WARNING, 'build-server-plugin.xml', 'example.Plugin')
+        assertThat(outputEventListener.toString(), not(containsString(expectedMessage)))
+        assertThat(cacheDir.list().toList(), hasItem(ClasspathIndex.checksum(jarFile) + '.classes'))
+    }
+
+    @Test
+    void 'no warning message with class in a runtime classpath directory'() {
+        File definitionFile = project.file('build-server-plugin.xml')
+        definitionFile << BEAN_DEFINITION_FILE
+        definitions.add(new PluginDefinition(definitionFile))
+        File classesDir = project.file('classes')
+        project.file('classes/example').mkdirs()
+        project.file('classes/example/Plugin.class') << ''
+        Action<Task> pluginValidationAction = createValidationAction(WARN, project.files(classesDir), null)
+        outputEventListener.reset()
+
+        pluginValidationAction.execute(stubTask)
+
+        String expectedMessage = String.format(NO_BEAN_CLASS_WARNING, 'build-server-plugin.xml', 'example.Plugin')
+        assertThat(outputEventListener.toString(), not(containsString(expectedMessage)))
+    }
+
+    @Test
+    void 'log warning message for class missing from the jar and runtime classpath'() {
+        File definitionFile = project.file('build-server-plugin.xml')
+        definitionFile << BEAN_DEFINITION_FILE
+        definitions.add(new PluginDefinition(definitionFile))
+        File jarFile = createJar(project.file('lib/other.jar'), 'example/Other.class')
+        Action<Task> pluginValidationAction = createValidationAction(WARN, project.files(jarFile), project.file('cache'))
+        outputEventListener.reset()
+
+        pluginValidationAction.execute(stubTask)
+
+        String expectedMessage = String.format(NO_BEAN_CLASS_WARNING, 'build-server-plugin.xml', 'example.Plugin')
+        assertThat(outputEventListener.toString(), containsString(expectedMessage))
+    }
+
+    @Test
+    void 'log warning message for abstract bean class'() {
+        File definitionFile = project.file('build-server-plugin.xml')
+        definitionFile << BEAN_DEFINITION_FILE
+        definitions.add(new PluginDefinition(definitionFile))
+        File classesDir = createClass(project.file('classes'), 'example/Plugin', ACC_PUBLIC | ACC_ABSTRACT, '()V')
+        Action<Task> pluginValidationAction = createValidationAction(WARN, project.files(classesDir), null)
+        outputEventListener.reset()
+
+        pluginValidationAction.execute(stubTask)
+
+        String expectedMessage = String.format(NOT_INSTANTIABLE_WARNING, 'build-server-plugin.xml', 'example.Plugin', 'an abstract class or an interface')
+        assertThat(outputEventListener.toString(), containsString(expectedMessage))
+    }
+
+    @Test
+    void 'log warning message for bean class without a matching constructor'() {
+        File definitionFile = project.file('build-server-plugin.xml')
+        definitionFile << CONSTRUCTOR_ARG_BEAN_DEFINITION_FILE.replace('@autowire@', 'no')
+        definitions.add(new PluginDefinition(definitionFile))
+        File classesDir = createClass(project.file('classes'), 'example/Plugin', ACC_PUBLIC, '(Ljava/lang/String;Ljava/lang/String;)V')
+        Action<Task> pluginValidationAction = createValidationAction(WARN, project.files(classesDir), null)
+        outputEventListener.reset()
+
+        pluginValidationAction.execute(stubTask)
+
+        String expectedMessage = String.format(NO_CONSTRUCTOR_WARNING, 'build-server-plugin.xml', 1, 'example.Plugin')
+        assertThat(outputEventListener.toString(), containsString(expectedMessage))
+    }
+
+    @Test
+    void 'no warning message for bean class with autowired constructor arguments'() {
+        File definitionFile = project.file('build-server-plugin.xml')
+        definitionFile << CONSTRUCTOR_ARG_BEAN_DEFINITION_FILE.replace('@autowire@', 'constructor')
+        definitions.add(new PluginDefinition(definitionFile))
+        File classesDir = createClass(project.file('classes'), 'example/Plugin', ACC_PUBLIC, '(Ljava/lang/String;Ljava/lang/String;)V')
+        Action<Task> pluginValidationAction = createValidationAction(WARN, project.files(classesDir), null)
+        outputEventListener.reset()
+
+        pluginValidationAction.execute(stubTask)
+
+        assertThat(outputEventListener.toString(), not(containsString('example.Plugin')))
+    }
+
     @Test
     void 'no warning message for invalid definition files with validation mode set to ignore'() {
         File emptyDefinitionFile = project.file('build-server-plugin1.xml')
@@ -286,6 +447,49 @@ class ValidateDefinitionActionTest {
         assertThat(jar, hasAction(PluginDefinitionValidationAction))
     }
 
+    @Test
+    void 'jar task is validated when bean definitions are generated'() {
+        project.pluginManager.apply(JavaPlugin)
+        project.pluginManager.apply(TeamCityServerPlugin)
+        project.teamcity {
+            generateBeanDefinitions = true
+        }
+        project.evaluate()
+
+        Jar jar = project.tasks.getByName('jar') as Jar
+        assertThat(jar, hasAction(PluginDefinitionValidationAction))
+    }
+
+    @Test
+    void 'generated plugin definition files are not validated'() {
+        File definitionFile = project.file('build-server-plugin-example.xml')
+        definitionFile << EMPTY_BEAN_DEFINITION_FILE
+        definitions.add(new PluginDefinition(definitionFile))
+        Action<Task> pluginValidationAction = new PluginDefinitionValidationAction(WARN, definitions, classes, null, null,
+            project.provider { true }, 'example')
+        outputEventListener.reset()
+
+        pluginValidationAction.execute(stubTask)
+
+        assertThat(outputEventListener.toString(), not(containsString('build-server-plugin-example.xml')))
+        assertThat(outputEventListener.toString(), not(containsString(NO_DEFINITION_WARNING)))
+    }
+
+    @Test
+    void 'plugin definition files are validated with generated plugin definition files'() {
+        File definitionFile = project.file('build-server-plugin.xml')
+        definitionFile << EMPTY_BEAN_DEFINITION_FILE
+        definitions.add(new PluginDefinition(definitionFile))
+        Action<Task> pluginValidationAction = new PluginDefinitionValidationAction(WARN, definitions, classes, null, null,
+            project.provider { true }, 'example')
+        outputEventListener.reset()
+
+        pluginValidationAction.execute(stubTask)
+
+        String expectedMessage = String.format(NO_BEAN_CLASSES_WARNING, 'build-server-plugin.xml')
+        assertThat(outputEventListener.toString(), containsString(expectedMessage))
+    }
+
     @Test
     void 'applying java plugin after agent plugin configures jar task'() {
         project.pluginManager.apply(TeamCityAgentPlugin)
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.rodm.teamcity
+
+import com.github.rodm.teamcity.internal.ClasspathIndex
+import com.github.rodm.teamcity.internal.ZipIndex
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipException
+import java.util.zip.ZipOutputStream
+
+import static org.hamcrest.MatcherAssert.assertThat
+import static org.hamcrest.Matchers.contains
+import static org.hamcrest.Matchers.containsInAnyOrder
+import static org.hamcrest.Matchers.equalTo
+import static org.hamcrest.Matchers.is
+import static org.junit.jupiter.api.Assertions.assertThrows
+
+class ZipIndexTest {
+
+    @TempDir
+    public Path testDir
+
+    @Test
+    void 'reads entries from the central directory'() {
+        File file = testDir.resolve('test.jar').toFile()
+        byte[] content = 'example content'.bytes
+        new ZipOutputStream(new FileOutputStream(file)).withCloseable { zip ->
+            zip.setComment('archive comment')
+            zip.putNextEntry(new ZipEntry('example/'))
+            zip.closeEntry()
+            zip.putNextEntry(new ZipEntry('example/Plugin.class'))
+            zip.write(content)
+            zip.closeEntry()
+        }
+
+        ZipIndex index = ZipIndex.read(file)
+
+        assertThat(index.entries*.name, contains('example/', 'example/Plugin.class'))
+        ZipIndex.Entry entry = index.entries[1]
+        CRC32 crc = new CRC32()
+        crc.update(content)
+        assertThat(entry.size, equalTo((long) content.length))
+        assertThat(entry.crc, equalTo(crc.value))
+        assertThat(entry.method, equalTo(ZipEntry.DEFLATED))
+        assertThat(entry.directory, is(false))
+        assertThat(index.entries[0].directory, is(true))
+        assertThat(index.centralDirectoryOffset + index.centralDirectorySize, equalTo(file.length() - 22 - 'archive comment'.length()))
+    }
+
+    @Test
+    void 'reads entries from a zip64 archive'() {
+        File file = testDir.resolve('large.jar').toFile()
+        int count = 70000
+        new ZipOutputStream(new FileOutputStream(file)).withCloseable { zip ->
+            for (int i = 0; i < count; i++) {
+                zip.putNextEntry(new ZipEntry("example/Class${i}.class"))
+                zip.closeEntry()
+            }
+        }
+
+        ZipIndex index = ZipIndex.read(file)
+
+        assertThat(index.entries.size(), equalTo(count))
+        assertThat(index.entries[count - 1].name, equalTo("example/Class${count - 1}.class".toString()))
+    }
+
+    private static byte[] nestedJar() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream()
+        new ZipOutputStream(out).withCloseable { zip ->
+            zip.putNextEntry(new ZipEntry('example/Plugin.class'))
+            zip.write('example content'.bytes)
+            zip.closeEntry()
+            zip.putNextEntry(new ZipEntry('example/Util.class'))
+            zip.closeEntry()
+        }
+        return out.toByteArray()
+    }
+
+    private File createArchive(int method) {
+        File file = testDir.resolve('plugin.zip').toFile()
+        byte[] jar = nestedJar()
+        new ZipOutputStream(new FileOutputStream(file)).withCloseable { zip ->
+            zip.putNextEntry(new ZipEntry('teamcity-plugin.xml'))
+            zip.write('<teamcity-plugin/>'.bytes)
+            zip.closeEntry()
+            ZipEntry entry = new ZipEntry('server/library.jar')
+            if (method == ZipEntry.STORED) {
+                CRC32 crc = new CRC32()
+                crc.update(jar)
+                entry.method = ZipEntry.STORED
+                entry.size = jar.length
+                entry.compressedSize = jar.length
+                entry.crc = crc.value
+            }
+            zip.putNextEntry(entry)
+            zip.write(jar)
+            zip.closeEntry()
+        }
+        return file
+    }
+
+    @Test
+    void 'reads entries of a stored nested jar'() {
+        ZipIndex index = ZipIndex.read(createArchive(ZipEntry.STORED))
+
+        ZipIndex nested = index.readNested(index.entries[1])
+
+        assertThat(nested.entries*.name, contains('example/Plugin.class', 'example/Util.class'))
+        assertThat(nested.entries[0].size, equalTo((long) 'example content'.length()))
+    }
+
+    @Test
+    void 'reads entries of a compressed nested jar'() {
+        ZipIndex index = ZipIndex.read(createArchive(ZipEntry.DEFLATED))
+
+        ZipIndex nested = index.readNested(index.entries[1])
+
+        assertThat(nested.entries*.name, contains('example/Plugin.class', 'example/Util.class'))
+    }
+
+    @Test
+    void 'fails for a file that is not a zip archive'() {
+        File file = testDir.resolve('invalid.jar').toFile()
+        file << 'not a zip file'
+
+        assertThrows(ZipException, { ZipIndex.read(file) })
+    }
+
+    @Test
+    void 'classpath index uses the name of the dependency cache directory as the checksum'() {
+        String sha1 = 'a94a8fe5ccb19ba61c4c0873d391e987982fbbd3'
+        File file = testDir.resolve("caches/modules-2/files-2.1/example/example/1.0/${sha1}/example-1.0.jar").toFile()
+
+        assertThat(ClasspathIndex.checksum(file), equalTo(sha1))
+    }
+
+    @Test
+    void 'classpath index calculates the checksum of files outside the dependency cache'() {
+        String dirName = '0000000000000000000000000000000000000000'
+        File file = testDir.resolve("lib/${dirName}/test.jar").toFile()
+        file.parentFile.mkdirs()
+        file << 'test'
+
+        assertThat(ClasspathIndex.checksum(file), equalTo('a94a8fe5ccb19ba61c4c0873d391e987982fbbd3'))
+    }
+
+    @Test
+    void 'classpath index calculates the checksum of other files'() {
+        File file = testDir.resolve('test.jar').toFile()
+        file << 'test'
+
+        assertThat(ClasspathIndex.checksum(file), equalTo('a94a8fe5ccb19ba61c4c0873d391e987982fbbd3'))
+    }
+
+    @Test
+    void 'classpath index reads classes from the cached index'() {
+        File file = testDir.resolve('test.jar').toFile()
+        new ZipOutputStream(new FileOutputStream(file)).withCloseable { zip ->
+            zip.putNextEntry(new ZipEntry('example/Plugin.class'))
+            zip.closeEntry()
+            zip.putNextEntry(new ZipEntry('META-INF/MANIFEST.MF'))
+            zip.closeEntry()
+        }
+        File cacheDir = testDir.resolve('cache').toFile()
+
+        Set<String> classes = new ClasspathIndex(cacheDir).classes(file)
+
+        assertThat(classes, containsInAnyOrder('example/Plugin.class'))
+        Path indexFile = cacheDir.toPath().resolve(ClasspathIndex.checksum(file) + '.classes')
+        assertThat(Files.readAllLines(indexFile), contains('example/Plugin.class'))
+    }
+}